@@ -0,0 +1,63 @@
+plugins {
+	`java-library`
+	id("io.spring.dependency-management")
+}
+
+group = "com.vthreadmq"
+version = "0.0.1-SNAPSHOT"
+
+java {
+	toolchain {
+		languageVersion = JavaLanguageVersion.of(21)
+	}
+}
+
+repositories {
+	mavenCentral()
+}
+
+// Same dependency versions as the broker
+dependencyManagement {
+	imports {
+		mavenBom(org.springframework.boot.gradle.plugin.SpringBootPlugin.BOM_COORDINATES)
+	}
+}
+
+// The request and message DTOs are compiled from the broker's sources, so both sides share one definition
+sourceSets {
+	main {
+		java {
+			srcDir("../src/main/java")
+			include(
+				"com/vthreadMQ001/client/**",
+				"com/vthreadMQ001/dto/ProduceMessageRequest.java",
+				"com/vthreadMQ001/dto/ConsumeMessageRequest.java",
+				"com/vthreadMQ001/dto/AckRequest.java",
+				"com/vthreadMQ001/model/Message.java"
+			)
+		}
+	}
+}
+
+dependencies {
+	// JSON processing
+	api("com.fasterxml.jackson.core:jackson-databind")
+	implementation("com.fasterxml.jackson.datatype:jackson-datatype-jsr310")
+
+	implementation("org.slf4j:slf4j-api")
+
+	// Validation annotations on the shared DTOs; only the broker enforces them
+	compileOnly("jakarta.validation:jakarta.validation-api")
+
+	// Lombok for cleaner code
+	compileOnly("org.projectlombok:lombok")
+	annotationProcessor("org.projectlombok:lombok")
+
+	// Testing, against an in-process HTTP server
+	testImplementation("org.junit.jupiter:junit-jupiter")
+	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.withType<Test> {
+	useJUnitPlatform()
+}
@@ -0,0 +1,20 @@
+package com.vthreadMQ001.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClientConfig {
+    @Builder.Default
+    private String baseUrl = "http://localhost:8080";
+    private String clientId; // sent as X-Client-Id for the broker's per-client quotas
+    @Builder.Default
+    private long connectTimeoutMs = 5000;
+    @Builder.Default
+    private long requestTimeoutMs = 60000;
+}
@@ -0,0 +1,19 @@
+package com.vthreadMQ001.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConsumerConfig {
+    @Builder.Default
+    private int prefetchPages = 1; // pages fetched ahead of the one being processed
+    @Builder.Default
+    private long idleBackoffMs = 200; // wait after an empty page before fetching again
+    @Builder.Default
+    private long commitIntervalMs = 1000; // processed offsets are acked in one request per topic at this interval
+}
@@ -0,0 +1,23 @@
+package com.vthreadMQ001.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProducerConfig {
+    @Builder.Default
+    private long lingerMs = 5; // how long a batch waits for more messages before it is sent
+    @Builder.Default
+    private int batchSize = 500; // messages per batch request
+    @Builder.Default
+    private int maxBatchBytes = 1048576; // content bytes per batch request
+    @Builder.Default
+    private int maxInFlightRequests = 5; // batches of one topic may be written out of order above 1
+    @Builder.Default
+    private int maxPendingMessages = 10000; // send blocks while this many messages are unacknowledged
+}
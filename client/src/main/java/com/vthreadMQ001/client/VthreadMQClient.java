@@ -0,0 +1,203 @@
+package com.vthreadMQ001.client;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.vthreadMQ001.dto.AckRequest;
+import com.vthreadMQ001.dto.ConsumeMessageRequest;
+import com.vthreadMQ001.dto.ProduceMessageRequest;
+import com.vthreadMQ001.model.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Client for the VthreadMQ REST API.
+ *
+ * Requests share one {@link HttpClient}, which keeps HTTP/1.1 connections to the broker alive and
+ * reuses them. Each call runs on its own virtual thread, so callers can issue many at once
+ * without a thread pool to size. {@link #newProducer} and {@link #newConsumer} add batching,
+ * prefetching and batched commits on top of the single calls here.
+ */
+public class VthreadMQClient implements AutoCloseable {
+
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+    private static final TypeReference<Message> MESSAGE = new TypeReference<>() {};
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<>() {};
+
+    private final ClientConfig config;
+    private final String baseUrl;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+
+    public VthreadMQClient(ClientConfig config) {
+        this.config = config;
+        this.baseUrl = config.getBaseUrl().endsWith("/")
+            ? config.getBaseUrl().substring(0, config.getBaseUrl().length() - 1)
+            : config.getBaseUrl();
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMs()))
+            .executor(executor)
+            .build();
+        this.objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public static VthreadMQClient create(String baseUrl) {
+        return new VthreadMQClient(ClientConfig.builder().baseUrl(baseUrl).build());
+    }
+
+    public VthreadMQProducer newProducer(ProducerConfig producerConfig) {
+        return new VthreadMQProducer(this, producerConfig);
+    }
+
+    /**
+     * A consumer of the topic and group in {@code request}; it acks what it has processed, so
+     * the request's autoCommit is ignored.
+     */
+    public VthreadMQConsumer newConsumer(ConsumeMessageRequest request, ConsumerConfig consumerConfig) {
+        return new VthreadMQConsumer(this, request, consumerConfig);
+    }
+
+    public CompletableFuture<Message> produce(ProduceMessageRequest request) {
+        return async(() -> send("POST", "/api/produce", request, MESSAGE));
+    }
+
+    /**
+     * Produce messages of one topic in a single request, in order.
+     */
+    public CompletableFuture<List<Message>> produceBatch(List<ProduceMessageRequest> requests) {
+        return async(() -> produceBatchNow(requests));
+    }
+
+    public CompletableFuture<List<Message>> consume(ConsumeMessageRequest request) {
+        return async(() -> consumeNow(request));
+    }
+
+    /**
+     * Content of a message the broker stored outside the row ({@code blobRef} set, content empty).
+     */
+    public CompletableFuture<byte[]> payload(Message message) {
+        return async(() -> exchange("GET", "/api/messages/" + encode(message.getTopic()) + "/" + message.getOffset() + "/payload", null));
+    }
+
+    public CompletableFuture<Void> commit(String consumerGroup, String topic, long offset) {
+        String path = "/api/commit?consumerGroup=" + encode(consumerGroup) + "&topic=" + encode(topic) + "&offset=" + offset;
+        return async(() -> {
+            send("POST", path, null, null);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> ack(AckRequest request) {
+        return async(() -> {
+            ackNow("/api/ack", request);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> nack(AckRequest request) {
+        return async(() -> {
+            ackNow("/api/nack", request);
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    // Blocking variants for the producer and consumer, which already run on virtual threads
+
+    List<Message> produceBatchNow(List<ProduceMessageRequest> requests) {
+        return send("POST", "/api/produce/batch", requests, MESSAGE_LIST);
+    }
+
+    List<Message> consumeNow(ConsumeMessageRequest request) {
+        return send("POST", "/api/consume", request, MESSAGE_LIST);
+    }
+
+    void ackNow(String path, AckRequest request) {
+        send("POST", path, request, null);
+    }
+
+    ExecutorService executor() {
+        return executor;
+    }
+
+    private <T> CompletableFuture<T> async(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // A null responseType discards the response body
+    private <T> T send(String method, String path, Object body, TypeReference<T> responseType) {
+        byte[] response = exchange(method, path, body);
+        if (responseType == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(response, responseType);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid response to " + method + " " + path, e);
+        }
+    }
+
+    private byte[] exchange(String method, String path, Object body) {
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMillis(config.getRequestTimeoutMs()))
+                .header("Accept", "application/json");
+            if (body != null) {
+                request.header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+            } else {
+                request.method(method, HttpRequest.BodyPublishers.noBody());
+            }
+            if (config.getClientId() != null) {
+                request.header(CLIENT_ID_HEADER, config.getClientId());
+            }
+
+            HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() / 100 != 2) {
+                throw new VthreadMQException(response.statusCode(), new String(response.body(), StandardCharsets.UTF_8));
+            }
+            return response.body();
+        } catch (IOException e) {
+            throw new UncheckedIOException(method + " " + path + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(method + " " + path + " interrupted", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,217 @@
+package com.vthreadMQ001.client;
+
+import com.vthreadMQ001.dto.AckRequest;
+import com.vthreadMQ001.dto.ConsumeMessageRequest;
+import com.vthreadMQ001.model.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer of one topic, or topic pattern, for one consumer group that fetches ahead and acks in
+ * batches. Not thread-safe: poll, commitAsync and close belong to one application thread.
+ *
+ * A virtual thread keeps up to {@code prefetchPages} pages fetched while the application works
+ * on the current one, so {@link #poll} rarely waits for a round trip. A page counts as processed
+ * when poll is called again, or on {@link #commitAsync} and {@link #close}. Processed offsets are
+ * acked per topic as ranges every {@code commitIntervalMs}, and the broker commits them once every
+ * earlier offset is acked too. Close waits for a fetch in progress; its page and the prefetched
+ * pages that poll never returned are nacked, so they are redelivered right away.
+ */
+@Slf4j
+public class VthreadMQConsumer implements AutoCloseable {
+
+    private final VthreadMQClient client;
+    private final ConsumeMessageRequest request;
+    private final ConsumerConfig config;
+    private final BlockingQueue<List<Message>> pages;
+    private final Thread fetcher;
+    private final ScheduledExecutorService commitExecutor;
+
+    // Released on close; the fetcher waits on it instead of sleeping, so close wakes it up
+    private final CountDownLatch closing = new CountDownLatch(1);
+
+    // Map of topic -> processed offsets not acked yet; guarded by this
+    private Map<String, List<Long>> processed = new HashMap<>();
+
+    // Page returned by the last poll
+    private List<Message> current = List.of();
+    private volatile boolean closed;
+
+    VthreadMQConsumer(VthreadMQClient client, ConsumeMessageRequest request, ConsumerConfig config) {
+        this.client = client;
+        this.request = request.toBuilder().autoCommit(false).build();
+        this.config = config;
+        this.pages = new ArrayBlockingQueue<>(Math.max(config.getPrefetchPages(), 1));
+        this.fetcher = Thread.ofVirtual().name("vthreadmq-consumer-fetch").start(this::fetch);
+        this.commitExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-consumer-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        commitExecutor.scheduleWithFixedDelay(this::sendAcks, config.getCommitIntervalMs(), config.getCommitIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Mark the previous page processed and return the next one, or an empty list if none arrives
+     * within {@code timeout}.
+     */
+    public List<Message> poll(Duration timeout) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Consumer is closed");
+        }
+        markProcessed(current);
+        List<Message> page = pages.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        current = page != null ? page : List.of();
+        return current;
+    }
+
+    /**
+     * Mark the current page processed and ack everything processed so far without waiting for the
+     * commit interval.
+     */
+    public CompletableFuture<Void> commitAsync() {
+        markProcessed(current);
+        current = List.of();
+        return sendAcks();
+    }
+
+    /**
+     * Stop fetching, ack the processed pages (including the current one) and nack prefetched
+     * pages that were never returned. A fetch in progress is not interrupted, since the broker
+     * may already have handed out its page; close waits for it, at most the request timeout.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closing.countDown();
+        try {
+            fetcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commitExecutor.shutdown();
+
+        List<List<Message>> unreturned = new ArrayList<>();
+        pages.drainTo(unreturned);
+        CompletableFuture<Void> nacks = CompletableFuture.allOf(unreturned.stream()
+            .map(this::nack)
+            .toArray(CompletableFuture[]::new));
+        CompletableFuture.allOf(commitAsync(), nacks).join();
+    }
+
+    private void fetch() {
+        ConsumeMessageRequest next = request;
+        try {
+            while (!closed) {
+                List<Message> page;
+                try {
+                    page = client.consumeNow(next);
+                    // Only the first request seeks; later ones continue from the group's position
+                    next = request.toBuilder().fromOffset(null).fromTimestamp(null).build();
+                } catch (Exception e) {
+                    log.warn("Consume from topic {} failed: {}", request.getTopic(), e.getMessage());
+                    page = List.of();
+                }
+
+                if (page.isEmpty()) {
+                    closing.await(config.getIdleBackoffMs(), TimeUnit.MILLISECONDS);
+                } else if (!offer(page)) {
+                    // Closed before poll could take it: the broker already handed these out
+                    nack(page).join();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Wait for room in the prefetch queue until closed
+    private boolean offer(List<Message> page) throws InterruptedException {
+        while (!closed) {
+            if (pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markProcessed(List<Message> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Message message : page) {
+                processed.computeIfAbsent(message.getTopic(), k -> new ArrayList<>()).add(message.getOffset());
+            }
+        }
+    }
+
+    private CompletableFuture<Void> sendAcks() {
+        Map<String, List<Long>> acks;
+        synchronized (this) {
+            if (processed.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            acks = processed;
+            processed = new HashMap<>();
+        }
+        return CompletableFuture.allOf(acks.entrySet().stream()
+            .map(entry -> client.ack(ackRequest(entry.getKey(), entry.getValue()))
+                .exceptionally(error -> {
+                    // Acks are idempotent, so the next round simply sends these again
+                    log.warn("Ack of {} offsets on topic {} failed: {}", entry.getValue().size(), entry.getKey(), error.getMessage());
+                    synchronized (this) {
+                        processed.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+                    }
+                    return null;
+                }))
+            .toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> nack(List<Message> page) {
+        Map<String, List<Long>> offsets = new HashMap<>();
+        for (Message message : page) {
+            offsets.computeIfAbsent(message.getTopic(), k -> new ArrayList<>()).add(message.getOffset());
+        }
+        return CompletableFuture.allOf(offsets.entrySet().stream()
+            .map(entry -> client.nack(ackRequest(entry.getKey(), entry.getValue()))
+                .exceptionally(error -> {
+                    log.warn("Nack of {} offsets on topic {} failed: {}", entry.getValue().size(), entry.getKey(), error.getMessage());
+                    return null;
+                }))
+            .toArray(CompletableFuture[]::new));
+    }
+
+    // Consecutive offsets collapse into one range
+    private AckRequest ackRequest(String topic, List<Long> offsets) {
+        List<Long> sorted = offsets.stream().sorted().distinct().toList();
+        List<AckRequest.OffsetRange> ranges = new ArrayList<>();
+        long from = sorted.get(0);
+        long to = from;
+        for (long offset : sorted.subList(1, sorted.size())) {
+            if (offset != to + 1) {
+                ranges.add(new AckRequest.OffsetRange(from, to));
+                from = offset;
+            }
+            to = offset;
+        }
+        ranges.add(new AckRequest.OffsetRange(from, to));
+        return AckRequest.builder()
+            .topic(topic)
+            .consumerGroup(request.getConsumerGroup())
+            .ranges(ranges)
+            .build();
+    }
+}
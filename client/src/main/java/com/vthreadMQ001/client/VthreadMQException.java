@@ -0,0 +1,25 @@
+package com.vthreadMQ001.client;
+
+/**
+ * A request the broker answered with an error status.
+ */
+public class VthreadMQException extends RuntimeException {
+
+    private final int status;
+
+    public VthreadMQException(int status, String message) {
+        super("HTTP " + status + (message != null && !message.isBlank() ? ": " + message : ""));
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Quota (429) and overload (503) rejections; the same request may succeed later.
+     */
+    public boolean isRetryable() {
+        return status == 429 || status == 503;
+    }
+}
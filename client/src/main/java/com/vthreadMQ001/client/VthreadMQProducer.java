@@ -0,0 +1,172 @@
+package com.vthreadMQ001.client;
+
+import com.vthreadMQ001.dto.ProduceMessageRequest;
+import com.vthreadMQ001.model.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous producer that groups messages per topic into {@code /api/produce/batch} requests.
+ *
+ * A batch is sent once it holds {@code batchSize} messages or {@code maxBatchBytes} of content,
+ * or {@code lingerMs} after its first message. Each batch is sent on a virtual thread, at most
+ * {@code maxInFlightRequests} at once; {@link #send} blocks while {@code maxPendingMessages}
+ * messages are still waiting for the broker. When a batch fails, the futures of all its messages
+ * fail with the error, although messages before the failing one may have been written.
+ */
+@Slf4j
+public class VthreadMQProducer implements AutoCloseable {
+
+    private final VthreadMQClient client;
+    private final ProducerConfig config;
+    private final Semaphore inFlightRequests;
+    private final Semaphore pendingMessages;
+    private final ScheduledExecutorService lingerExecutor;
+
+    // Map of topic -> batch being filled; guarded by this
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    // Completion of every batch handed to a sender, for flush
+    private final Set<CompletableFuture<Void>> sending = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed;
+
+    VthreadMQProducer(VthreadMQClient client, ProducerConfig config) {
+        this.client = client;
+        this.config = config;
+        this.inFlightRequests = new Semaphore(config.getMaxInFlightRequests());
+        this.pendingMessages = new Semaphore(config.getMaxPendingMessages());
+        this.lingerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-producer-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a message for the next batch of its topic. The future completes with the stored
+     * message, including its offset, once the batch has been written.
+     */
+    public CompletableFuture<Message> send(ProduceMessageRequest request) {
+        if (closed) {
+            throw new IllegalStateException("Producer is closed");
+        }
+        try {
+            pendingMessages.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        future.whenComplete((message, error) -> pendingMessages.release());
+
+        // UTF-16 length as a cheap estimate of the encoded size
+        int bytes = request.getContent() != null ? request.getContent().length() : 0;
+        String topic = request.getTopic();
+        List<Batch> ready = new ArrayList<>(2);
+        synchronized (this) {
+            Batch batch = batches.get(topic);
+            if (batch != null && batch.bytes + bytes > config.getMaxBatchBytes()) {
+                ready.add(batches.remove(topic));
+                batch = null;
+            }
+            if (batch == null) {
+                Batch created = new Batch(topic);
+                batches.put(topic, created);
+                lingerExecutor.schedule(() -> expire(created), config.getLingerMs(), TimeUnit.MILLISECONDS);
+                batch = created;
+            }
+            batch.add(request, future, bytes);
+            if (batch.requests.size() >= config.getBatchSize() || batch.bytes >= config.getMaxBatchBytes()) {
+                ready.add(batches.remove(topic));
+            }
+        }
+        ready.forEach(this::dispatch);
+        return future;
+    }
+
+    /**
+     * Send every queued message now and wait until all batches sent so far have completed.
+     */
+    public void flush() {
+        List<Batch> ready;
+        synchronized (this) {
+            ready = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+        ready.forEach(this::dispatch);
+        CompletableFuture.allOf(sending.toArray(CompletableFuture[]::new)).join();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        lingerExecutor.shutdownNow();
+    }
+
+    private void expire(Batch batch) {
+        synchronized (this) {
+            // Already sent because it filled up, or taken by flush
+            if (!batches.remove(batch.topic, batch)) {
+                return;
+            }
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch batch) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        sending.add(done);
+        client.executor().execute(() -> {
+            try {
+                inFlightRequests.acquire();
+                try {
+                    List<Message> produced = client.produceBatchNow(batch.requests);
+                    for (int i = 0; i < batch.futures.size(); i++) {
+                        batch.futures.get(i).complete(produced.get(i));
+                    }
+                } finally {
+                    inFlightRequests.release();
+                }
+            } catch (Throwable e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                log.debug("Batch of {} messages to topic {} failed: {}", batch.requests.size(), batch.topic, e.getMessage());
+                batch.futures.forEach(future -> future.completeExceptionally(e));
+            } finally {
+                sending.remove(done);
+                done.complete(null);
+            }
+        });
+    }
+
+    private static class Batch {
+        final String topic;
+        final List<ProduceMessageRequest> requests = new ArrayList<>();
+        final List<CompletableFuture<Message>> futures = new ArrayList<>();
+        int bytes;
+
+        Batch(String topic) {
+            this.topic = topic;
+        }
+
+        void add(ProduceMessageRequest request, CompletableFuture<Message> future, int size) {
+            requests.add(request);
+            futures.add(future);
+            bytes += size;
+        }
+    }
+}
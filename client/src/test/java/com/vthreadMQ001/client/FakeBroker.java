@@ -0,0 +1,128 @@
+package com.vthreadMQ001.client;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.vthreadMQ001.dto.AckRequest;
+import com.vthreadMQ001.dto.ProduceMessageRequest;
+import com.vthreadMQ001.model.Message;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the broker's batch produce, consume, ack and nack endpoints that
+ * records what the client sent.
+ */
+class FakeBroker implements AutoCloseable {
+
+    final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    final List<List<ProduceMessageRequest>> batches = new CopyOnWriteArrayList<>();
+    final List<AckRequest> acks = new CopyOnWriteArrayList<>();
+    final List<AckRequest> nacks = new CopyOnWriteArrayList<>();
+
+    // Pages served to consumes in order; an empty page once they run out
+    final BlockingQueue<List<Message>> pages = new LinkedBlockingQueue<>();
+
+    // When set, a consume counts down consumeArrived and waits for the gate before answering
+    volatile CountDownLatch consumeGate;
+    final CountDownLatch consumeArrived = new CountDownLatch(1);
+
+    private final AtomicLong nextOffset = new AtomicLong(1);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    FakeBroker() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/produce/batch", exchange -> {
+            List<ProduceMessageRequest> requests = read(exchange, new TypeReference<>() {});
+            batches.add(requests);
+            List<Message> produced = new ArrayList<>();
+            for (ProduceMessageRequest request : requests) {
+                produced.add(message(request.getTopic(), nextOffset.getAndIncrement()));
+            }
+            respond(exchange, produced);
+        });
+        server.createContext("/api/consume", exchange -> {
+            CountDownLatch gate = consumeGate;
+            if (gate != null) {
+                consumeArrived.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            List<Message> page = pages.poll();
+            respond(exchange, page != null ? page : List.of());
+        });
+        server.createContext("/api/ack", exchange -> {
+            acks.add(read(exchange, new TypeReference<>() {}));
+            respond(exchange, null);
+        });
+        server.createContext("/api/nack", exchange -> {
+            nacks.add(read(exchange, new TypeReference<>() {}));
+            respond(exchange, null);
+        });
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    static Message message(String topic, long offset) {
+        return Message.builder()
+            .id(topic + "-" + offset)
+            .topic(topic)
+            .content("m" + offset)
+            .offset(offset)
+            .build();
+    }
+
+    static List<Message> page(String topic, long... offsets) {
+        List<Message> page = new ArrayList<>();
+        for (long offset : offsets) {
+            page.add(message(topic, offset));
+        }
+        return page;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private <T> T read(HttpExchange exchange, TypeReference<T> type) throws IOException {
+        return objectMapper.readValue(exchange.getRequestBody().readAllBytes(), type);
+    }
+
+    private void respond(HttpExchange exchange, Object body) throws IOException {
+        byte[] bytes = body != null ? objectMapper.writeValueAsBytes(body) : new byte[0];
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length > 0 ? bytes.length : -1);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.vthreadMQ001.client;
+
+import com.vthreadMQ001.dto.AckRequest;
+import com.vthreadMQ001.dto.ConsumeMessageRequest;
+import com.vthreadMQ001.model.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VthreadMQConsumerTest {
+
+    private static final ConsumeMessageRequest REQUEST = ConsumeMessageRequest.builder()
+        .topic("orders")
+        .consumerGroup("billing")
+        .build();
+
+    // Acks only on commitAsync and close
+    private static final ConsumerConfig CONFIG = ConsumerConfig.builder()
+        .prefetchPages(1)
+        .idleBackoffMs(20)
+        .commitIntervalMs(60_000)
+        .build();
+
+    private FakeBroker broker;
+    private VthreadMQClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = new FakeBroker();
+        client = VthreadMQClient.create(broker.url());
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        broker.close();
+    }
+
+    @Test
+    void processedPagesAreAckedAsRanges() throws Exception {
+        broker.pages.add(FakeBroker.page("orders", 1, 2, 3));
+        broker.pages.add(FakeBroker.page("orders", 4, 5));
+        broker.pages.add(FakeBroker.page("orders", 7));
+
+        try (VthreadMQConsumer consumer = client.newConsumer(REQUEST, CONFIG)) {
+            assertEquals(List.of(1L, 2L, 3L), offsets(consumer.poll(Duration.ofSeconds(5))));
+            assertEquals(List.of(4L, 5L), offsets(consumer.poll(Duration.ofSeconds(5))));
+            assertEquals(List.of(7L), offsets(consumer.poll(Duration.ofSeconds(5))));
+            assertTrue(broker.acks.isEmpty(), "acked before the commit");
+
+            consumer.commitAsync().get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, broker.acks.size());
+            AckRequest ack = broker.acks.get(0);
+            assertEquals("orders", ack.getTopic());
+            assertEquals("billing", ack.getConsumerGroup());
+            assertEquals(List.of(new AckRequest.OffsetRange(1, 5), new AckRequest.OffsetRange(7, 7)), ack.getRanges());
+        }
+        assertTrue(broker.nacks.isEmpty());
+    }
+
+    @Test
+    void closeNacksPrefetchedPages() throws Exception {
+        broker.pages.add(FakeBroker.page("orders", 1, 2));
+        broker.pages.add(FakeBroker.page("orders", 3, 4));
+
+        VthreadMQConsumer consumer = client.newConsumer(REQUEST, CONFIG);
+        assertEquals(List.of(1L, 2L), offsets(consumer.poll(Duration.ofSeconds(5))));
+        // Wait until the fetcher has taken the second page ahead of poll
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!broker.pages.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        consumer.close();
+
+        assertEquals(List.of(new AckRequest.OffsetRange(1, 2)), broker.acks.get(0).getRanges());
+        assertEquals(1, broker.nacks.size());
+        assertEquals(List.of(new AckRequest.OffsetRange(3, 4)), broker.nacks.get(0).getRanges());
+    }
+
+    @Test
+    void closeWaitsForFetchInProgressAndNacksItsPage() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        broker.consumeGate = gate;
+        broker.pages.add(FakeBroker.page("orders", 1, 2));
+
+        VthreadMQConsumer consumer = client.newConsumer(REQUEST, CONFIG);
+        assertTrue(broker.consumeArrived.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> closed = CompletableFuture.runAsync(consumer::close);
+        Thread.sleep(100);
+        assertFalse(closed.isDone(), "close returned while a fetch was in progress");
+
+        gate.countDown();
+        closed.get(5, TimeUnit.SECONDS);
+
+        assertTrue(broker.acks.isEmpty());
+        assertEquals(1, broker.nacks.size());
+        assertEquals(List.of(new AckRequest.OffsetRange(1, 2)), broker.nacks.get(0).getRanges());
+    }
+
+    private static List<Long> offsets(List<Message> page) {
+        return page.stream().map(Message::getOffset).toList();
+    }
+}
@@ -0,0 +1,98 @@
+package com.vthreadMQ001.client;
+
+import com.vthreadMQ001.dto.ProduceMessageRequest;
+import com.vthreadMQ001.model.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VthreadMQProducerTest {
+
+    private FakeBroker broker;
+    private VthreadMQClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = new FakeBroker();
+        client = VthreadMQClient.create(broker.url());
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        broker.close();
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaitingForLinger() throws Exception {
+        try (VthreadMQProducer producer = client.newProducer(ProducerConfig.builder().batchSize(3).lingerMs(60_000).build())) {
+            List<CompletableFuture<Message>> futures = send(producer, "orders", 3);
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i + 1, futures.get(i).get(5, TimeUnit.SECONDS).getOffset());
+            }
+            assertEquals(1, broker.batches.size());
+            assertEquals(List.of("m0", "m1", "m2"), broker.batches.get(0).stream().map(ProduceMessageRequest::getContent).toList());
+        }
+    }
+
+    @Test
+    void partialBatchIsSentAfterLinger() throws Exception {
+        try (VthreadMQProducer producer = client.newProducer(ProducerConfig.builder().batchSize(100).lingerMs(300).build())) {
+            long start = System.nanoTime();
+            List<CompletableFuture<Message>> futures = send(producer, "orders", 2);
+            assertTrue(broker.batches.isEmpty(), "sent before the linger time");
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+            assertEquals(1, broker.batches.size());
+            assertEquals(2, broker.batches.get(0).size());
+        }
+    }
+
+    @Test
+    void batchClosesAtMaxBytes() throws Exception {
+        ProducerConfig config = ProducerConfig.builder().batchSize(100).maxBatchBytes(5).lingerMs(60_000).build();
+        try (VthreadMQProducer producer = client.newProducer(config)) {
+            // "m0".."m4" are two bytes each, so every third message starts a new batch
+            List<CompletableFuture<Message>> futures = send(producer, "orders", 5);
+            producer.flush();
+
+            assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+            // Batches are sent concurrently, so they may arrive in any order
+            assertEquals(List.of(1, 2, 2), broker.batches.stream().map(List::size).sorted().toList());
+        }
+    }
+
+    @Test
+    void flushSendsOneBatchPerTopic() throws Exception {
+        try (VthreadMQProducer producer = client.newProducer(ProducerConfig.builder().lingerMs(60_000).build())) {
+            send(producer, "orders", 2);
+            send(producer, "payments", 3);
+            producer.flush();
+
+            assertEquals(2, broker.batches.size());
+            for (List<ProduceMessageRequest> batch : broker.batches) {
+                String topic = batch.get(0).getTopic();
+                assertTrue(batch.stream().allMatch(request -> request.getTopic().equals(topic)));
+                assertEquals(topic.equals("orders") ? 2 : 3, batch.size());
+            }
+        }
+    }
+
+    private List<CompletableFuture<Message>> send(VthreadMQProducer producer, String topic, int count) {
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(producer.send(ProduceMessageRequest.builder().topic(topic).content("m" + i).build()));
+        }
+        return futures;
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VthreadMQ produce benchmark: REST API versus the binary protocol.
+ *
+ * Start the broker with the binary listener enabled:
+ *   ./gradlew bootRun --args='--vthreadmq.protocol.enabled=true'
+ *
+ * Usage: java examples/ProtocolBenchmark.java [messages] [payloadBytes] [restConcurrency] [pipeline] [batchSize]
+ */
+public class ProtocolBenchmark {
+
+    static final String HTTP = System.getProperty("http", "http://localhost:8080");
+    static final String HOST = System.getProperty("host", "localhost");
+    static final int PORT = Integer.getInteger("port", 9400);
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int payloadBytes = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int restConcurrency = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int pipeline = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        String payload = "x".repeat(payloadBytes);
+        String run = Long.toString(System.currentTimeMillis());
+
+        System.out.printf("=== VthreadMQ Produce Benchmark (%d messages of %d bytes) ===%n", messages, payloadBytes);
+        report("rest", messages, rest("bench-rest-" + run, messages, payload, restConcurrency));
+        report("binary", messages, binary("bench-binary-" + run, messages, payload, pipeline, 1));
+        report("binary-batch", messages, binary("bench-batch-" + run, messages, payload, pipeline, batchSize));
+    }
+
+    static void report(String name, int messages, long nanos) {
+        System.out.printf("%-13s %8.0f msg/s   %6d ms%n", name, messages / (nanos / 1e9), nanos / 1_000_000);
+    }
+
+    // One virtual thread per in-flight request, each waiting for its response
+    static long rest(String topic, int messages, String payload, int concurrency) throws Exception {
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        String body = "{\"topic\": \"" + topic + "\", \"content\": \"" + payload + "\"}";
+        AtomicInteger remaining = new AtomicInteger(messages);
+        long start = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.submit(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(HTTP + "/api/produce"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body))
+                            .build();
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("REST produce failed with " + response.statusCode());
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // One connection; up to `pipeline` frames in flight while a reader drains the responses
+    static long binary(String topic, int messages, String payload, int pipeline, int batchSize) throws Exception {
+        byte[] content = payload.getBytes(StandardCharsets.UTF_8);
+        int frames = (messages + batchSize - 1) / batchSize;
+        Semaphore window = new Semaphore(pipeline);
+        long start = System.nanoTime();
+        try (Socket socket = new Socket(HOST, PORT)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+
+            Thread reader = Thread.ofVirtual().start(() -> {
+                try {
+                    for (int i = 0; i < frames; i++) {
+                        byte[] frame = new byte[in.readInt()];
+                        in.readFully(frame);
+                        short status = (short) (((frame[5] & 0xff) << 8) | (frame[6] & 0xff));
+                        if (status != 0) {
+                            throw new IllegalStateException("Binary produce failed with " + status);
+                        }
+                        window.release();
+                    }
+                } catch (Exception e) {
+                    // The writer would block on the window forever
+                    System.err.println("binary: " + e.getMessage());
+                    System.exit(1);
+                }
+            });
+
+            for (int frame = 0, sent = 0; frame < frames; frame++) {
+                int count = Math.min(batchSize, messages - sent);
+                window.acquire();
+                writeProduce(out, topic, frame, content, batchSize == 1 ? -1 : count);
+                sent += count;
+                // Flush only when the window is full or nothing is left, so frames share packets
+                if (window.availablePermits() == 0 || frame == frames - 1) {
+                    out.flush();
+                }
+            }
+            reader.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    // PRODUCE, or PRODUCE_BATCH when count >= 0
+    static void writeProduce(DataOutputStream out, String topic, int correlationId, byte[] content, int count) throws IOException {
+        byte[] name = topic.getBytes(StandardCharsets.UTF_8);
+        int message = 2 + 2 + 1 + 4 + 4 + content.length;
+        int messagesLength = count < 0 ? message : 4 + count * message;
+        out.writeInt(1 + 4 + 2 + name.length + messagesLength);
+        out.writeByte(count < 0 ? 0x01 : 0x02);
+        out.writeInt(correlationId);
+        out.writeShort(name.length);
+        out.write(name);
+        if (count >= 0) {
+            out.writeInt(count);
+        }
+        for (int i = 0; i < Math.max(count, 1); i++) {
+            out.writeShort(-1);  // key
+            out.writeShort(-1);  // idempotency key
+            out.writeByte(-1);   // default priority
+            out.writeInt(-1);    // no headers
+            out.writeInt(content.length);
+            out.write(content);
+        }
+    }
+}
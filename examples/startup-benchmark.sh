@@ -0,0 +1,73 @@
+#!/bin/bash
+
+# VthreadMQ startup benchmark
+# Measures the time from launching the JVM to the first successful /api/health, for the plain
+# boot jar and for the AOT + AppCDS build.
+#
+# Build both variants first:
+#   ./gradlew bootJar              # plain jar in build/libs
+#   ./gradlew cdsArchive -Paot     # AOT jar with application.jsa in build/cds
+#
+# Usage: ./examples/startup-benchmark.sh [runs]
+
+RUNS=${1:-5}
+PORT=18080
+JAR=$(ls build/libs/*.jar 2>/dev/null | grep -v -- '-plain.jar' | head -1)
+CDS_JAR=$(ls build/cds/*.jar 2>/dev/null | head -1)
+
+# Start the app with the given JVM arguments and print milliseconds until /api/health answers
+time_to_health() {
+    local data_dir
+    data_dir=$(mktemp -d)
+    local start
+    start=$(date +%s%N)
+
+    java --enable-preview "$@" \
+        --server.port=$PORT \
+        --vthreadmq.database.path="$data_dir/vthreadmq.db" \
+        > "$data_dir/app.log" 2>&1 &
+    local pid=$!
+
+    until curl -sf "http://localhost:$PORT/api/health" > /dev/null; do
+        if ! kill -0 $pid 2>/dev/null; then
+            echo "failed (see $data_dir/app.log)" >&2
+            return 1
+        fi
+        sleep 0.01
+    done
+    local end
+    end=$(date +%s%N)
+
+    kill $pid
+    wait $pid 2>/dev/null
+    rm -rf "$data_dir"
+    echo $(( (end - start) / 1000000 ))
+}
+
+# Run a variant RUNS times and print every sample and the median
+benchmark() {
+    local name=$1
+    shift
+    local samples=()
+    for _ in $(seq "$RUNS"); do
+        samples+=("$(time_to_health "$@")") || return 1
+    done
+    local sorted
+    sorted=($(printf '%s\n' "${samples[@]}" | sort -n))
+    printf '%-12s median %5d ms   runs: %s\n' "$name" "${sorted[$(( RUNS / 2 ))]}" "${samples[*]}"
+}
+
+echo "=== VthreadMQ Startup Benchmark ($RUNS runs each) ==="
+
+if [ -n "$JAR" ]; then
+    benchmark "standard" -jar "$JAR"
+else
+    echo "standard: no jar in build/libs, run ./gradlew bootJar"
+fi
+
+if [ -n "$CDS_JAR" ] && [ -f build/cds/application.jsa ]; then
+    # The archive records the class path it was trained with, so run from the same directory
+    (cd build/cds && benchmark "aot+cds" -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar "$(basename "$CDS_JAR")")
+else
+    echo "aot+cds: no archive in build/cds, run ./gradlew cdsArchive -Paot"
+fi
@@ -6,3 +6,6 @@ pluginManagement {
 	}
 }
 rootProject.name = "0.0.1"
+
+// Java client SDK
+include("client")
@@ -1,10 +1,14 @@
 package com.vthreadMQ001.config;
 
+import com.vthreadMQ001.repository.impl.MessageTableMigrator;
+import com.vthreadMQ001.repository.impl.SQLiteMessageRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.CompositeDatabasePopulator;
 import org.springframework.jdbc.datasource.init.DataSourceInitializer;
 import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 
@@ -15,18 +19,22 @@ import java.io.File;
 @Slf4j
 public class DatabaseConfig {
 
+    // Separate paths let several instances (e.g. a leader and its followers) run side by side
+    @Value("${vthreadmq.database.path:data/vthreadmq.db}")
+    private String databasePath;
+
     @Bean
     public DataSource dataSource() {
         DriverManagerDataSource dataSource = new DriverManagerDataSource();
         dataSource.setDriverClassName("org.sqlite.JDBC");
         
         // Create data directory if it doesn't exist
-        File dataDir = new File("data");
-        if (!dataDir.exists()) {
+        File dataDir = new File(databasePath).getAbsoluteFile().getParentFile();
+        if (dataDir != null && !dataDir.exists()) {
             dataDir.mkdirs();
         }
         
-        String dbPath = "jdbc:sqlite:data/vthreadmq.db";
+        String dbPath = "jdbc:sqlite:" + databasePath;
         dataSource.setUrl(dbPath);
         
         log.info("Configured SQLite database at: {}", dbPath);
@@ -42,7 +50,15 @@ public class DatabaseConfig {
         populator.addScript(new ClassPathResource("schema.sql"));
         populator.setContinueOnError(true);
         
-        initializer.setDatabasePopulator(populator);
+        // A messages table from before the clustered layout gets its replacement first, so the
+        // indexes in schema.sql already exist on the new table instead of being built on the old one,
+        // and its rows get a seq once schema.sql has added the column. Triggers come last, once the
+        // tables they refer to exist
+        CompositeDatabasePopulator populators = new CompositeDatabasePopulator();
+        populators.addPopulators(MessageTableMigrator::prepare, populator, MessageTableMigrator::backfillSeq,
+            SQLiteMessageRepository::createHighWaterTrigger);
+        
+        initializer.setDatabasePopulator(populators);
         return initializer;
     }
 } 
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.vthreadMQ001.config;
 
+import com.vthreadMQ001.websocket.ConsumeWebSocketHandler;
 import com.vthreadMQ001.websocket.NotificationWebSocketHandler;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
@@ -17,11 +18,13 @@ import java.util.Map;
 public class WebSocketConfig {
 
     private final NotificationWebSocketHandler notificationWebSocketHandler;
+    private final ConsumeWebSocketHandler consumeWebSocketHandler;
 
     @Bean
     public HandlerMapping handlerMapping() {
         Map<String, WebSocketHandler> map = new HashMap<>();
         map.put("/ws/notifications", notificationWebSocketHandler);
+        map.put("/ws/consume", consumeWebSocketHandler);
 
         SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
         mapping.setUrlMap(map);
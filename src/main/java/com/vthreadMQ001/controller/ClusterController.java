@@ -0,0 +1,35 @@
+package com.vthreadMQ001.controller;
+
+import com.vthreadMQ001.service.ClusterService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Admin view of cluster membership and topic ownership.
+ */
+@RestController
+@RequestMapping("/api/cluster")
+@RequiredArgsConstructor
+public class ClusterController {
+
+    private final ClusterService clusterService;
+
+    @GetMapping("/ring")
+    public Mono<ResponseEntity<Map<String, Object>>> ring() {
+        return Mono.just(ResponseEntity.ok(clusterService.describe()));
+    }
+
+    @GetMapping("/owner")
+    public Mono<ResponseEntity<Map<String, Object>>> owner(@RequestParam String topic) {
+        String owner = clusterService.ownerOf(topic);
+        return Mono.just(ResponseEntity.ok(Map.of(
+            "topic", topic,
+            "owner", owner,
+            "local", owner.equals(clusterService.getSelf())
+        )));
+    }
+}
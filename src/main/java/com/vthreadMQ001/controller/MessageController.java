@@ -1,17 +1,30 @@
 package com.vthreadMQ001.controller;
 
+import com.vthreadMQ001.dto.AckRequest;
 import com.vthreadMQ001.dto.ConsumeMessageRequest;
 import com.vthreadMQ001.dto.ProduceMessageRequest;
 import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.repository.BrokerState;
+import com.vthreadMQ001.service.ClusterService;
 import com.vthreadMQ001.service.MessageQueueService;
+import com.vthreadMQ001.service.QuotaService;
+import com.vthreadMQ001.service.TopicTrie;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import jakarta.validation.Valid;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -21,37 +34,103 @@ import java.util.Map;
 public class MessageController {
 
     private final MessageQueueService messageQueueService;
+    private final QuotaService quotaService;
+    private final ClusterService clusterService;
+    private final BrokerState brokerState;
+
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
 
     @PostMapping("/produce")
-    public Mono<ResponseEntity<Message>> produceMessage(@Valid @RequestBody ProduceMessageRequest request) {
-        return messageQueueService.produceMessage(request)
-            .map(message -> ResponseEntity.ok(message))
-            .doOnSuccess(response -> log.info("Produced message to topic {}", request.getTopic()))
-            .onErrorReturn(ResponseEntity.badRequest().build());
+    public Mono<ResponseEntity<Message>> produceMessage(
+            @Valid @RequestBody ProduceMessageRequest request,
+            @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+            ServerWebExchange exchange) {
+        String owner = clusterService.remoteOwner(request.getTopic(), exchange);
+        if (owner != null) {
+            return clusterService.route(owner, exchange, request, Message.class);
+        }
+        // Quota (429) and overload (503) rejections keep their status instead of the generic 400
+        return quotaService.acquireProduce(request.getTopic(), clientId, request.getContent())
+            .then(messageQueueService.produceMessage(request)
+                .map(message -> ResponseEntity.ok(message))
+                .doOnSuccess(response -> log.info("Produced message to topic {}", request.getTopic()))
+                .onErrorReturn(error -> !(error instanceof ResponseStatusException), ResponseEntity.badRequest().build()));
+    }
+
+    /**
+     * Produce several messages to one topic in a single request, in order. A failure stops the
+     * batch; the messages before it stay produced, so retries should carry idempotency keys.
+     */
+    @PostMapping("/produce/batch")
+    public Mono<ResponseEntity<List<Message>>> produceBatch(
+            @RequestBody List<ProduceMessageRequest> requests,
+            @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+            ServerWebExchange exchange) {
+        String topic = requests.isEmpty() ? null : requests.get(0).getTopic();
+        if (topic == null || topic.isBlank() || requests.stream()
+                .anyMatch(request -> !topic.equals(request.getTopic()) || !request.isContentValid())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        String owner = clusterService.remoteOwner(topic, exchange);
+        if (owner != null) {
+            return routeList(owner, exchange, requests);
+        }
+        return Flux.fromIterable(requests)
+            .concatMap(request -> quotaService.acquireProduce(topic, clientId, request.getContent())
+                .then(messageQueueService.produceMessage(request)))
+            .collectList()
+            .map(messages -> ResponseEntity.ok(messages))
+            .doOnSuccess(response -> log.info("Produced {} messages to topic {}", requests.size(), topic))
+            .onErrorReturn(error -> !(error instanceof ResponseStatusException), ResponseEntity.badRequest().build());
     }
 
     @GetMapping("/produce")
     public Mono<ResponseEntity<Message>> produceMessageViaGet(
             @RequestParam String topic,
-            @RequestParam String content,
+            @RequestParam(required = false) String content,
+            @RequestParam(required = false) String key,
             @RequestParam(required = false) Long delaySec,
+            @RequestParam(required = false) Long ttlSec,
             @RequestParam(required = false) String consumerGroup,
-            @RequestParam(defaultValue = "3") int maxRetries) {
+            @RequestParam(defaultValue = "3") int maxRetries,
+            @RequestParam(required = false) Integer priority,
+            @RequestParam(required = false) String idempotencyKey,
+            @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+            ServerWebExchange exchange) {
         
         ProduceMessageRequest request = ProduceMessageRequest.builder()
             .topic(topic)
             .content(content)
+            .key(key)
             .delaySec(delaySec)
+            .ttlSec(ttlSec)
             .consumerGroup(consumerGroup)
             .maxRetries(maxRetries)
+            .priority(priority)
+            .idempotencyKey(idempotencyKey)
             .build();
+        if (!request.isContentValid()) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
             
-        return produceMessage(request);
+        return produceMessage(request, clientId, exchange);
     }
 
     @PostMapping("/consume")
-    public Flux<Message> consumeMessages(@Valid @RequestBody ConsumeMessageRequest request) {
-        return messageQueueService.consumeMessages(request)
+    public Flux<Message> consumeMessages(
+            @Valid @RequestBody ConsumeMessageRequest request,
+            @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+            ServerWebExchange exchange) {
+        // A pattern spans topics owned by different nodes; it is served from this node's topics
+        String owner = TopicTrie.isPattern(request.getTopic())
+            ? null
+            : clusterService.remoteOwner(request.getTopic(), exchange);
+        if (owner != null) {
+            return clusterService.routeMany(owner, exchange, request, Message.class);
+        }
+        return quotaService.checkConsume(request.getTopic(), clientId)
+            .thenMany(messageQueueService.consumeMessages(request))
+            .doOnNext(message -> quotaService.chargeConsume(message.getTopic(), clientId, message))
             .doOnSubscribe(subscription -> log.info("Starting consumption from topic {} for group {}", 
                 request.getTopic(), request.getConsumerGroup()));
     }
@@ -63,35 +142,73 @@ public class MessageController {
             @RequestParam(defaultValue = "10") int maxMessages,
             @RequestParam(defaultValue = "30000") Long timeoutMs,
             @RequestParam(defaultValue = "true") boolean autoCommit,
-            @RequestParam(required = false) Long fromOffset) {
+            @RequestParam(required = false) Long fromOffset,
+            @RequestParam(required = false) String fromTimestamp,
+            @RequestParam(required = false) String selector,
+            @RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+            ServerWebExchange exchange) {
         
         ConsumeMessageRequest request = ConsumeMessageRequest.builder()
             .topic(topic)
             .consumerGroup(consumerGroup)
-            .maxMessages(Math.min(maxMessages, 100)) // Limit to prevent abuse
+            .maxMessages(Math.min(maxMessages, ConsumeMessageRequest.MAX_MESSAGES_LIMIT)) // Limit to prevent abuse
             .timeoutMs(timeoutMs)
             .autoCommit(autoCommit)
             .fromOffset(fromOffset)
+            .fromTimestamp(fromTimestamp)
+            .selector(selector)
             .build();
             
-        return consumeMessages(request);
+        return consumeMessages(request, clientId, exchange);
     }
 
     @PostMapping("/commit")
     public Mono<ResponseEntity<String>> commitOffset(
             @RequestParam String consumerGroup,
             @RequestParam String topic,
-            @RequestParam Long offset) {
+            @RequestParam Long offset,
+            ServerWebExchange exchange) {
+        String owner = clusterService.remoteOwner(topic, exchange);
+        if (owner != null) {
+            return clusterService.route(owner, exchange, null, String.class);
+        }
         
         return messageQueueService.commitOffset(consumerGroup, topic, offset)
             .then(Mono.just(ResponseEntity.ok("Offset committed successfully")))
             .onErrorReturn(ResponseEntity.badRequest().body("Failed to commit offset"));
     }
 
+    @PostMapping("/ack")
+    public Mono<ResponseEntity<Map<String, Object>>> ack(@Valid @RequestBody AckRequest request, ServerWebExchange exchange) {
+        String owner = clusterService.remoteOwner(request.getTopic(), exchange);
+        if (owner != null) {
+            return routeMap(owner, exchange, request);
+        }
+        return messageQueueService.ack(request)
+            .map(committed -> ackResponse(request, committed))
+            .onErrorReturn(ResponseEntity.badRequest().build());
+    }
+
+    @PostMapping("/nack")
+    public Mono<ResponseEntity<Map<String, Object>>> nack(@Valid @RequestBody AckRequest request, ServerWebExchange exchange) {
+        String owner = clusterService.remoteOwner(request.getTopic(), exchange);
+        if (owner != null) {
+            return routeMap(owner, exchange, request);
+        }
+        return messageQueueService.nack(request)
+            .map(committed -> ackResponse(request, committed))
+            .onErrorReturn(ResponseEntity.badRequest().build());
+    }
+
     @GetMapping("/offset")
     public Mono<ResponseEntity<Map<String, Object>>> getCommittedOffset(
             @RequestParam String consumerGroup,
-            @RequestParam String topic) {
+            @RequestParam String topic,
+            ServerWebExchange exchange) {
+        String owner = clusterService.remoteOwner(topic, exchange);
+        if (owner != null) {
+            return routeMap(owner, exchange, null);
+        }
         
         return messageQueueService.getCommittedOffset(consumerGroup, topic)
             .map(offset -> ResponseEntity.ok(Map.<String, Object>of(
@@ -102,6 +219,68 @@ public class MessageController {
             .onErrorReturn(ResponseEntity.badRequest().build());
     }
 
+    @GetMapping("/offset/by-time")
+    public Mono<ResponseEntity<Map<String, Object>>> getOffsetByTime(
+            @RequestParam String topic,
+            @RequestParam String timestamp,
+            ServerWebExchange exchange) {
+        String owner = clusterService.remoteOwner(topic, exchange);
+        if (owner != null) {
+            return routeMap(owner, exchange, null);
+        }
+        
+        return messageQueueService.getOffsetForTimestamp(topic, timestamp)
+            .map(offset -> ResponseEntity.ok(Map.<String, Object>of(
+                "topic", topic,
+                "timestamp", timestamp,
+                "offset", offset
+            )))
+            .onErrorReturn(ResponseEntity.badRequest().build());
+    }
+
+    @GetMapping("/messages/{topic}/{offset}/payload")
+    public Mono<ResponseEntity<ByteBuffer>> getPayload(
+            @PathVariable String topic,
+            @PathVariable long offset,
+            ServerWebExchange exchange) {
+        String owner = clusterService.remoteOwner(topic, exchange);
+        if (owner != null) {
+            return clusterService.route(owner, exchange, null, ByteBuffer.class);
+        }
+
+        // Blob payloads are written from the segment mapping without a copy on the heap
+        return messageQueueService.getPayload(topic, offset)
+            .map(payload -> ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(payload))
+            .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Mono<ResponseEntity<Map<String, Object>>> routeMap(String owner, ServerWebExchange exchange, Object body) {
+        return clusterService.route(owner, exchange, body, Map.class)
+            .map(response -> (ResponseEntity<Map<String, Object>>) (ResponseEntity) response);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Mono<ResponseEntity<List<Message>>> routeList(String owner, ServerWebExchange exchange, Object body) {
+        return clusterService.route(owner, exchange, body, List.class)
+            .map(response -> (ResponseEntity<List<Message>>) (ResponseEntity) response);
+    }
+
+    private ResponseEntity<Map<String, Object>> ackResponse(AckRequest request, Long committed) {
+        return ResponseEntity.ok(Map.<String, Object>of(
+            "consumerGroup", request.getConsumerGroup(),
+            "topic", request.getTopic(),
+            "committedOffset", committed
+        ));
+    }
+
+    @GetMapping("/topics")
+    public Mono<ResponseEntity<List<TopicHead>>> topics() {
+        List<TopicHead> topics = new ArrayList<>(brokerState.getTopics());
+        topics.sort(Comparator.comparing(TopicHead::getTopic));
+        return Mono.just(ResponseEntity.ok(topics));
+    }
+
     @GetMapping("/health")
     public Mono<ResponseEntity<Map<String, Object>>> health() {
         return Mono.just(ResponseEntity.ok(Map.of(
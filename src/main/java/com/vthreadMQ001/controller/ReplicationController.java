@@ -0,0 +1,52 @@
+package com.vthreadMQ001.controller;
+
+import com.vthreadMQ001.dto.ReplicationRecord;
+import com.vthreadMQ001.service.ReplicationFollowerService;
+import com.vthreadMQ001.service.ReplicationLeaderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Internal endpoints used between broker instances for replication.
+ */
+@RestController
+@RequestMapping("/internal/replication")
+@RequiredArgsConstructor
+@Slf4j
+public class ReplicationController {
+
+    private final ReplicationLeaderService replicationLeader;
+    private final ReplicationFollowerService replicationFollower;
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ReplicationRecord> stream(
+            @RequestParam String followerId,
+            @RequestParam(defaultValue = "0") long fromSeq) {
+        return replicationLeader.stream(followerId, fromSeq);
+    }
+
+    @PostMapping("/ack")
+    public Mono<ResponseEntity<Void>> ack(
+            @RequestParam String followerId,
+            @RequestParam long seq) {
+        replicationLeader.acknowledge(followerId, seq);
+        return Mono.just(ResponseEntity.ok().build());
+    }
+
+    @GetMapping("/status")
+    public Mono<ResponseEntity<Map<String, Object>>> status() {
+        return Mono.just(ResponseEntity.ok(Map.of(
+            "role", replicationFollower.isFollower() ? "follower" : "leader",
+            "leaderUrl", String.valueOf(replicationFollower.getLeaderUrl()),
+            "appliedSeq", replicationFollower.getAppliedSeq(),
+            "followerAcks", replicationLeader.getFollowerAcks()
+        )));
+    }
+}
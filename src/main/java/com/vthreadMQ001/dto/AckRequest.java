@@ -0,0 +1,31 @@
+package com.vthreadMQ001.dto;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import jakarta.validation.constraints.NotBlank;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AckRequest {
+    @NotBlank
+    private String topic;
+    
+    @Builder.Default
+    private String consumerGroup = "default";
+    private List<Long> offsets;
+    private List<OffsetRange> ranges;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class OffsetRange {
+        private long from; // inclusive
+        private long to;   // inclusive
+    }
+}
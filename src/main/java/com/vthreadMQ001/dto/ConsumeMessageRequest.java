@@ -8,12 +8,14 @@ import lombok.AllArgsConstructor;
 import jakarta.validation.constraints.NotBlank;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ConsumeMessageRequest {
+    public static final int MAX_MESSAGES_LIMIT = 100; // cap for callers that pass maxMessages through unchecked
+
     @NotBlank
-    private String topic;
+    private String topic; // or a pattern: "orders.*" matches one segment, "orders.#" any number
     
     @Builder.Default
     private String consumerGroup = "default";
@@ -24,4 +26,6 @@ public class ConsumeMessageRequest {
     @Builder.Default
     private boolean autoCommit = true;
     private Long fromOffset;
+    private String fromTimestamp; // ISO 8601 timestamp or epoch millis, used when fromOffset is absent
+    private String selector; // header filter, e.g. "region = 'eu' AND amount > 100"
 } 
\ No newline at end of file
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.NotBlank;
 import java.util.Map;
 
@@ -16,13 +18,29 @@ public class ProduceMessageRequest {
     @NotBlank
     private String topic;
     
-    @NotBlank
-    private String content;
+    private String content; // may be omitted with a key, which produces a tombstone
     
     private Map<String, Object> headers;
     private Long delaySec;
     private String scheduledAt; // ISO 8601 timestamp
+    private Long ttlSec; // expire this long after the message is produced
+    private String expiresAt; // ISO 8601 timestamp, alternative to ttlSec
     @Builder.Default
     private int maxRetries = 3;
     private String consumerGroup;
+    private Integer priority; // 0 = bulk, 1 = normal (default), 2 = urgent
+    private String idempotencyKey; // retries with the same key return the original message
+    private Integer acks; // followers that must apply the message before the produce returns
+    private String key; // compaction key; the latest message per key survives on compacted topics
+    
+    @JsonIgnore
+    public boolean isTombstone() {
+        return key != null && !key.isBlank() && (content == null || content.isEmpty());
+    }
+    
+    @JsonIgnore
+    @AssertTrue(message = "content must not be blank")
+    public boolean isContentValid() {
+        return isTombstone() || (content != null && !content.isBlank());
+    }
 } 
\ No newline at end of file
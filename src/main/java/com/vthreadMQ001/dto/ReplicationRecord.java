@@ -0,0 +1,29 @@
+package com.vthreadMQ001.dto;
+
+import com.vthreadMQ001.model.Message;
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * One line of the leader's replication stream.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationRecord {
+    private RecordType type;
+    private Long seq; // MESSAGE: the message's seq; HEARTBEAT: the leader's head seq
+    private Message message;
+    private String consumerGroup;
+    private String topic;
+    private Long offset;
+    
+    public enum RecordType {
+        MESSAGE,
+        CURSOR,
+        HEARTBEAT
+    }
+}
@@ -0,0 +1,77 @@
+package com.vthreadMQ001.handler;
+
+import com.vthreadMQ001.model.Message;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Per-message context handed to a {@link MessageHandler}: the consumer group, the deadline
+ * propagated from the consume request and structured subtask fan-out bounded by that deadline.
+ */
+public class HandlerContext {
+
+    private final Message message;
+    private final String consumerGroup;
+    private final Instant deadline;
+
+    public HandlerContext(Message message, String consumerGroup, Instant deadline) {
+        this.message = message;
+        this.consumerGroup = consumerGroup;
+        this.deadline = deadline;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    public Instant getDeadline() {
+        return deadline;
+    }
+
+    public Duration getRemaining() {
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Run subtasks concurrently on virtual threads and return their results in order. If any
+     * subtask fails the others are cancelled and the failure is rethrown; subtasks still running
+     * at the message deadline are cancelled and a {@link TimeoutException} is thrown.
+     */
+    public <T> List<T> fork(Collection<? extends Callable<T>> subtasks) throws Exception {
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            List<StructuredTaskScope.Subtask<T>> forked = new ArrayList<>(subtasks.size());
+            for (Callable<T> subtask : subtasks) {
+                forked.add(scope.fork(subtask));
+            }
+
+            scope.joinUntil(deadline);
+            scope.throwIfFailed(this::unwrap);
+
+            List<T> results = new ArrayList<>(forked.size());
+            for (StructuredTaskScope.Subtask<T> subtask : forked) {
+                results.add(subtask.get());
+            }
+            return results;
+        }
+    }
+
+    private Exception unwrap(Throwable failure) {
+        if (failure instanceof Exception exception) {
+            return exception;
+        }
+        return new ExecutionException(failure);
+    }
+}
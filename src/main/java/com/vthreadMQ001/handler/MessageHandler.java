@@ -0,0 +1,20 @@
+package com.vthreadMQ001.handler;
+
+import com.vthreadMQ001.model.Message;
+
+/**
+ * In-process message processing logic, registered per topic and consumer group through
+ * {@link MessageHandlerRegistry}.
+ *
+ * Handlers run on virtual threads inside a structured task scope and are interrupted when the
+ * message deadline passes, so blocking calls should be interruptible. Throwing sends the message
+ * down the retry path.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    /**
+     * Process a single message
+     */
+    void handle(Message message, HandlerContext context) throws Exception;
+}
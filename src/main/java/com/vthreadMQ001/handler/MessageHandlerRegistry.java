@@ -0,0 +1,87 @@
+package com.vthreadMQ001.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Registry of {@link MessageHandler}s bound to a (topic, consumer group) pair.
+ *
+ * Registering a handler makes the server run a consume loop for that pair; cancelling the
+ * returned {@link Registration} stops it.
+ */
+@Component
+@Slf4j
+public class MessageHandlerRegistry {
+
+    public interface Registration extends AutoCloseable {
+        String getTopic();
+        String getConsumerGroup();
+        void cancel();
+
+        @Override
+        default void close() {
+            cancel();
+        }
+    }
+
+    public interface Listener {
+        void onRegistered(String topic, String consumerGroup);
+        void onUnregistered(String topic, String consumerGroup);
+    }
+
+    // Map of (topic, consumer group) -> handler
+    private final Map<HandlerKey, MessageHandler> handlers = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public Registration register(String topic, String consumerGroup, MessageHandler handler) {
+        HandlerKey key = new HandlerKey(topic, consumerGroup);
+        if (handlers.putIfAbsent(key, handler) != null) {
+            throw new IllegalStateException("A handler is already registered for topic " + topic
+                + " and consumer group " + consumerGroup);
+        }
+
+        log.info("Registered message handler for topic {} group {}", topic, consumerGroup);
+        listeners.forEach(listener -> listener.onRegistered(topic, consumerGroup));
+
+        return new Registration() {
+            @Override
+            public String getTopic() {
+                return topic;
+            }
+
+            @Override
+            public String getConsumerGroup() {
+                return consumerGroup;
+            }
+
+            @Override
+            public void cancel() {
+                if (handlers.remove(key, handler)) {
+                    log.info("Unregistered message handler for topic {} group {}", topic, consumerGroup);
+                    listeners.forEach(listener -> listener.onUnregistered(topic, consumerGroup));
+                }
+            }
+        };
+    }
+
+    public Optional<MessageHandler> find(String topic, String consumerGroup) {
+        return Optional.ofNullable(handlers.get(new HandlerKey(topic, consumerGroup)));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void forEach(BiConsumer<String, String> topicAndGroup) {
+        handlers.keySet().forEach(key -> topicAndGroup.accept(key.topic(), key.consumerGroup()));
+    }
+
+    private record HandlerKey(String topic, String consumerGroup) {
+    }
+}
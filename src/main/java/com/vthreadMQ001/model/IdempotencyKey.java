@@ -0,0 +1,20 @@
+package com.vthreadMQ001.model;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyKey {
+    private String topic;
+    private String key;
+    private String messageId;
+    private Long offset;
+    private Instant createdAt;
+}
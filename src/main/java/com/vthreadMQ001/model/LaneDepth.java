@@ -0,0 +1,16 @@
+package com.vthreadMQ001.model;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LaneDepth {
+    private String topic;
+    private int priority;
+    private long depth;
+}
@@ -26,6 +26,12 @@ public class Message {
     private String errorMessage;
     private String consumerGroup;
     private Long offset;
+    private int priority; // lane index, higher is more urgent
+    private Long seq; // global insert order across topics, used for replication
+    private Instant expiresAt; // never delivered after this time; null = no expiry
+    private String key; // compacted topics keep only the latest message per key
+    private boolean tombstone; // keyed message without content, deletes the key on compaction
+    private String blobRef; // "segment:position:length" of a large payload stored outside the row; content is then empty
     
     public enum MessageStatus {
         PENDING,
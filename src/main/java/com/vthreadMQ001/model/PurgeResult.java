@@ -0,0 +1,17 @@
+package com.vthreadMQ001.model;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurgeResult {
+    private int deleted; // rows removed, delivered or not
+    private Map<String, Long> expiredByTopic; // removed before they were ever delivered
+}
@@ -0,0 +1,18 @@
+package com.vthreadMQ001.model;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeIndexEntry {
+    private String topic;
+    private Instant timestamp;
+    private Long offset;
+}
@@ -0,0 +1,19 @@
+package com.vthreadMQ001.model;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopicHead {
+    private String topic;
+    private long headOffset; // highest offset assigned in the topic
+    private long messageCount; // messages ever produced to the topic
+    private Instant lastProducedAt;
+}
@@ -0,0 +1,26 @@
+package com.vthreadMQ001.plugin;
+
+import com.vthreadMQ001.model.Message;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional extension of {@link Plugin} for plugins that can amortize per-message cost
+ * (connections, handshakes, round trips) across several messages.
+ */
+public interface BatchPlugin extends Plugin {
+    
+    /**
+     * Process several messages at once, returning one result per message in input order
+     */
+    Mono<List<PluginResult>> processBatch(List<Message> messages, Map<String, Object> config);
+    
+    /**
+     * Upper bound on the number of messages handed to a single {@link #processBatch} call
+     */
+    default int getMaxBatchSize() {
+        return 100;
+    }
+}
@@ -4,6 +4,7 @@ import com.vthreadMQ001.model.Message;
 import reactor.core.publisher.Mono;
 
 import java.util.Map;
+import java.util.Set;
 
 public interface Plugin {
     
@@ -22,6 +23,22 @@ public interface Plugin {
      */
     String getDescription();
     
+    /**
+     * Topics routed to this plugin. Together with {@link #getHeaderKeys()} this lets the
+     * dispatcher route messages without asking every plugin; a plugin declaring neither is
+     * offered every message through {@link #canHandle(Message)}
+     */
+    default Set<String> getTopics() {
+        return Set.of();
+    }
+    
+    /**
+     * Header keys whose presence routes a message to this plugin
+     */
+    default Set<String> getHeaderKeys() {
+        return Set.of();
+    }
+    
     /**
      * Check if this plugin can handle the given message
      */
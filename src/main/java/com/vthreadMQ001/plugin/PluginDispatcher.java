@@ -0,0 +1,387 @@
+package com.vthreadMQ001.plugin;
+
+import com.vthreadMQ001.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs {@link Plugin} beans on the consume path.
+ *
+ * Plugins are initialized with their {@code vthreadmq.plugins.<name>} configuration at startup
+ * and shut down with the context. Messages are routed through a routing table keyed by topic and
+ * header key that is built once from each plugin's declared routes, and every plugin runs on a
+ * virtual thread bounded by its own concurrency limit and timeout. Messages for a
+ * {@link BatchPlugin} are collected for up to {@code batch-linger-ms} and handed over together.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PluginDispatcher {
+
+    private final List<Plugin> plugins;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.plugins.dispatch.max-concurrency:64}")
+    private int defaultMaxConcurrency;
+
+    @Value("${vthreadmq.plugins.dispatch.timeout-ms:10000}")
+    private long defaultTimeoutMs;
+
+    @Value("${vthreadmq.plugins.dispatch.batch-linger-ms:5}")
+    private long defaultBatchLingerMs;
+
+    private final Map<String, PluginRuntime> runtimes = new LinkedHashMap<>();
+    private Map<String, List<PluginRuntime>> topicRoutes = Map.of();
+    private Map<String, List<PluginRuntime>> headerRoutes = Map.of();
+    private List<PluginRuntime> unroutedPlugins = List.of();
+    private final Map<String, PluginBatcher> batchers = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        Map<String, List<PluginRuntime>> topics = new HashMap<>();
+        Map<String, List<PluginRuntime>> headers = new HashMap<>();
+        List<PluginRuntime> unrouted = new ArrayList<>();
+
+        for (Plugin plugin : plugins) {
+            Map<String, Object> config = loadConfig(plugin.getName());
+            if (Boolean.FALSE.equals(asBoolean(config.get("enabled")))) {
+                log.info("Plugin {} is disabled", plugin.getName());
+                continue;
+            }
+
+            try {
+                plugin.initialize(config).block(Duration.ofMillis(defaultTimeoutMs));
+            } catch (Exception e) {
+                log.error("Failed to initialize plugin {}, it will not receive messages", plugin.getName(), e);
+                continue;
+            }
+
+            PluginRuntime runtime = new PluginRuntime(plugin, config,
+                new Semaphore(asInt(config.get("maxConcurrency"), defaultMaxConcurrency)),
+                asLong(config.get("timeoutMs"), defaultTimeoutMs),
+                Timer.builder("vthreadmq_plugin_processing_time")
+                    .description("Plugin processing time")
+                    .tag("plugin", plugin.getName())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry),
+                Counter.builder("vthreadmq_plugin_failures_total")
+                    .description("Total number of failed plugin invocations")
+                    .tag("plugin", plugin.getName())
+                    .register(meterRegistry));
+            runtimes.put(plugin.getName(), runtime);
+
+            if (plugin instanceof BatchPlugin batchPlugin) {
+                PluginBatcher batcher = new PluginBatcher(batchPlugin, runtime,
+                    TimeUnit.MILLISECONDS.toNanos(asLong(config.get("batchLingerMs"), defaultBatchLingerMs)));
+                batchers.put(plugin.getName(), batcher);
+                executor.submit(batcher::run);
+            }
+
+            plugin.getTopics().forEach(topic -> topics.computeIfAbsent(topic, k -> new ArrayList<>()).add(runtime));
+            plugin.getHeaderKeys().forEach(key -> headers.computeIfAbsent(key, k -> new ArrayList<>()).add(runtime));
+            if (plugin.getTopics().isEmpty() && plugin.getHeaderKeys().isEmpty()) {
+                unrouted.add(runtime);
+            }
+
+            log.info("Plugin {} {} initialized (topics={}, headerKeys={})",
+                plugin.getName(), plugin.getVersion(), plugin.getTopics(), plugin.getHeaderKeys());
+        }
+
+        topicRoutes = Map.copyOf(topics);
+        headerRoutes = Map.copyOf(headers);
+        unroutedPlugins = List.copyOf(unrouted);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchers.values().forEach(PluginBatcher::stop);
+        runtimes.values().forEach(runtime -> {
+            try {
+                runtime.plugin.shutdown().block(Duration.ofMillis(defaultTimeoutMs));
+            } catch (Exception e) {
+                log.warn("Plugin {} failed to shut down cleanly: {}", runtime.plugin.getName(), e.getMessage());
+            }
+        });
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run every plugin routed for the message and wait for their results. Blocks the caller, so
+     * it is meant to be called from a virtual thread.
+     */
+    public List<PluginResult> dispatch(Message message) {
+        Set<PluginRuntime> candidates = route(message);
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        List<Future<PluginResult>> futures = new ArrayList<>(candidates.size());
+        for (PluginRuntime runtime : candidates) {
+            futures.add(executor.submit(() -> invoke(runtime, message)));
+        }
+
+        List<PluginResult> results = new ArrayList<>(futures.size());
+        for (Future<PluginResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Plugin dispatch interrupted", e);
+            } catch (Exception e) {
+                results.add(PluginResult.failure("unknown", e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    public boolean hasPlugins() {
+        return !runtimes.isEmpty();
+    }
+
+    private Set<PluginRuntime> route(Message message) {
+        Set<PluginRuntime> candidates = new LinkedHashSet<>();
+
+        List<PluginRuntime> byTopic = topicRoutes.get(message.getTopic());
+        if (byTopic != null) {
+            candidates.addAll(byTopic);
+        }
+
+        if (message.getHeaders() != null && !headerRoutes.isEmpty()) {
+            for (String key : message.getHeaders().keySet()) {
+                List<PluginRuntime> byHeader = headerRoutes.get(key);
+                if (byHeader != null) {
+                    candidates.addAll(byHeader);
+                }
+            }
+        }
+
+        candidates.addAll(unroutedPlugins);
+
+        // Routed candidates still get the final say, but only they are asked
+        candidates.removeIf(runtime -> !runtime.plugin.canHandle(message));
+        return candidates;
+    }
+
+    private PluginResult invoke(PluginRuntime runtime, Message message) {
+        long start = System.nanoTime();
+
+        PluginBatcher batcher = batchers.get(runtime.plugin.getName());
+        PluginResult result = batcher != null
+            ? batcher.submit(message)
+            : processSingle(runtime, message);
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (result.getProcessingTimeMs() == 0) {
+            result.setProcessingTimeMs(elapsedMs);
+        }
+        runtime.latency.record(result.getProcessingTimeMs(), TimeUnit.MILLISECONDS);
+        if (!result.isSuccess()) {
+            runtime.failures.increment();
+            log.warn("Plugin {} failed for message {}: {}", runtime.plugin.getName(), message.getId(), result.getMessage());
+        }
+        return result;
+    }
+
+    private PluginResult processSingle(PluginRuntime runtime, Message message) {
+        String name = runtime.plugin.getName();
+        try {
+            if (!runtime.permits.tryAcquire(runtime.timeoutMs, TimeUnit.MILLISECONDS)) {
+                return PluginResult.failure(name, "Plugin concurrency limit reached");
+            }
+            try {
+                PluginResult result = runtime.plugin.process(message, runtime.config)
+                    .timeout(Duration.ofMillis(runtime.timeoutMs))
+                    .block();
+                return result != null ? result : PluginResult.failure(name, "Plugin returned no result");
+            } finally {
+                runtime.permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return PluginResult.failure(name, "Plugin processing interrupted");
+        } catch (Exception e) {
+            return PluginResult.failure(name, describeFailure(runtime, e));
+        }
+    }
+
+    private static String describeFailure(PluginRuntime runtime, Exception e) {
+        return e.getCause() instanceof TimeoutException
+            ? "Plugin timed out after " + runtime.timeoutMs + " ms"
+            : e.getMessage();
+    }
+
+    private Map<String, Object> loadConfig(String pluginName) {
+        Map<String, Object> raw = Binder.get(environment)
+            .bind("vthreadmq.plugins." + pluginName, Bindable.mapOf(String.class, Object.class))
+            .orElse(Map.of());
+
+        // Plugins read camelCase keys, while application.yml uses kebab-case
+        Map<String, Object> config = new HashMap<>();
+        raw.forEach((key, value) -> config.put(toCamelCase(key), value));
+        return config;
+    }
+
+    private static String toCamelCase(String key) {
+        StringBuilder builder = new StringBuilder(key.length());
+        boolean upperNext = false;
+        for (char c : key.toCharArray()) {
+            if (c == '-') {
+                upperNext = true;
+            } else {
+                builder.append(upperNext ? Character.toUpperCase(c) : c);
+                upperNext = false;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Boolean asBoolean(Object value) {
+        return value == null ? null : Boolean.valueOf(value.toString());
+    }
+
+    private static int asInt(Object value, int defaultValue) {
+        return value == null ? defaultValue : Integer.parseInt(value.toString());
+    }
+
+    private static long asLong(Object value, long defaultValue) {
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+
+    private record PendingInvocation(Message message, CompletableFuture<PluginResult> result) {
+    }
+
+    /**
+     * Collects messages for one {@link BatchPlugin} and hands them over in batches. A batch counts
+     * as a single call against the plugin's concurrency limit.
+     */
+    private final class PluginBatcher {
+
+        private final BatchPlugin plugin;
+        private final PluginRuntime runtime;
+        private final long lingerNanos;
+        private final LinkedBlockingQueue<PendingInvocation> queue = new LinkedBlockingQueue<>();
+        private volatile boolean running = true;
+
+        PluginBatcher(BatchPlugin plugin, PluginRuntime runtime, long lingerNanos) {
+            this.plugin = plugin;
+            this.runtime = runtime;
+            this.lingerNanos = lingerNanos;
+        }
+
+        PluginResult submit(Message message) {
+            CompletableFuture<PluginResult> future = new CompletableFuture<>();
+            queue.add(new PendingInvocation(message, future));
+            try {
+                return future.get(runtime.timeoutMs + TimeUnit.NANOSECONDS.toMillis(lingerNanos), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return PluginResult.failure(plugin.getName(), "Plugin processing interrupted");
+            } catch (TimeoutException e) {
+                return PluginResult.failure(plugin.getName(), "Plugin timed out after " + runtime.timeoutMs + " ms");
+            } catch (Exception e) {
+                return PluginResult.failure(plugin.getName(), e.getMessage());
+            }
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        void run() {
+            while (running) {
+                try {
+                    List<PendingInvocation> batch = new ArrayList<>();
+                    batch.add(queue.take());
+
+                    long deadline = System.nanoTime() + lingerNanos;
+                    while (batch.size() < plugin.getMaxBatchSize()) {
+                        long remaining = deadline - System.nanoTime();
+                        PendingInvocation next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+
+                    executor.submit(() -> processBatch(batch));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void processBatch(List<PendingInvocation> batch) {
+            List<Message> messages = batch.stream().map(PendingInvocation::message).toList();
+            try {
+                if (!runtime.permits.tryAcquire(runtime.timeoutMs, TimeUnit.MILLISECONDS)) {
+                    failAll(batch, "Plugin concurrency limit reached");
+                    return;
+                }
+                try {
+                    List<PluginResult> results = plugin.processBatch(messages, runtime.config)
+                        .timeout(Duration.ofMillis(runtime.timeoutMs))
+                        .block();
+                    for (int i = 0; i < batch.size(); i++) {
+                        PluginResult result = results != null && i < results.size() ? results.get(i) : null;
+                        batch.get(i).result().complete(result != null
+                            ? result
+                            : PluginResult.failure(plugin.getName(), "Plugin returned no result"));
+                    }
+                } finally {
+                    runtime.permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failAll(batch, "Plugin processing interrupted");
+            } catch (Exception e) {
+                failAll(batch, describeFailure(runtime, e));
+            }
+        }
+
+        private void failAll(List<PendingInvocation> batch, String reason) {
+            batch.forEach(pending -> pending.result().complete(PluginResult.failure(plugin.getName(), reason)));
+        }
+    }
+
+    private record PluginRuntime(Plugin plugin, Map<String, Object> config, Semaphore permits,
+                                 long timeoutMs, Timer latency, Counter failures) {
+    }
+}
@@ -1,24 +1,41 @@
 package com.vthreadMQ001.plugin.impl;
 
 import com.vthreadMQ001.model.Message;
-import com.vthreadMQ001.plugin.Plugin;
+import com.vthreadMQ001.plugin.BatchPlugin;
 import com.vthreadMQ001.plugin.PluginResult;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMailMessage;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import jakarta.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Component
 @Slf4j
-public class EmailPlugin implements Plugin {
+public class EmailPlugin implements BatchPlugin {
 
     private JavaMailSender mailSender;
     private Map<String, Object> configuration;
 
+    @Autowired(required = false)
+    public void setMailSender(JavaMailSender mailSender) {
+        this.mailSender = mailSender;
+    }
+
     @Override
     public String getName() {
         return "email";
@@ -34,6 +51,16 @@ public class EmailPlugin implements Plugin {
         return "Email sending plugin for notifications and alerts";
     }
 
+    @Override
+    public Set<String> getTopics() {
+        return Set.of("email");
+    }
+
+    @Override
+    public Set<String> getHeaderKeys() {
+        return Set.of("email");
+    }
+
     @Override
     public boolean canHandle(Message message) {
         return "email".equals(message.getTopic()) || 
@@ -62,6 +89,45 @@ public class EmailPlugin implements Plugin {
         }).subscribeOn(Schedulers.boundedElastic());
     }
 
+    @Override
+    public Mono<List<PluginResult>> processBatch(List<Message> messages, Map<String, Object> config) {
+        return Mono.fromCallable(() -> {
+            PluginResult[] results = new PluginResult[messages.size()];
+            List<SimpleMailMessage> mails = new ArrayList<>();
+            List<Integer> mailIndexes = new ArrayList<>();
+            
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                try {
+                    mails.add(createMailMessage(
+                        extractEmailAddress(message, config),
+                        extractSubject(message, config),
+                        message.getContent()));
+                    mailIndexes.add(i);
+                } catch (Exception e) {
+                    log.error("Failed to prepare email for message {}: {}", message.getId(), e.getMessage());
+                    results[i] = PluginResult.failure(getName(), "Failed to send email: " + e.getMessage());
+                }
+            }
+            
+            Map<Integer, Exception> failures = sendEmails(mails);
+            for (int j = 0; j < mails.size(); j++) {
+                SimpleMailMessage mail = mails.get(j);
+                String to = mail.getTo()[0];
+                Exception error = failures.get(j);
+                
+                results[mailIndexes.get(j)] = error == null
+                    ? PluginResult.success(getName(),
+                        "Email sent successfully to " + to,
+                        Map.of("recipient", to, "subject", mail.getSubject()))
+                    : PluginResult.failure(getName(),
+                        "Failed to send email: " + error.getMessage());
+            }
+            
+            return Arrays.asList(results);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
     @Override
     public Mono<Void> initialize(Map<String, Object> config) {
         return Mono.fromRunnable(() -> {
@@ -146,6 +212,68 @@ public class EmailPlugin implements Plugin {
             return;
         }
         
+        mailSender.send(createMailMessage(to, subject, body));
+        log.info("Email sent to {} with subject: {}", to, subject);
+    }
+    
+    /**
+     * Send several emails over a single transport connection. Returns the indexes of the failed
+     * mails mapped to their errors; an empty map means everything was sent.
+     */
+    private Map<Integer, Exception> sendEmails(List<SimpleMailMessage> mails) {
+        if (mails.isEmpty()) {
+            return Map.of();
+        }
+        
+        if (mailSender == null) {
+            log.warn("JavaMailSender not configured, simulating {} email sends", mails.size());
+            mails.forEach(mail -> log.info("Simulated email - To: {}, Subject: {}, Body: {}",
+                mail.getTo()[0], mail.getSubject(), mail.getText()));
+            return Map.of();
+        }
+        
+        // Failures are reported per message object. SimpleMailMessage compares by value, so two
+        // identical mails would share one entry; MimeMessage compares by identity
+        Map<Integer, Exception> failures = new HashMap<>();
+        List<MimeMessage> mimeMessages = new ArrayList<>(mails.size());
+        Map<MimeMessage, Integer> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < mails.size(); i++) {
+            try {
+                MimeMessage mimeMessage = mailSender.createMimeMessage();
+                mails.get(i).copyTo(new MimeMailMessage(mimeMessage));
+                mimeMessages.add(mimeMessage);
+                indexes.put(mimeMessage, i);
+            } catch (MailException e) {
+                failures.put(i, e);
+            }
+        }
+        if (mimeMessages.isEmpty()) {
+            return failures;
+        }
+        
+        try {
+            // JavaMailSender connects once and sends the whole array over the same transport
+            mailSender.send(mimeMessages.toArray(new MimeMessage[0]));
+            log.info("Sent {} emails in one SMTP session", mimeMessages.size());
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                failAll(indexes.values(), e, failures);
+            } else {
+                log.warn("{} of {} emails failed: {}", e.getFailedMessages().size(), mimeMessages.size(), e.getMessage());
+                e.getFailedMessages().forEach((failed, error) -> failures.put(indexes.get(failed), error));
+            }
+        } catch (MailException e) {
+            failAll(indexes.values(), e, failures);
+        }
+        return failures;
+    }
+    
+    private void failAll(Collection<Integer> sent, Exception error, Map<Integer, Exception> failures) {
+        log.error("Failed to send batch of {} emails: {}", sent.size(), error.getMessage());
+        sent.forEach(index -> failures.put(index, error));
+    }
+    
+    private SimpleMailMessage createMailMessage(String to, String subject, String body) {
         SimpleMailMessage message = new SimpleMailMessage();
         message.setTo(to);
         message.setSubject(subject);
@@ -155,7 +283,6 @@ public class EmailPlugin implements Plugin {
             message.setFrom((String) configuration.get("fromAddress"));
         }
         
-        mailSender.send(message);
-        log.info("Email sent to {} with subject: {}", to, subject);
+        return message;
     }
-} 
\ No newline at end of file
+}
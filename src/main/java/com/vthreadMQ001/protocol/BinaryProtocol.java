@@ -0,0 +1,126 @@
+package com.vthreadMQ001.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Wire format of the binary protocol; all integers are big-endian.
+ *
+ * Every frame is an int32 length followed by that many bytes. A request frame carries an op code
+ * (int8), a correlation id (int32) chosen by the client, and the op's fields. The response repeats
+ * the op code with the high bit set and the correlation id, then an int16 status (0 on success,
+ * otherwise the HTTP status the REST API would answer with) and either the op's result or an
+ * error message. Requests are pipelined, so responses may arrive in a different order.
+ *
+ * A string is an int16 byte length (-1 for null) followed by UTF-8; a blob is the same with an
+ * int32 length.
+ */
+public final class BinaryProtocol {
+
+    public static final byte PRODUCE = 0x01;
+    public static final byte PRODUCE_BATCH = 0x02;
+    public static final byte CONSUME = 0x03;
+    public static final byte COMMIT = 0x04;
+
+    public static final int RESPONSE = 0x80;
+    public static final short STATUS_OK = 0;
+
+    // Flags of a consumed message
+    public static final byte FLAG_TOMBSTONE = 0x01;
+
+    private BinaryProtocol() {
+    }
+
+    public static String opName(byte op) {
+        return switch (op) {
+            case PRODUCE -> "produce";
+            case PRODUCE_BATCH -> "produce_batch";
+            case CONSUME -> "consume";
+            case COMMIT -> "commit";
+            default -> "unknown";
+        };
+    }
+
+    public static String readString(ByteBuf buf) {
+        int length = buf.readShort();
+        return length < 0 ? null : buf.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+
+    public static byte[] readBlob(ByteBuf buf) {
+        int length = buf.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    public static void writeString(ByteBuf buf, String value) {
+        if (value == null) {
+            buf.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long for the binary protocol");
+        }
+        buf.writeShort(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    public static void writeBlob(ByteBuf buf, byte[] value) {
+        if (value == null) {
+            buf.writeInt(-1);
+            return;
+        }
+        buf.writeInt(value.length);
+        buf.writeBytes(value);
+    }
+
+    /**
+     * A complete length-prefixed response frame.
+     */
+    public static ByteBuf response(ByteBufAllocator alloc, byte op, int correlationId, short status, Consumer<ByteBuf> body) {
+        ByteBuf buf = alloc.buffer();
+        try {
+            buf.writeInt(0);
+            buf.writeByte(op | RESPONSE);
+            buf.writeInt(correlationId);
+            buf.writeShort(status);
+            body.accept(buf);
+            buf.setInt(0, buf.readableBytes() - 4);
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    public static ByteBuf error(ByteBufAllocator alloc, byte op, int correlationId, Throwable error) {
+        short status;
+        String message;
+        if (error instanceof ResponseStatusException statusError) {
+            status = (short) statusError.getStatusCode().value();
+            message = statusError.getReason();
+        } else if (error instanceof IllegalArgumentException || error instanceof IndexOutOfBoundsException) {
+            // Out of bounds: the frame ended before all fields of the op were read
+            status = 400;
+            message = error.getMessage();
+        } else {
+            status = 500;
+            message = error.getMessage();
+        }
+        String text = message != null ? message : error.getClass().getSimpleName();
+        return response(alloc, op, correlationId, status, buf -> writeString(buf, truncate(text)));
+    }
+
+    private static String truncate(String text) {
+        // Leaves room for multi-byte characters within the int16 length
+        return text.length() > 8192 ? text.substring(0, 8192) : text;
+    }
+}
@@ -0,0 +1,111 @@
+package com.vthreadMQ001.protocol;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.tcp.TcpServer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP listener for the binary protocol, next to the HTTP API on its own port; off by default.
+ *
+ * Each connection reads length-prefixed frames and runs up to {@code max-in-flight} requests at
+ * once. Responses are written as soon as they are ready and carry the request's correlation id,
+ * so a client can keep sending without waiting for earlier replies. Connections beyond
+ * {@code max-connections} are closed right after they are accepted.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BinaryProtocolServer {
+
+    private final BinaryRequestHandler requestHandler;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.protocol.enabled:false}")
+    private boolean enabled;
+
+    @Value("${vthreadmq.protocol.host:0.0.0.0}")
+    private String host;
+
+    @Value("${vthreadmq.protocol.port:9400}")
+    private int port;
+
+    @Value("${vthreadmq.protocol.max-connections:1000}")
+    private int maxConnections;
+
+    @Value("${vthreadmq.protocol.max-frame-bytes:16777216}")
+    private int maxFrameBytes;
+
+    @Value("${vthreadmq.protocol.max-in-flight:256}")
+    private int maxInFlight;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private DisposableServer server;
+    private Counter rejectedConnections;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        Gauge.builder("vthreadmq_protocol_connections", connections, AtomicInteger::get)
+            .description("Open binary protocol connections")
+            .register(meterRegistry);
+
+        rejectedConnections = Counter.builder("vthreadmq_protocol_rejected_connections_total")
+            .description("Binary protocol connections closed because max-connections was reached")
+            .register(meterRegistry);
+
+        server = TcpServer.create()
+            .host(host)
+            .port(port)
+            .doOnConnection(this::accept)
+            .handle(this::serve)
+            .bindNow();
+        log.info("Binary protocol listening on {}:{} (max {} connections)", host, server.port(), maxConnections);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private void accept(Connection connection) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            rejectedConnections.increment();
+            connection.dispose();
+            return;
+        }
+        connection.onDispose(connections::decrementAndGet);
+        // Strips the int32 length prefix; a longer frame fails the connection
+        connection.addHandlerLast("frameDecoder", new LengthFieldBasedFrameDecoder(maxFrameBytes, 0, 4, 0, 4));
+    }
+
+    private Publisher<Void> serve(NettyInbound inbound, NettyOutbound outbound) {
+        // The handler reads each frame before returning, while the inbound buffer is still valid
+        Flux<ByteBuf> responses = inbound.receive()
+            .flatMap(frame -> requestHandler.handle(frame, outbound.alloc()), maxInFlight)
+            .doOnError(error -> log.warn("Binary protocol connection failed: {}", error.getMessage()));
+        return outbound.send(responses);
+    }
+}
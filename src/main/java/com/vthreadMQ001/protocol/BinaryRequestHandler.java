@@ -0,0 +1,273 @@
+package com.vthreadMQ001.protocol;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.dto.ConsumeMessageRequest;
+import com.vthreadMQ001.dto.ProduceMessageRequest;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.limit.AdaptiveConcurrencyLimiter;
+import com.vthreadMQ001.service.BlobStoreService;
+import com.vthreadMQ001.service.ClusterService;
+import com.vthreadMQ001.service.MessageQueueService;
+import com.vthreadMQ001.service.QuotaService;
+import com.vthreadMQ001.service.TopicTrie;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.vthreadMQ001.protocol.BinaryProtocol.*;
+
+/**
+ * Executes binary protocol requests against {@link MessageQueueService}, with the same quota and
+ * cluster ownership checks as the REST API.
+ *
+ * Field layout per op (see {@link BinaryProtocol} for the encodings):
+ * <pre>
+ * PRODUCE        request:  topic, message
+ *                response: offset int64, id string
+ * PRODUCE_BATCH  request:  topic, count int32, count x message
+ *                response: count int32, count x offset int64
+ * CONSUME        request:  topic, consumerGroup, maxMessages int32 (at most 100), timeoutMs int64, autoCommit int8,
+ *                          fromOffset int64 (-1 for the committed offset), selector string
+ *                response: count int32, count x (topic, offset int64, flags int8, key, headers blob, content blob)
+ * COMMIT         request:  consumerGroup, topic, offset int64
+ *                response: empty
+ *
+ * message = key string, idempotencyKey string, priority int8 (-1 for the default),
+ *           headers blob (JSON object, -1 for none), content blob (-1 for a tombstone)
+ * </pre>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BinaryRequestHandler {
+
+    private static final TypeReference<Map<String, Object>> HEADERS_TYPE = new TypeReference<>() {};
+
+    private final MessageQueueService messageQueueService;
+    private final QuotaService quotaService;
+    private final ClusterService clusterService;
+    private final BlobStoreService blobStore;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private Map<Byte, Counter> requestCounters;
+
+    @PostConstruct
+    public void init() {
+        requestCounters = Map.of(
+            PRODUCE, requestCounter(PRODUCE),
+            PRODUCE_BATCH, requestCounter(PRODUCE_BATCH),
+            CONSUME, requestCounter(CONSUME),
+            COMMIT, requestCounter(COMMIT));
+    }
+
+    private Counter requestCounter(byte op) {
+        return Counter.builder("vthreadmq_protocol_requests_total")
+            .description("Requests received over the binary protocol")
+            .tag("op", opName(op))
+            .register(meterRegistry);
+    }
+
+    /**
+     * Execute one request frame (length prefix already stripped) and return its response frame.
+     * Every field is read before this returns, so the caller may release the frame right away.
+     * Failures become error responses; only a frame too short to carry a correlation id fails the
+     * returned Mono.
+     */
+    public Mono<ByteBuf> handle(ByteBuf frame, ByteBufAllocator alloc) {
+        if (frame.readableBytes() < 5) {
+            return Mono.error(new IllegalArgumentException("Frame of " + frame.readableBytes() + " bytes has no request header"));
+        }
+        byte op = frame.readByte();
+        int correlationId = frame.readInt();
+
+        Mono<Consumer<ByteBuf>> result;
+        try {
+            result = switch (op) {
+                // Produces and consumes are shed under persistence overload, as over REST
+                case PRODUCE -> produce(frame).contextWrite(AdaptiveConcurrencyLimiter::onRequestPath);
+                case PRODUCE_BATCH -> produceBatch(frame).contextWrite(AdaptiveConcurrencyLimiter::onRequestPath);
+                case CONSUME -> consume(frame).contextWrite(AdaptiveConcurrencyLimiter::onRequestPath);
+                case COMMIT -> commit(frame);
+                default -> Mono.error(new IllegalArgumentException("Unknown op " + op));
+            };
+        } catch (RuntimeException e) {
+            result = Mono.error(e);
+        }
+        Counter counter = requestCounters.get(op);
+        if (counter != null) {
+            counter.increment();
+        }
+
+        return result
+            .map(body -> response(alloc, op, correlationId, STATUS_OK, body))
+            .onErrorResume(error -> {
+                log.debug("Binary {} request {} failed: {}", opName(op), correlationId, error.getMessage());
+                return Mono.just(error(alloc, op, correlationId, error));
+            });
+    }
+
+    private Mono<Consumer<ByteBuf>> produce(ByteBuf frame) {
+        ProduceMessageRequest request = readMessage(readString(frame), frame);
+        return requireLocal(request.getTopic())
+            .then(quotaService.acquireProduce(request.getTopic(), null, request.getContent()))
+            .then(messageQueueService.produceMessage(request))
+            .map(message -> out -> {
+                out.writeLong(message.getOffset());
+                writeString(out, message.getId());
+            });
+    }
+
+    private Mono<Consumer<ByteBuf>> produceBatch(ByteBuf frame) {
+        String topic = readString(frame);
+        int count = frame.readInt();
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative batch size " + count);
+        }
+        List<ProduceMessageRequest> requests = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            requests.add(readMessage(topic, frame));
+        }
+
+        // In order, stopping at the first failure; messages before it stay produced
+        return requireLocal(topic)
+            .thenMany(Flux.fromIterable(requests))
+            .concatMap(request -> quotaService.acquireProduce(topic, null, request.getContent())
+                .then(messageQueueService.produceMessage(request)))
+            .map(Message::getOffset)
+            .collectList()
+            .map(offsets -> out -> {
+                out.writeInt(offsets.size());
+                offsets.forEach(out::writeLong);
+            });
+    }
+
+    private Mono<Consumer<ByteBuf>> consume(ByteBuf frame) {
+        String topic = readString(frame);
+        String consumerGroup = readString(frame);
+        int maxMessages = frame.readInt();
+        long timeoutMs = frame.readLong();
+        boolean autoCommit = frame.readByte() != 0;
+        long fromOffset = frame.readLong();
+        String selector = readString(frame);
+        if (topic == null || topic.isBlank()) {
+            throw new IllegalArgumentException("topic is required");
+        }
+
+        ConsumeMessageRequest request = ConsumeMessageRequest.builder()
+            .topic(topic)
+            .consumerGroup(consumerGroup != null ? consumerGroup : "default")
+            .maxMessages(Math.min(maxMessages, ConsumeMessageRequest.MAX_MESSAGES_LIMIT)) // Same cap as GET /api/consume
+            .timeoutMs(timeoutMs)
+            .autoCommit(autoCommit)
+            .fromOffset(fromOffset >= 0 ? fromOffset : null)
+            .selector(selector)
+            .build();
+
+        // A pattern is served from this node's topics, as over REST
+        Mono<Void> local = TopicTrie.isPattern(topic) ? Mono.empty() : requireLocal(topic);
+        return local
+            .then(quotaService.checkConsume(topic, null))
+            .thenMany(messageQueueService.consumeMessages(request))
+            .doOnNext(message -> quotaService.chargeConsume(message.getTopic(), null, message))
+            .collectList()
+            .map(messages -> out -> {
+                out.writeInt(messages.size());
+                messages.forEach(message -> writeMessage(out, message));
+            });
+    }
+
+    private Mono<Consumer<ByteBuf>> commit(ByteBuf frame) {
+        String consumerGroup = readString(frame);
+        String topic = readString(frame);
+        long offset = frame.readLong();
+        return requireLocal(topic)
+            .then(messageQueueService.commitOffset(consumerGroup, topic, offset))
+            .thenReturn(out -> { });
+    }
+
+    private ProduceMessageRequest readMessage(String topic, ByteBuf frame) {
+        String key = readString(frame);
+        String idempotencyKey = readString(frame);
+        byte priority = frame.readByte();
+        byte[] headers = readBlob(frame);
+        byte[] content = readBlob(frame);
+
+        ProduceMessageRequest request = ProduceMessageRequest.builder()
+            .topic(topic)
+            .key(key)
+            .idempotencyKey(idempotencyKey)
+            .priority(priority >= 0 ? (int) priority : null)
+            .headers(headers != null ? readHeaders(headers) : null)
+            .content(content != null ? new String(content, StandardCharsets.UTF_8) : null)
+            .build();
+        if (topic == null || topic.isBlank()) {
+            throw new IllegalArgumentException("topic is required");
+        }
+        if (!request.isContentValid()) {
+            throw new IllegalArgumentException("content must not be blank");
+        }
+        return request;
+    }
+
+    private Map<String, Object> readHeaders(byte[] headers) {
+        try {
+            return objectMapper.readValue(headers, HEADERS_TYPE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid headers JSON: " + e.getMessage());
+        }
+    }
+
+    private void writeMessage(ByteBuf out, Message message) {
+        writeString(out, message.getTopic());
+        out.writeLong(message.getOffset());
+        out.writeByte(message.isTombstone() ? FLAG_TOMBSTONE : 0);
+        writeString(out, message.getKey());
+        try {
+            writeBlob(out, message.getHeaders() != null ? objectMapper.writeValueAsBytes(message.getHeaders()) : null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (message.getBlobRef() != null) {
+            // Offloaded payloads are copied straight from the segment mapping into the frame
+            ByteBuffer payload = blobStore.read(message.getBlobRef());
+            out.writeInt(payload.remaining());
+            out.writeBytes(payload);
+        } else {
+            writeBlob(out, message.getContent().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Binary clients are not forwarded: a topic owned by another member is answered with 421 and
+     * the owner's URL, and the client reconnects to that member's protocol port.
+     */
+    private Mono<Void> requireLocal(String topic) {
+        if (topic == null || !clusterService.isEnabled()) {
+            return Mono.empty();
+        }
+        String owner = clusterService.ownerOf(topic);
+        return owner.equals(clusterService.getSelf())
+            ? Mono.empty()
+            : Mono.error(new ResponseStatusException(HttpStatus.MISDIRECTED_REQUEST, owner));
+    }
+}
@@ -0,0 +1,135 @@
+package com.vthreadMQ001.repository;
+
+import com.vthreadMQ001.model.TopicHead;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory state derived from the messages table: per-topic head offsets and stats, the last
+ * assigned seq and the earliest pending scheduled time.
+ *
+ * Head offsets and seq are only valid once {@link #restore} has run; until then the repository
+ * falls back to aggregate queries. Offset and seq assignment happens while holding this object's
+ * monitor, which snapshots take too, so a snapshot never sees a topic head without its seq.
+ */
+@Component
+public class BrokerState {
+
+    private final Map<String, TopicHead> topics = new HashMap<>();
+    private long lastSeq = -1;
+    private boolean loaded;
+
+    // Earliest scheduled_at of a SCHEDULED message, Long.MAX_VALUE when none is known
+    private final AtomicLong scheduledHorizon = new AtomicLong(Long.MAX_VALUE);
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized long nextOffset(String topic) {
+        TopicHead head = topics.get(topic);
+        return head != null ? head.getHeadOffset() + 1 : 1L;
+    }
+
+    public synchronized long headOffset(String topic) {
+        TopicHead head = topics.get(topic);
+        return head != null ? head.getHeadOffset() : 0L;
+    }
+
+    public synchronized Instant lastProducedAt(String topic) {
+        TopicHead head = topics.get(topic);
+        return head != null ? head.getLastProducedAt() : null;
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    public synchronized void setLastSeq(long seq) {
+        lastSeq = Math.max(lastSeq, seq);
+    }
+
+    /**
+     * Record a stored message. Only tracked once loaded; before that the restore picks it up.
+     */
+    public synchronized void recordInsert(String topic, long offset, long seq, Instant createdAt) {
+        lastSeq = Math.max(lastSeq, seq);
+        if (!loaded) {
+            return;
+        }
+        TopicHead head = topics.computeIfAbsent(topic, t -> TopicHead.builder().topic(t).build());
+        head.setHeadOffset(Math.max(head.getHeadOffset(), offset));
+        head.setMessageCount(head.getMessageCount() + 1);
+        if (head.getLastProducedAt() == null || createdAt.isAfter(head.getLastProducedAt())) {
+            head.setLastProducedAt(createdAt);
+        }
+    }
+
+    /**
+     * Install a checkpointed state and fold in the rows written after it.
+     */
+    public synchronized void restore(Collection<TopicHead> checkpointed, Collection<TopicHead> replayed, long seq) {
+        topics.clear();
+        checkpointed.forEach(head -> topics.put(head.getTopic(), copy(head)));
+        for (TopicHead tail : replayed) {
+            TopicHead head = topics.computeIfAbsent(tail.getTopic(), t -> TopicHead.builder().topic(t).build());
+            head.setHeadOffset(Math.max(head.getHeadOffset(), tail.getHeadOffset()));
+            head.setMessageCount(head.getMessageCount() + tail.getMessageCount());
+            if (head.getLastProducedAt() == null
+                    || (tail.getLastProducedAt() != null && tail.getLastProducedAt().isAfter(head.getLastProducedAt()))) {
+                head.setLastProducedAt(tail.getLastProducedAt());
+            }
+        }
+        lastSeq = Math.max(lastSeq, seq);
+        loaded = true;
+    }
+
+    /**
+     * Raise head offsets to at least the given ones without counting any messages, so offsets
+     * handed out before are not assigned again.
+     */
+    public synchronized void raiseHeadOffsets(Collection<TopicHead> floors) {
+        for (TopicHead floor : floors) {
+            TopicHead head = topics.computeIfAbsent(floor.getTopic(), t -> TopicHead.builder().topic(t).build());
+            head.setHeadOffset(Math.max(head.getHeadOffset(), floor.getHeadOffset()));
+        }
+    }
+
+    public synchronized List<TopicHead> getTopics() {
+        List<TopicHead> copies = new ArrayList<>(topics.size());
+        topics.values().forEach(head -> copies.add(copy(head)));
+        return copies;
+    }
+
+    public void noteScheduled(Instant scheduledAt) {
+        scheduledHorizon.accumulateAndGet(scheduledAt.toEpochMilli(), Math::min);
+    }
+
+    public long getScheduledHorizon() {
+        return scheduledHorizon.get();
+    }
+
+    /**
+     * Forget the horizon before re-reading it from the table. Messages scheduled while the read
+     * runs are kept, since {@link #noteScheduled} only ever lowers the horizon.
+     */
+    public void resetScheduledHorizon() {
+        scheduledHorizon.set(Long.MAX_VALUE);
+    }
+
+    private TopicHead copy(TopicHead head) {
+        return TopicHead.builder()
+            .topic(head.getTopic())
+            .headOffset(head.getHeadOffset())
+            .messageCount(head.getMessageCount())
+            .lastProducedAt(head.getLastProducedAt())
+            .build();
+    }
+}
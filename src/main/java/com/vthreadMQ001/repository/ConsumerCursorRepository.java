@@ -4,6 +4,8 @@ import com.vthreadMQ001.model.ConsumerCursor;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
+
 public interface ConsumerCursorRepository {
     Mono<ConsumerCursor> save(ConsumerCursor cursor);
     Mono<ConsumerCursor> findByConsumerGroupAndTopic(String consumerGroup, String topic);
@@ -12,4 +14,6 @@ public interface ConsumerCursorRepository {
     Mono<Long> getCommittedOffset(String consumerGroup, String topic);
     Mono<Void> updateActiveStatus(String consumerGroup, String topic, String consumerId, boolean active);
     Flux<ConsumerCursor> findActiveConsumers();
+    Flux<ConsumerCursor> findAll();
+    Flux<ConsumerCursor> findCommittedSince(Instant since);
 } 
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.vthreadMQ001.repository;
+
+import com.vthreadMQ001.model.IdempotencyKey;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+public interface IdempotencyKeyRepository {
+    Mono<IdempotencyKey> find(String topic, String key, Instant createdAfter);
+    Flux<IdempotencyKey> findCreatedAfter(Instant createdAfter);
+    Mono<Void> deleteOlderThan(Instant before);
+}
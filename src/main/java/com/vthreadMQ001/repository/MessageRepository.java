@@ -1,22 +1,49 @@
 package com.vthreadMQ001.repository;
 
+import com.vthreadMQ001.model.LaneDepth;
 import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.PurgeResult;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.selector.Selector;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface MessageRepository {
     Mono<Message> save(Message message);
+    // Inserts the message and records idempotencyKey for its topic in one transaction
+    Mono<Message> save(Message message, String idempotencyKey);
     Mono<Message> findById(String id);
     Flux<Message> findByTopicAndStatus(String topic, Message.MessageStatus status, int limit);
-    Flux<Message> findByTopicAndStatusAndOffset(String topic, Message.MessageStatus status, Long fromOffset, int limit);
+    Flux<Message> findByTopicAndStatusAndOffset(String topic, Message.MessageStatus status, Long fromOffset, Selector selector, int limit);
+    Flux<Message> findByTopicAndStatusAndOffsetAndPriority(String topic, Message.MessageStatus status, Long fromOffset, int priority, Selector selector, int limit);
+    Flux<LaneDepth> countByStatusPerLane(Message.MessageStatus status);
     Flux<Message> findScheduledMessages(Instant now);
     Mono<Void> updateStatus(String id, Message.MessageStatus status);
     Mono<Void> updateStatusAndError(String id, Message.MessageStatus status, String errorMessage);
+    Mono<Void> updateStatusInOffsetRange(String topic, Long fromOffset, Long toOffset, Message.MessageStatus expected, Message.MessageStatus status);
+    Mono<Set<String>> claimPending(Collection<String> ids);
+    Flux<Message> requeueStale(Instant claimedBefore, int limit);
+    Mono<Void> scheduleRetry(String id, int retryCount, Instant scheduledAt, String errorMessage);
     Mono<Long> getNextOffset(String topic);
     Mono<Long> getMaxOffset(String topic);
     Flux<Message> findByTopicAndOffsetRange(String topic, Long fromOffset, Long toOffset);
+    Mono<Long> findFirstOffsetAtOrAfter(String topic, Instant timestamp, Long fromOffset, Long toOffset);
+    Flux<Message> findBySeqAfter(long seq, int limit);
+    Mono<Long> getMaxSeq();
+    Mono<Void> saveReplicated(List<Message> messages);
+    Flux<TopicHead> findTopicHeadsSince(long seq);
+    Mono<Instant> getNextScheduledAt();
+    Mono<PurgeResult> deleteExpired(Instant now, int limit);
+    Mono<Long> countUnfinishedInOffsetRange(String topic, Long fromOffset, Long toOffset, Selector selector);
+    Mono<Long> getCompactedThrough(String topic);
+    Mono<Integer> compactOffsetRange(String topic, Long afterOffset, Long toOffset);
+    Mono<Integer> deleteTombstones(String topic, Long throughOffset, Instant before, int limit);
     Mono<Void> deleteOldMessages(String topic, Instant before);
+    Mono<Integer> deleteOldLogMessages(String topic, Instant before, long throughOffset);
+    Flux<Long> findReferencedBlobSegments();
 } 
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.vthreadMQ001.repository;
+
+import com.vthreadMQ001.model.TimeIndexEntry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+public interface TimeIndexRepository {
+    Mono<Void> save(TimeIndexEntry entry);
+    Flux<TimeIndexEntry> findAll();
+    Mono<Void> deleteOlderThan(Instant before);
+}
@@ -0,0 +1,263 @@
+package com.vthreadMQ001.repository.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online migration of databases created before {@code messages} was clustered by (topic, offset).
+ *
+ * {@link #prepare} runs before schema.sql: next to a rowid-keyed {@code messages} table it
+ * creates {@code messages_v2} with the new layout and indexes, so schema.sql finds those indexes
+ * already there. {@link #backfillSeq} runs after it, once schema.sql has added any missing
+ * columns, and numbers rows written before {@code seq} existed. After startup, triggers mirror
+ * every write to the old table into the new one and the old rows are copied over in chunks of
+ * {@code chunk-size} rows, each in its own short transaction, while produces and consumes keep
+ * using the old table. Once the copy has caught up
+ * the old table is dropped and {@code messages_v2} renamed in one transaction. An interrupted
+ * migration copies again from the start after a restart, skipping rows already copied.
+ */
+@Component
+@DependsOn("dataSourceInitializer")
+@RequiredArgsConstructor
+@Slf4j
+public class MessageTableMigrator {
+
+    private static final String TARGET = "messages_v2";
+
+    private static final String COLUMNS = """
+        id, topic, content, headers, created_at, scheduled_at, processed_at, status, retry_count, max_retries,
+        error_message, consumer_group, offset, priority, seq, expires_at, message_key, tombstone, blob_ref""";
+
+    // Same layout and indexes as messages in schema.sql
+    private static final String CREATE_TARGET = """
+        CREATE TABLE messages_v2 (
+            id TEXT NOT NULL,
+            topic TEXT NOT NULL,
+            content TEXT NOT NULL,
+            headers TEXT,
+            created_at INTEGER NOT NULL,
+            scheduled_at INTEGER,
+            processed_at INTEGER,
+            status TEXT NOT NULL,
+            retry_count INTEGER DEFAULT 0,
+            max_retries INTEGER DEFAULT 3,
+            error_message TEXT,
+            consumer_group TEXT,
+            offset INTEGER NOT NULL,
+            priority INTEGER NOT NULL DEFAULT 1,
+            seq INTEGER,
+            expires_at INTEGER,
+            message_key TEXT,
+            tombstone INTEGER NOT NULL DEFAULT 0,
+            blob_ref TEXT,
+            PRIMARY KEY (topic, offset)
+        ) WITHOUT ROWID""";
+
+    private static final List<String> TARGET_INDEXES = List.of(
+        "CREATE UNIQUE INDEX idx_messages_by_id ON messages_v2(id)",
+        "CREATE UNIQUE INDEX idx_messages_by_seq ON messages_v2(seq)",
+        "CREATE INDEX idx_messages_lane ON messages_v2(topic, priority, status, offset)",
+        "CREATE INDEX idx_messages_scheduled ON messages_v2(scheduled_at) WHERE status = 'SCHEDULED'",
+        "CREATE INDEX idx_messages_processing ON messages_v2(processed_at) WHERE status = 'PROCESSING'",
+        "CREATE INDEX idx_messages_expiry ON messages_v2(expires_at, status) WHERE expires_at IS NOT NULL",
+        "CREATE INDEX idx_messages_key ON messages_v2(topic, message_key, offset) WHERE message_key IS NOT NULL",
+        "CREATE INDEX idx_messages_blob ON messages_v2(blob_ref) WHERE blob_ref IS NOT NULL");
+
+    private static final String MIRROR_VALUES = """
+        VALUES (NEW.id, NEW.topic, NEW.content, NEW.headers, NEW.created_at, NEW.scheduled_at, NEW.processed_at,
+                NEW.status, NEW.retry_count, NEW.max_retries, NEW.error_message, NEW.consumer_group, NEW.offset,
+                NEW.priority, NEW.seq, NEW.expires_at, NEW.message_key, NEW.tombstone, NEW.blob_ref)""";
+
+    private static final List<String> MIRROR_TRIGGERS = List.of(
+        "CREATE TRIGGER IF NOT EXISTS messages_migrate_insert AFTER INSERT ON messages BEGIN "
+            + "INSERT OR REPLACE INTO messages_v2 (" + COLUMNS + ") " + MIRROR_VALUES + "; END",
+        "CREATE TRIGGER IF NOT EXISTS messages_migrate_update AFTER UPDATE ON messages BEGIN "
+            + "INSERT OR REPLACE INTO messages_v2 (" + COLUMNS + ") " + MIRROR_VALUES + "; END",
+        "CREATE TRIGGER IF NOT EXISTS messages_migrate_delete AFTER DELETE ON messages BEGIN "
+            + "DELETE FROM messages_v2 WHERE topic = OLD.topic AND offset = OLD.offset; END");
+
+    // Rows the triggers already mirrored are newer than the copy, so they win
+    private static final String COPY_CHUNK = "INSERT OR IGNORE INTO messages_v2 (" + COLUMNS + ") "
+        + "SELECT " + COLUMNS + " FROM messages WHERE rowid > ? AND rowid <= ?";
+
+    private final DataSource dataSource;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.database.migration.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${vthreadmq.database.migration.chunk-pause-ms:50}")
+    private long chunkPauseMs;
+
+    @Value("${vthreadmq.database.migration.retry-delay-ms:30000}")
+    private long retryDelayMs;
+
+    private ScheduledExecutorService migrationExecutor;
+    private Counter copiedRows;
+
+    /**
+     * Create the clustered table next to a rowid-keyed messages table. Runs before schema.sql,
+     * on the initializer's connection; does nothing for new or already migrated databases.
+     */
+    public static void prepare(Connection conn) throws SQLException {
+        if (!isUnclustered(conn) || tableExists(conn, TARGET)) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_TARGET);
+            for (String index : TARGET_INDEXES) {
+                stmt.execute(index);
+            }
+        }
+        log.info("Created {} for the online migration of the messages table", TARGET);
+    }
+
+    /**
+     * Give rows written before the seq column existed one in insert order. Runs after schema.sql,
+     * which adds the column, and before anything reads seq: recovery and replication only see rows
+     * with a seq, and new seqs continue from the highest one. Only the rowid-keyed table can hold
+     * such rows, and after the first run it finds none.
+     */
+    public static void backfillSeq(Connection conn) throws SQLException {
+        if (!isUnclustered(conn)) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            int updated = stmt.executeUpdate("UPDATE messages SET seq = rowid WHERE seq IS NULL");
+            if (updated > 0) {
+                log.info("Assigned seq to {} messages written before it existed", updated);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        try (Connection conn = dataSource.getConnection()) {
+            if (!tableExists(conn, TARGET)) {
+                return;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to check for a pending messages migration", e);
+        }
+
+        copiedRows = Counter.builder("vthreadmq_storage_migration_rows_total")
+            .description("Messages copied into the clustered messages table")
+            .register(meterRegistry);
+
+        migrationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-storage-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        migrationExecutor.execute(this::migrate);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (migrationExecutor != null) {
+            migrationExecutor.shutdownNow();
+        }
+    }
+
+    private void migrate() {
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                for (String trigger : MIRROR_TRIGGERS) {
+                    stmt.execute(trigger);
+                }
+            }
+
+            // Rows inserted from here on are mirrored by the triggers
+            long end = queryLong(conn, "SELECT COALESCE(MAX(rowid), 0) FROM messages");
+            log.info("Migrating messages table to the clustered layout, up to rowid {} in chunks of {}", end, chunkSize);
+
+            try (PreparedStatement copy = conn.prepareStatement(COPY_CHUNK)) {
+                for (long from = 0; from < end; from += chunkSize) {
+                    copy.setLong(1, from);
+                    copy.setLong(2, Math.min(from + chunkSize, end));
+                    copiedRows.increment(copy.executeUpdate());
+                    // Let produces and consumes take the write lock between chunks
+                    Thread.sleep(chunkPauseMs);
+                }
+            }
+
+            swap(conn);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Messages table migration failed, retrying in {} ms: {}", retryDelayMs, e.getMessage());
+            migrationExecutor.schedule(this::migrate, retryDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void swap(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Take the write lock up front so no write lands between the count and the swap
+            stmt.execute("BEGIN IMMEDIATE");
+            long source = queryLong(conn, "SELECT COUNT(*) FROM messages");
+            long target = queryLong(conn, "SELECT COUNT(*) FROM " + TARGET);
+            if (source != target) {
+                // Duplicate (topic, offset) or id values in the old table; needs a look before dropping it
+                stmt.execute("ROLLBACK");
+                log.error("Messages table migration stopped: {} rows in messages but {} in {}; both tables are kept",
+                    source, target, TARGET);
+                return;
+            }
+            // Dropping the old table drops its indexes and triggers with it; the high-water one is recreated
+            stmt.execute("DROP TABLE messages");
+            stmt.execute("ALTER TABLE " + TARGET + " RENAME TO messages");
+            SQLiteMessageRepository.createHighWaterTrigger(conn);
+            stmt.execute("COMMIT");
+            log.info("Messages table migrated to the clustered layout ({} rows)", target);
+        } catch (SQLException e) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ROLLBACK");
+            } catch (SQLException ignored) {
+                // Not in a transaction: BEGIN itself failed
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isUnclustered(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = 'messages'")) {
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() && !rs.getString(1).toUpperCase(Locale.ROOT).contains("WITHOUT ROWID");
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            stmt.setString(1, table);
+            return stmt.executeQuery().next();
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+}
@@ -205,6 +205,45 @@ public class SQLiteConsumerCursorRepository implements ConsumerCursorRepository
         }).subscribeOn(Schedulers.boundedElastic());
     }
     
+    @Override
+    public Flux<ConsumerCursor> findAll() {
+        return Flux.defer(() -> {
+            String sql = "SELECT * FROM consumer_cursors";
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    ResultSet rs = stmt.executeQuery();
+                    return resultSetToConsumerCursorList(rs);
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to find consumer cursors", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Flux<ConsumerCursor> findCommittedSince(Instant since) {
+        return Flux.defer(() -> {
+            String sql = "SELECT * FROM consumer_cursors WHERE last_committed >= ?";
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setLong(1, since.toEpochMilli());
+                    ResultSet rs = stmt.executeQuery();
+                    return resultSetToConsumerCursorList(rs);
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to find consumer cursors", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
     // Helper methods
     
     private ConsumerCursor mapResultSetToConsumerCursor(ResultSet rs) throws SQLException {
@@ -0,0 +1,104 @@
+package com.vthreadMQ001.repository.impl;
+
+import com.vthreadMQ001.model.IdempotencyKey;
+import com.vthreadMQ001.repository.IdempotencyKeyRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class SQLiteIdempotencyKeyRepository implements IdempotencyKeyRepository {
+
+    private final DataSource dataSource;
+
+    @Override
+    public Mono<IdempotencyKey> find(String topic, String key, Instant createdAfter) {
+        return Mono.fromCallable(() -> {
+            String sql = """
+                SELECT topic, idempotency_key, message_id, offset, created_at FROM idempotency_keys
+                WHERE topic = ? AND idempotency_key = ? AND created_at >= ?
+                """;
+
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setString(1, topic);
+                stmt.setString(2, key);
+                stmt.setLong(3, createdAfter.toEpochMilli());
+
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() ? mapRow(rs) : null;
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to find idempotency key", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<IdempotencyKey> findCreatedAfter(Instant createdAfter) {
+        return Flux.defer(() -> {
+            String sql = """
+                SELECT topic, idempotency_key, message_id, offset, created_at FROM idempotency_keys
+                WHERE created_at >= ?
+                """;
+
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                    stmt.setLong(1, createdAfter.toEpochMilli());
+
+                    ResultSet rs = stmt.executeQuery();
+                    List<IdempotencyKey> keys = new ArrayList<>();
+                    while (rs.next()) {
+                        keys.add(mapRow(rs));
+                    }
+                    return keys;
+
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to load idempotency keys", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> deleteOlderThan(Instant before) {
+        return Mono.fromRunnable(() -> {
+            String sql = "DELETE FROM idempotency_keys WHERE created_at < ?";
+
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setLong(1, before.toEpochMilli());
+                int deleted = stmt.executeUpdate();
+                log.debug("Deleted {} idempotency keys older than {}", deleted, before);
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete old idempotency keys", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    private IdempotencyKey mapRow(ResultSet rs) throws SQLException {
+        return IdempotencyKey.builder()
+            .topic(rs.getString("topic"))
+            .key(rs.getString("idempotency_key"))
+            .messageId(rs.getString("message_id"))
+            .offset(rs.getLong("offset"))
+            .createdAt(Instant.ofEpochMilli(rs.getLong("created_at")))
+            .build();
+    }
+}
@@ -2,8 +2,13 @@ package com.vthreadMQ001.repository.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.model.LaneDepth;
 import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.PurgeResult;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.repository.BrokerState;
 import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.selector.Selector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
@@ -14,7 +19,14 @@ import reactor.core.scheduler.Schedulers;
 import javax.sql.DataSource;
 import java.sql.*;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Repository
@@ -25,8 +37,49 @@ public class SQLiteMessageRepository implements MessageRepository {
     private final DataSource dataSource;
     private final ObjectMapper objectMapper;
     
+    // Offset and seq assignment plus the insert happen under the broker state's lock, so rows
+    // become visible in seq order (replication relies on it) and produces never share an offset
+    private final BrokerState brokerState;
+    
+    // Expired messages are filtered in every read that delivers them; bind the current time
+    private static final String NOT_EXPIRED = "(expires_at IS NULL OR expires_at > ?)";
+    
+    // Deleting a topic's newest rows must not let their offsets or seqs be assigned again, so
+    // every delete raises the high-water mark that the offset and seq lookups below fold in
+    private static final String HIGH_WATER_TRIGGER = """
+        CREATE TRIGGER IF NOT EXISTS messages_high_water AFTER DELETE ON messages BEGIN
+            INSERT INTO message_high_water (topic, head_offset, seq) VALUES (OLD.topic, OLD.offset, COALESCE(OLD.seq, 0))
+            ON CONFLICT(topic) DO UPDATE SET head_offset = MAX(head_offset, excluded.head_offset), seq = MAX(seq, excluded.seq);
+        END""";
+    
+    private static final String MAX_SEQ = """
+        SELECT MAX((SELECT COALESCE(MAX(seq), 0) FROM messages),
+                   (SELECT COALESCE(MAX(seq), 0) FROM message_high_water))
+        """;
+    
+    // Binds the topic twice; 0 for a topic that never had a message
+    private static final String HEAD_OFFSET = """
+        SELECT MAX((SELECT COALESCE(MAX(offset), 0) FROM messages WHERE topic = ?),
+                   (SELECT COALESCE(MAX(head_offset), 0) FROM message_high_water WHERE topic = ?))
+        """;
+    
+    /**
+     * Create the trigger that keeps message_high_water. Runs after schema.sql, and again after
+     * {@link MessageTableMigrator} replaces the messages table, which drops its triggers.
+     */
+    public static void createHighWaterTrigger(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(HIGH_WATER_TRIGGER);
+        }
+    }
+    
     @Override
     public Mono<Message> save(Message message) {
+        return save(message, null);
+    }
+
+    @Override
+    public Mono<Message> save(Message message, String idempotencyKey) {
         return Mono.fromCallable(() -> {
             if (message.getId() == null) {
                 message.setId(UUID.randomUUID().toString());
@@ -37,31 +90,61 @@ public class SQLiteMessageRepository implements MessageRepository {
             
             String sql = """
                 INSERT INTO messages (id, topic, content, headers, created_at, scheduled_at, 
-                                    status, retry_count, max_retries, consumer_group, offset)
-                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                                    status, retry_count, max_retries, consumer_group, offset, priority, seq, expires_at,
+                                    message_key, tombstone, blob_ref)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
                 """;
                 
             try (Connection conn = dataSource.getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
                 
-                // Get next offset for the topic
-                Long offset = getNextOffsetSync(conn, message.getTopic());
-                message.setOffset(offset);
-                
-                stmt.setString(1, message.getId());
-                stmt.setString(2, message.getTopic());
-                stmt.setString(3, message.getContent());
-                stmt.setString(4, serializeHeaders(message.getHeaders()));
-                stmt.setLong(5, message.getCreatedAt().toEpochMilli());
-                stmt.setObject(6, message.getScheduledAt() != null ? 
-                    message.getScheduledAt().toEpochMilli() : null);
-                stmt.setString(7, message.getStatus().toString());
-                stmt.setInt(8, message.getRetryCount());
-                stmt.setInt(9, message.getMaxRetries());
-                stmt.setString(10, message.getConsumerGroup());
-                stmt.setLong(11, offset);
+                synchronized (brokerState) {
+                    // Get next offset for the topic
+                    Long offset = getNextOffsetSync(conn, message.getTopic());
+                    message.setOffset(offset);
+                    message.setSeq(lastSeqSync(conn) + 1);
                 
-                stmt.executeUpdate();
+                    stmt.setString(1, message.getId());
+                    stmt.setString(2, message.getTopic());
+                    stmt.setString(3, message.getContent());
+                    stmt.setString(4, serializeHeaders(message.getHeaders()));
+                    stmt.setLong(5, message.getCreatedAt().toEpochMilli());
+                    stmt.setObject(6, message.getScheduledAt() != null ? 
+                        message.getScheduledAt().toEpochMilli() : null);
+                    stmt.setString(7, message.getStatus().toString());
+                    stmt.setInt(8, message.getRetryCount());
+                    stmt.setInt(9, message.getMaxRetries());
+                    stmt.setString(10, message.getConsumerGroup());
+                    stmt.setLong(11, offset);
+                    stmt.setInt(12, message.getPriority());
+                    stmt.setLong(13, message.getSeq());
+                    stmt.setObject(14, message.getExpiresAt() != null ?
+                        message.getExpiresAt().toEpochMilli() : null);
+                    stmt.setString(15, message.getKey());
+                    stmt.setInt(16, message.isTombstone() ? 1 : 0);
+                    stmt.setString(17, message.getBlobRef());
+                
+                    // With a key, the message and its key row commit together
+                    conn.setAutoCommit(idempotencyKey == null);
+                    try {
+                        stmt.executeUpdate();
+                        if (idempotencyKey != null) {
+                            insertIdempotencyKey(conn, idempotencyKey, message);
+                            conn.commit();
+                        }
+                    } catch (SQLException e) {
+                        if (idempotencyKey != null) {
+                            conn.rollback();
+                        }
+                        throw e;
+                    } finally {
+                        conn.setAutoCommit(true);
+                    }
+                    brokerState.recordInsert(message.getTopic(), offset, message.getSeq(), message.getCreatedAt());
+                }
+                if (message.getStatus() == Message.MessageStatus.SCHEDULED && message.getScheduledAt() != null) {
+                    brokerState.noteScheduled(message.getScheduledAt());
+                }
                 return message;
                 
             } catch (SQLException | JsonProcessingException e) {
@@ -69,6 +152,21 @@ public class SQLiteMessageRepository implements MessageRepository {
             }
         }).subscribeOn(Schedulers.boundedElastic());
     }
+
+    private void insertIdempotencyKey(Connection conn, String idempotencyKey, Message message) throws SQLException {
+        String sql = """
+            INSERT OR REPLACE INTO idempotency_keys (topic, idempotency_key, message_id, offset, created_at)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, message.getTopic());
+            stmt.setString(2, idempotencyKey);
+            stmt.setString(3, message.getId());
+            stmt.setLong(4, message.getOffset());
+            stmt.setLong(5, message.getCreatedAt().toEpochMilli());
+            stmt.executeUpdate();
+        }
+    }
     
     @Override
     public Mono<Message> findById(String id) {
@@ -116,9 +214,10 @@ public class SQLiteMessageRepository implements MessageRepository {
     }
     
     @Override
-    public Flux<Message> findByTopicAndStatusAndOffset(String topic, Message.MessageStatus status, Long fromOffset, int limit) {
+    public Flux<Message> findByTopicAndStatusAndOffset(String topic, Message.MessageStatus status, Long fromOffset, Selector selector, int limit) {
         return Flux.defer(() -> {
-            String sql = "SELECT * FROM messages WHERE topic = ? AND status = ? AND offset > ? ORDER BY offset LIMIT ?";
+            String sql = "SELECT * FROM messages WHERE topic = ? AND status = ? AND offset > ? AND " + NOT_EXPIRED
+                + selectorCondition(selector) + " ORDER BY offset LIMIT ?";
             
             return Mono.fromCallable(() -> {
                 try (Connection conn = dataSource.getConnection();
@@ -127,7 +226,9 @@ public class SQLiteMessageRepository implements MessageRepository {
                     stmt.setString(1, topic);
                     stmt.setString(2, status.toString());
                     stmt.setLong(3, fromOffset);
-                    stmt.setInt(4, limit);
+                    stmt.setLong(4, System.currentTimeMillis());
+                    int next = selector != null ? selector.bind(stmt, 5) : 5;
+                    stmt.setInt(next, limit);
                     
                     ResultSet rs = stmt.executeQuery();
                     return resultSetToMessageList(rs);
@@ -139,16 +240,74 @@ public class SQLiteMessageRepository implements MessageRepository {
         }).subscribeOn(Schedulers.boundedElastic());
     }
     
+    @Override
+    public Flux<Message> findByTopicAndStatusAndOffsetAndPriority(String topic, Message.MessageStatus status, Long fromOffset, int priority, Selector selector, int limit) {
+        return Flux.defer(() -> {
+            String sql = "SELECT * FROM messages WHERE topic = ? AND priority = ? AND status = ? AND offset > ? AND " + NOT_EXPIRED
+                + selectorCondition(selector) + " ORDER BY offset LIMIT ?";
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setString(1, topic);
+                    stmt.setInt(2, priority);
+                    stmt.setString(3, status.toString());
+                    stmt.setLong(4, fromOffset);
+                    stmt.setLong(5, System.currentTimeMillis());
+                    int next = selector != null ? selector.bind(stmt, 6) : 6;
+                    stmt.setInt(next, limit);
+                    
+                    ResultSet rs = stmt.executeQuery();
+                    return resultSetToMessageList(rs);
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to find messages by priority", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Flux<LaneDepth> countByStatusPerLane(Message.MessageStatus status) {
+        return Flux.defer(() -> {
+            String sql = "SELECT topic, priority, COUNT(*) AS depth FROM messages WHERE status = ? GROUP BY topic, priority";
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setString(1, status.toString());
+                    
+                    ResultSet rs = stmt.executeQuery();
+                    java.util.List<LaneDepth> depths = new java.util.ArrayList<>();
+                    while (rs.next()) {
+                        depths.add(LaneDepth.builder()
+                            .topic(rs.getString("topic"))
+                            .priority(rs.getInt("priority"))
+                            .depth(rs.getLong("depth"))
+                            .build());
+                    }
+                    return depths;
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to count messages per lane", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
     @Override
     public Flux<Message> findScheduledMessages(Instant now) {
         return Flux.defer(() -> {
-            String sql = "SELECT * FROM messages WHERE status = 'SCHEDULED' AND scheduled_at <= ?";
+            String sql = "SELECT * FROM messages WHERE status = 'SCHEDULED' AND scheduled_at <= ? AND " + NOT_EXPIRED;
             
             return Mono.fromCallable(() -> {
                 try (Connection conn = dataSource.getConnection();
                      PreparedStatement stmt = conn.prepareStatement(sql)) {
                     
                     stmt.setLong(1, now.toEpochMilli());
+                    stmt.setLong(2, now.toEpochMilli());
                     ResultSet rs = stmt.executeQuery();
                     return resultSetToMessageList(rs);
                     
@@ -198,6 +357,118 @@ public class SQLiteMessageRepository implements MessageRepository {
         }).subscribeOn(Schedulers.boundedElastic()).then();
     }
     
+    @Override
+    public Mono<Void> updateStatusInOffsetRange(String topic, Long fromOffset, Long toOffset,
+                                                Message.MessageStatus expected, Message.MessageStatus status) {
+        return Mono.fromRunnable(() -> {
+            String sql = """
+                UPDATE messages SET status = ?, processed_at = ?
+                WHERE topic = ? AND offset >= ? AND offset <= ? AND status = ?
+                """;
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setString(1, status.toString());
+                stmt.setLong(2, Instant.now().toEpochMilli());
+                stmt.setString(3, topic);
+                stmt.setLong(4, fromOffset);
+                stmt.setLong(5, toOffset);
+                stmt.setString(6, expected.toString());
+                stmt.executeUpdate();
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to update message status by offset range", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+    
+    @Override
+    public Mono<Set<String>> claimPending(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        return Mono.fromCallable(() -> {
+            // One statement for the whole batch; a message another consume claimed first is left out
+            String sql = "UPDATE messages SET status = 'PROCESSING', processed_at = ? WHERE id IN ("
+                + String.join(", ", Collections.nCopies(ids.size(), "?")) + ") AND status = 'PENDING' RETURNING id";
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setLong(1, Instant.now().toEpochMilli());
+                int index = 2;
+                for (String id : ids) {
+                    stmt.setString(index++, id);
+                }
+                ResultSet rs = stmt.executeQuery();
+                
+                Set<String> claimed = new HashSet<>();
+                while (rs.next()) {
+                    claimed.add(rs.getString(1));
+                }
+                return claimed;
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to claim messages", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Flux<Message> requeueStale(Instant claimedBefore, int limit) {
+        return Flux.defer(() -> {
+            // claimPending stamps processed_at, so it is the claim time while PROCESSING
+            String sql = """
+                UPDATE messages SET status = 'PENDING', processed_at = ?
+                WHERE (topic, offset) IN (
+                    SELECT topic, offset FROM messages
+                    WHERE status = 'PROCESSING' AND processed_at < ?
+                    LIMIT ?)
+                RETURNING *
+                """;
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setLong(1, Instant.now().toEpochMilli());
+                    stmt.setLong(2, claimedBefore.toEpochMilli());
+                    stmt.setInt(3, limit);
+                    ResultSet rs = stmt.executeQuery();
+                    return resultSetToMessageList(rs);
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to requeue stale messages", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Void> scheduleRetry(String id, int retryCount, Instant scheduledAt, String errorMessage) {
+        return Mono.fromRunnable(() -> {
+            String sql = """
+                UPDATE messages SET status = 'SCHEDULED', retry_count = ?, scheduled_at = ?, error_message = ?
+                WHERE id = ?
+                """;
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setInt(1, retryCount);
+                stmt.setLong(2, scheduledAt.toEpochMilli());
+                stmt.setString(3, errorMessage);
+                stmt.setString(4, id);
+                stmt.executeUpdate();
+                brokerState.noteScheduled(scheduledAt);
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to schedule message retry", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+    
     @Override
     public Mono<Long> getNextOffset(String topic) {
         return Mono.fromCallable(() -> {
@@ -211,20 +482,17 @@ public class SQLiteMessageRepository implements MessageRepository {
     
     @Override
     public Mono<Long> getMaxOffset(String topic) {
+        if (brokerState.isLoaded()) {
+            return Mono.just(brokerState.headOffset(topic));
+        }
         return Mono.fromCallable(() -> {
-            String sql = "SELECT MAX(offset) FROM messages WHERE topic = ?";
-            
             try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                 PreparedStatement stmt = conn.prepareStatement(HEAD_OFFSET)) {
                 
                 stmt.setString(1, topic);
+                stmt.setString(2, topic);
                 ResultSet rs = stmt.executeQuery();
-                
-                if (rs.next()) {
-                    long maxOffset = rs.getLong(1);
-                    return rs.wasNull() ? 0L : maxOffset;
-                }
-                return 0L;
+                return rs.next() ? rs.getLong(1) : 0L;
                 
             } catch (SQLException e) {
                 throw new RuntimeException("Failed to get max offset", e);
@@ -235,7 +503,7 @@ public class SQLiteMessageRepository implements MessageRepository {
     @Override
     public Flux<Message> findByTopicAndOffsetRange(String topic, Long fromOffset, Long toOffset) {
         return Flux.defer(() -> {
-            String sql = "SELECT * FROM messages WHERE topic = ? AND offset >= ? AND offset <= ? ORDER BY offset";
+            String sql = "SELECT * FROM messages WHERE topic = ? AND offset >= ? AND offset <= ? AND " + NOT_EXPIRED + " ORDER BY offset";
             
             return Mono.fromCallable(() -> {
                 try (Connection conn = dataSource.getConnection();
@@ -244,6 +512,7 @@ public class SQLiteMessageRepository implements MessageRepository {
                     stmt.setString(1, topic);
                     stmt.setLong(2, fromOffset);
                     stmt.setLong(3, toOffset);
+                    stmt.setLong(4, System.currentTimeMillis());
                     
                     ResultSet rs = stmt.executeQuery();
                     return resultSetToMessageList(rs);
@@ -255,6 +524,357 @@ public class SQLiteMessageRepository implements MessageRepository {
         }).subscribeOn(Schedulers.boundedElastic());
     }
     
+    @Override
+    public Mono<Long> findFirstOffsetAtOrAfter(String topic, Instant timestamp, Long fromOffset, Long toOffset) {
+        return Mono.fromCallable(() -> {
+            // Bounded by the (topic, offset) index; callers narrow the range with the sparse time index
+            String sql = """
+                SELECT offset FROM messages
+                WHERE topic = ? AND offset >= ? AND offset <= ? AND created_at >= ?
+                ORDER BY offset LIMIT 1
+                """;
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setString(1, topic);
+                stmt.setLong(2, fromOffset);
+                stmt.setLong(3, toOffset);
+                stmt.setLong(4, timestamp.toEpochMilli());
+                ResultSet rs = stmt.executeQuery();
+                
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+                return null;
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to find offset by timestamp", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Flux<Message> findBySeqAfter(long seq, int limit) {
+        return Flux.defer(() -> {
+            String sql = "SELECT * FROM messages WHERE seq > ? ORDER BY seq LIMIT ?";
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setLong(1, seq);
+                    stmt.setInt(2, limit);
+                    
+                    ResultSet rs = stmt.executeQuery();
+                    return resultSetToMessageList(rs);
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to find messages by seq", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Long> getMaxSeq() {
+        return Mono.fromCallable(() -> {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(MAX_SEQ)) {
+                
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() ? rs.getLong(1) : 0L;
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get max seq", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Void> saveReplicated(List<Message> messages) {
+        return Mono.fromRunnable(() -> {
+            // Replicated rows keep the leader's id, offset and seq; re-delivered rows are ignored
+            String sql = """
+                INSERT OR IGNORE INTO messages (id, topic, content, headers, created_at, scheduled_at,
+                                    status, retry_count, max_retries, consumer_group, offset, priority, seq, expires_at,
+                                    message_key, tombstone, blob_ref)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """;
+            
+            try (Connection conn = dataSource.getConnection()) {
+                synchronized (brokerState) {
+                    conn.setAutoCommit(false);
+                    int[] inserted;
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        for (Message message : messages) {
+                            stmt.setString(1, message.getId());
+                            stmt.setString(2, message.getTopic());
+                            stmt.setString(3, message.getContent());
+                            stmt.setString(4, serializeHeaders(message.getHeaders()));
+                            stmt.setLong(5, message.getCreatedAt().toEpochMilli());
+                            stmt.setObject(6, message.getScheduledAt() != null ?
+                                message.getScheduledAt().toEpochMilli() : null);
+                            stmt.setString(7, message.getStatus().toString());
+                            stmt.setInt(8, message.getRetryCount());
+                            stmt.setInt(9, message.getMaxRetries());
+                            stmt.setString(10, message.getConsumerGroup());
+                            stmt.setLong(11, message.getOffset());
+                            stmt.setInt(12, message.getPriority());
+                            stmt.setLong(13, message.getSeq());
+                            stmt.setObject(14, message.getExpiresAt() != null ?
+                                message.getExpiresAt().toEpochMilli() : null);
+                            stmt.setString(15, message.getKey());
+                            stmt.setInt(16, message.isTombstone() ? 1 : 0);
+                            stmt.setString(17, message.getBlobRef());
+                            stmt.addBatch();
+                        }
+                        inserted = stmt.executeBatch();
+                        conn.commit();
+                    } catch (SQLException | JsonProcessingException e) {
+                        conn.rollback();
+                        throw e;
+                    } finally {
+                        conn.setAutoCommit(true);
+                    }
+                    
+                    for (int i = 0; i < messages.size(); i++) {
+                        if (inserted[i] > 0) {
+                            Message message = messages.get(i);
+                            brokerState.recordInsert(message.getTopic(), message.getOffset(), message.getSeq(), message.getCreatedAt());
+                        }
+                    }
+                }
+                
+            } catch (SQLException | JsonProcessingException e) {
+                throw new RuntimeException("Failed to save replicated messages", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+    
+    @Override
+    public Flux<TopicHead> findTopicHeadsSince(long seq) {
+        return Flux.defer(() -> {
+            // Deleted rows past the seq still count for the head offset, not for the message count
+            String sql = """
+                SELECT topic, MAX(head_offset) AS head_offset, SUM(message_count) AS message_count,
+                       MAX(last_produced_at) AS last_produced_at
+                FROM (
+                    SELECT topic, MAX(offset) AS head_offset, COUNT(*) AS message_count, MAX(created_at) AS last_produced_at
+                    FROM messages WHERE seq > ? GROUP BY topic
+                    UNION ALL
+                    SELECT topic, head_offset, 0, NULL FROM message_high_water WHERE seq > ?)
+                GROUP BY topic
+                """;
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setLong(1, seq);
+                    stmt.setLong(2, seq);
+                    ResultSet rs = stmt.executeQuery();
+                    
+                    List<TopicHead> heads = new ArrayList<>();
+                    while (rs.next()) {
+                        long lastProducedAt = rs.getLong("last_produced_at");
+                        heads.add(TopicHead.builder()
+                            .topic(rs.getString("topic"))
+                            .headOffset(rs.getLong("head_offset"))
+                            .messageCount(rs.getLong("message_count"))
+                            .lastProducedAt(rs.wasNull() ? null : Instant.ofEpochMilli(lastProducedAt))
+                            .build());
+                    }
+                    return heads;
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to summarize topics", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Instant> getNextScheduledAt() {
+        return Mono.fromCallable(() -> {
+            String sql = "SELECT MIN(scheduled_at) FROM messages WHERE status = 'SCHEDULED'";
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    long scheduledAt = rs.getLong(1);
+                    return rs.wasNull() ? null : Instant.ofEpochMilli(scheduledAt);
+                }
+                return null;
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get next scheduled time", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<PurgeResult> deleteExpired(Instant now, int limit) {
+        return Mono.fromCallable(() -> {
+            // The partial expiry index covers the subquery; in-flight messages are left to finish first.
+            // The newest row is always kept, as for tombstones
+            String sql = """
+                DELETE FROM messages WHERE (topic, offset) IN (
+                    SELECT topic, offset FROM messages
+                    WHERE expires_at IS NOT NULL AND expires_at <= ? AND status != 'PROCESSING'
+                      AND seq < (SELECT MAX(seq) FROM messages)
+                    LIMIT ?)
+                RETURNING topic, status
+                """;
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setLong(1, now.toEpochMilli());
+                stmt.setInt(2, limit);
+                ResultSet rs = stmt.executeQuery();
+                
+                // Only messages that were never delivered count as expired
+                int deleted = 0;
+                Map<String, Long> expired = new HashMap<>();
+                while (rs.next()) {
+                    deleted++;
+                    String status = rs.getString("status");
+                    if (!"COMPLETED".equals(status) && !"DEAD_LETTER".equals(status)) {
+                        expired.merge(rs.getString("topic"), 1L, Long::sum);
+                    }
+                }
+                return PurgeResult.builder().deleted(deleted).expiredByTopic(expired).build();
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete expired messages", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Long> countUnfinishedInOffsetRange(String topic, Long fromOffset, Long toOffset, Selector selector) {
+        return Mono.fromCallable(() -> {
+            String sql = """
+                SELECT COUNT(*) FROM messages
+                WHERE topic = ? AND offset >= ? AND offset <= ?
+                  AND status NOT IN ('COMPLETED', 'DEAD_LETTER') AND """ + NOT_EXPIRED + selectorCondition(selector);
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setString(1, topic);
+                stmt.setLong(2, fromOffset);
+                stmt.setLong(3, toOffset);
+                stmt.setLong(4, System.currentTimeMillis());
+                if (selector != null) {
+                    selector.bind(stmt, 5);
+                }
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() ? rs.getLong(1) : 0L;
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to count unfinished messages", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Long> getCompactedThrough(String topic) {
+        return Mono.fromCallable(() -> {
+            String sql = "SELECT cleaned_through FROM compaction_state WHERE topic = ?";
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setString(1, topic);
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() ? rs.getLong(1) : 0L;
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get compaction state", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Integer> compactOffsetRange(String topic, Long afterOffset, Long toOffset) {
+        return Mono.fromCallable(() -> {
+            // Every keyed message in the range removes the older messages with its key, wherever
+            // they are, so each superseded row is deleted once, when its successor is compacted
+            String deleteSql = """
+                DELETE FROM messages WHERE (topic, offset) IN (
+                    SELECT older.topic, older.offset FROM messages newer
+                    JOIN messages older ON older.topic = newer.topic
+                        AND older.message_key = newer.message_key AND older.offset < newer.offset
+                    WHERE newer.topic = ? AND newer.offset > ? AND newer.offset <= ?
+                      AND newer.message_key IS NOT NULL)
+                """;
+            String stateSql = """
+                INSERT INTO compaction_state (topic, cleaned_through, updated_at) VALUES (?, ?, ?)
+                ON CONFLICT(topic) DO UPDATE SET cleaned_through = excluded.cleaned_through, updated_at = excluded.updated_at
+                """;
+            
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement delete = conn.prepareStatement(deleteSql);
+                     PreparedStatement state = conn.prepareStatement(stateSql)) {
+                    
+                    delete.setString(1, topic);
+                    delete.setLong(2, afterOffset);
+                    delete.setLong(3, toOffset);
+                    int deleted = delete.executeUpdate();
+                    
+                    state.setString(1, topic);
+                    state.setLong(2, toOffset);
+                    state.setLong(3, System.currentTimeMillis());
+                    state.executeUpdate();
+                    
+                    conn.commit();
+                    return deleted;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to compact topic " + topic, e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Mono<Integer> deleteTombstones(String topic, Long throughOffset, Instant before, int limit) {
+        return Mono.fromCallable(() -> {
+            // Only tombstones the compactor has passed, so the values they delete are already gone.
+            // The newest row is always kept: restarts and followers resume from the highest seq
+            String sql = """
+                DELETE FROM messages WHERE (topic, offset) IN (
+                    SELECT topic, offset FROM messages
+                    WHERE topic = ? AND offset <= ? AND tombstone = 1 AND created_at < ?
+                      AND seq < (SELECT MAX(seq) FROM messages)
+                    LIMIT ?)
+                """;
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setString(1, topic);
+                stmt.setLong(2, throughOffset);
+                stmt.setLong(3, before.toEpochMilli());
+                stmt.setInt(4, limit);
+                return stmt.executeUpdate();
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete tombstones", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
     @Override
     public Mono<Void> deleteOldMessages(String topic, Instant before) {
         return Mono.fromRunnable(() -> {
@@ -274,23 +894,84 @@ public class SQLiteMessageRepository implements MessageRepository {
         }).subscribeOn(Schedulers.boundedElastic()).then();
     }
     
+    @Override
+    public Mono<Integer> deleteOldLogMessages(String topic, Instant before, long throughOffset) {
+        return Mono.fromCallable(() -> {
+            // Log topic rows keep their produced status, so age and offset decide alone
+            String sql = "DELETE FROM messages WHERE topic = ? AND offset <= ? AND created_at < ?";
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                
+                stmt.setString(1, topic);
+                stmt.setLong(2, throughOffset);
+                stmt.setLong(3, before.toEpochMilli());
+                int deleted = stmt.executeUpdate();
+                log.info("Deleted {} old messages from log topic {}", deleted, topic);
+                return deleted;
+                
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete old log messages", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    @Override
+    public Flux<Long> findReferencedBlobSegments() {
+        return Flux.defer(() -> {
+            // Scans only the partial blob_ref index, which holds just the offloaded messages
+            String sql = """
+                SELECT DISTINCT CAST(substr(blob_ref, 1, instr(blob_ref, ':') - 1) AS INTEGER)
+                FROM messages WHERE blob_ref IS NOT NULL
+                """;
+            
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    ResultSet rs = stmt.executeQuery();
+                    List<Long> segments = new ArrayList<>();
+                    while (rs.next()) {
+                        segments.add(rs.getLong(1));
+                    }
+                    return segments;
+                    
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to find referenced blob segments", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
     // Helper methods
     
+    private long lastSeqSync(Connection conn) throws SQLException {
+        if (brokerState.getLastSeq() < 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(MAX_SEQ)) {
+                ResultSet rs = stmt.executeQuery();
+                brokerState.setLastSeq(rs.next() ? rs.getLong(1) : 0L);
+            }
+        }
+        return brokerState.getLastSeq();
+    }
+    
     private Long getNextOffsetSync(Connection conn, String topic) throws SQLException {
-        String sql = "SELECT MAX(offset) FROM messages WHERE topic = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        if (brokerState.isLoaded()) {
+            return brokerState.nextOffset(topic);
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(HEAD_OFFSET)) {
             stmt.setString(1, topic);
+            stmt.setString(2, topic);
             ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                long maxOffset = rs.getLong(1);
-                return rs.wasNull() ? 1L : maxOffset + 1;
-            }
-            return 1L;
+            return rs.next() ? rs.getLong(1) + 1 : 1L;
         }
     }
     
+    private static String selectorCondition(Selector selector) {
+        // Parameters are bound right after the fixed conditions, see Selector.bind
+        return selector != null ? " AND " + selector.getSql() : "";
+    }
+    
     private String serializeHeaders(Map<String, Object> headers) throws JsonProcessingException {
         return headers != null ? objectMapper.writeValueAsString(headers) : null;
     }
@@ -325,6 +1006,13 @@ public class SQLiteMessageRepository implements MessageRepository {
             .errorMessage(rs.getString("error_message"))
             .consumerGroup(rs.getString("consumer_group"))
             .offset(rs.getLong("offset"))
+            .priority(rs.getInt("priority"))
+            .seq(rs.getLong("seq"))
+            .expiresAt(rs.getLong("expires_at") != 0 ?
+                Instant.ofEpochMilli(rs.getLong("expires_at")) : null)
+            .key(rs.getString("message_key"))
+            .tombstone(rs.getInt("tombstone") != 0)
+            .blobRef(rs.getString("blob_ref"))
             .build();
     }
     
@@ -0,0 +1,88 @@
+package com.vthreadMQ001.repository.impl;
+
+import com.vthreadMQ001.model.TimeIndexEntry;
+import com.vthreadMQ001.repository.TimeIndexRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class SQLiteTimeIndexRepository implements TimeIndexRepository {
+
+    private final DataSource dataSource;
+
+    @Override
+    public Mono<Void> save(TimeIndexEntry entry) {
+        return Mono.fromRunnable(() -> {
+            String sql = "INSERT OR REPLACE INTO topic_time_index (topic, timestamp, offset) VALUES (?, ?, ?)";
+
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setString(1, entry.getTopic());
+                stmt.setLong(2, entry.getTimestamp().toEpochMilli());
+                stmt.setLong(3, entry.getOffset());
+                stmt.executeUpdate();
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to save time index entry", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    @Override
+    public Flux<TimeIndexEntry> findAll() {
+        return Flux.defer(() -> {
+            String sql = "SELECT topic, timestamp, offset FROM topic_time_index";
+
+            return Mono.fromCallable(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                    ResultSet rs = stmt.executeQuery();
+                    List<TimeIndexEntry> entries = new ArrayList<>();
+                    while (rs.next()) {
+                        entries.add(TimeIndexEntry.builder()
+                            .topic(rs.getString("topic"))
+                            .timestamp(Instant.ofEpochMilli(rs.getLong("timestamp")))
+                            .offset(rs.getLong("offset"))
+                            .build());
+                    }
+                    return entries;
+
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to load time index", e);
+                }
+            }).flatMapMany(Flux::fromIterable);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> deleteOlderThan(Instant before) {
+        return Mono.fromRunnable(() -> {
+            String sql = "DELETE FROM topic_time_index WHERE timestamp < ?";
+
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setLong(1, before.toEpochMilli());
+                int deleted = stmt.executeUpdate();
+                log.debug("Deleted {} time index entries older than {}", deleted, before);
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete old time index entries", e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+}
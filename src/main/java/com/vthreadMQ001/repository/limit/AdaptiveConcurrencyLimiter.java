@@ -0,0 +1,174 @@
+package com.vthreadMQ001.repository.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD concurrency limit for calls into SQLite made on behalf of produce and consume requests.
+ *
+ * Only calls subscribed with the {@link #onRequestPath} context mark are limited; the broker's
+ * own writes (retries, dead-lettering, acks of failed messages) and background scans run
+ * unlimited, so shedding never strands a message and scans do not shrink the limit. A limited
+ * call takes a slot; when all slots are taken it fails immediately with
+ * {@link RepositoryOverloadedException} instead of queueing on the blocking scheduler. Each
+ * completed call feeds its latency back: a call slower than the latency threshold, or a failed
+ * one, shrinks the limit multiplicatively, while fast calls at high utilisation grow it by about
+ * one slot per limit's worth of completions.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private static final String REQUEST_PATH = AdaptiveConcurrencyLimiter.class.getName() + ".requestPath";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.persistence.limiter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${vthreadmq.persistence.limiter.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${vthreadmq.persistence.limiter.min-limit:4}")
+    private int minLimit;
+
+    @Value("${vthreadmq.persistence.limiter.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${vthreadmq.persistence.limiter.latency-threshold-ms:100}")
+    private long latencyThresholdMs;
+
+    @Value("${vthreadmq.persistence.limiter.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private volatile double limit;
+    private long latencyThresholdNanos;
+    private Timer latency;
+    private final ConcurrentHashMap<String, Counter> rejections = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        limit = initialLimit;
+        latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+
+        Gauge.builder("vthreadmq_persistence_concurrency_limit", this, AdaptiveConcurrencyLimiter::getLimit)
+            .description("Current adaptive limit on concurrent persistence calls")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_persistence_inflight", inFlight, AtomicInteger::get)
+            .description("Persistence calls currently in flight")
+            .register(meterRegistry);
+
+        latency = Timer.builder("vthreadmq_persistence_call_time")
+            .description("Latency of persistence calls admitted by the concurrency limiter")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    /**
+     * Mark a request's subscriber context, for {@code contextWrite}, so the repository calls
+     * made while serving it go through the limiter.
+     */
+    public static Context onRequestPath(Context context) {
+        return context.put(REQUEST_PATH, Boolean.TRUE);
+    }
+
+    public <T> Mono<T> limit(String repository, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.deferContextual(context -> {
+            if (!context.hasKey(REQUEST_PATH)) {
+                return call;
+            }
+            if (!tryAcquire()) {
+                return Mono.error(reject(repository));
+            }
+            long start = System.nanoTime();
+            return call.doFinally(signal -> release(start, signal));
+        });
+    }
+
+    public <T> Flux<T> limit(String repository, Flux<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Flux.deferContextual(context -> {
+            if (!context.hasKey(REQUEST_PATH)) {
+                return call;
+            }
+            if (!tryAcquire()) {
+                return Flux.error(reject(repository));
+            }
+            long start = System.nanoTime();
+            return call.doFinally(signal -> release(start, signal));
+        });
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release(long start, SignalType signal) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        if (signal == SignalType.CANCEL) {
+            // No latency sample from a call nobody waited for
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        latency.record(elapsed, TimeUnit.NANOSECONDS);
+
+        synchronized (this) {
+            if (signal == SignalType.ON_ERROR || elapsed > latencyThresholdNanos) {
+                double reduced = Math.max(minLimit, limit * backoffRatio);
+                if ((int) reduced < (int) limit) {
+                    log.debug("Persistence concurrency limit reduced to {} (latency {} ms)",
+                        (int) reduced, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                }
+                limit = reduced;
+            } else if (inFlightAtCompletion * 2 >= limit) {
+                // Only grow while the current limit is actually being used
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+    }
+
+    private RepositoryOverloadedException reject(String repository) {
+        rejections.computeIfAbsent(repository, name -> Counter.builder("vthreadmq_persistence_rejections_total")
+                .description("Persistence calls shed at the concurrency limit")
+                .tag("repository", name)
+                .register(meterRegistry))
+            .increment();
+        return new RepositoryOverloadedException(repository, (int) limit);
+    }
+}
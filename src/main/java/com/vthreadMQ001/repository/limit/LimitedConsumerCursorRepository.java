@@ -0,0 +1,72 @@
+package com.vthreadMQ001.repository.limit;
+
+import com.vthreadMQ001.model.ConsumerCursor;
+import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.repository.impl.SQLiteConsumerCursorRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * {@link ConsumerCursorRepository} that admits every call through the {@link AdaptiveConcurrencyLimiter}; only
+ * calls on the request path are actually limited.
+ */
+@Repository
+@Primary
+@RequiredArgsConstructor
+public class LimitedConsumerCursorRepository implements ConsumerCursorRepository {
+
+    private static final String NAME = "consumer_cursors";
+
+    private final SQLiteConsumerCursorRepository delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    @Override
+    public Mono<ConsumerCursor> save(ConsumerCursor cursor) {
+        return limiter.limit(NAME, delegate.save(cursor));
+    }
+
+    @Override
+    public Mono<ConsumerCursor> findByConsumerGroupAndTopic(String consumerGroup, String topic) {
+        return limiter.limit(NAME, delegate.findByConsumerGroupAndTopic(consumerGroup, topic));
+    }
+
+    @Override
+    public Flux<ConsumerCursor> findByConsumerGroup(String consumerGroup) {
+        return limiter.limit(NAME, delegate.findByConsumerGroup(consumerGroup));
+    }
+
+    @Override
+    public Mono<Void> commitOffset(String consumerGroup, String topic, Long offset) {
+        return limiter.limit(NAME, delegate.commitOffset(consumerGroup, topic, offset));
+    }
+
+    @Override
+    public Mono<Long> getCommittedOffset(String consumerGroup, String topic) {
+        return limiter.limit(NAME, delegate.getCommittedOffset(consumerGroup, topic));
+    }
+
+    @Override
+    public Mono<Void> updateActiveStatus(String consumerGroup, String topic, String consumerId, boolean active) {
+        return limiter.limit(NAME, delegate.updateActiveStatus(consumerGroup, topic, consumerId, active));
+    }
+
+    @Override
+    public Flux<ConsumerCursor> findActiveConsumers() {
+        return limiter.limit(NAME, delegate.findActiveConsumers());
+    }
+
+    @Override
+    public Flux<ConsumerCursor> findAll() {
+        return limiter.limit(NAME, delegate.findAll());
+    }
+
+    @Override
+    public Flux<ConsumerCursor> findCommittedSince(Instant since) {
+        return limiter.limit(NAME, delegate.findCommittedSince(since));
+    }
+}
@@ -0,0 +1,189 @@
+package com.vthreadMQ001.repository.limit;
+
+import com.vthreadMQ001.model.LaneDepth;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.PurgeResult;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.repository.impl.SQLiteMessageRepository;
+import com.vthreadMQ001.selector.Selector;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link MessageRepository} that admits every call through the {@link AdaptiveConcurrencyLimiter}; only
+ * calls on the request path are actually limited.
+ */
+@Repository
+@Primary
+@RequiredArgsConstructor
+public class LimitedMessageRepository implements MessageRepository {
+
+    private static final String NAME = "messages";
+
+    private final SQLiteMessageRepository delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    @Override
+    public Mono<Message> save(Message message) {
+        return limiter.limit(NAME, delegate.save(message));
+    }
+
+    @Override
+    public Mono<Message> save(Message message, String idempotencyKey) {
+        return limiter.limit(NAME, delegate.save(message, idempotencyKey));
+    }
+
+    @Override
+    public Mono<Message> findById(String id) {
+        return limiter.limit(NAME, delegate.findById(id));
+    }
+
+    @Override
+    public Flux<Message> findByTopicAndStatus(String topic, Message.MessageStatus status, int limit) {
+        return limiter.limit(NAME, delegate.findByTopicAndStatus(topic, status, limit));
+    }
+
+    @Override
+    public Flux<Message> findByTopicAndStatusAndOffset(String topic, Message.MessageStatus status, Long fromOffset, Selector selector, int limit) {
+        return limiter.limit(NAME, delegate.findByTopicAndStatusAndOffset(topic, status, fromOffset, selector, limit));
+    }
+
+    @Override
+    public Flux<Message> findByTopicAndStatusAndOffsetAndPriority(String topic, Message.MessageStatus status, Long fromOffset, int priority, Selector selector, int limit) {
+        return limiter.limit(NAME, delegate.findByTopicAndStatusAndOffsetAndPriority(topic, status, fromOffset, priority, selector, limit));
+    }
+
+    @Override
+    public Flux<LaneDepth> countByStatusPerLane(Message.MessageStatus status) {
+        return limiter.limit(NAME, delegate.countByStatusPerLane(status));
+    }
+
+    @Override
+    public Flux<Message> findScheduledMessages(Instant now) {
+        return limiter.limit(NAME, delegate.findScheduledMessages(now));
+    }
+
+    @Override
+    public Mono<Void> updateStatus(String id, Message.MessageStatus status) {
+        return limiter.limit(NAME, delegate.updateStatus(id, status));
+    }
+
+    @Override
+    public Mono<Void> updateStatusAndError(String id, Message.MessageStatus status, String errorMessage) {
+        return limiter.limit(NAME, delegate.updateStatusAndError(id, status, errorMessage));
+    }
+
+    @Override
+    public Mono<Void> updateStatusInOffsetRange(String topic, Long fromOffset, Long toOffset, Message.MessageStatus expected, Message.MessageStatus status) {
+        return limiter.limit(NAME, delegate.updateStatusInOffsetRange(topic, fromOffset, toOffset, expected, status));
+    }
+
+    @Override
+    public Mono<Set<String>> claimPending(Collection<String> ids) {
+        return limiter.limit(NAME, delegate.claimPending(ids));
+    }
+
+    @Override
+    public Flux<Message> requeueStale(Instant claimedBefore, int limit) {
+        return limiter.limit(NAME, delegate.requeueStale(claimedBefore, limit));
+    }
+
+    @Override
+    public Mono<Void> scheduleRetry(String id, int retryCount, Instant scheduledAt, String errorMessage) {
+        return limiter.limit(NAME, delegate.scheduleRetry(id, retryCount, scheduledAt, errorMessage));
+    }
+
+    @Override
+    public Mono<Long> getNextOffset(String topic) {
+        return limiter.limit(NAME, delegate.getNextOffset(topic));
+    }
+
+    @Override
+    public Mono<Long> getMaxOffset(String topic) {
+        return limiter.limit(NAME, delegate.getMaxOffset(topic));
+    }
+
+    @Override
+    public Flux<Message> findByTopicAndOffsetRange(String topic, Long fromOffset, Long toOffset) {
+        return limiter.limit(NAME, delegate.findByTopicAndOffsetRange(topic, fromOffset, toOffset));
+    }
+
+    @Override
+    public Mono<Long> findFirstOffsetAtOrAfter(String topic, Instant timestamp, Long fromOffset, Long toOffset) {
+        return limiter.limit(NAME, delegate.findFirstOffsetAtOrAfter(topic, timestamp, fromOffset, toOffset));
+    }
+
+    @Override
+    public Flux<Message> findBySeqAfter(long seq, int limit) {
+        return limiter.limit(NAME, delegate.findBySeqAfter(seq, limit));
+    }
+
+    @Override
+    public Mono<Long> getMaxSeq() {
+        return limiter.limit(NAME, delegate.getMaxSeq());
+    }
+
+    @Override
+    public Mono<Void> saveReplicated(List<Message> messages) {
+        return limiter.limit(NAME, delegate.saveReplicated(messages));
+    }
+
+    @Override
+    public Flux<TopicHead> findTopicHeadsSince(long seq) {
+        return limiter.limit(NAME, delegate.findTopicHeadsSince(seq));
+    }
+
+    @Override
+    public Mono<Instant> getNextScheduledAt() {
+        return limiter.limit(NAME, delegate.getNextScheduledAt());
+    }
+
+    @Override
+    public Mono<PurgeResult> deleteExpired(Instant now, int limit) {
+        return limiter.limit(NAME, delegate.deleteExpired(now, limit));
+    }
+
+    @Override
+    public Mono<Long> countUnfinishedInOffsetRange(String topic, Long fromOffset, Long toOffset, Selector selector) {
+        return limiter.limit(NAME, delegate.countUnfinishedInOffsetRange(topic, fromOffset, toOffset, selector));
+    }
+
+    @Override
+    public Mono<Long> getCompactedThrough(String topic) {
+        return limiter.limit(NAME, delegate.getCompactedThrough(topic));
+    }
+
+    @Override
+    public Mono<Integer> compactOffsetRange(String topic, Long afterOffset, Long toOffset) {
+        return limiter.limit(NAME, delegate.compactOffsetRange(topic, afterOffset, toOffset));
+    }
+
+    @Override
+    public Mono<Integer> deleteTombstones(String topic, Long throughOffset, Instant before, int limit) {
+        return limiter.limit(NAME, delegate.deleteTombstones(topic, throughOffset, before, limit));
+    }
+
+    @Override
+    public Mono<Void> deleteOldMessages(String topic, Instant before) {
+        return limiter.limit(NAME, delegate.deleteOldMessages(topic, before));
+    }
+
+    @Override
+    public Mono<Integer> deleteOldLogMessages(String topic, Instant before, long throughOffset) {
+        return limiter.limit(NAME, delegate.deleteOldLogMessages(topic, before, throughOffset));
+    }
+
+    @Override
+    public Flux<Long> findReferencedBlobSegments() {
+        return limiter.limit(NAME, delegate.findReferencedBlobSegments());
+    }
+}
@@ -0,0 +1,16 @@
+package com.vthreadMQ001.repository.limit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * The persistence layer is at its concurrency limit and shed the call instead of queueing it.
+ * Rendered as 503 Service Unavailable.
+ */
+public class RepositoryOverloadedException extends ResponseStatusException {
+
+    public RepositoryOverloadedException(String repository, int limit) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Persistence overloaded: " + repository
+            + " call rejected at concurrency limit " + limit);
+    }
+}
@@ -0,0 +1,27 @@
+package com.vthreadMQ001.repository.limit;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+/**
+ * Puts produce and consume requests under the {@link AdaptiveConcurrencyLimiter}. Other endpoints
+ * (acks, commits, admin reads) are cheap or must not be shed.
+ */
+@Component
+public class RequestPathFilter implements WebFilter {
+
+    private static final Set<String> LIMITED_PATHS = Set.of("/api/produce", "/api/produce/batch", "/api/consume");
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!LIMITED_PATHS.contains(exchange.getRequest().getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange).contextWrite(AdaptiveConcurrencyLimiter::onRequestPath);
+    }
+}
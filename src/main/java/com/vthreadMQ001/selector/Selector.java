@@ -0,0 +1,87 @@
+package com.vthreadMQ001.selector;
+
+import com.vthreadMQ001.model.Message;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+
+/**
+ * A compiled header selector: a SQL condition over the {@code headers} JSON column with its bind
+ * parameters, and the equivalent in-memory predicate for messages that are not fetched through
+ * SQL. Both evaluate a missing header the same way, so pushing the selector down never changes
+ * which messages match.
+ */
+public final class Selector {
+
+    private final String expression;
+    private final String sql;
+    private final List<Object> params;
+    private final Predicate<Map<String, Object>> predicate;
+
+    Selector(String expression, String sql, List<Object> params, Predicate<Map<String, Object>> predicate) {
+        this.expression = expression;
+        this.sql = sql;
+        this.params = List.copyOf(params);
+        this.predicate = predicate;
+    }
+
+    public static Selector parse(String expression) {
+        return new SelectorParser(expression).parse();
+    }
+
+    /**
+     * A selector matching messages that match at least one of the given selectors.
+     */
+    public static Selector anyOf(Collection<Selector> selectors) {
+        if (selectors.isEmpty()) {
+            throw new IllegalArgumentException("No selectors to combine");
+        }
+        if (selectors.size() == 1) {
+            return selectors.iterator().next();
+        }
+        StringJoiner expression = new StringJoiner(") OR (", "(", ")");
+        StringJoiner sql = new StringJoiner(" OR ", "(", ")");
+        List<Object> params = new ArrayList<>();
+        Predicate<Map<String, Object>> predicate = headers -> false;
+        for (Selector selector : selectors) {
+            expression.add(selector.expression);
+            sql.add("(" + selector.sql + ")");
+            params.addAll(selector.params);
+            predicate = predicate.or(selector.predicate);
+        }
+        return new Selector(expression.toString(), sql.toString(), params, predicate);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public boolean matches(Message message) {
+        return predicate.test(message.getHeaders() != null ? message.getHeaders() : Map.of());
+    }
+
+    /**
+     * Bind this selector's parameters starting at {@code index}; returns the next free index.
+     */
+    public int bind(PreparedStatement stmt, int index) throws SQLException {
+        for (Object param : params) {
+            stmt.setObject(index++, param);
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
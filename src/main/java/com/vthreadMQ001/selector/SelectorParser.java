@@ -0,0 +1,372 @@
+package com.vthreadMQ001.selector;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Recursive-descent parser for header selectors such as
+ * {@code region = 'eu' AND (amount >= 100 OR vip = TRUE) AND source IN ('web', 'app')}.
+ *
+ * Supported: {@code = != <> < <= > >=}, {@code IN (...)}, {@code IS [NOT] NULL}, {@code AND},
+ * {@code OR}, {@code NOT} and parentheses. Literals are single-quoted strings, numbers and
+ * {@code TRUE}/{@code FALSE}; ordering operators only compare numbers. A comparison never
+ * matches a header of a different type, including a missing one.
+ */
+final class SelectorParser {
+
+    private final String input;
+    private final List<Token> tokens;
+    private int position;
+
+    SelectorParser(String input) {
+        this.input = input;
+        this.tokens = tokenize(input);
+    }
+
+    Selector parse() {
+        Node root = parseOr();
+        if (peek().type != TokenType.END) {
+            throw error("Unexpected '" + peek().text + "'");
+        }
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        root.toSql(sql, params);
+        return new Selector(input, sql.toString(), params, root::test);
+    }
+
+    // Grammar
+
+    private Node parseOr() {
+        Node left = parseAnd();
+        while (acceptKeyword("OR")) {
+            left = new Or(left, parseAnd());
+        }
+        return left;
+    }
+
+    private Node parseAnd() {
+        Node left = parseNot();
+        while (acceptKeyword("AND")) {
+            left = new And(left, parseNot());
+        }
+        return left;
+    }
+
+    private Node parseNot() {
+        if (acceptKeyword("NOT")) {
+            return new Not(parseNot());
+        }
+        return parsePrimary();
+    }
+
+    private Node parsePrimary() {
+        if (accept(TokenType.LPAREN)) {
+            Node inner = parseOr();
+            expect(TokenType.RPAREN, "')'");
+            return inner;
+        }
+
+        Token field = expect(TokenType.IDENT, "header name");
+        if (isKeyword(field)) {
+            throw error("Expected header name but found '" + field.text + "'");
+        }
+
+        if (acceptKeyword("IS")) {
+            boolean negated = acceptKeyword("NOT");
+            if (!acceptKeyword("NULL")) {
+                throw error("Expected NULL after IS");
+            }
+            return new IsNull(field.text, negated);
+        }
+
+        boolean negatedIn = acceptKeyword("NOT");
+        if (acceptKeyword("IN")) {
+            expect(TokenType.LPAREN, "'('");
+            Node in = new Compare(field.text, "=", parseLiteral());
+            while (accept(TokenType.COMMA)) {
+                in = new Or(in, new Compare(field.text, "=", parseLiteral()));
+            }
+            expect(TokenType.RPAREN, "')'");
+            return negatedIn ? new Not(in) : in;
+        }
+        if (negatedIn) {
+            throw error("Expected IN after NOT");
+        }
+
+        Token op = expect(TokenType.OP, "comparison operator");
+        String operator = op.text.equals("<>") ? "!=" : op.text;
+        Object literal = parseLiteral();
+        if (!(literal instanceof BigDecimal) && !operator.equals("=") && !operator.equals("!=")) {
+            throw error("Operator " + operator + " only compares numbers");
+        }
+        return new Compare(field.text, operator, literal);
+    }
+
+    private Object parseLiteral() {
+        Token token = next();
+        switch (token.type) {
+            case STRING:
+                return token.text;
+            case NUMBER:
+                return new BigDecimal(token.text);
+            case IDENT:
+                String keyword = token.text.toUpperCase(Locale.ROOT);
+                if (keyword.equals("TRUE")) {
+                    return Boolean.TRUE;
+                }
+                if (keyword.equals("FALSE")) {
+                    return Boolean.FALSE;
+                }
+                // fall through
+            default:
+                throw error("Expected a literal but found '" + token.text + "'");
+        }
+    }
+
+    // Token helpers
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token next() {
+        Token token = tokens.get(position);
+        if (token.type != TokenType.END) {
+            position++;
+        }
+        return token;
+    }
+
+    private boolean accept(TokenType type) {
+        if (peek().type == type) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        Token token = peek();
+        if (token.type == TokenType.IDENT && token.text.equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private Token expect(TokenType type, String description) {
+        Token token = peek();
+        if (token.type != type) {
+            throw error("Expected " + description + " but found '" + token.text + "'");
+        }
+        return next();
+    }
+
+    private static boolean isKeyword(Token token) {
+        return switch (token.text.toUpperCase(Locale.ROOT)) {
+            case "AND", "OR", "NOT", "IN", "IS", "NULL", "TRUE", "FALSE" -> true;
+            default -> false;
+        };
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " in selector: " + input);
+    }
+
+    private List<Token> tokenize(String text) {
+        List<Token> result = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                result.add(new Token(TokenType.LPAREN, "("));
+                i++;
+            } else if (c == ')') {
+                result.add(new Token(TokenType.RPAREN, ")"));
+                i++;
+            } else if (c == ',') {
+                result.add(new Token(TokenType.COMMA, ","));
+                i++;
+            } else if (c == '\'') {
+                // '' inside a string is an escaped quote
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= text.length()) {
+                        throw error("Unterminated string");
+                    }
+                    if (text.charAt(i) == '\'') {
+                        if (i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+                            value.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    value.append(text.charAt(i++));
+                }
+                result.add(new Token(TokenType.STRING, value.toString()));
+            } else if (c == '=' || c == '<' || c == '>' || c == '!') {
+                String op = i + 1 < text.length() ? text.substring(i, i + 2) : "";
+                if (op.equals("<=") || op.equals(">=") || op.equals("!=") || op.equals("<>")) {
+                    result.add(new Token(TokenType.OP, op));
+                    i += 2;
+                } else if (c != '!') {
+                    result.add(new Token(TokenType.OP, String.valueOf(c)));
+                    i++;
+                } else {
+                    throw error("Unexpected '!'");
+                }
+            } else if (Character.isDigit(c) || ((c == '-' || c == '.') && i + 1 < text.length() && Character.isDigit(text.charAt(i + 1)))) {
+                int start = i++;
+                while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+                    i++;
+                }
+                String number = text.substring(start, i);
+                try {
+                    new BigDecimal(number);
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number '" + number + "'");
+                }
+                result.add(new Token(TokenType.NUMBER, number));
+            } else if (Character.isLetter(c) || c == '_') {
+                // Header names may contain dots and dashes; they are matched as a literal key
+                int start = i++;
+                while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i))
+                        || text.charAt(i) == '_' || text.charAt(i) == '.' || text.charAt(i) == '-')) {
+                    i++;
+                }
+                result.add(new Token(TokenType.IDENT, text.substring(start, i)));
+            } else {
+                throw error("Unexpected '" + c + "'");
+            }
+        }
+        result.add(new Token(TokenType.END, "end of input"));
+        return result;
+    }
+
+    private enum TokenType { IDENT, STRING, NUMBER, OP, LPAREN, RPAREN, COMMA, END }
+
+    private record Token(TokenType type, String text) {
+    }
+
+    // Expression tree; every node renders SQL that evaluates to 0 or 1, never NULL, so NOT
+    // behaves the same in SQL and in memory
+
+    private interface Node {
+        void toSql(StringBuilder sql, List<Object> params);
+
+        boolean test(Map<String, Object> headers);
+    }
+
+    private record And(Node left, Node right) implements Node {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append('(');
+            left.toSql(sql, params);
+            sql.append(" AND ");
+            right.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public boolean test(Map<String, Object> headers) {
+            return left.test(headers) && right.test(headers);
+        }
+    }
+
+    private record Or(Node left, Node right) implements Node {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append('(');
+            left.toSql(sql, params);
+            sql.append(" OR ");
+            right.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public boolean test(Map<String, Object> headers) {
+            return left.test(headers) || right.test(headers);
+        }
+    }
+
+    private record Not(Node inner) implements Node {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append("(NOT ");
+            inner.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public boolean test(Map<String, Object> headers) {
+            return !inner.test(headers);
+        }
+    }
+
+    private record IsNull(String field, boolean negated) implements Node {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            // json_type is NULL for a missing key and 'null' for an explicit JSON null
+            sql.append("(COALESCE(json_type(headers, ?), 'null') ").append(negated ? "!=" : "=").append(" 'null')");
+            params.add(path(field));
+        }
+
+        public boolean test(Map<String, Object> headers) {
+            return (headers.get(field) == null) != negated;
+        }
+    }
+
+    private record Compare(String field, String operator, Object literal) implements Node {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            if (literal instanceof Boolean bool) {
+                // JSON booleans have their own json_type; != only matches the other boolean
+                boolean wanted = operator.equals("=") == bool;
+                sql.append("COALESCE(json_type(headers, ?) = '").append(wanted ? "true" : "false").append("', 0)");
+                params.add(path(field));
+                return;
+            }
+            String typeCheck = literal instanceof BigDecimal ? "IN ('integer', 'real')" : "= 'text'";
+            sql.append("COALESCE(json_type(headers, ?) ").append(typeCheck)
+                .append(" AND json_extract(headers, ?) ").append(operator).append(" ?, 0)");
+            params.add(path(field));
+            params.add(path(field));
+            params.add(literal instanceof BigDecimal number ? bindable(number) : literal);
+        }
+
+        public boolean test(Map<String, Object> headers) {
+            Object value = headers.get(field);
+            if (literal instanceof Boolean bool) {
+                return value instanceof Boolean actual && (operator.equals("=") ? actual.equals(bool) : !actual.equals(bool));
+            }
+            if (literal instanceof String text) {
+                return value instanceof String actual && (operator.equals("=") == actual.equals(text));
+            }
+            if (!(value instanceof Number actual)) {
+                return false;
+            }
+            int cmp = new BigDecimal(actual.toString()).compareTo((BigDecimal) literal);
+            return switch (operator) {
+                case "=" -> cmp == 0;
+                case "!=" -> cmp != 0;
+                case "<" -> cmp < 0;
+                case "<=" -> cmp <= 0;
+                case ">" -> cmp > 0;
+                default -> cmp >= 0;
+            };
+        }
+
+        private static Object bindable(BigDecimal number) {
+            try {
+                return number.longValueExact();
+            } catch (ArithmeticException e) {
+                return number.doubleValue();
+            }
+        }
+    }
+
+    private static String path(String field) {
+        // Quoted so dots in header names are not read as nesting; names never contain quotes
+        return "$.\"" + field + "\"";
+    }
+}
@@ -0,0 +1,268 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Claim-check storage for large payloads.
+ *
+ * Content above {@code vthreadmq.blob.threshold-bytes} is appended to a segment file and the row
+ * keeps only its {@code blob_ref} ("segment:position:length"), so offset scans never page through
+ * large payloads. Segments are append-only and read through memory mappings: a read is a slice of
+ * the mapped file, served to clients without copying it onto the heap. A new segment is started
+ * when the current one reaches {@code segment-bytes} and on every start. Sealed segments that no
+ * message references any more, because retention, expiry or compaction removed those rows, are
+ * deleted by a periodic sweep.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BlobStoreService {
+
+    private static final String SUFFIX = ".blob";
+
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.blob.enabled:true}")
+    private boolean enabled;
+
+    @Value("${vthreadmq.blob.threshold-bytes:262144}")
+    private int thresholdBytes;
+
+    @Value("${vthreadmq.blob.path:${vthreadmq.database.path:data/vthreadmq.db}.blobs}")
+    private String path;
+
+    @Value("${vthreadmq.blob.segment-bytes:268435456}")
+    private int segmentBytes;
+
+    @Value("${vthreadmq.blob.reclaim-interval-ms:60000}")
+    private long reclaimIntervalMs;
+
+    // A sealed segment younger than this may still get its row inserted
+    @Value("${vthreadmq.blob.reclaim-grace-ms:60000}")
+    private long reclaimGraceMs;
+
+    private Path directory;
+
+    // Current segment; writes are serialized on this service
+    private FileChannel active;
+    private long activeSegment;
+    private long activeSize;
+
+    // Map of segment -> read-only mapping of the file, remapped when the active segment grows
+    private final ConcurrentHashMap<Long, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    private final AtomicLong storedBytes = new AtomicLong();
+    private ScheduledExecutorService reclaimExecutor;
+    private Counter offloadedMessages;
+    private Counter reclaimedSegments;
+
+    @PostConstruct
+    public void init() throws IOException {
+        // Blobs written before the store was disabled stay readable
+        directory = Path.of(path);
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+
+        long last = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                last = Math.max(last, segmentOf(file));
+                storedBytes.addAndGet(Files.size(file));
+            }
+        }
+        // Never append after a tail that a crash may have left half written
+        activeSegment = last + 1;
+
+        offloadedMessages = Counter.builder("vthreadmq_blob_offloaded_total")
+            .description("Messages whose content was stored in a blob segment")
+            .register(meterRegistry);
+
+        reclaimedSegments = Counter.builder("vthreadmq_blob_segments_reclaimed_total")
+            .description("Blob segments deleted after their messages were removed")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_blob_stored_bytes", storedBytes, AtomicLong::get)
+            .description("Bytes held in blob segment files")
+            .register(meterRegistry);
+
+        reclaimExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-blob-reclaim");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reclaimExecutor.scheduleWithFixedDelay(this::reclaim, reclaimIntervalMs, reclaimIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Blob store at {} for payloads over {} bytes", directory, thresholdBytes);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        if (reclaimExecutor != null) {
+            reclaimExecutor.shutdown();
+        }
+        if (active != null) {
+            active.close();
+        }
+    }
+
+    /**
+     * Move the content of a large message into a blob segment, leaving the reference in the
+     * message. Small messages, and everything when the store is disabled, pass through.
+     */
+    public Mono<Message> offload(Message message) {
+        String content = message.getContent();
+        // UTF-8 needs at most 3 bytes per char, so shorter strings are below the threshold
+        if (!enabled || message.getBlobRef() != null || content == null || (long) content.length() * 3 <= thresholdBytes) {
+            return Mono.just(message);
+        }
+        return Mono.fromCallable(() -> {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length <= thresholdBytes) {
+                return message;
+            }
+            message.setBlobRef(append(bytes));
+            message.setContent("");
+            offloadedMessages.increment();
+            return message;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * The payload of an offloaded message as a read-only slice of its mapped segment.
+     */
+    public ByteBuffer read(String blobRef) {
+        String[] parts = blobRef.split(":");
+        long segment = Long.parseLong(parts[0]);
+        int position = Integer.parseInt(parts[1]);
+        int length = Integer.parseInt(parts[2]);
+
+        MappedByteBuffer mapping = mappings.compute(segment, (k, existing) ->
+            existing != null && existing.capacity() >= position + length ? existing : map(segment));
+        if (mapping.capacity() < position + length) {
+            throw new IllegalStateException("Blob " + blobRef + " is past the end of its segment");
+        }
+        return mapping.slice(position, length);
+    }
+
+    /**
+     * A copy of the message with its content read back from the blob store, for code that needs
+     * the content itself: handlers, plugins and replication.
+     */
+    public Message inline(Message message) {
+        if (message.getBlobRef() == null) {
+            return message;
+        }
+        return message.toBuilder()
+            .content(StandardCharsets.UTF_8.decode(read(message.getBlobRef())).toString())
+            .blobRef(null)
+            .build();
+    }
+
+    private synchronized String append(byte[] bytes) throws IOException {
+        if (bytes.length > segmentBytes) {
+            throw new IllegalArgumentException("Payload of " + bytes.length + " bytes exceeds the blob segment size");
+        }
+        if (active == null || activeSize + bytes.length > segmentBytes) {
+            roll();
+        }
+        long position = activeSize;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            active.write(buffer, position + buffer.position());
+        }
+        // The row that references the blob is committed right after; the bytes must be there first
+        active.force(false);
+        activeSize += bytes.length;
+        storedBytes.addAndGet(bytes.length);
+        return activeSegment + ":" + position + ":" + bytes.length;
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            active.close();
+            activeSegment++;
+        }
+        active = FileChannel.open(fileOf(activeSegment),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        activeSize = 0;
+    }
+
+    private MappedByteBuffer map(long segment) {
+        try (FileChannel channel = FileChannel.open(fileOf(segment), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map blob segment " + segment, e);
+        }
+    }
+
+    private void reclaim() {
+        try {
+            Set<Long> referenced = new HashSet<>(messageRepository.findReferencedBlobSegments().collectList().block());
+            long current;
+            synchronized (this) {
+                current = active != null ? activeSegment : Long.MAX_VALUE;
+            }
+            long cutoff = System.currentTimeMillis() - reclaimGraceMs;
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    long segment = segmentOf(file);
+                    if (segment >= current || referenced.contains(segment)
+                            || Files.getLastModifiedTime(file).toMillis() > cutoff) {
+                        continue;
+                    }
+                    long size = Files.size(file);
+                    // Readers holding a slice keep the unlinked file mapped until they are done
+                    mappings.remove(segment);
+                    Files.delete(file);
+                    storedBytes.addAndGet(-size);
+                    reclaimedSegments.increment();
+                    log.debug("Reclaimed blob segment {} ({} bytes)", segment, size);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Blob reclaim failed: {}", e.getMessage());
+        }
+    }
+
+    private Path fileOf(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SUFFIX));
+    }
+
+    private static long segmentOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
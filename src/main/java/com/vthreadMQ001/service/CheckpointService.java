@@ -0,0 +1,311 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.ConsumerCursor;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.repository.BrokerState;
+import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic binary checkpoint of the in-memory broker state, used for fast restarts.
+ *
+ * A checkpoint holds the per-topic head offsets and stats, the last seq, the committed cursors
+ * and the scheduled-message horizon. On boot the checkpoint is loaded and only messages with a
+ * higher seq and cursors committed after it are read back, instead of aggregating the whole
+ * messages table. A missing or corrupt checkpoint falls back to the full rebuild.
+ *
+ * File layout (big-endian): magic "VMQC", version, clean-shutdown flag, created-at millis, last
+ * seq, scheduled horizon, topics (name, head offset, message count, last produced millis),
+ * cursors (group, topic, offset), then a CRC32 of everything before it.
+ */
+@Service
+@DependsOn("dataSourceInitializer")
+@RequiredArgsConstructor
+@Slf4j
+public class CheckpointService {
+
+    private static final int MAGIC = 0x564D5143; // "VMQC"
+    private static final short VERSION = 1;
+
+    private final BrokerState brokerState;
+    private final MessageRepository messageRepository;
+    private final ConsumerCursorRepository cursorRepository;
+    private final OffsetAckTracker ackTracker;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.checkpoint.enabled:true}")
+    private boolean enabled;
+
+    @Value("${vthreadmq.checkpoint.path:${vthreadmq.database.path:data/vthreadmq.db}.checkpoint}")
+    private String path;
+
+    @Value("${vthreadmq.checkpoint.interval-ms:60000}")
+    private long intervalMs;
+
+    private ScheduledExecutorService checkpointExecutor;
+    private volatile double recoverySeconds;
+    private volatile double startupSeconds;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("vthreadmq_recovery_time_seconds", this, service -> service.recoverySeconds)
+            .description("Time spent restoring broker state at startup")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_startup_time_seconds", this, service -> service.startupSeconds)
+            .description("Time from JVM start until the application was ready")
+            .register(meterRegistry);
+
+        recover();
+
+        if (enabled) {
+            // Write one right away, so the next start is fast even if this one was a full rebuild
+            checkpoint(false);
+            checkpointExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "vthreadmq-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpointExecutor.scheduleWithFixedDelay(() -> checkpoint(false), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (checkpointExecutor != null) {
+            checkpointExecutor.shutdown();
+            checkpoint(true);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        long startupMs = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        startupSeconds = startupMs / 1000.0;
+        log.info("VthreadMQ ready in {} ms (state recovery {} ms)", startupMs, Math.round(recoverySeconds * 1000));
+    }
+
+    private void recover() {
+        long start = System.nanoTime();
+        Checkpoint checkpoint = enabled ? read() : null;
+
+        // The max seq includes the high-water mark of deleted rows, so purging the newest messages
+        // does not make the database look older than the checkpoint
+        long maxSeq = messageRepository.getMaxSeq().block();
+        Checkpoint floor = null;
+        if (checkpoint != null && checkpoint.lastSeq > maxSeq) {
+            // The database is older than the checkpoint (restored or replaced): take the messages
+            // from the database, but never hand out the offsets and seqs the checkpoint had reached
+            log.warn("Checkpoint {} is ahead of the database, rebuilding state from the database", path);
+            floor = checkpoint;
+            checkpoint = null;
+        }
+        long fromSeq = checkpoint != null ? checkpoint.lastSeq : 0L;
+
+        // Hold the state lock while replaying so no insert lands between the scan and the restore
+        List<TopicHead> replayed;
+        synchronized (brokerState) {
+            replayed = messageRepository.findTopicHeadsSince(fromSeq).collectList().block();
+            long lastSeq = Math.max(fromSeq, messageRepository.getMaxSeq().block());
+            if (floor != null) {
+                lastSeq = Math.max(lastSeq, floor.lastSeq);
+            }
+            brokerState.restore(checkpoint != null ? checkpoint.topics : List.of(), replayed, lastSeq);
+            if (floor != null) {
+                brokerState.raiseHeadOffsets(floor.topics);
+            }
+        }
+
+        // Cursors from the checkpoint, overridden by any committed after it was taken
+        Map<String, ConsumerCursor> cursors = new LinkedHashMap<>();
+        if (checkpoint != null) {
+            checkpoint.cursors.forEach(cursor -> cursors.put(cursor.getConsumerGroup() + ":" + cursor.getTopic(), cursor));
+        }
+        Instant cursorsSince = checkpoint != null ? Instant.ofEpochMilli(checkpoint.createdAt) : Instant.EPOCH;
+        List<ConsumerCursor> newer = cursorRepository.findCommittedSince(cursorsSince).collectList().block();
+        newer.forEach(cursor -> cursors.put(cursor.getConsumerGroup() + ":" + cursor.getTopic(), cursor));
+        ackTracker.preload(cursors.values());
+
+        // Only a checkpoint written at shutdown has an exact horizon; otherwise retries may have
+        // been scheduled after it, so poll once right away and let the poll recompute it
+        if (checkpoint == null || !checkpoint.clean) {
+            brokerState.noteScheduled(Instant.now());
+        } else if (checkpoint.scheduledHorizon != Long.MAX_VALUE) {
+            brokerState.noteScheduled(Instant.ofEpochMilli(checkpoint.scheduledHorizon));
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        recoverySeconds = elapsedMs / 1000.0;
+        long replayedRows = replayed.stream().mapToLong(TopicHead::getMessageCount).sum();
+        if (checkpoint != null) {
+            log.info("Recovered state from checkpoint at seq {} ({} topics, {} cursors), replayed {} messages and {} cursors in {} ms",
+                checkpoint.lastSeq, checkpoint.topics.size(), checkpoint.cursors.size(), replayedRows, newer.size(), elapsedMs);
+        } else {
+            log.info("Rebuilt state from the database ({} topics, {} messages, {} cursors) in {} ms",
+                replayed.size(), replayedRows, newer.size(), elapsedMs);
+        }
+    }
+
+    private void checkpoint(boolean clean) {
+        try {
+            long createdAt = System.currentTimeMillis();
+            List<TopicHead> topics;
+            long lastSeq;
+            synchronized (brokerState) {
+                topics = brokerState.getTopics();
+                lastSeq = brokerState.getLastSeq();
+            }
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.clean = clean;
+            checkpoint.createdAt = createdAt;
+            checkpoint.lastSeq = lastSeq;
+            checkpoint.scheduledHorizon = brokerState.getScheduledHorizon();
+            checkpoint.topics.addAll(topics);
+            checkpoint.cursors.addAll(cursorRepository.findAll().collectList().block());
+
+            // Write beside the old checkpoint and swap, so a crash mid-write keeps the previous one
+            Path target = Path.of(path);
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                out.write(encode(checkpoint));
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Checkpoint written at seq {} ({} topics, {} cursors)", lastSeq, topics.size(), checkpoint.cursors.size());
+        } catch (Exception e) {
+            log.error("Failed to write checkpoint {}: {}", path, e.getMessage());
+        }
+    }
+
+    private Checkpoint read() {
+        Path file = Path.of(path);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return decode(Files.readAllBytes(file));
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable checkpoint {} ({}), rebuilding state from the database", path, e.getMessage());
+            return null;
+        }
+    }
+
+    static byte[] encode(Checkpoint checkpoint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + checkpoint.topics.size() * 48 + checkpoint.cursors.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeBoolean(checkpoint.clean);
+            out.writeLong(checkpoint.createdAt);
+            out.writeLong(checkpoint.lastSeq);
+            out.writeLong(checkpoint.scheduledHorizon);
+            out.writeInt(checkpoint.topics.size());
+            for (TopicHead head : checkpoint.topics) {
+                out.writeUTF(head.getTopic());
+                out.writeLong(head.getHeadOffset());
+                out.writeLong(head.getMessageCount());
+                out.writeLong(head.getLastProducedAt() != null ? head.getLastProducedAt().toEpochMilli() : 0L);
+            }
+            out.writeInt(checkpoint.cursors.size());
+            for (ConsumerCursor cursor : checkpoint.cursors) {
+                out.writeUTF(cursor.getConsumerGroup());
+                out.writeUTF(cursor.getTopic());
+                out.writeLong(cursor.getOffset());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    static Checkpoint decode(byte[] data) throws IOException {
+        if (data.length < Long.BYTES) {
+            throw new IOException("truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - Long.BYTES);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("unknown format");
+            }
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.clean = in.readBoolean();
+            checkpoint.createdAt = in.readLong();
+            checkpoint.lastSeq = in.readLong();
+            checkpoint.scheduledHorizon = in.readLong();
+            int topicCount = in.readInt();
+            for (int i = 0; i < topicCount; i++) {
+                String topic = in.readUTF();
+                long headOffset = in.readLong();
+                long messageCount = in.readLong();
+                long lastProducedAt = in.readLong();
+                checkpoint.topics.add(TopicHead.builder()
+                    .topic(topic)
+                    .headOffset(headOffset)
+                    .messageCount(messageCount)
+                    .lastProducedAt(lastProducedAt > 0 ? Instant.ofEpochMilli(lastProducedAt) : null)
+                    .build());
+            }
+            int cursorCount = in.readInt();
+            for (int i = 0; i < cursorCount; i++) {
+                String consumerGroup = in.readUTF();
+                String topic = in.readUTF();
+                long offset = in.readLong();
+                checkpoint.cursors.add(ConsumerCursor.builder()
+                    .consumerGroup(consumerGroup)
+                    .topic(topic)
+                    .offset(offset)
+                    .build());
+            }
+            if (in.readLong() != crc.getValue()) {
+                throw new IOException("checksum mismatch");
+            }
+            return checkpoint;
+        }
+    }
+
+    static class Checkpoint {
+        boolean clean;
+        long createdAt;
+        long lastSeq;
+        long scheduledHorizon;
+        final List<TopicHead> topics = new ArrayList<>();
+        final List<ConsumerCursor> cursors = new ArrayList<>();
+    }
+}
@@ -0,0 +1,14 @@
+package com.vthreadMQ001.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * The node owning a topic could not be reached while forwarding a request to it (503).
+ */
+public class ClusterRoutingException extends ResponseStatusException {
+
+    public ClusterRoutingException(String owner, Throwable cause) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Owner node " + owner + " is unreachable", cause);
+    }
+}
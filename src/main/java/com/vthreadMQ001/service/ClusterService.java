@@ -0,0 +1,342 @@
+package com.vthreadMQ001.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Static cluster membership and topic routing.
+ *
+ * With {@code vthreadmq.cluster.enabled=true} every topic is owned by exactly one member, chosen
+ * by consistent hashing of the topic name over {@code vthreadmq.cluster.members}. Requests for a
+ * topic owned by another member are either proxied to it over a pooled connection
+ * ({@code mode: forward}) or answered with a 307 pointing at it ({@code mode: redirect}).
+ * Forwarded requests are marked so the receiving node always serves them locally, even if its
+ * member list disagrees, instead of bouncing them on. The mark is only trusted from a member:
+ * with {@code vthreadmq.cluster.secret} set it carries an HMAC of the sender, time and request
+ * target, otherwise the request must come from one of the members' addresses. An untrusted mark
+ * is ignored and the request routed like any other.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterService {
+
+    public static final String FORWARDED_HEADER = "X-VthreadMQ-Forwarded-By";
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${vthreadmq.cluster.self:http://localhost:${server.port:8080}}")
+    private String self;
+
+    @Value("${vthreadmq.cluster.members:}")
+    private String members;
+
+    @Value("${vthreadmq.cluster.virtual-nodes:128}")
+    private int virtualNodes;
+
+    @Value("${vthreadmq.cluster.mode:forward}")
+    private String mode;
+
+    @Value("${vthreadmq.cluster.max-connections-per-member:64}")
+    private int maxConnections;
+
+    @Value("${vthreadmq.cluster.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${vthreadmq.cluster.secret:}")
+    private String secret;
+
+    @Value("${vthreadmq.cluster.forward-max-age-ms:30000}")
+    private long forwardMaxAgeMs;
+
+    private ConsistentHashRing ring;
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+    private SecretKeySpec forwardKey;
+    private final Set<InetAddress> memberAddresses = new HashSet<>();
+    private final ConcurrentHashMap<String, Counter> routedCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        List<String> memberList = Arrays.stream(members.split(","))
+            .map(String::trim)
+            .filter(member -> !member.isEmpty())
+            .map(this::normalize)
+            .distinct()
+            .toList();
+        self = normalize(self);
+        if (!memberList.contains(self)) {
+            throw new IllegalStateException("vthreadmq.cluster.self " + self + " is not one of the members " + memberList);
+        }
+        ring = new ConsistentHashRing(memberList, virtualNodes);
+
+        if (!secret.isBlank()) {
+            forwardKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        } else {
+            for (String member : memberList) {
+                String host = URI.create(member).getHost();
+                try {
+                    memberAddresses.addAll(Arrays.asList(InetAddress.getAllByName(host)));
+                } catch (UnknownHostException e) {
+                    log.warn("Cannot resolve cluster member {}; requests it forwards will be routed again", member);
+                }
+            }
+            log.warn("vthreadmq.cluster.secret is not set; forwarded requests are trusted by source address only");
+        }
+
+        // One pool keyed by remote address, so each member gets up to maxConnections kept-alive connections
+        connectionProvider = ConnectionProvider.builder("vthreadmq-cluster")
+            .maxConnections(maxConnections)
+            .pendingAcquireTimeout(Duration.ofMillis(connectTimeoutMs))
+            .maxIdleTime(Duration.ofSeconds(30))
+            .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs);
+        webClient = webClientBuilder.clone()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+
+        log.info("Cluster mode enabled as {} with members {} ({} routing)", self, memberList, mode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public String ownerOf(String topic) {
+        return enabled ? ring.ownerOf(topic) : self;
+    }
+
+    /**
+     * The member a request for {@code topic} must be sent to, or null if this node serves it.
+     */
+    public String remoteOwner(String topic, ServerWebExchange exchange) {
+        if (!enabled || isForwardedByMember(exchange.getRequest())) {
+            return null;
+        }
+        String owner = ring.ownerOf(topic);
+        return owner.equals(self) ? null : owner;
+    }
+
+    /**
+     * Whether the request was forwarded by another member, as opposed to a client setting the
+     * forwarded header itself.
+     */
+    boolean isForwardedByMember(ServerHttpRequest request) {
+        String forwardedBy = request.getHeaders().getFirst(FORWARDED_HEADER);
+        if (forwardedBy == null) {
+            return false;
+        }
+        if (forwardKey == null) {
+            InetSocketAddress remote = request.getRemoteAddress();
+            boolean trusted = remote != null && memberAddresses.contains(remote.getAddress());
+            if (!trusted) {
+                log.debug("Ignoring {} header from non-member address {}", FORWARDED_HEADER, remote);
+            }
+            return trusted;
+        }
+
+        // "<member> <epoch millis> <hex HMAC>"
+        String[] parts = forwardedBy.split(" ");
+        if (parts.length != 3 || !ring.getMembers().contains(parts[0])) {
+            log.debug("Ignoring malformed {} header", FORWARDED_HEADER);
+            return false;
+        }
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed {} header", FORWARDED_HEADER);
+            return false;
+        }
+        if (Math.abs(System.currentTimeMillis() - sentAt) > forwardMaxAgeMs) {
+            log.debug("Ignoring expired {} header from {}", FORWARDED_HEADER, parts[0]);
+            return false;
+        }
+        String expected = HexFormat.of().formatHex(sign(parts[0], sentAt, request.getMethod(), request.getURI()));
+        boolean trusted = MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII), parts[2].getBytes(StandardCharsets.US_ASCII));
+        if (!trusted) {
+            log.debug("Ignoring {} header with a bad signature from {}", FORWARDED_HEADER, parts[0]);
+        }
+        return trusted;
+    }
+
+    String forwardedBy(HttpMethod method, URI target) {
+        if (forwardKey == null) {
+            return self;
+        }
+        long now = System.currentTimeMillis();
+        return self + " " + now + " " + HexFormat.of().formatHex(sign(self, now, method, target));
+    }
+
+    // The signature covers sender, time, method, path and query; bodies are re-encoded on the way
+    private byte[] sign(String member, long sentAt, HttpMethod method, URI target) {
+        String query = target.getRawQuery();
+        String signed = member + "\n" + sentAt + "\n" + method.name() + "\n" + target.getRawPath() + (query != null ? "?" + query : "");
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(forwardKey);
+            return mac.doFinal(signed.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign forwarded request", e);
+        }
+    }
+
+    /**
+     * Send the current request to {@code owner} and relay its response, or redirect to it.
+     * {@code body} is the already-parsed request body and is re-sent as JSON; GETs carry none.
+     */
+    public <T> Mono<ResponseEntity<T>> route(String owner, ServerWebExchange exchange, Object body, Class<T> responseType) {
+        ServerHttpRequest request = exchange.getRequest();
+        URI target = targetUri(owner, request);
+        if (isRedirect()) {
+            routed(owner, "redirect").increment();
+            return Mono.just(ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT).location(target).<T>build());
+        }
+
+        routed(owner, "forward").increment();
+        return forwardSpec(request, target, body)
+            .exchangeToMono(response -> response.toEntity(responseType)
+                .map(entity -> {
+                    // Relay status, body and Retry-After; hop-by-hop and length headers are recomputed here
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.status(entity.getStatusCode());
+                    String retryAfter = entity.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+                    if (retryAfter != null) {
+                        builder.header(HttpHeaders.RETRY_AFTER, retryAfter);
+                    }
+                    return builder.body(entity.getBody());
+                }))
+            .onErrorMap(WebClientRequestException.class, error -> new ClusterRoutingException(owner, error));
+    }
+
+    /**
+     * Streaming variant of {@link #route} for endpoints returning a list of elements.
+     */
+    public <T> Flux<T> routeMany(String owner, ServerWebExchange exchange, Object body, Class<T> elementType) {
+        ServerHttpRequest request = exchange.getRequest();
+        URI target = targetUri(owner, request);
+        if (isRedirect()) {
+            routed(owner, "redirect").increment();
+            exchange.getResponse().setStatusCode(HttpStatus.TEMPORARY_REDIRECT);
+            exchange.getResponse().getHeaders().setLocation(target);
+            return Flux.empty();
+        }
+
+        routed(owner, "forward").increment();
+        return forwardSpec(request, target, body)
+            .retrieve()
+            .bodyToFlux(elementType)
+            .onErrorMap(WebClientResponseException.class,
+                error -> new ResponseStatusException(error.getStatusCode(), error.getResponseBodyAsString()))
+            .onErrorMap(WebClientRequestException.class, error -> new ClusterRoutingException(owner, error));
+    }
+
+    public Map<String, Object> describe() {
+        if (!enabled) {
+            return Map.of("enabled", false, "self", self);
+        }
+        return Map.of(
+            "enabled", true,
+            "self", self,
+            "mode", mode,
+            "virtualNodes", ring.getVirtualNodes(),
+            "members", ring.getMembers(),
+            "ownership", ring.ownership()
+        );
+    }
+
+    private WebClient.RequestHeadersSpec<?> forwardSpec(ServerHttpRequest request, URI target, Object body) {
+        HttpMethod method = request.getMethod();
+        WebClient.RequestBodySpec spec = webClient.method(method)
+            .uri(target)
+            .header(FORWARDED_HEADER, forwardedBy(method, target));
+        String clientId = request.getHeaders().getFirst(CLIENT_ID_HEADER);
+        if (clientId != null) {
+            // Quotas are enforced by the owner, under the original client's id
+            spec = spec.header(CLIENT_ID_HEADER, clientId);
+        }
+        return body != null && method != HttpMethod.GET ? spec.bodyValue(body) : spec;
+    }
+
+    private URI targetUri(String owner, ServerHttpRequest request) {
+        URI uri = request.getURI();
+        String query = uri.getRawQuery();
+        return URI.create(owner + uri.getRawPath() + (query != null ? "?" + query : ""));
+    }
+
+    private boolean isRedirect() {
+        return "redirect".equalsIgnoreCase(mode);
+    }
+
+    private Counter routed(String owner, String how) {
+        return routedCounters.computeIfAbsent(owner + ":" + how, key -> Counter.builder("vthreadmq_cluster_routed_requests_total")
+            .description("Requests for topics owned by another member, by owner and routing mode")
+            .tag("owner", owner)
+            .tag("mode", how)
+            .register(meterRegistry));
+    }
+
+    private String normalize(String member) {
+        return member.endsWith("/") ? member.substring(0, member.length() - 1) : member;
+    }
+}
@@ -0,0 +1,141 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Key-based compaction of changelog topics.
+ *
+ * On the topics listed in {@code vthreadmq.compaction.topics} only the latest message per key is
+ * kept. The compactor walks each topic forward from where it last stopped, one window of
+ * {@code batch-size} offsets per transaction, and every keyed message in the window deletes the
+ * older messages with the same key. Messages younger than {@code min-lag-ms} are not compacted
+ * yet, so consumers that keep up still see every update. Tombstones (a key without content) are
+ * removed once they are older than {@code tombstone-retention-ms}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CompactionService {
+
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.compaction.topics:}")
+    private String topics;
+
+    @Value("${vthreadmq.compaction.interval-ms:10000}")
+    private long intervalMs;
+
+    @Value("${vthreadmq.compaction.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${vthreadmq.compaction.max-batches-per-run:10}")
+    private int maxBatchesPerRun;
+
+    @Value("${vthreadmq.compaction.min-lag-ms:60000}")
+    private long minLagMs;
+
+    @Value("${vthreadmq.compaction.tombstone-retention-ms:86400000}")
+    private long tombstoneRetentionMs;
+
+    private Set<String> compactedTopics = Set.of();
+    private final ConcurrentHashMap<String, Counter> removedCounters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService compactionExecutor;
+
+    @PostConstruct
+    public void init() {
+        compactedTopics = Arrays.stream(topics.split(","))
+            .map(String::trim)
+            .filter(topic -> !topic.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+        if (compactedTopics.isEmpty()) {
+            return;
+        }
+
+        compactionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionExecutor.scheduleWithFixedDelay(this::compactAll, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("Compacting topics {}", compactedTopics);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+        }
+    }
+
+    private void compactAll() {
+        for (String topic : compactedTopics) {
+            try {
+                compact(topic);
+            } catch (Exception e) {
+                // Overload rejections included; the next run resumes from the stored position
+                log.warn("Failed to compact topic {}: {}", topic, e.getMessage());
+            }
+        }
+    }
+
+    private void compact(String topic) {
+        long cleaned = messageRepository.getCompactedThrough(topic).blockOptional().orElse(0L);
+        long head = messageRepository.getMaxOffset(topic).blockOptional().orElse(0L);
+        Instant lagCutoff = Instant.now().minusMillis(minLagMs);
+
+        int removed = 0;
+        for (int batch = 0; batch < maxBatchesPerRun && cleaned < head; batch++) {
+            long end = Math.min(cleaned + batchSize, head);
+            // Stop short of the first message still inside the lag window
+            Long young = messageRepository.findFirstOffsetAtOrAfter(topic, lagCutoff, cleaned + 1, end).block();
+            if (young != null) {
+                end = young - 1;
+            }
+            if (end <= cleaned) {
+                break;
+            }
+            removed += messageRepository.compactOffsetRange(topic, cleaned, end).blockOptional().orElse(0);
+            cleaned = end;
+            if (young != null) {
+                break;
+            }
+        }
+        if (removed > 0) {
+            removed(topic, "superseded").increment(removed);
+            log.debug("Compacted {} superseded messages from topic {} through offset {}", removed, topic, cleaned);
+        }
+
+        Instant tombstoneCutoff = Instant.now().minusMillis(tombstoneRetentionMs);
+        int tombstones = messageRepository.deleteTombstones(topic, cleaned, tombstoneCutoff, batchSize)
+            .blockOptional().orElse(0);
+        if (tombstones > 0) {
+            removed(topic, "tombstone").increment(tombstones);
+        }
+    }
+
+    private Counter removed(String topic, String reason) {
+        return removedCounters.computeIfAbsent(topic + ":" + reason, key -> Counter.builder("vthreadmq_compaction_removed_total")
+            .description("Messages removed by key compaction")
+            .tag("topic", topic)
+            .tag("reason", reason)
+            .register(meterRegistry));
+    }
+}
@@ -0,0 +1,91 @@
+package com.vthreadMQ001.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring over a fixed member list.
+ *
+ * Each member is placed on the ring at {@code virtualNodes} points; a key belongs to the first
+ * point at or after its hash, wrapping around. Adding or removing a member only moves the keys
+ * between its points and their predecessors, about 1/n of the key space.
+ */
+public class ConsistentHashRing {
+
+    private static final double RING_SIZE = Math.pow(2, 64);
+
+    private final List<String> members;
+    private final int virtualNodes;
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(List<String> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one member");
+        }
+        this.members = List.copyOf(members);
+        this.virtualNodes = virtualNodes;
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // A colliding point keeps its first owner, so the layout does not depend on map order
+                ring.putIfAbsent(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    public String ownerOf(String key) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public List<String> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * Fraction of the hash space owned by each member, in member order.
+     */
+    public Map<String, Double> ownership() {
+        Map<String, Double> shares = new LinkedHashMap<>();
+        members.forEach(member -> shares.put(member, 0.0));
+
+        long previous = ring.lastKey();
+        for (Map.Entry<Long, String> entry : ring.entrySet()) {
+            // Width of (previous, current] modulo 2^64, wrapping around for the first point
+            long delta = entry.getKey() - previous;
+            double width = delta == 0 ? RING_SIZE : unsigned(delta);
+            shares.merge(entry.getValue(), width / RING_SIZE, Double::sum);
+            previous = entry.getKey();
+        }
+        return shares;
+    }
+
+    private static double unsigned(long value) {
+        return value >= 0 ? value : value + RING_SIZE;
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, so that similar keys such as
+     * "orders-1" and "orders-2" land far apart on the ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
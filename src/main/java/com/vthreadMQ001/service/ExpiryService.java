@@ -0,0 +1,94 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.PurgeResult;
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes messages past their expiry time.
+ *
+ * Reads already skip expired messages in SQL, so purging is only about disk space and can be
+ * lazy: every purge interval it deletes at most {@code max-batches-per-run} batches of
+ * {@code batch-size} rows, leaving the rest for the next run instead of holding the database.
+ * Messages deleted before they were ever delivered are counted per topic.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExpiryService {
+
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.ttl.purge-interval-ms:5000}")
+    private long purgeIntervalMs;
+
+    @Value("${vthreadmq.ttl.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${vthreadmq.ttl.max-batches-per-run:10}")
+    private int maxBatchesPerRun;
+
+    private final ConcurrentHashMap<String, Counter> expiredCounters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService purgeExecutor;
+
+    @PostConstruct
+    public void init() {
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeExecutor.scheduleWithFixedDelay(this::purge, purgeIntervalMs, purgeIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdown();
+        }
+    }
+
+    private void purge() {
+        try {
+            int deleted = 0;
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                PurgeResult result = messageRepository.deleteExpired(Instant.now(), batchSize).block();
+                if (result == null) {
+                    break;
+                }
+                deleted += result.getDeleted();
+                result.getExpiredByTopic().forEach((topic, count) -> expired(topic).increment(count));
+                if (result.getDeleted() < batchSize) {
+                    break;
+                }
+            }
+            if (deleted > 0) {
+                log.debug("Purged {} expired messages", deleted);
+            }
+        } catch (Exception e) {
+            // Overload rejections included; the next run picks up where this one stopped
+            log.warn("Failed to purge expired messages: {}", e.getMessage());
+        }
+    }
+
+    private Counter expired(String topic) {
+        return expiredCounters.computeIfAbsent(topic, t -> Counter.builder("vthreadmq_messages_expired_total")
+            .description("Messages that expired before they were delivered")
+            .tag("topic", t)
+            .register(meterRegistry));
+    }
+}
@@ -0,0 +1,151 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.dto.ConsumeMessageRequest;
+import com.vthreadMQ001.handler.MessageHandlerRegistry;
+import com.vthreadMQ001.model.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-driven consumption for registered {@link com.vthreadMQ001.handler.MessageHandler}s.
+ *
+ * Every (topic, consumer group) with a handler gets one virtual thread that fetches a batch,
+ * processes it to completion and repeats. The loop parks while the topic is idle and is woken
+ * by new messages on it, falling back to a poll interval for scheduled and retried messages.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HandlerConsumerLoopService implements MessageHandlerRegistry.Listener {
+
+    private final MessageQueueService messageQueueService;
+    private final MessageHandlerRegistry handlerRegistry;
+    private final NotificationService notificationService;
+    private final ReplicationFollowerService replicationFollower;
+
+    @Value("${vthreadmq.handlers.batch-size:10}")
+    private int batchSize;
+
+    @Value("${vthreadmq.handlers.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${vthreadmq.handlers.timeout-ms:30000}")
+    private long timeoutMs;
+
+    // Map of "topic:consumerGroup" -> running consume loop
+    private final ConcurrentHashMap<String, ConsumeLoop> loops = new ConcurrentHashMap<>();
+
+    // Map of topic -> consume loops to wake when a message is produced on it
+    private final ConcurrentHashMap<String, Set<ConsumeLoop>> topicLoops = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        handlerRegistry.addListener(this);
+        handlerRegistry.forEach(this::onRegistered);
+        notificationService.addMessageListener(this::onMessageAvailable);
+    }
+
+    @Override
+    public void onRegistered(String topic, String consumerGroup) {
+        if (replicationFollower.isFollower()) {
+            // Processing changes message state, which only the leader may do
+            return;
+        }
+        loops.computeIfAbsent(topic + ":" + consumerGroup, key -> {
+            ConsumeLoop loop = new ConsumeLoop(topic, consumerGroup);
+            topicLoops.computeIfAbsent(topic, k -> ConcurrentHashMap.newKeySet()).add(loop);
+            loop.thread = Thread.ofVirtual()
+                .name("vthreadmq-handler-" + topic + "-" + consumerGroup)
+                .start(() -> run(loop));
+            return loop;
+        });
+    }
+
+    @Override
+    public void onUnregistered(String topic, String consumerGroup) {
+        ConsumeLoop loop = loops.remove(topic + ":" + consumerGroup);
+        if (loop != null) {
+            stop(loop);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loops.values().forEach(this::stop);
+        loops.clear();
+    }
+
+    private void onMessageAvailable(Message message) {
+        Set<ConsumeLoop> waiting = topicLoops.get(message.getTopic());
+        if (waiting != null) {
+            waiting.forEach(ConsumeLoop::wake);
+        }
+    }
+
+    private void run(ConsumeLoop loop) {
+        ConsumeMessageRequest request = ConsumeMessageRequest.builder()
+            .topic(loop.topic)
+            .consumerGroup(loop.consumerGroup)
+            .maxMessages(batchSize)
+            .timeoutMs(timeoutMs)
+            .build();
+
+        log.info("Started consume loop for topic {} group {}", loop.topic, loop.consumerGroup);
+        while (!loop.stopped) {
+            try {
+                int processed = messageQueueService.processNextBatch(request);
+                if (processed == 0) {
+                    loop.wakeup.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    loop.wakeup.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Consume loop for topic {} group {} failed: {}", loop.topic, loop.consumerGroup, e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+        log.info("Stopped consume loop for topic {} group {}", loop.topic, loop.consumerGroup);
+    }
+
+    private void stop(ConsumeLoop loop) {
+        loop.stopped = true;
+        topicLoops.computeIfPresent(loop.topic, (k, topicSet) -> {
+            topicSet.remove(loop);
+            return topicSet.isEmpty() ? null : topicSet;
+        });
+        if (loop.thread != null) {
+            loop.thread.interrupt();
+        }
+    }
+
+    private static class ConsumeLoop {
+        final String topic;
+        final String consumerGroup;
+        final Semaphore wakeup = new Semaphore(0);
+        volatile Thread thread;
+        volatile boolean stopped;
+
+        ConsumeLoop(String topic, String consumerGroup) {
+            this.topic = topic;
+            this.consumerGroup = consumerGroup;
+        }
+
+        void wake() {
+            wakeup.release();
+        }
+    }
+}
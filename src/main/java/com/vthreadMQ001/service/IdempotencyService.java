@@ -0,0 +1,301 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.IdempotencyKey;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.IdempotencyKeyRepository;
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Per-topic duplicate suppression for producer idempotency keys.
+ *
+ * Lookups go Bloom filter, then a bounded LRU of recent keys, then the persisted key table for
+ * the dedup window. A key the Bloom filter has never seen skips the other two, so the
+ * non-duplicate path costs a few hashes. Concurrent produces with the same key share a single
+ * in-flight write.
+ */
+@Service
+@DependsOn("dataSourceInitializer")
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    private final IdempotencyKeyRepository keyRepository;
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.idempotency.window-seconds:3600}")
+    private long windowSeconds;
+
+    @Value("${vthreadmq.idempotency.lru-capacity:10000}")
+    private int lruCapacity;
+
+    @Value("${vthreadmq.idempotency.bloom-expected-keys:100000}")
+    private int bloomExpectedKeys;
+
+    @Value("${vthreadmq.idempotency.bloom-false-positive-rate:0.01}")
+    private double bloomFalsePositiveRate;
+
+    // Map of topic -> dedup state
+    private final ConcurrentHashMap<String, TopicDedup> topics = new ConcurrentHashMap<>();
+
+    // Map of topic + key -> produce currently writing that key
+    private final ConcurrentHashMap<String, CompletableFuture<Message>> inFlight = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService maintenanceExecutor;
+    private Counter duplicates;
+    private Counter bloomNegatives;
+    private Counter storeLookups;
+
+    @PostConstruct
+    public void init() {
+        duplicates = Counter.builder("vthreadmq_produce_duplicates_total")
+            .description("Total number of produce requests suppressed as duplicates")
+            .register(meterRegistry);
+
+        bloomNegatives = Counter.builder("vthreadmq_idempotency_bloom_negatives_total")
+            .description("Idempotency lookups answered by the Bloom filter alone")
+            .register(meterRegistry);
+
+        storeLookups = Counter.builder("vthreadmq_idempotency_store_lookups_total")
+            .description("Idempotency lookups that fell through to the persisted key table")
+            .register(meterRegistry);
+
+        keyRepository.findCreatedAfter(windowStart())
+            .doOnNext(key -> dedup(key.getTopic()).bloom.current.put(key.getKey()))
+            .count()
+            .doOnSuccess(count -> log.info("Loaded {} idempotency keys for {} topics", count, topics.size()))
+            .doOnError(error -> log.error("Failed to load idempotency keys", error))
+            .onErrorResume(error -> Mono.empty())
+            .block();
+
+        // Rotate Bloom generations once per window; a key stays visible for at least one window
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-idempotency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.scheduleWithFixedDelay(this::rotate, windowSeconds, windowSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Produce through {@code produce} unless the key was already produced to the topic within the
+     * window, in which case the original message is returned and nothing is written.
+     * {@code produce} must persist the key together with the message (see
+     * {@link MessageRepository#save(Message, String)}); a produce that fails leaves no key behind,
+     * so a retry writes the message again, and one that succeeded is never written twice.
+     */
+    public Mono<Message> deduplicate(String topic, String key, Supplier<Mono<Message>> produce) {
+        return Mono.defer(() -> {
+            String claimKey = topic + '\u0000' + key;
+            CompletableFuture<Message> claim = new CompletableFuture<>();
+            CompletableFuture<Message> existing = inFlight.putIfAbsent(claimKey, claim);
+            if (existing != null) {
+                duplicates.increment();
+                return Mono.fromFuture(existing);
+            }
+
+            return lookup(topic, key)
+                .doOnNext(original -> duplicates.increment())
+                .switchIfEmpty(Mono.defer(produce::get)
+                    .doOnSuccess(message -> remember(topic, key, message)))
+                .doOnSuccess(claim::complete)
+                .doOnError(claim::completeExceptionally)
+                .doFinally(signal -> inFlight.remove(claimKey, claim));
+        });
+    }
+
+    private Mono<Message> lookup(String topic, String key) {
+        TopicDedup dedup = topics.get(topic);
+        if (dedup == null || !dedup.bloom.mightContain(key)) {
+            bloomNegatives.increment();
+            return Mono.empty();
+        }
+
+        IdempotencyKey cached = dedup.recent(key);
+        if (cached != null) {
+            return original(cached);
+        }
+
+        storeLookups.increment();
+        return keyRepository.find(topic, key, windowStart())
+            .doOnNext(dedup::remember)
+            .flatMap(this::original);
+    }
+
+    private Mono<Message> original(IdempotencyKey key) {
+        // The message may already be cleaned up; the offset alone still identifies it
+        return messageRepository.findById(key.getMessageId())
+            .defaultIfEmpty(Message.builder()
+                .id(key.getMessageId())
+                .topic(key.getTopic())
+                .offset(key.getOffset())
+                .createdAt(key.getCreatedAt())
+                .build());
+    }
+
+    private void remember(String topic, String key, Message message) {
+        IdempotencyKey entry = IdempotencyKey.builder()
+            .topic(topic)
+            .key(key)
+            .messageId(message.getId())
+            .offset(message.getOffset())
+            .createdAt(message.getCreatedAt() != null ? message.getCreatedAt() : Instant.now())
+            .build();
+
+        // Already persisted by the produce
+        TopicDedup dedup = dedup(topic);
+        dedup.bloom.current.put(key);
+        dedup.remember(entry);
+    }
+
+    private void rotate() {
+        try {
+            topics.values().forEach(dedup -> dedup.bloom.rotate());
+            keyRepository.deleteOlderThan(windowStart()).block();
+        } catch (Exception e) {
+            log.error("Error rotating idempotency window", e);
+        }
+    }
+
+    private TopicDedup dedup(String topic) {
+        return topics.computeIfAbsent(topic, k -> new TopicDedup());
+    }
+
+    private Instant windowStart() {
+        return Instant.now().minus(Duration.ofSeconds(windowSeconds));
+    }
+
+    private class TopicDedup {
+        final GenerationalBloomFilter bloom = new GenerationalBloomFilter(bloomExpectedKeys, bloomFalsePositiveRate);
+        private final LinkedHashMap<String, IdempotencyKey> lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyKey> eldest) {
+                return size() > lruCapacity;
+            }
+        };
+
+        synchronized IdempotencyKey recent(String key) {
+            IdempotencyKey entry = lru.get(key);
+            if (entry != null && entry.getCreatedAt().isBefore(windowStart())) {
+                lru.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        synchronized void remember(IdempotencyKey entry) {
+            lru.put(entry.getKey(), entry);
+        }
+    }
+
+    /**
+     * Two Bloom filter generations: keys are added to the current one and looked up in both.
+     * Rotating drops the previous generation, so keys age out without ever deleting bits.
+     */
+    static class GenerationalBloomFilter {
+        private final int expectedKeys;
+        private final double falsePositiveRate;
+        volatile BloomFilter current;
+        volatile BloomFilter previous;
+
+        GenerationalBloomFilter(int expectedKeys, double falsePositiveRate) {
+            this.expectedKeys = expectedKeys;
+            this.falsePositiveRate = falsePositiveRate;
+            this.current = new BloomFilter(expectedKeys, falsePositiveRate);
+        }
+
+        boolean mightContain(String key) {
+            BloomFilter older = previous;
+            return current.mightContain(key) || (older != null && older.mightContain(key));
+        }
+
+        void rotate() {
+            previous = current;
+            current = new BloomFilter(expectedKeys, falsePositiveRate);
+        }
+    }
+
+    static class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        BloomFilter(int expectedKeys, double falsePositiveRate) {
+            long m = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(64, m);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        }
+
+        void put(String key) {
+            long hash = hash64(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                do {
+                    current = bits.get(word);
+                    if ((current & mask) != 0) {
+                        break;
+                    }
+                } while (!bits.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash = hash64(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 64-bit FNV-1a over the UTF-8 bytes, split into two 32-bit hashes (Kirsch-Mitzenmacher)
+        private static long hash64(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+}
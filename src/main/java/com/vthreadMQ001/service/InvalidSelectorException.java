@@ -0,0 +1,14 @@
+package com.vthreadMQ001.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A consume request carried a header selector that does not parse (400).
+ */
+public class InvalidSelectorException extends ResponseStatusException {
+
+    public InvalidSelectorException(String reason) {
+        super(HttpStatus.BAD_REQUEST, reason);
+    }
+}
@@ -0,0 +1,239 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.selector.Selector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Log-style delivery for the topics listed in {@code vthreadmq.delivery.log-topics}.
+ *
+ * Messages on a log topic are never updated after they are written: there is no PROCESSING or
+ * COMPLETED status, so every consumer group reads every message and a group's progress lives
+ * only in its cursor. Each group has an in-memory read position above its committed offset so
+ * concurrent consumes of the same group hand out distinct messages; nacked and failed offsets
+ * are queued for redelivery to that group only. After a restart the position starts again from
+ * the committed offset, so un-acked messages are delivered again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LogDeliveryService {
+
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.delivery.log-topics:}")
+    private String logTopics;
+
+    private final TopicTrie<Boolean> topics = new TopicTrie<>();
+
+    // Map of "consumerGroup:topic" -> read position and redeliveries
+    private final ConcurrentHashMap<String, LogCursor> cursors = new ConcurrentHashMap<>();
+
+    private Counter redeliveries;
+    private Counter dropped;
+
+    @PostConstruct
+    public void init() {
+        for (String topic : logTopics.split(",")) {
+            if (!topic.isBlank()) {
+                topics.add(topic.trim(), Boolean.TRUE);
+            }
+        }
+
+        redeliveries = Counter.builder("vthreadmq_log_redeliveries_total")
+            .description("Log topic messages queued for redelivery to a consumer group")
+            .register(meterRegistry);
+
+        dropped = Counter.builder("vthreadmq_log_dropped_total")
+            .description("Log topic messages a consumer group skipped after exhausting retries")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_log_pending_redeliveries", cursors, c -> c.values().stream()
+                .mapToInt(LogCursor::pendingRedeliveries)
+                .sum())
+            .description("Log topic offsets waiting to be redelivered")
+            .register(meterRegistry);
+
+        if (!topics.isEmpty()) {
+            log.info("Log delivery enabled for topics {}", logTopics);
+        }
+    }
+
+    /**
+     * Whether the topic is delivered log-style; patterns in the configuration match as for consume.
+     */
+    public boolean isLogTopic(String topic) {
+        return !topics.isEmpty() && topics.hasMatch(topic);
+    }
+
+    /**
+     * Fetch the group's next messages: due redeliveries first, then new messages after its read
+     * position. {@code fromOffset} is the committed offset, or an explicit start when
+     * {@code seek} is set, which also drops pending redeliveries.
+     */
+    public Flux<Message> fetch(String topic, String consumerGroup, long fromOffset, boolean seek, Selector selector, int limit) {
+        LogCursor cursor = cursors.computeIfAbsent(key(consumerGroup, topic), k -> new LogCursor(fromOffset));
+        return Mono.fromCallable(() -> {
+            // One fetch per group and topic at a time, so no offset is handed out twice
+            synchronized (cursor) {
+                if (seek) {
+                    cursor.position = fromOffset;
+                    cursor.redeliver.clear();
+                    cursor.attempts.clear();
+                } else {
+                    // The committed offset passes the position after an explicit commit
+                    cursor.position = Math.max(cursor.position, fromOffset);
+                }
+
+                List<Message> batch = new ArrayList<>(limit);
+                List<Long> due = cursor.pollDue(System.currentTimeMillis(), limit);
+                try {
+                    if (!due.isEmpty()) {
+                        // Offsets that no longer exist (expired) are dropped; the gap check skips them
+                        messageRepository.findByTopicAndOffsetRange(topic, due.get(0), due.get(due.size() - 1))
+                            .filter(message -> due.contains(message.getOffset()))
+                            .filter(message -> selector == null || selector.matches(message))
+                            .doOnNext(batch::add)
+                            .blockLast();
+                    }
+                    if (batch.size() < limit) {
+                        List<Message> next = messageRepository.findByTopicAndStatusAndOffset(
+                                topic, Message.MessageStatus.PENDING, cursor.position, selector, limit - batch.size())
+                            .collectList()
+                            .block();
+                        if (next != null && !next.isEmpty()) {
+                            batch.addAll(next);
+                            cursor.position = next.get(next.size() - 1).getOffset();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    due.forEach(offset -> cursor.redeliver.putIfAbsent(offset, 0L));
+                    throw e;
+                }
+                return batch;
+            }
+        })
+        .subscribeOn(Schedulers.boundedElastic())
+        .flatMapMany(Flux::fromIterable);
+    }
+
+    /**
+     * Queue the inclusive range [from, to] for immediate redelivery to the group. Only offsets the
+     * group has already read are queued; the rest are read in order anyway.
+     */
+    public void redeliver(String consumerGroup, String topic, long from, long to) {
+        LogCursor cursor = cursors.get(key(consumerGroup, topic));
+        if (cursor == null) {
+            return;
+        }
+        int queued = 0;
+        synchronized (cursor) {
+            for (long offset = from; offset <= Math.min(to, cursor.position); offset++) {
+                cursor.redeliver.put(offset, 0L);
+                queued++;
+            }
+        }
+        redeliveries.increment(queued);
+    }
+
+    /**
+     * Record a failed delivery to the group. Returns true when the message is queued for another
+     * attempt after {@code backoffMs}, false when it has used up its retries and should be acked
+     * to skip it.
+     */
+    public boolean retry(String consumerGroup, Message message, long backoffMs) {
+        LogCursor cursor = cursors.get(key(consumerGroup, message.getTopic()));
+        if (cursor == null) {
+            return false;
+        }
+        synchronized (cursor) {
+            int attempt = cursor.attempts.merge(message.getOffset(), 1, Integer::sum);
+            if (attempt > message.getMaxRetries()) {
+                cursor.attempts.remove(message.getOffset());
+                dropped.increment();
+                return false;
+            }
+            cursor.redeliver.put(message.getOffset(), System.currentTimeMillis() + attempt * backoffMs);
+        }
+        redeliveries.increment();
+        return true;
+    }
+
+    /**
+     * Forget retry state of offsets the group has acked.
+     */
+    public void acked(String consumerGroup, String topic, long from, long to) {
+        LogCursor cursor = cursors.get(key(consumerGroup, topic));
+        if (cursor == null) {
+            return;
+        }
+        synchronized (cursor) {
+            if (!cursor.attempts.isEmpty()) {
+                cursor.attempts.keySet().removeIf(offset -> offset >= from && offset <= to);
+            }
+        }
+    }
+
+    private String key(String consumerGroup, String topic) {
+        return consumerGroup + ":" + topic;
+    }
+
+    private static class LogCursor {
+        // Highest offset handed out to the group
+        long position;
+        // Map of offset -> epoch millis it may be redelivered at
+        final TreeMap<Long, Long> redeliver = new TreeMap<>();
+        // Map of offset -> failed attempts by this group
+        final Map<Long, Integer> attempts = new HashMap<>();
+
+        LogCursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Remove and return due offsets in order, spanning at most {@code limit} offsets so the
+         * range read stays bounded.
+         */
+        List<Long> pollDue(long now, int limit) {
+            List<Long> due = new ArrayList<>();
+            Iterator<Map.Entry<Long, Long>> it = redeliver.entrySet().iterator();
+            while (it.hasNext() && due.size() < limit) {
+                Map.Entry<Long, Long> entry = it.next();
+                if (!due.isEmpty() && entry.getKey() - due.get(0) >= limit) {
+                    break;
+                }
+                if (entry.getValue() <= now) {
+                    due.add(entry.getKey());
+                    it.remove();
+                }
+            }
+            return due;
+        }
+
+        int pendingRedeliveries() {
+            synchronized (this) {
+                return redeliver.size();
+            }
+        }
+    }
+}
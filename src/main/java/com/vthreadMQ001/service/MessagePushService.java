@@ -0,0 +1,329 @@
+package com.vthreadMQ001.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.selector.Selector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket data plane: pushes full messages to subscribed sessions, bounded by the credits each
+ * client has granted. Deliveries stay in flight until the client acks them; un-acked deliveries
+ * are handed back to the queue when the session goes away.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessagePushService {
+
+    private final MessageRepository messageRepository;
+    private final MessageQueueService messageQueueService;
+    private final NotificationService notificationService;
+    private final OffsetAckTracker ackTracker;
+    private final SelectorService selectorService;
+    private final LogDeliveryService logDelivery;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.websocket.push.max-credits:512}")
+    private long maxCredits;
+
+    @Value("${vthreadmq.websocket.push.batch-size:100}")
+    private int batchSize;
+
+    @Value("${vthreadmq.websocket.outbound-queue-capacity:1024}")
+    private int outboundQueueCapacity;
+
+    // Map of session id -> push subscription (one per session)
+    private final ConcurrentHashMap<String, PushSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    // Map of topic -> push subscriptions waiting for messages on it
+    private final ConcurrentHashMap<String, Set<PushSubscription>> topicSubscriptions = new ConcurrentHashMap<>();
+
+    private Counter pushedMessages;
+
+    @PostConstruct
+    public void init() {
+        // Pushed messages are never dropped from a full outbound queue, so every credit must fit it
+        if (maxCredits > outboundQueueCapacity) {
+            throw new IllegalStateException("vthreadmq.websocket.push.max-credits (" + maxCredits
+                + ") exceeds vthreadmq.websocket.outbound-queue-capacity (" + outboundQueueCapacity + ")");
+        }
+
+        pushedMessages = Counter.builder("vthreadmq_messages_pushed_total")
+            .description("Total number of messages pushed over WebSocket")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_push_subscriptions", subscriptions, ConcurrentHashMap::size)
+            .description("Number of active WebSocket push subscriptions")
+            .register(meterRegistry);
+
+        notificationService.addMessageListener(this::onMessageAvailable);
+    }
+
+    /**
+     * Start pushing messages for the given topic and group, only those matching the selector if
+     * one is given. Returns the offset delivery starts after.
+     */
+    public Mono<Long> subscribe(WebSocketSession session, String topic, String consumerGroup, long credits, Long fromOffset,
+                                String selector) {
+        unsubscribe(session);
+
+        Mono<Long> startOffset = fromOffset != null
+            ? Mono.just(fromOffset)
+            : messageQueueService.getCommittedOffset(consumerGroup, topic);
+
+        return startOffset.map(position -> {
+            if (TopicTrie.isPattern(topic)) {
+                // Delivery tracks one offset position; patterns are for notifications and consume
+                throw new IllegalArgumentException("Push subscriptions take a single topic, not a pattern");
+            }
+            Selector compiled = selectorService.compile(selector);
+            ackTracker.holdSelector(consumerGroup, topic, compiled);
+            PushSubscription subscription = new PushSubscription(session, topic, consumerGroup, compiled,
+                logDelivery.isLogTopic(topic), position);
+            subscription.seek = fromOffset != null;
+            subscription.credits.set(Math.min(credits, maxCredits));
+
+            subscriptions.put(session.getId(), subscription);
+            topicSubscriptions.computeIfAbsent(topic, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+            log.debug("Session {} push-subscribed to topic {} group {} from offset {} with {} credits",
+                session.getId(), topic, consumerGroup, position, subscription.credits.get());
+
+            schedulePump(subscription);
+            return position;
+        });
+    }
+
+    public void addCredits(WebSocketSession session, long credits) {
+        PushSubscription subscription = subscriptions.get(session.getId());
+        if (subscription == null || credits <= 0) {
+            return;
+        }
+        // Outstanding credit is capped so pushes always fit the session's outbound queue
+        subscription.credits.updateAndGet(current -> Math.min(current + credits, maxCredits));
+        schedulePump(subscription);
+    }
+
+    public Mono<Void> ack(WebSocketSession session, List<Long> offsets) {
+        PushSubscription subscription = subscriptions.get(session.getId());
+        if (subscription == null) {
+            return Mono.error(new IllegalStateException("No active push subscription"));
+        }
+
+        List<Long> acked = new ArrayList<>();
+        for (Long offset : offsets) {
+            if (subscription.inFlight.remove(offset) != null) {
+                acked.add(offset);
+            }
+        }
+
+        // Completion and the cursor are written by the ack tracker's periodic flush
+        return ackTracker.ack(subscription.consumerGroup, subscription.topic, acked).then();
+    }
+
+    public Mono<Void> commit(WebSocketSession session, Long offset) {
+        PushSubscription subscription = subscriptions.get(session.getId());
+        if (subscription == null) {
+            return Mono.error(new IllegalStateException("No active push subscription"));
+        }
+        return messageQueueService.commitOffset(subscription.consumerGroup, subscription.topic, offset);
+    }
+
+    public void unsubscribe(WebSocketSession session) {
+        PushSubscription subscription = subscriptions.remove(session.getId());
+        if (subscription == null) {
+            return;
+        }
+
+        // After this, a delivery in progress hands back what it claimed instead of adding it
+        Map<Long, String> unacked;
+        synchronized (subscription) {
+            subscription.closed = true;
+            unacked = new HashMap<>(subscription.inFlight);
+            subscription.inFlight.clear();
+        }
+        ackTracker.releaseSelector(subscription.consumerGroup, subscription.topic, subscription.selector);
+        topicSubscriptions.computeIfPresent(subscription.topic, (k, topicSubs) -> {
+            topicSubs.remove(subscription);
+            return topicSubs.isEmpty() ? null : topicSubs;
+        });
+        handBack(subscription, unacked);
+
+        log.debug("Session {} push-unsubscribed from topic {}", session.getId(), subscription.topic);
+    }
+
+    /**
+     * Return deliveries to the queue so another consumer picks them up; log topic messages were
+     * never marked, so they go back to the group's redeliveries instead.
+     */
+    private void handBack(PushSubscription subscription, Map<Long, String> deliveries) {
+        if (subscription.logTopic) {
+            deliveries.keySet().forEach(offset ->
+                logDelivery.redeliver(subscription.consumerGroup, subscription.topic, offset, offset));
+        } else {
+            deliveries.values().forEach(id ->
+                messageRepository.updateStatus(id, Message.MessageStatus.PENDING).subscribe());
+        }
+    }
+
+    private void onMessageAvailable(Message message) {
+        Set<PushSubscription> topicSubs = topicSubscriptions.get(message.getTopic());
+        if (topicSubs == null) {
+            return;
+        }
+        for (PushSubscription subscription : topicSubs) {
+            if (subscription.credits.get() > 0) {
+                schedulePump(subscription);
+            }
+        }
+    }
+
+    private void schedulePump(PushSubscription subscription) {
+        // Only one pump per subscription runs at a time; extra wake-ups just re-run the loop
+        if (subscription.wip.getAndIncrement() == 0) {
+            Thread.ofVirtual().start(() -> pump(subscription));
+        }
+    }
+
+    private void pump(PushSubscription subscription) {
+        int missed = 1;
+        do {
+            try {
+                deliverAvailable(subscription);
+            } catch (Exception e) {
+                log.warn("Push delivery failed for session {}: {}", subscription.session.getId(), e.getMessage());
+            }
+            missed = subscription.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void deliverAvailable(PushSubscription subscription) throws JsonProcessingException {
+        while (!subscription.closed && subscription.credits.get() > 0) {
+            int limit = (int) Math.min(subscription.credits.get(), batchSize);
+            List<Message> batch = fetch(subscription, limit);
+
+            if (batch == null || batch.isEmpty()) {
+                return;
+            }
+
+            // Only the pump takes credits, so the whole batch fits them
+            List<Message> claimed = claim(subscription, batch);
+            synchronized (subscription) {
+                if (subscription.closed) {
+                    Map<Long, String> unsent = new HashMap<>();
+                    claimed.forEach(message -> unsent.put(message.getOffset(), message.getId()));
+                    handBack(subscription, unsent);
+                    return;
+                }
+                claimed.forEach(message -> subscription.inFlight.put(message.getOffset(), message.getId()));
+                subscription.position = batch.stream().mapToLong(Message::getOffset).max().orElseThrow();
+            }
+
+            for (Message message : claimed) {
+                subscription.credits.decrementAndGet();
+                if (!notificationService.sendDeliveryToSession(subscription.session,
+                        objectMapper.writeValueAsBytes(new PushedMessage("MESSAGE", message)))) {
+                    // Disconnected: everything in flight goes back when the session's cleanup unsubscribes
+                    return;
+                }
+                pushedMessages.increment();
+            }
+        }
+    }
+
+    private List<Message> fetch(PushSubscription subscription, int limit) {
+        if (!subscription.logTopic) {
+            return messageRepository.findByTopicAndStatusAndOffset(
+                    subscription.topic, Message.MessageStatus.PENDING, subscription.position, subscription.selector, limit)
+                .collectList()
+                .block();
+        }
+        // Through the group's log cursor, like consumes: redeliveries come first, and sessions
+        // and consumers of one group never get the same offset
+        boolean seek = subscription.seek;
+        subscription.seek = false;
+        long fromOffset = seek
+            ? subscription.position
+            : ackTracker.getCommittedOffset(subscription.consumerGroup, subscription.topic).block();
+        return logDelivery.fetch(subscription.topic, subscription.consumerGroup, fromOffset, seek, subscription.selector, limit)
+            .collectList()
+            .block();
+    }
+
+    /**
+     * The messages of {@code batch} this subscription now owns: log topic messages are never
+     * marked, others only if still PENDING, since a consume or another session may have taken
+     * them since the fetch.
+     */
+    private List<Message> claim(PushSubscription subscription, List<Message> batch) {
+        if (subscription.logTopic) {
+            return batch;
+        }
+        Set<String> claimedIds = messageRepository.claimPending(batch.stream().map(Message::getId).toList()).block();
+        List<Message> claimed = new ArrayList<>(batch.size());
+        for (Message message : batch) {
+            if (claimedIds != null && claimedIds.contains(message.getId())) {
+                message.setStatus(Message.MessageStatus.PROCESSING);
+                claimed.add(message);
+            }
+        }
+        return claimed;
+    }
+
+    private static class PushSubscription {
+        final WebSocketSession session;
+        final String topic;
+        final String consumerGroup;
+        final Selector selector;
+        final boolean logTopic;
+        final AtomicLong credits = new AtomicLong(0);
+        final AtomicInteger wip = new AtomicInteger(0);
+        // Map of offset -> message id for deliveries not yet acked; added to only while not closed
+        final ConcurrentHashMap<Long, String> inFlight = new ConcurrentHashMap<>();
+        volatile long position;
+        // Whether the next log topic fetch starts at position instead of the group's read position
+        volatile boolean seek;
+        // Set under the subscription's lock, which delivery holds while adding to inFlight
+        volatile boolean closed;
+
+        PushSubscription(WebSocketSession session, String topic, String consumerGroup, Selector selector, boolean logTopic,
+                         long position) {
+            this.session = session;
+            this.topic = topic;
+            this.consumerGroup = consumerGroup;
+            this.selector = selector;
+            this.logTopic = logTopic;
+            this.position = position;
+        }
+    }
+
+    public static class PushedMessage {
+        public String type;
+        public Message message;
+
+        public PushedMessage(String type, Message message) {
+            this.type = type;
+            this.message = message;
+        }
+    }
+}
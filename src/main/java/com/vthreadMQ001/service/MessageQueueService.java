@@ -1,49 +1,107 @@
 package com.vthreadMQ001.service;
 
+import com.vthreadMQ001.dto.AckRequest;
 import com.vthreadMQ001.dto.ConsumeMessageRequest;
 import com.vthreadMQ001.dto.ProduceMessageRequest;
+import com.vthreadMQ001.handler.HandlerContext;
+import com.vthreadMQ001.handler.MessageHandler;
+import com.vthreadMQ001.handler.MessageHandlerRegistry;
 import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.plugin.PluginDispatcher;
+import com.vthreadMQ001.plugin.PluginResult;
 import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.repository.BrokerState;
 import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.selector.Selector;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.StructuredTaskScope;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
+@DependsOn("checkpointService") // state is recovered before processing starts and checkpointed after it stops
 @RequiredArgsConstructor
 @Slf4j
 public class MessageQueueService {
 
+    private static final int BACKGROUND_WRITE_RETRIES = 5;
+    private static final int REQUEUE_BATCH_SIZE = 1000;
+
     private final MessageRepository messageRepository;
     private final ConsumerCursorRepository cursorRepository;
     private final MeterRegistry meterRegistry;
     private final NotificationService notificationService;
+    private final TimeIndexService timeIndexService;
+    private final PluginDispatcher pluginDispatcher;
+    private final MessageHandlerRegistry handlerRegistry;
+    private final OffsetAckTracker ackTracker;
+    private final IdempotencyService idempotencyService;
+    private final PriorityLaneScheduler laneScheduler;
+    private final BrokerState brokerState;
+    private final ReplicationLeaderService replicationLeader;
+    private final ReplicationFollowerService replicationFollower;
+    private final SelectorService selectorService;
+    private final LogDeliveryService logDelivery;
+    private final BlobStoreService blobStore;
+    
+    @Value("${vthreadmq.replication.min-acks:0}")
+    private int defaultAcks;
+    
+    // Linear retry backoff: attempt n waits n times this long
+    @Value("${vthreadmq.processing.retry-delay-seconds:60}")
+    private long retryDelaySeconds;
+    
+    @Value("${vthreadmq.cleanup.old-messages-retention-hours:24}")
+    private long retentionHours;
+    
+    @Value("${vthreadmq.cleanup.cleanup-interval-hours:6}")
+    private long cleanupIntervalHours;
+    
+    // Claimed messages not acked within this long go back to PENDING
+    @Value("${vthreadmq.processing.visibility-timeout-ms:300000}")
+    private long visibilityTimeoutMs;
     
     private final AtomicInteger activeVirtualThreads = new AtomicInteger(0);
     private final ConcurrentHashMap<String, AtomicInteger> topicWorkerCounts = new ConcurrentHashMap<>();
+    
+    // Map of "pattern:consumerGroup" -> round-robin start of the next pattern consume
+    private final ConcurrentHashMap<String, AtomicInteger> patternRotations = new ConcurrentHashMap<>();
     private ScheduledExecutorService scheduledExecutor;
     
     // Metrics
     private Counter producedMessages;
     private Counter consumedMessages;
     private Counter failedMessages;
+    private Counter deadlineExceededMessages;
     
     @PostConstruct
     public void init() {
@@ -60,6 +118,10 @@ public class MessageQueueService {
             .description("Total number of failed messages")
             .register(meterRegistry);
             
+        deadlineExceededMessages = Counter.builder("vthreadmq_messages_deadline_exceeded_total")
+            .description("Total number of messages whose processing exceeded the consume deadline")
+            .register(meterRegistry);
+            
         Gauge.builder("vthreadmq_active_virtual_threads", activeVirtualThreads, AtomicInteger::get)
             .description("Number of active virtual threads")
             .register(meterRegistry);
@@ -67,8 +129,10 @@ public class MessageQueueService {
         // Initialize scheduled executor for background tasks
         scheduledExecutor = Executors.newScheduledThreadPool(2);
         
-        // Start scheduled message processor
-        startScheduledMessageProcessor();
+        // Start scheduled message processor; followers take message state from the leader
+        if (!replicationFollower.isFollower()) {
+            startScheduledMessageProcessor();
+        }
         
         log.info("MessageQueueService initialized with virtual threads support");
     }
@@ -81,23 +145,54 @@ public class MessageQueueService {
     }
     
     public Mono<Message> produceMessage(ProduceMessageRequest request) {
+        String idempotencyKey = request.getIdempotencyKey() != null && !request.getIdempotencyKey().isBlank()
+            ? request.getIdempotencyKey()
+            : null;
+        Mono<Message> produced = idempotencyKey != null
+            ? idempotencyService.deduplicate(request.getTopic(), idempotencyKey, () -> writeMessage(request, idempotencyKey))
+            : writeMessage(request, null);
+        
+        // Semi-synchronous produces return once enough followers have applied the message
+        int acks = request.getAcks() != null ? request.getAcks() : defaultAcks;
+        return replicationFollower.requireWritable()
+            .then(produced)
+            .flatMap(message -> acks > 0 && message.getSeq() != null
+                ? replicationLeader.awaitAcks(message.getSeq(), acks).thenReturn(message)
+                : Mono.just(message));
+    }
+    
+    // A non-null idempotency key is persisted in the same transaction as the message
+    private Mono<Message> writeMessage(ProduceMessageRequest request, String idempotencyKey) {
         return Mono.fromCallable(() -> {
+            if (TopicTrie.isPattern(request.getTopic())) {
+                throw new IllegalArgumentException("Cannot produce to topic pattern " + request.getTopic());
+            }
+            if (logDelivery.isLogTopic(request.getTopic()) && determineInitialStatus(request) == Message.MessageStatus.SCHEDULED) {
+                // Scheduling changes the message's status, and log topic messages never change
+                throw new IllegalArgumentException("Delayed messages are not supported on log topic " + request.getTopic());
+            }
             Message message = Message.builder()
                 .topic(request.getTopic())
-                .content(request.getContent())
+                .content(request.isTombstone() ? "" : request.getContent())
                 .headers(request.getHeaders())
+                .key(request.getKey() != null && !request.getKey().isBlank() ? request.getKey() : null)
+                .tombstone(request.isTombstone())
                 .status(determineInitialStatus(request))
                 .scheduledAt(calculateScheduledTime(request))
+                .expiresAt(calculateExpiryTime(request))
                 .retryCount(0)
                 .maxRetries(request.getMaxRetries())
                 .consumerGroup(request.getConsumerGroup())
+                .priority(laneScheduler.laneFor(request.getPriority()))
                 .build();
                 
             return message;
         })
-        .flatMap(messageRepository::save)
+        .flatMap(blobStore::offload)
+        .flatMap(message -> messageRepository.save(message, idempotencyKey))
         .doOnSuccess(message -> {
             producedMessages.increment();
+            timeIndexService.record(message);
             log.debug("Produced message {} to topic {}", message.getId(), message.getTopic());
             
             // Notify consumers via WebSocket if message is immediately available
@@ -112,6 +207,12 @@ public class MessageQueueService {
     }
     
     public Flux<Message> consumeMessages(ConsumeMessageRequest request) {
+        if (TopicTrie.isPattern(request.getTopic())) {
+            return consumeMatching(request);
+        }
+        if (replicationFollower.isFollower()) {
+            return readOnlyConsume(request);
+        }
         String consumerId = UUID.randomUUID().toString();
         
         return Mono.fromCallable(() -> {
@@ -125,10 +226,12 @@ public class MessageQueueService {
             
             return consumerId;
         })
-        .flatMapMany(id -> getConsumerOffset(request.getConsumerGroup(), request.getTopic(), request.getFromOffset())
+        .flatMapMany(id -> getConsumerOffset(request)
             .flatMapMany(offset -> fetchMessages(request, offset))
             .take(request.getMaxMessages())
-            .flatMap(message -> processMessage(message, request.getConsumerGroup(), consumerId))
+            .collectList()
+            .flatMapMany(this::claim)
+            .doOnNext(message -> processMessage(message, request))
             .doOnComplete(() -> {
                 // Mark consumer as inactive
                 cursorRepository.updateActiveStatus(
@@ -140,13 +243,166 @@ public class MessageQueueService {
             }));
     }
     
+    /**
+     * Consume from every known topic matching a wildcard pattern such as {@code orders.*}. The
+     * batch is split evenly across the matching topics, starting one topic further on each call so
+     * small batches still reach all of them, and the share a topic cannot fill goes to the topics
+     * that filled theirs. Offsets stay per topic; messages are emitted round-robin across topics.
+     */
+    private Flux<Message> consumeMatching(ConsumeMessageRequest request) {
+        return Flux.defer(() -> {
+            List<String> topics = TopicTrie.filter(request.getTopic(), brokerState.getTopics().stream()
+                .map(TopicHead::getTopic)
+                .sorted()
+                .toList());
+            if (topics.isEmpty()) {
+                return Flux.empty();
+            }
+
+            int count = topics.size();
+            int maxMessages = request.getMaxMessages();
+            int start = Math.floorMod(patternRotations
+                .computeIfAbsent(request.getTopic() + ":" + request.getConsumerGroup(), k -> new AtomicInteger())
+                .getAndIncrement(), count);
+            int[] quotas = new int[count];
+            for (int i = 0; i < maxMessages; i++) {
+                quotas[(start + i) % count]++;
+            }
+
+            return Flux.range(0, count)
+                .flatMapSequential(i -> quotas[i] == 0
+                    ? Mono.just(List.<Message>of())
+                    : consumeMessages(forTopic(request, topics.get(i), quotas[i])).collectList())
+                .collectList()
+                .flatMapMany(batches -> {
+                    AtomicInteger fetched = new AtomicInteger(batches.stream().mapToInt(List::size).sum());
+                    List<Message> merged = new ArrayList<>(fetched.get());
+                    for (int round = 0; merged.size() < fetched.get(); round++) {
+                        for (int i = 0; i < count; i++) {
+                            List<Message> batch = batches.get((start + i) % count);
+                            if (round < batch.size()) {
+                                merged.add(batch.get(round));
+                            }
+                        }
+                    }
+
+                    // Topics that filled their share may have more
+                    Flux<Message> topUp = Flux.range(0, count)
+                        .map(i -> (start + i) % count)
+                        .filter(i -> quotas[i] > 0 && batches.get(i).size() == quotas[i])
+                        .concatMap(i -> {
+                            int remaining = maxMessages - fetched.get();
+                            return remaining <= 0
+                                ? Flux.<Message>empty()
+                                : consumeMessages(forTopic(request, topics.get(i), remaining))
+                                    .doOnNext(message -> fetched.incrementAndGet());
+                        });
+                    return Flux.fromIterable(merged).concatWith(topUp);
+                });
+        });
+    }
+    
+    private ConsumeMessageRequest forTopic(ConsumeMessageRequest request, String topic, int maxMessages) {
+        return request.toBuilder()
+            .topic(topic)
+            .maxMessages(maxMessages)
+            .build();
+    }
+    
+    /**
+     * Fetch one batch and process it to completion, one virtual thread per message. Used by the
+     * server-side consume loops of registered handlers; blocks the caller, so it must run on a
+     * virtual thread. Returns the number of messages fetched.
+     */
+    public int processNextBatch(ConsumeMessageRequest request) throws InterruptedException {
+        List<Message> messages = getConsumerOffset(request)
+            .flatMapMany(offset -> fetchMessages(request, offset))
+            .take(request.getMaxMessages())
+            .collectList()
+            .flatMapMany(this::claim)
+            .collectList()
+            .block();
+        
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        
+        try (var scope = new StructuredTaskScope<Void>()) {
+            for (Message message : messages) {
+                scope.fork(() -> {
+                    processMessageSync(message, request.getConsumerGroup(), request.getTimeoutMs(), request.isAutoCommit());
+                    return null;
+                });
+            }
+            scope.join();
+        }
+        return messages.size();
+    }
+    
     public Mono<Void> commitOffset(String consumerGroup, String topic, Long offset) {
-        return cursorRepository.commitOffset(consumerGroup, topic, offset)
+        return replicationFollower.requireWritable()
+            .then(ackTracker.commit(consumerGroup, topic, offset))
             .doOnSuccess(v -> log.debug("Committed offset {} for group {} topic {}", offset, consumerGroup, topic));
     }
     
     public Mono<Long> getCommittedOffset(String consumerGroup, String topic) {
-        return cursorRepository.getCommittedOffset(consumerGroup, topic);
+        return ackTracker.getCommittedOffset(consumerGroup, topic);
+    }
+    
+    /**
+     * Content of one message as bytes; for offloaded payloads a slice of the mapped blob segment.
+     */
+    public Mono<ByteBuffer> getPayload(String topic, long offset) {
+        return messageRepository.findByTopicAndOffsetRange(topic, offset, offset)
+            .next()
+            .map(message -> message.getBlobRef() != null
+                ? blobStore.read(message.getBlobRef())
+                : ByteBuffer.wrap(message.getContent().getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Acknowledge individual offsets and ranges. Returns the committed offset afterwards, which
+     * only covers the contiguous acked prefix.
+     */
+    public Mono<Long> ack(AckRequest request) {
+        String group = request.getConsumerGroup();
+        String topic = request.getTopic();
+        
+        Mono<Long> offsets = request.getOffsets() != null && !request.getOffsets().isEmpty()
+            ? ackTracker.ack(group, topic, request.getOffsets())
+            : Mono.empty();
+        
+        return replicationFollower.requireWritable()
+            .thenMany(Flux.fromIterable(request.getRanges() != null ? request.getRanges() : List.<AckRequest.OffsetRange>of()))
+            .concatMap(range -> ackTracker.ackRange(group, topic, range.getFrom(), range.getTo()))
+            .then(offsets)
+            .then(ackTracker.getCommittedOffset(group, topic));
+    }
+    
+    /**
+     * Return individual offsets and ranges to the queue for immediate redelivery.
+     */
+    public Mono<Long> nack(AckRequest request) {
+        String group = request.getConsumerGroup();
+        String topic = request.getTopic();
+        
+        List<AckRequest.OffsetRange> ranges = new ArrayList<>();
+        if (request.getRanges() != null) {
+            ranges.addAll(request.getRanges());
+        }
+        if (request.getOffsets() != null) {
+            request.getOffsets().forEach(offset -> ranges.add(new AckRequest.OffsetRange(offset, offset)));
+        }
+        
+        return replicationFollower.requireWritable()
+            .thenMany(Flux.fromIterable(ranges))
+            .concatMap(range -> ackTracker.nackRange(group, topic, range.getFrom(), range.getTo()))
+            .then(ackTracker.getCommittedOffset(group, topic));
+    }
+    
+    public Mono<Long> getOffsetForTimestamp(String topic, String timestamp) {
+        return Mono.fromCallable(() -> parseTimestamp(timestamp))
+            .flatMap(instant -> timeIndexService.findOffsetAtOrAfter(topic, instant));
     }
     
     // Private helper methods
@@ -167,88 +423,185 @@ public class MessageQueueService {
         return null;
     }
     
-    private Mono<Long> getConsumerOffset(String consumerGroup, String topic, Long fromOffset) {
-        if (fromOffset != null) {
-            return Mono.just(fromOffset);
+    private Instant calculateExpiryTime(ProduceMessageRequest request) {
+        Instant fromTtl = request.getTtlSec() != null ? Instant.now().plusSeconds(request.getTtlSec()) : null;
+        Instant explicit = request.getExpiresAt() != null
+            ? Instant.from(DateTimeFormatter.ISO_INSTANT.parse(request.getExpiresAt()))
+            : null;
+        if (fromTtl != null && explicit != null) {
+            return fromTtl.isBefore(explicit) ? fromTtl : explicit;
+        }
+        return fromTtl != null ? fromTtl : explicit;
+    }
+    
+    private Instant parseTimestamp(String timestamp) {
+        // Accept ISO 8601 instants as well as epoch milliseconds
+        if (timestamp.chars().allMatch(Character::isDigit)) {
+            return Instant.ofEpochMilli(Long.parseLong(timestamp));
+        }
+        return Instant.from(DateTimeFormatter.ISO_INSTANT.parse(timestamp));
+    }
+    
+    private Mono<Long> getConsumerOffset(ConsumeMessageRequest request) {
+        if (request.getFromOffset() != null) {
+            return Mono.just(request.getFromOffset());
         }
-        return cursorRepository.getCommittedOffset(consumerGroup, topic);
+        if (request.getFromTimestamp() != null) {
+            // Fetches are exclusive of the starting offset, so start just before the resolved one
+            return getOffsetForTimestamp(request.getTopic(), request.getFromTimestamp())
+                .map(offset -> offset - 1);
+        }
+        return ackTracker.getCommittedOffset(request.getConsumerGroup(), request.getTopic());
     }
     
     private Flux<Message> fetchMessages(ConsumeMessageRequest request, Long fromOffset) {
-        return messageRepository.findByTopicAndStatusAndOffset(
+        // The selector is part of the fetch query, so filtered-out messages are never read
+        Selector selector = selectorService.compile(request.getSelector());
+        ackTracker.useSelector(request.getConsumerGroup(), request.getTopic(), selector);
+        if (logDelivery.isLogTopic(request.getTopic())) {
+            // Log topics are read in offset order by every group; priority lanes do not apply
+            boolean seek = request.getFromOffset() != null || request.getFromTimestamp() != null;
+            return logDelivery.fetch(
+                request.getTopic(),
+                request.getConsumerGroup(),
+                fromOffset,
+                seek,
+                selector,
+                request.getMaxMessages()
+            );
+        }
+        return laneScheduler.fetch(
             request.getTopic(), 
-            Message.MessageStatus.PENDING, 
+            request.getConsumerGroup(), 
             fromOffset, 
+            selector,
             request.getMaxMessages()
         );
     }
     
-    private Mono<Message> processMessage(Message message, String consumerGroup, String consumerId) {
-        return Mono.fromCallable(() -> {
-            // Simulate virtual thread processing
-            Thread.ofVirtual().start(() -> {
-                activeVirtualThreads.incrementAndGet();
-                try {
-                    // Update message status to processing
-                    messageRepository.updateStatus(message.getId(), Message.MessageStatus.PROCESSING)
-                        .subscribe();
-                    
-                    // Simulate message processing (this would be actual business logic)
-                    processMessageBusinessLogic(message);
-                    
-                    // Mark as completed
-                    messageRepository.updateStatus(message.getId(), Message.MessageStatus.COMPLETED)
-                        .subscribe();
-                    
-                    // Auto-commit offset if enabled
-                    cursorRepository.commitOffset(consumerGroup, message.getTopic(), message.getOffset())
-                        .subscribe();
-                    
-                    consumedMessages.increment();
-                    log.debug("Processed message {} from topic {}", message.getId(), message.getTopic());
-                    
-                } catch (Exception e) {
-                    handleMessageProcessingError(message, e);
-                } finally {
-                    activeVirtualThreads.decrementAndGet();
-                }
-            });
-            
-            return message;
+    private Flux<Message> readOnlyConsume(ConsumeMessageRequest request) {
+        // Followers serve reads by offset from the replicated cursor and never change state
+        return Flux.defer(() -> {
+            Selector selector = selectorService.compile(request.getSelector());
+            return getConsumerOffset(request)
+                .flatMapMany(offset -> messageRepository.findByTopicAndOffsetRange(
+                    request.getTopic(), offset + 1, offset + request.getMaxMessages()))
+                .filter(message -> selector == null || selector.matches(message))
+                .take(request.getMaxMessages());
         });
     }
     
-    private void processMessageBusinessLogic(Message message) {
-        // This is where actual message processing would happen
-        // For now, just simulate some work
+    /**
+     * Mark fetched messages PROCESSING before they are handed out, so a consume arriving right
+     * after this one cannot fetch them again. Messages another consume claimed first are dropped;
+     * log topic messages are never updated and pass through. Keeps the fetch order.
+     */
+    private Flux<Message> claim(List<Message> fetched) {
+        List<String> ids = fetched.stream()
+            .filter(message -> !logDelivery.isLogTopic(message.getTopic()))
+            .map(Message::getId)
+            .toList();
+        return messageRepository.claimPending(ids)
+            .flatMapMany(claimed -> Flux.fromIterable(fetched)
+                .filter(message -> logDelivery.isLogTopic(message.getTopic()) || claimed.contains(message.getId()))
+                .doOnNext(message -> {
+                    if (!logDelivery.isLogTopic(message.getTopic())) {
+                        message.setStatus(Message.MessageStatus.PROCESSING);
+                    }
+                }));
+    }
+    
+    private void processMessage(Message message, ConsumeMessageRequest request) {
+        Thread.ofVirtual().start(() -> processMessageSync(
+            message, request.getConsumerGroup(), request.getTimeoutMs(), request.isAutoCommit()));
+    }
+    
+    // The message is already claimed, see claim
+    private void processMessageSync(Message message, String consumerGroup, Long timeoutMs, boolean autoCommit) {
+        activeVirtualThreads.incrementAndGet();
         try {
-            Thread.sleep(100); // Simulate processing time
+            // The consume timeout becomes this message's processing deadline
+            Instant deadline = Instant.now().plusMillis(timeoutMs);
+            
+            // Handlers and plugins see the content even when it is in the blob store
+            processMessageBusinessLogic(blobStore.inline(message), consumerGroup, deadline);
+            
+            // Ack marks the message completed and commits once every earlier offset is acked too;
+            // without auto-commit the client acks explicitly
+            if (autoCommit) {
+                ackTracker.ack(consumerGroup, message.getTopic(), message.getOffset()).block();
+            }
+            
+            consumedMessages.increment();
+            log.debug("Processed message {} from topic {}", message.getId(), message.getTopic());
+            
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            throw new RuntimeException("Message processing interrupted", e);
+            handleMessageProcessingError(message, consumerGroup, e);
+        } catch (Exception e) {
+            handleMessageProcessingError(message, consumerGroup, e);
+        } finally {
+            activeVirtualThreads.decrementAndGet();
+        }
+    }
+    
+    private void processMessageBusinessLogic(Message message, String consumerGroup, Instant deadline) throws Exception {
+        Optional<MessageHandler> handler = handlerRegistry.find(message.getTopic(), consumerGroup);
+        
+        // Routed plugins and the registered handler run as sibling subtasks bounded by the
+        // message deadline; the first failure or the deadline cancels whatever is still running
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            StructuredTaskScope.Subtask<List<PluginResult>> plugins = scope.fork(() -> pluginDispatcher.dispatch(message));
+            handler.ifPresent(h -> scope.fork(() -> {
+                h.handle(message, new HandlerContext(message, consumerGroup, deadline));
+                return null;
+            }));
+            
+            try {
+                scope.joinUntil(deadline);
+            } catch (TimeoutException e) {
+                deadlineExceededMessages.increment();
+                throw new TimeoutException("Processing deadline exceeded for message " + message.getId());
+            }
+            scope.throwIfFailed(failure -> failure instanceof Exception exception
+                ? exception
+                : new RuntimeException(failure));
+            
+            for (PluginResult result : plugins.get()) {
+                if (!result.isSuccess()) {
+                    throw new RuntimeException("Plugin " + result.getPluginName() + " failed: " + result.getMessage());
+                }
+            }
         }
     }
     
-    private void handleMessageProcessingError(Message message, Exception error) {
+    private void handleMessageProcessingError(Message message, String consumerGroup, Exception error) {
+        if (logDelivery.isLogTopic(message.getTopic())) {
+            handleLogProcessingError(message, consumerGroup, error);
+            return;
+        }
         int newRetryCount = message.getRetryCount() + 1;
         
         if (newRetryCount <= message.getMaxRetries()) {
-            // Retry the message
-            Message retryMessage = message.toBuilder()
-                .retryCount(newRetryCount)
-                .status(Message.MessageStatus.PENDING)
-                .scheduledAt(Instant.now().plusSeconds(newRetryCount * 60)) // Exponential backoff
-                .build();
-                
-            messageRepository.save(retryMessage).subscribe();
+            // Retry the message in place; the scheduler makes it available again after the backoff
+            writeInBackground("schedule retry of message " + message.getId(), messageRepository.scheduleRetry(
+                message.getId(),
+                newRetryCount,
+                Instant.now().plusSeconds(newRetryCount * retryDelaySeconds),
+                error.getMessage()
+            ));
             log.warn("Retrying message {} (attempt {}/{})", message.getId(), newRetryCount, message.getMaxRetries());
         } else {
             // Move to dead letter queue
-            messageRepository.updateStatusAndError(
+            writeInBackground("dead-letter message " + message.getId(), messageRepository.updateStatusAndError(
                 message.getId(), 
                 Message.MessageStatus.DEAD_LETTER, 
                 error.getMessage()
-            ).subscribe();
+            ));
+            
+            // Dead-lettered messages are done with, so they must not hold the cursor back
+            writeInBackground("ack dead-lettered message " + message.getId(),
+                ackTracker.ack(consumerGroup, message.getTopic(), message.getOffset()));
             
             failedMessages.increment();
             log.error("Message {} moved to dead letter queue after {} retries", 
@@ -256,20 +609,58 @@ public class MessageQueueService {
         }
     }
     
+    private void handleLogProcessingError(Message message, String consumerGroup, Exception error) {
+        // Retries are per group and kept in memory; other groups are not affected by this failure
+        if (logDelivery.retry(consumerGroup, message, TimeUnit.SECONDS.toMillis(retryDelaySeconds))) {
+            log.warn("Redelivering log message {} of topic {} to group {}: {}",
+                message.getOffset(), message.getTopic(), consumerGroup, error.getMessage());
+            return;
+        }
+        
+        // Out of retries: skip the message for this group so it does not hold the cursor back
+        writeInBackground("ack skipped log message " + message.getOffset() + " of topic " + message.getTopic(),
+            ackTracker.ack(consumerGroup, message.getTopic(), message.getOffset()));
+        
+        failedMessages.increment();
+        log.error("Log message {} of topic {} skipped by group {} after {} retries",
+            message.getOffset(), message.getTopic(), consumerGroup, message.getMaxRetries(), error);
+    }
+    
+    /**
+     * Run a write nobody waits for, retrying transient failures such as a busy database. A write
+     * that still fails leaves its message PROCESSING, so every failure is logged.
+     */
+    private void writeInBackground(String description, Mono<?> write) {
+        write.retryWhen(Retry.backoff(BACKGROUND_WRITE_RETRIES, Duration.ofMillis(100)))
+            .subscribe(null, error -> log.error("Failed to {}: {}", description, error.getMessage()));
+    }
+    
     private void startScheduledMessageProcessor() {
         scheduledExecutor.scheduleWithFixedDelay(() -> {
             try {
-                // Process scheduled messages that are ready
-                messageRepository.findScheduledMessages(Instant.now())
+                // Nothing is due before the horizon, so skip the query until then
+                Instant now = Instant.now();
+                if (brokerState.getScheduledHorizon() > now.toEpochMilli()) {
+                    return;
+                }
+                brokerState.resetScheduledHorizon();
+                
+                // Process scheduled messages that are ready, then read the next horizon
+                messageRepository.findScheduledMessages(now)
                     .flatMap(message -> {
                         message.setStatus(Message.MessageStatus.PENDING);
-                        return messageRepository.save(message);
+                        return messageRepository.updateStatus(message.getId(), Message.MessageStatus.PENDING)
+                            .thenReturn(message);
                     })
                     .doOnNext(message -> {
                         log.debug("Scheduled message {} is now available for processing", message.getId());
                         notificationService.notifyNewMessage(message.getTopic(), message);
                     })
-                    .subscribe();
+                    .then(messageRepository.getNextScheduledAt())
+                    .subscribe(brokerState::noteScheduled, error -> {
+                        log.error("Error processing scheduled messages", error);
+                        brokerState.noteScheduled(Instant.now());
+                    });
                     
             } catch (Exception e) {
                 log.error("Error processing scheduled messages", e);
@@ -279,18 +670,62 @@ public class MessageQueueService {
         // Cleanup old completed messages
         scheduledExecutor.scheduleWithFixedDelay(() -> {
             try {
-                Instant cutoff = Instant.now().minusSeconds(24 * 60 * 60); // 24 hours ago
+                Instant cutoff = Instant.now().minus(retentionHours, ChronoUnit.HOURS);
                 
                 // Get all unique topics and clean them up
                 messageRepository.findByTopicAndStatus("*", Message.MessageStatus.COMPLETED, 1000)
                     .map(Message::getTopic)
                     .distinct()
                     .flatMap(topic -> messageRepository.deleteOldMessages(topic, cutoff))
+                    .then(Mono.defer(() -> deleteOldLogMessages(cutoff)))
+                    .then(Mono.defer(() -> timeIndexService.prune(cutoff)))
                     .subscribe();
                     
             } catch (Exception e) {
                 log.error("Error cleaning up old messages", e);
             }
-        }, 1, 6, TimeUnit.HOURS);
+        }, 1, cleanupIntervalHours, TimeUnit.HOURS);
+        
+        // Claims left behind by a consumer that never acked, a closed session whose hand-back
+        // failed or a restart would otherwise stay PROCESSING and hold every group's commit back
+        long requeueIntervalMs = Math.max(1000, visibilityTimeoutMs / 4);
+        scheduledExecutor.scheduleWithFixedDelay(this::requeueStale, requeueIntervalMs, requeueIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Log topic messages never become COMPLETED, so they are retained by age alone, except that a
+     * message is kept until every group reading the topic has committed past it.
+     */
+    private Mono<Void> deleteOldLogMessages(Instant cutoff) {
+        List<String> topics = brokerState.getTopics().stream()
+            .map(TopicHead::getTopic)
+            .filter(logDelivery::isLogTopic)
+            .toList();
+        if (topics.isEmpty()) {
+            return Mono.empty();
+        }
+        return cursorRepository.findAll()
+            .filter(cursor -> cursor.getOffset() != null && logDelivery.isLogTopic(cursor.getTopic()))
+            .collect(HashMap<String, Long>::new, (lowest, cursor) -> lowest.merge(cursor.getTopic(), cursor.getOffset(), Math::min))
+            .flatMapMany(committed -> Flux.fromIterable(topics)
+                .concatMap(topic -> messageRepository.deleteOldLogMessages(topic, cutoff,
+                    committed.getOrDefault(topic, Long.MAX_VALUE))))
+            .then();
+    }
+    
+    private void requeueStale() {
+        try {
+            Instant claimedBefore = Instant.now().minusMillis(visibilityTimeoutMs);
+            List<Message> requeued = messageRepository.requeueStale(claimedBefore, REQUEUE_BATCH_SIZE)
+                .collectList()
+                .block();
+            if (requeued == null || requeued.isEmpty()) {
+                return;
+            }
+            log.warn("Returned {} messages not acked within {} ms to the queue", requeued.size(), visibilityTimeoutMs);
+            requeued.forEach(message -> notificationService.notifyNewMessage(message.getTopic(), message));
+        } catch (Exception e) {
+            log.error("Error requeueing stale messages", e);
+        }
     }
 } 
\ No newline at end of file
@@ -2,86 +2,262 @@ package com.vthreadMQ001.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.websocket.SessionOutbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.socket.WebSocketSession;
-import reactor.core.publisher.Mono;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class NotificationService {
 
+    public enum SubscriptionMode {
+        PER_MESSAGE,  // one NEW_MESSAGE frame per produced message
+        COALESCED     // at most one TOPIC_TICK summary frame per topic per tick
+    }
+
     private final ObjectMapper objectMapper;
-    
-    // Map of topic -> set of WebSocket sessions
-    private final ConcurrentHashMap<String, CopyOnWriteArraySet<WebSocketSession>> topicSubscriptions = new ConcurrentHashMap<>();
-    
-    // Map of consumer group -> set of WebSocket sessions
-    private final ConcurrentHashMap<String, CopyOnWriteArraySet<WebSocketSession>> consumerGroupSubscriptions = new ConcurrentHashMap<>();
-    
+    private final MeterRegistry meterRegistry;
+
+    @Value("${vthreadmq.websocket.outbound-queue-capacity:1024}")
+    private int outboundQueueCapacity;
+
+    @Value("${vthreadmq.websocket.overflow-policy:DROP_OLDEST}")
+    private SessionOutbox.OverflowPolicy overflowPolicy;
+
+    @Value("${vthreadmq.websocket.coalesce-tick-ms:250}")
+    private long coalesceTickMs;
+
+    // Map of session id -> outbound queue (also holds the session's own subscriptions)
+    private final ConcurrentHashMap<String, SessionOutbox> sessions = new ConcurrentHashMap<>();
+
+    // Topic pattern -> session outboxes; plain topic names are patterns without wildcards
+    private final TopicTrie<SessionOutbox> topicSubscriptions = new TopicTrie<>();
+
+    // Topic pattern -> session outboxes receiving coalesced ticks
+    private final TopicTrie<SessionOutbox> coalescedTopicSubscriptions = new TopicTrie<>();
+
+    // Map of topic -> head offset and count accumulated since the last tick
+    private final ConcurrentHashMap<String, TopicTick> pendingTicks = new ConcurrentHashMap<>();
+
+    // Map of consumer group -> set of session outboxes
+    private final ConcurrentHashMap<String, Set<SessionOutbox>> consumerGroupSubscriptions = new ConcurrentHashMap<>();
+
+    // In-process listeners for newly available messages (e.g. the WebSocket push data plane)
+    private final CopyOnWriteArrayList<Consumer<Message>> messageListeners = new CopyOnWriteArrayList<>();
+
+    private Counter droppedFrames;
+    private ScheduledExecutorService tickExecutor;
+
+    @PostConstruct
+    public void init() {
+        droppedFrames = Counter.builder("vthreadmq_ws_frames_dropped_total")
+            .description("Total number of WebSocket frames dropped for slow sessions")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_ws_sessions", sessions, ConcurrentHashMap::size)
+            .description("Number of connected WebSocket sessions")
+            .register(meterRegistry);
+
+        // Aggregated over sessions: a meter per session id would grow without bound
+        Gauge.builder("vthreadmq_ws_queued_frames", sessions,
+                s -> s.values().stream().mapToInt(SessionOutbox::getDepth).sum())
+            .description("Outbound frames queued across all WebSocket sessions")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_ws_session_queue_depth_max", sessions,
+                s -> s.values().stream().mapToInt(SessionOutbox::getDepth).max().orElse(0))
+            .description("Outbound frames queued for the furthest-behind WebSocket session")
+            .register(meterRegistry);
+
+        tickExecutor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+            .name("vthreadmq-ws-tick")
+            .daemon(true)
+            .factory());
+        tickExecutor.scheduleAtFixedRate(this::flushTicks, coalesceTickMs, coalesceTickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (tickExecutor != null) {
+            tickExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Register a new session and return its bounded outbound queue.
+     */
+    public SessionOutbox register(WebSocketSession session) {
+        SessionOutbox outbox = new SessionOutbox(session, outboundQueueCapacity, overflowPolicy, droppedFrames);
+        sessions.put(session.getId(), outbox);
+        return outbox;
+    }
+
+    /**
+     * Remove all subscriptions of a closed session.
+     */
+    public void unregister(WebSocketSession session) {
+        unsubscribe(session);
+        sessions.remove(session.getId());
+    }
+
     public void subscribeToTopic(String topic, WebSocketSession session) {
-        topicSubscriptions.computeIfAbsent(topic, k -> new CopyOnWriteArraySet<>()).add(session);
-        log.debug("Session {} subscribed to topic {}", session.getId(), topic);
+        subscribeToTopic(topic, session, SubscriptionMode.PER_MESSAGE);
+    }
+
+    /**
+     * Subscribe to a topic or a wildcard pattern such as {@code orders.*} or {@code orders.#}.
+     */
+    public void subscribeToTopic(String topic, WebSocketSession session, SubscriptionMode mode) {
+        SessionOutbox outbox = sessions.get(session.getId());
+        if (outbox == null) {
+            return;
+        }
+        if (mode == SubscriptionMode.COALESCED) {
+            coalescedTopicSubscriptions.add(topic, outbox);
+            outbox.getCoalescedTopics().add(topic);
+        } else {
+            topicSubscriptions.add(topic, outbox);
+            outbox.getTopics().add(topic);
+        }
+        log.debug("Session {} subscribed to topic {} ({})", session.getId(), topic, mode);
     }
-    
+
     public void subscribeToConsumerGroup(String consumerGroup, WebSocketSession session) {
-        consumerGroupSubscriptions.computeIfAbsent(consumerGroup, k -> new CopyOnWriteArraySet<>()).add(session);
+        SessionOutbox outbox = sessions.get(session.getId());
+        if (outbox == null) {
+            return;
+        }
+        consumerGroupSubscriptions.computeIfAbsent(consumerGroup, k -> ConcurrentHashMap.newKeySet()).add(outbox);
+        outbox.getConsumerGroups().add(consumerGroup);
         log.debug("Session {} subscribed to consumer group {}", session.getId(), consumerGroup);
     }
-    
+
     public void unsubscribe(WebSocketSession session) {
-        // Remove from all topic subscriptions
-        topicSubscriptions.values().forEach(sessions -> sessions.remove(session));
-        
-        // Remove from all consumer group subscriptions
-        consumerGroupSubscriptions.values().forEach(sessions -> sessions.remove(session));
-        
+        SessionOutbox outbox = sessions.get(session.getId());
+        if (outbox == null) {
+            return;
+        }
+
+        // Only visit the topics and groups this session subscribed to
+        for (String topic : outbox.getTopics()) {
+            topicSubscriptions.remove(topic, outbox);
+        }
+        outbox.getTopics().clear();
+
+        for (String topic : outbox.getCoalescedTopics()) {
+            coalescedTopicSubscriptions.remove(topic, outbox);
+        }
+        outbox.getCoalescedTopics().clear();
+
+        for (String consumerGroup : outbox.getConsumerGroups()) {
+            removeSubscriber(consumerGroupSubscriptions, consumerGroup, outbox);
+        }
+        outbox.getConsumerGroups().clear();
+
         log.debug("Session {} unsubscribed from all notifications", session.getId());
     }
-    
+
+    public void addMessageListener(Consumer<Message> listener) {
+        messageListeners.add(listener);
+    }
+
+    /**
+     * Queue a frame for a single session, e.g. an acknowledgment or error reply.
+     */
+    public void sendToSession(WebSocketSession session, String frame) {
+        SessionOutbox outbox = sessions.get(session.getId());
+        if (outbox != null) {
+            outbox.offer(frame);
+        }
+    }
+
+    /**
+     * Queue a pushed message for a single session. Returns false if the session is gone or was
+     * disconnected for falling behind; the delivery then goes back with the session's others.
+     */
+    public boolean sendDeliveryToSession(WebSocketSession session, byte[] frame) {
+        SessionOutbox outbox = sessions.get(session.getId());
+        return outbox != null && outbox.offerDelivery(frame);
+    }
+
     public void notifyNewMessage(String topic, Message message) {
-        // Notify topic subscribers
-        CopyOnWriteArraySet<WebSocketSession> topicSessions = topicSubscriptions.get(topic);
-        if (topicSessions != null && !topicSessions.isEmpty()) {
-            String notification = createMessageNotification(message);
-            broadcastToSessions(topicSessions, notification);
-        }
-        
-        // Notify consumer group subscribers
-        if (message.getConsumerGroup() != null) {
-            CopyOnWriteArraySet<WebSocketSession> groupSessions = consumerGroupSubscriptions.get(message.getConsumerGroup());
-            if (groupSessions != null && !groupSessions.isEmpty()) {
-                String notification = createMessageNotification(message);
-                broadcastToSessions(groupSessions, notification);
+        for (Consumer<Message> listener : messageListeners) {
+            try {
+                listener.accept(message);
+            } catch (Exception e) {
+                log.warn("Message listener failed for topic {}: {}", topic, e.getMessage());
             }
         }
+
+        // Coalesced subscribers only need the head offset; accumulate it for the next tick
+        if (!coalescedTopicSubscriptions.isEmpty() && coalescedTopicSubscriptions.hasMatch(topic)) {
+            pendingTicks.computeIfAbsent(topic, k -> new TopicTick()).record(message.getOffset());
+        }
+
+        Set<SessionOutbox> topicSessions = topicSubscriptions.isEmpty() ? null : topicSubscriptions.match(topic);
+        Set<SessionOutbox> groupSessions = message.getConsumerGroup() != null
+            ? consumerGroupSubscriptions.get(message.getConsumerGroup())
+            : null;
+
+        boolean hasTopicSessions = topicSessions != null && !topicSessions.isEmpty();
+        boolean hasGroupSessions = groupSessions != null && !groupSessions.isEmpty();
+        if (!hasTopicSessions && !hasGroupSessions) {
+            return;
+        }
+
+        // Serialize once and share the encoded frame across every subscriber
+        byte[] notification = createMessageNotification(message);
+        if (notification == null) {
+            return;
+        }
+
+        if (hasTopicSessions) {
+            broadcastToSessions(topicSessions, notification, null);
+        }
+        if (hasGroupSessions) {
+            broadcastToSessions(groupSessions, notification, hasTopicSessions ? topicSessions : null);
+        }
     }
-    
+
     public void notifyConsumerGroupStatus(String consumerGroup, String status, Object data) {
-        CopyOnWriteArraySet<WebSocketSession> sessions = consumerGroupSubscriptions.get(consumerGroup);
-        if (sessions != null && !sessions.isEmpty()) {
+        Set<SessionOutbox> groupSessions = consumerGroupSubscriptions.get(consumerGroup);
+        if (groupSessions != null && !groupSessions.isEmpty()) {
             try {
-                String notification = objectMapper.writeValueAsString(new StatusNotification(
-                    "CONSUMER_GROUP_STATUS", 
-                    consumerGroup, 
-                    status, 
+                byte[] notification = objectMapper.writeValueAsBytes(new StatusNotification(
+                    "CONSUMER_GROUP_STATUS",
+                    consumerGroup,
+                    status,
                     data
                 ));
-                broadcastToSessions(sessions, notification);
+                broadcastToSessions(groupSessions, notification, null);
             } catch (Exception e) {
                 log.error("Error creating consumer group status notification", e);
             }
         }
     }
-    
-    private String createMessageNotification(Message message) {
+
+    private byte[] createMessageNotification(Message message) {
         try {
-            return objectMapper.writeValueAsString(new MessageNotification(
+            return objectMapper.writeValueAsBytes(new MessageNotification(
                 "NEW_MESSAGE",
                 message.getTopic(),
                 message.getId(),
@@ -91,29 +267,57 @@ public class NotificationService {
             ));
         } catch (Exception e) {
             log.error("Error creating message notification", e);
-            return "{}";
+            return null;
         }
     }
-    
-    private void broadcastToSessions(CopyOnWriteArraySet<WebSocketSession> sessions, String notification) {
-        sessions.removeIf(session -> {
-            if (!session.isOpen()) {
-                return true; // Remove closed sessions
+
+    private void flushTicks() {
+        pendingTicks.forEach((topic, tick) -> {
+            long count = tick.count.sumThenReset();
+            if (count == 0) {
+                return;
+            }
+
+            Set<SessionOutbox> subscribers = coalescedTopicSubscriptions.match(topic);
+            if (subscribers.isEmpty()) {
+                pendingTicks.remove(topic, tick);
+                return;
             }
-            
+
             try {
-                session.send(Mono.just(session.textMessage(notification)))
-                    .doOnError(error -> log.warn("Failed to send notification to session {}: {}", 
-                        session.getId(), error.getMessage()))
-                    .subscribe();
-                return false;
+                // One summary frame per topic per tick, shared by every coalesced subscriber
+                byte[] notification = objectMapper.writeValueAsBytes(new TopicTickNotification(
+                    "TOPIC_TICK",
+                    topic,
+                    tick.headOffset.get(),
+                    count
+                ));
+                broadcastToSessions(subscribers, notification, null);
             } catch (Exception e) {
-                log.warn("Failed to send notification to session {}: {}", session.getId(), e.getMessage());
-                return true; // Remove problematic sessions
+                log.error("Error creating tick notification for topic {}", topic, e);
             }
         });
     }
-    
+
+    private void broadcastToSessions(Set<SessionOutbox> subscribers, byte[] notification, Set<SessionOutbox> alreadyNotified) {
+        for (SessionOutbox outbox : subscribers) {
+            if (alreadyNotified != null && alreadyNotified.contains(outbox)) {
+                continue;
+            }
+            // Offering never blocks; closed or disconnected sessions are dropped from the index
+            if (!outbox.offer(notification)) {
+                subscribers.remove(outbox);
+            }
+        }
+    }
+
+    private void removeSubscriber(ConcurrentHashMap<String, Set<SessionOutbox>> index, String key, SessionOutbox outbox) {
+        index.computeIfPresent(key, (k, subscribers) -> {
+            subscribers.remove(outbox);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
     // Notification DTOs
     public static class MessageNotification {
         public String type;
@@ -122,8 +326,8 @@ public class NotificationService {
         public String status;
         public java.time.Instant timestamp;
         public Long offset;
-        
-        public MessageNotification(String type, String topic, String messageId, String status, 
+
+        public MessageNotification(String type, String topic, String messageId, String status,
                                  java.time.Instant timestamp, Long offset) {
             this.type = type;
             this.topic = topic;
@@ -133,14 +337,30 @@ public class NotificationService {
             this.offset = offset;
         }
     }
-    
+
+    public static class TopicTickNotification {
+        public String type;
+        public String topic;
+        public Long headOffset;
+        public long count;
+        public java.time.Instant timestamp;
+
+        public TopicTickNotification(String type, String topic, Long headOffset, long count) {
+            this.type = type;
+            this.topic = topic;
+            this.headOffset = headOffset;
+            this.count = count;
+            this.timestamp = java.time.Instant.now();
+        }
+    }
+
     public static class StatusNotification {
         public String type;
         public String target;
         public String status;
         public Object data;
         public java.time.Instant timestamp;
-        
+
         public StatusNotification(String type, String target, String status, Object data) {
             this.type = type;
             this.target = target;
@@ -149,4 +369,16 @@ public class NotificationService {
             this.timestamp = java.time.Instant.now();
         }
     }
-} 
\ No newline at end of file
+
+    private static class TopicTick {
+        final AtomicLong headOffset = new AtomicLong(0);
+        final LongAdder count = new LongAdder();
+
+        void record(Long offset) {
+            if (offset != null) {
+                headOffset.accumulateAndGet(offset, Math::max);
+            }
+            count.increment();
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.ConsumerCursor;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.selector.Selector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks acknowledged offsets per (consumer group, topic) and derives the committed offset.
+ *
+ * Acks arrive in any order and are kept as a set of disjoint offset ranges above the committed
+ * offset. The committed offset only advances over the contiguous acked prefix, so a message that
+ * is still being processed (or was nacked) holds the cursor back until it is acked. Cursor writes
+ * and COMPLETED status updates are batched and flushed periodically, one write per range.
+ *
+ * Offsets that will never be acked, because their messages expired or were already completed,
+ * would hold the cursor back forever. The flush therefore checks the gap below the first acked
+ * range every gap-check interval and closes it when no unfinished message is left in it. When
+ * every active consumer of the group uses a selector, only messages matching at least one of
+ * them count, so messages none of them will ever fetch do not hold the cursor back. A consumer
+ * is active while it has consumed within the selector idle time, or while its push subscription
+ * is open.
+ *
+ * On log topics messages are never updated, so acks only move the cursor and nacks queue the
+ * offsets for redelivery to the nacking group instead of resetting their status.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OffsetAckTracker {
+
+    private final ConsumerCursorRepository cursorRepository;
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+    private final ReplicationLeaderService replicationLeader;
+    private final LogDeliveryService logDelivery;
+
+    @Value("${vthreadmq.ack.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${vthreadmq.ack.gap-check-interval-ms:1000}")
+    private long gapCheckIntervalMs;
+
+    @Value("${vthreadmq.ack.selector-idle-ms:60000}")
+    private long selectorIdleMs;
+
+    // Map of "consumerGroup:topic" -> (selector expression, "" for none -> its consumers)
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, SelectorUse>> selectors = new ConcurrentHashMap<>();
+
+    // Map of "consumerGroup:topic" -> ack state
+    private final ConcurrentHashMap<String, AckState> states = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushExecutor;
+    private Counter ackedOffsets;
+    private Counter nackedOffsets;
+
+    @PostConstruct
+    public void init() {
+        ackedOffsets = Counter.builder("vthreadmq_offsets_acked_total")
+            .description("Total number of offsets acknowledged")
+            .register(meterRegistry);
+
+        nackedOffsets = Counter.builder("vthreadmq_offsets_nacked_total")
+            .description("Total number of offsets negatively acknowledged for redelivery")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_ack_pending_ranges", states, s -> s.values().stream()
+                .mapToInt(AckState::pendingRanges)
+                .sum())
+            .description("Acked offset ranges waiting for the committed offset to reach them")
+            .register(meterRegistry);
+
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-ack-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        flush();
+    }
+
+    public Mono<Long> ack(String consumerGroup, String topic, long offset) {
+        return ackRange(consumerGroup, topic, offset, offset);
+    }
+
+    public Mono<Long> ack(String consumerGroup, String topic, Collection<Long> offsets) {
+        return state(consumerGroup, topic).map(state -> {
+            long committed;
+            synchronized (state) {
+                offsets.forEach(offset -> state.ack(offset, offset));
+                ackedOffsets.increment(offsets.size());
+                committed = state.committed;
+            }
+            if (state.logTopic) {
+                offsets.forEach(offset -> logDelivery.acked(consumerGroup, topic, offset, offset));
+            }
+            return committed;
+        });
+    }
+
+    /**
+     * Acknowledge the inclusive range [from, to]. Returns the committed offset after the ack.
+     */
+    public Mono<Long> ackRange(String consumerGroup, String topic, long from, long to) {
+        if (to < from) {
+            return Mono.error(new IllegalArgumentException("Invalid offset range " + from + "-" + to));
+        }
+        return state(consumerGroup, topic).map(state -> {
+            long committed;
+            synchronized (state) {
+                state.ack(from, to);
+                ackedOffsets.increment(to - from + 1);
+                committed = state.committed;
+            }
+            if (state.logTopic) {
+                logDelivery.acked(consumerGroup, topic, from, to);
+            }
+            return committed;
+        });
+    }
+
+    /**
+     * Return the inclusive range [from, to] to the queue for redelivery. Nacked offsets are never
+     * committed until they are acked again.
+     *
+     * Consumes only fetch above the committed offset, so on queue topics a message at or below it
+     * would be PENDING but never delivered again; such nacks are rejected. Log topic nacks go to
+     * the group's redeliveries, which are served regardless of the cursor.
+     */
+    public Mono<Void> nackRange(String consumerGroup, String topic, long from, long to) {
+        if (to < from) {
+            return Mono.error(new IllegalArgumentException("Invalid offset range " + from + "-" + to));
+        }
+        return state(consumerGroup, topic)
+            .handle((AckState state, SynchronousSink<AckState> sink) -> {
+                synchronized (state) {
+                    if (!state.logTopic && from <= state.committed) {
+                        sink.error(new IllegalArgumentException("Cannot nack offsets " + from + "-" + to + " of topic " + topic
+                            + ": group " + consumerGroup + " has committed through " + state.committed));
+                        return;
+                    }
+                    state.acked.remove(from, to);
+                    state.completed.remove(from, to);
+                }
+                nackedOffsets.increment(to - from + 1);
+                sink.next(state);
+            })
+            .flatMap(state -> {
+                if (state.logTopic) {
+                    logDelivery.redeliver(consumerGroup, topic, from, to);
+                    return Mono.<Void>empty();
+                }
+                return messageRepository.updateStatusInOffsetRange(
+                    topic, from, to, Message.MessageStatus.PROCESSING, Message.MessageStatus.PENDING);
+            });
+    }
+
+    /**
+     * Move the committed offset explicitly, discarding acks at or below it, and persist it now.
+     */
+    public Mono<Void> commit(String consumerGroup, String topic, long offset) {
+        return state(consumerGroup, topic)
+            .doOnNext(state -> {
+                synchronized (state) {
+                    state.committed = offset;
+                    state.acked.removeThrough(offset);
+                    state.advance();
+                    state.flushedCommitted = state.committed;
+                }
+            })
+            .flatMap(state -> cursorRepository.commitOffset(consumerGroup, topic, state.committed)
+                .doOnSuccess(v -> replicationLeader.cursorCommitted(consumerGroup, topic, state.committed)));
+    }
+
+    /**
+     * Record a consume of the group with the given selector; null when it consumes everything.
+     */
+    public void useSelector(String consumerGroup, String topic, Selector selector) {
+        updateSelectorUse(consumerGroup, topic, selector, 0);
+    }
+
+    /**
+     * Keep the selector active until {@link #releaseSelector}, for push subscriptions that may go
+     * without a fetch for longer than the idle time.
+     */
+    public void holdSelector(String consumerGroup, String topic, Selector selector) {
+        updateSelectorUse(consumerGroup, topic, selector, 1);
+    }
+
+    public void releaseSelector(String consumerGroup, String topic, Selector selector) {
+        updateSelectorUse(consumerGroup, topic, selector, -1);
+    }
+
+    // Updated inside compute, so the idle sweep in gapSelector never drops a use being touched
+    private void updateSelectorUse(String consumerGroup, String topic, Selector selector, int holders) {
+        selectors.computeIfAbsent(key(consumerGroup, topic), k -> new ConcurrentHashMap<>())
+            .compute(selector != null ? selector.getExpression() : "", (k, use) -> {
+                SelectorUse updated = use != null ? use : new SelectorUse(selector);
+                updated.holders += holders;
+                updated.lastUsed = System.currentTimeMillis();
+                return updated;
+            });
+    }
+
+    /**
+     * Selector the gap check counts unfinished messages with: null (every message counts) unless
+     * all active consumers of the group use a selector. Uses idle for longer than the idle time
+     * are dropped.
+     */
+    private Selector gapSelector(String consumerGroup, String topic) {
+        ConcurrentHashMap<String, SelectorUse> uses = selectors.get(key(consumerGroup, topic));
+        if (uses == null) {
+            return null;
+        }
+        long idleBefore = System.currentTimeMillis() - selectorIdleMs;
+        for (String expression : uses.keySet()) {
+            uses.computeIfPresent(expression, (k, use) -> use.holders <= 0 && use.lastUsed < idleBefore ? null : use);
+        }
+
+        List<Selector> active = new ArrayList<>(uses.size());
+        for (SelectorUse use : uses.values()) {
+            if (use.selector == null) {
+                return null;
+            }
+            active.add(use.selector);
+        }
+        // Nobody consumed lately; skip nothing rather than guess what the next consumer filters
+        return active.isEmpty() ? null : Selector.anyOf(active);
+    }
+
+    /**
+     * Seed committed offsets recovered at startup, so the first consume of each group does not
+     * have to read its cursor.
+     */
+    public void preload(Collection<ConsumerCursor> cursors) {
+        for (ConsumerCursor cursor : cursors) {
+            states.putIfAbsent(key(cursor.getConsumerGroup(), cursor.getTopic()),
+                new AckState(cursor.getConsumerGroup(), cursor.getTopic(), cursor.getOffset(),
+                    logDelivery.isLogTopic(cursor.getTopic())));
+        }
+    }
+
+    public Mono<Long> getCommittedOffset(String consumerGroup, String topic) {
+        AckState state = states.get(key(consumerGroup, topic));
+        if (state != null) {
+            synchronized (state) {
+                return Mono.just(state.committed);
+            }
+        }
+        return cursorRepository.getCommittedOffset(consumerGroup, topic);
+    }
+
+    private Mono<AckState> state(String consumerGroup, String topic) {
+        String key = key(consumerGroup, topic);
+        AckState existing = states.get(key);
+        if (existing != null) {
+            return Mono.just(existing);
+        }
+        return cursorRepository.getCommittedOffset(consumerGroup, topic)
+            .map(committed -> states.computeIfAbsent(key, k -> new AckState(consumerGroup, topic, committed,
+                logDelivery.isLogTopic(topic))));
+    }
+
+    private String key(String consumerGroup, String topic) {
+        return consumerGroup + ":" + topic;
+    }
+
+    private void flush() {
+        for (AckState state : states.values()) {
+            closeGap(state);
+
+            long committed;
+            boolean commitDirty;
+            List<long[]> completed;
+            synchronized (state) {
+                committed = state.committed;
+                commitDirty = committed != state.flushedCommitted;
+                completed = state.completed.drain();
+                state.flushedCommitted = committed;
+            }
+
+            try {
+                for (long[] range : completed) {
+                    messageRepository.updateStatusInOffsetRange(state.topic, range[0], range[1],
+                        Message.MessageStatus.PROCESSING, Message.MessageStatus.COMPLETED).block();
+                }
+                if (commitDirty) {
+                    cursorRepository.commitOffset(state.consumerGroup, state.topic, committed).block();
+                    replicationLeader.cursorCommitted(state.consumerGroup, state.topic, committed);
+                }
+            } catch (Exception e) {
+                log.error("Failed to flush acks for group {} topic {}: {}", state.consumerGroup, state.topic, e.getMessage());
+                synchronized (state) {
+                    completed.forEach(range -> state.completed.add(range[0], range[1]));
+                    if (commitDirty) {
+                        state.flushedCommitted = Long.MIN_VALUE;
+                    }
+                }
+            }
+        }
+    }
+
+    private void closeGap(AckState state) {
+        long from;
+        long to;
+        synchronized (state) {
+            Map.Entry<Long, Long> first = state.acked.first();
+            long now = System.currentTimeMillis();
+            if (first == null || now - state.lastGapCheck < gapCheckIntervalMs) {
+                return;
+            }
+            state.lastGapCheck = now;
+            from = state.committed + 1;
+            to = first.getKey() - 1;
+        }
+
+        try {
+            Selector selector = gapSelector(state.consumerGroup, state.topic);
+            Long unfinished = messageRepository.countUnfinishedInOffsetRange(state.topic, from, to, selector).block();
+            if (unfinished != null && unfinished == 0) {
+                synchronized (state) {
+                    // Only if nothing moved the cursor meanwhile
+                    if (state.committed == from - 1) {
+                        state.committed = to;
+                        state.advance();
+                        log.debug("Skipped offsets {}-{} of topic {} for group {}: no unfinished matching messages left",
+                            from, to, state.topic, state.consumerGroup);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Gap check for group {} topic {} failed: {}", state.consumerGroup, state.topic, e.getMessage());
+        }
+    }
+
+    private static class SelectorUse {
+        final Selector selector;
+        // Open push subscriptions; both fields only change inside the map's compute
+        int holders;
+        volatile long lastUsed;
+
+        SelectorUse(Selector selector) {
+            this.selector = selector;
+        }
+    }
+
+    private static class AckState {
+        final String consumerGroup;
+        final String topic;
+        // Log topics have no COMPLETED status to write
+        final boolean logTopic;
+        // Acked offsets above the committed offset
+        final OffsetRangeSet acked = new OffsetRangeSet();
+        // Acked offsets whose COMPLETED status has not been written yet
+        final OffsetRangeSet completed = new OffsetRangeSet();
+        long committed;
+        long flushedCommitted;
+        long lastGapCheck;
+
+        AckState(String consumerGroup, String topic, long committed, boolean logTopic) {
+            this.consumerGroup = consumerGroup;
+            this.topic = topic;
+            this.logTopic = logTopic;
+            this.committed = committed;
+            this.flushedCommitted = committed;
+        }
+
+        void ack(long from, long to) {
+            if (!logTopic) {
+                completed.add(from, to);
+            }
+            if (to <= committed) {
+                return;
+            }
+            acked.add(Math.max(from, committed + 1), to);
+            advance();
+        }
+
+        void advance() {
+            Map.Entry<Long, Long> first = acked.first();
+            while (first != null && first.getKey() <= committed + 1) {
+                committed = Math.max(committed, first.getValue());
+                acked.removeFirst();
+                first = acked.first();
+            }
+        }
+
+        int pendingRanges() {
+            synchronized (this) {
+                return acked.size();
+            }
+        }
+    }
+
+    /**
+     * Disjoint, coalesced inclusive offset ranges keyed by their start offset.
+     */
+    static class OffsetRangeSet {
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+
+        void add(long from, long to) {
+            // Merge with an overlapping or adjacent range on the left
+            Map.Entry<Long, Long> left = ranges.floorEntry(from);
+            if (left != null && left.getValue() >= from - 1) {
+                from = left.getKey();
+                to = Math.max(to, left.getValue());
+            }
+            // Swallow every range starting inside or right after the new one
+            Map.Entry<Long, Long> right = ranges.ceilingEntry(from);
+            while (right != null && right.getKey() <= to + 1) {
+                to = Math.max(to, right.getValue());
+                ranges.remove(right.getKey());
+                right = ranges.ceilingEntry(from);
+            }
+            ranges.put(from, to);
+        }
+
+        void remove(long from, long to) {
+            List<long[]> kept = new ArrayList<>(2);
+            Map.Entry<Long, Long> entry = ranges.floorEntry(from);
+            if (entry == null || entry.getValue() < from) {
+                entry = ranges.ceilingEntry(from);
+            }
+            while (entry != null && entry.getKey() <= to) {
+                if (entry.getKey() < from) {
+                    kept.add(new long[]{entry.getKey(), from - 1});
+                }
+                if (entry.getValue() > to) {
+                    kept.add(new long[]{to + 1, entry.getValue()});
+                }
+                ranges.remove(entry.getKey());
+                entry = ranges.ceilingEntry(entry.getKey());
+            }
+            kept.forEach(range -> ranges.put(range[0], range[1]));
+        }
+
+        void removeThrough(long offset) {
+            remove(Long.MIN_VALUE, offset);
+        }
+
+        Map.Entry<Long, Long> first() {
+            return ranges.firstEntry();
+        }
+
+        void removeFirst() {
+            ranges.pollFirstEntry();
+        }
+
+        List<long[]> drain() {
+            List<long[]> drained = new ArrayList<>(ranges.size());
+            ranges.forEach((from, to) -> drained.add(new long[]{from, to}));
+            ranges.clear();
+            return drained;
+        }
+
+        int size() {
+            return ranges.size();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.selector.Selector;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Weighted fair fetching across the priority lanes of a topic.
+ *
+ * Each fetch splits its batch between lanes with smooth weighted round-robin, keeping the
+ * round-robin state per (topic, consumer group) so shares hold across fetches: with weights
+ * 1,3,6 a backlogged bulk lane still gets one slot in ten. Slots a lane cannot fill are handed
+ * to the lanes that still have messages.
+ */
+@Service
+@DependsOn("dataSourceInitializer")
+@RequiredArgsConstructor
+@Slf4j
+public class PriorityLaneScheduler {
+
+    private final MessageRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+
+    // Lane weights indexed by priority; the number of weights is the number of lanes
+    @Value("${vthreadmq.priority.weights:1,3,6}")
+    private int[] weights;
+
+    @Value("${vthreadmq.priority.default:1}")
+    private int defaultPriority;
+
+    @Value("${vthreadmq.priority.metrics-interval-ms:5000}")
+    private long metricsIntervalMs;
+
+    // Map of "topic:consumerGroup" -> round-robin state
+    private final ConcurrentHashMap<String, LaneState> states = new ConcurrentHashMap<>();
+
+    // Map of "topic:priority" -> pending depth backing the lane depth gauges
+    private final ConcurrentHashMap<String, AtomicLong> laneDepths = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> laneWaitTimers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService metricsExecutor;
+
+    @PostConstruct
+    public void init() {
+        metricsExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-lane-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricsExecutor.scheduleWithFixedDelay(this::refreshDepths, 0, metricsIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Priority lanes configured with weights {}", Arrays.toString(weights));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (metricsExecutor != null) {
+            metricsExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Map a requested priority onto a lane, falling back to the default lane.
+     */
+    public int laneFor(Integer priority) {
+        int lane = priority != null ? priority : defaultPriority;
+        return Math.max(0, Math.min(lane, weights.length - 1));
+    }
+
+    /**
+     * Fetch up to {@code maxMessages} pending messages after {@code fromOffset}, shared between
+     * lanes by weight. Messages are emitted in the interleaved order the lanes were scheduled.
+     * With a selector only matching messages are fetched.
+     */
+    public Flux<Message> fetch(String topic, String consumerGroup, Long fromOffset, Selector selector, int maxMessages) {
+        LaneState state = states.computeIfAbsent(topic + ":" + consumerGroup, k -> new LaneState(weights.length));
+        int[] schedule = state.schedule(weights, maxMessages);
+
+        int[] quotas = new int[weights.length];
+        for (int lane : schedule) {
+            quotas[lane]++;
+        }
+
+        return Flux.range(0, weights.length)
+            .flatMapSequential(lane -> quotas[lane] == 0
+                ? Mono.just(new ArrayList<Message>())
+                : messageRepository.findByTopicAndStatusAndOffsetAndPriority(
+                        topic, Message.MessageStatus.PENDING, fromOffset, lane, selector, quotas[lane])
+                    .collectList()
+                    .map(ArrayList::new))
+            .collectList()
+            .flatMap(lanes -> topUp(topic, fromOffset, selector, maxMessages, quotas, lanes))
+            .flatMapMany(lanes -> Flux.fromIterable(interleave(schedule, lanes)))
+            .doOnNext(this::recordWait);
+    }
+
+    private Mono<List<ArrayList<Message>>> topUp(String topic, Long fromOffset, Selector selector, int maxMessages, int[] quotas,
+                                                 List<ArrayList<Message>> lanes) {
+        int fetched = lanes.stream().mapToInt(List::size).sum();
+        if (fetched >= maxMessages) {
+            return Mono.just(lanes);
+        }
+
+        // Lanes that filled their quota may have more; walk them from the most urgent down
+        return Flux.range(0, weights.length)
+            .map(i -> weights.length - 1 - i)
+            .filter(lane -> quotas[lane] > 0 && lanes.get(lane).size() == quotas[lane])
+            .concatMap(lane -> {
+                int remaining = maxMessages - lanes.stream().mapToInt(List::size).sum();
+                if (remaining <= 0) {
+                    return Mono.empty();
+                }
+                List<Message> laneMessages = lanes.get(lane);
+                long after = laneMessages.get(laneMessages.size() - 1).getOffset();
+                return messageRepository.findByTopicAndStatusAndOffsetAndPriority(
+                        topic, Message.MessageStatus.PENDING, after, lane, selector, remaining)
+                    .collectList()
+                    .doOnNext(lanes.get(lane)::addAll);
+            })
+            .then(Mono.just(lanes));
+    }
+
+    private List<Message> interleave(int[] schedule, List<ArrayList<Message>> lanes) {
+        int[] next = new int[lanes.size()];
+        List<Message> ordered = new ArrayList<>();
+        for (int lane : schedule) {
+            if (next[lane] < lanes.get(lane).size()) {
+                ordered.add(lanes.get(lane).get(next[lane]++));
+            }
+        }
+        // Top-up messages follow in lane order
+        for (int lane = lanes.size() - 1; lane >= 0; lane--) {
+            List<Message> laneMessages = lanes.get(lane);
+            while (next[lane] < laneMessages.size()) {
+                ordered.add(laneMessages.get(next[lane]++));
+            }
+        }
+        return ordered;
+    }
+
+    private void recordWait(Message message) {
+        Instant availableAt = message.getScheduledAt() != null ? message.getScheduledAt() : message.getCreatedAt();
+        if (availableAt == null) {
+            return;
+        }
+        Duration wait = Duration.between(availableAt, Instant.now());
+        laneWaitTimers.computeIfAbsent(message.getTopic() + ":" + message.getPriority(), k ->
+                Timer.builder("vthreadmq_lane_wait_time")
+                    .description("Time messages waited in their priority lane before being fetched")
+                    .tags(Tags.of("topic", message.getTopic(), "priority", String.valueOf(message.getPriority())))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry))
+            .record(wait.isNegative() ? Duration.ZERO : wait);
+    }
+
+    private void refreshDepths() {
+        try {
+            Set<String> seen = new HashSet<>();
+            messageRepository.countByStatusPerLane(Message.MessageStatus.PENDING)
+                .doOnNext(lane -> {
+                    String key = lane.getTopic() + ":" + lane.getPriority();
+                    seen.add(key);
+                    laneDepths.computeIfAbsent(key, k -> {
+                        AtomicLong depth = new AtomicLong();
+                        Gauge.builder("vthreadmq_lane_depth", depth, AtomicLong::get)
+                            .description("Pending messages per topic priority lane")
+                            .tags(Tags.of("topic", lane.getTopic(), "priority", String.valueOf(lane.getPriority())))
+                            .register(meterRegistry);
+                        return depth;
+                    }).set(lane.getDepth());
+                })
+                .blockLast();
+
+            // Lanes that drained since the last refresh report zero
+            laneDepths.forEach((key, depth) -> {
+                if (!seen.contains(key)) {
+                    depth.set(0);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Failed to refresh priority lane depths: {}", e.getMessage());
+        }
+    }
+
+    private static class LaneState {
+        private final int[] current;
+
+        LaneState(int lanes) {
+            this.current = new int[lanes];
+        }
+
+        synchronized int[] schedule(int[] weights, int slots) {
+            int total = Arrays.stream(weights).sum();
+            int[] schedule = new int[slots];
+            for (int slot = 0; slot < slots; slot++) {
+                int best = 0;
+                for (int lane = 0; lane < weights.length; lane++) {
+                    current[lane] += weights[lane];
+                }
+                // Ties go to the more urgent lane
+                for (int lane = 1; lane < weights.length; lane++) {
+                    if (current[lane] >= current[best]) {
+                        best = lane;
+                    }
+                }
+                current[best] -= total;
+                schedule[slot] = best;
+            }
+            return schedule;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.vthreadMQ001.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A produce or consume request went over its topic or client quota. Rendered as
+ * 429 Too Many Requests with a Retry-After header.
+ */
+public class QuotaExceededException extends ResponseStatusException {
+
+    private final long retryAfterSeconds;
+
+    public QuotaExceededException(String reason, long retryAfterSeconds) {
+        super(HttpStatus.TOO_MANY_REQUESTS, reason);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return headers;
+    }
+}
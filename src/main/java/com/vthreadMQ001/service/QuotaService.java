@@ -0,0 +1,421 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.repository.BrokerState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Produce and consume quotas per topic and per client ID, in messages/s and bytes/s.
+ *
+ * Each limit is a token bucket implemented as GCRA on a single {@link AtomicLong} (the
+ * theoretical arrival time), so admission is a CAS with no locks. Produces are admitted only if
+ * every applicable bucket has room. Consume size is only known after the fetch, so consumes are
+ * admitted while no bucket is in debt and charged for what was actually delivered. A pattern
+ * consume is checked against every known topic it matches.
+ *
+ * Client IDs and topic names come from requests, so buckets are only kept for subjects that have
+ * a limit, and a periodic sweep drops those that have been idle for {@code idle-ms} and have
+ * refilled completely (a full bucket is the same as a new one). Meters are tagged with the name
+ * only for topics and clients configured by name; every other subject reports as "other".
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class QuotaService {
+
+    public static final String ANONYMOUS_CLIENT = "anonymous";
+    static final String OTHER = "other";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final BrokerState brokerState;
+
+    @Value("${vthreadmq.quotas.enabled:true}")
+    private boolean enabled;
+
+    @Value("${vthreadmq.quotas.burst-seconds:1.0}")
+    private double burstSeconds;
+
+    @Value("${vthreadmq.quotas.idle-ms:300000}")
+    private long idleMs;
+
+    private Map<String, QuotaLimits> topicLimits;
+    private Map<String, QuotaLimits> clientLimits;
+    private QuotaLimits topicDefaults;
+    private QuotaLimits clientDefaults;
+    private boolean topicConsumeLimited;
+
+    // Map of "direction:scope:name" -> buckets for that subject; only subjects with a limit
+    private final ConcurrentHashMap<String, SubjectQuota> subjects = new ConcurrentHashMap<>();
+
+    // Map of "direction:scope:name" -> throttle counter, name being a configured name or OTHER
+    private final ConcurrentHashMap<String, Counter> throttleCounters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sweepExecutor;
+
+    @PostConstruct
+    public void init() {
+        Binder binder = Binder.get(environment);
+        topicLimits = binder.bind("vthreadmq.quotas.topics", Bindable.mapOf(String.class, QuotaLimits.class)).orElse(Map.of());
+        clientLimits = binder.bind("vthreadmq.quotas.clients", Bindable.mapOf(String.class, QuotaLimits.class)).orElse(Map.of());
+        topicDefaults = binder.bind("vthreadmq.quotas.topic-defaults", QuotaLimits.class).orElseGet(QuotaLimits::new);
+        clientDefaults = binder.bind("vthreadmq.quotas.client-defaults", QuotaLimits.class).orElseGet(QuotaLimits::new);
+        topicConsumeLimited = topicDefaults.limitsConsume() || topicLimits.values().stream().anyMatch(QuotaLimits::limitsConsume);
+
+        log.info("Quotas {} ({} topic and {} client overrides)", enabled ? "enabled" : "disabled",
+            topicLimits.size(), clientLimits.size());
+
+        sweepExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vthreadmq-quota-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepMs = Math.max(1000, idleMs / 2);
+        sweepExecutor.scheduleWithFixedDelay(this::sweepIdle, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweepExecutor != null) {
+            sweepExecutor.shutdownNow();
+        }
+    }
+
+    int subjectCount() {
+        return subjects.size();
+    }
+
+    /**
+     * Drop the buckets of subjects idle for longer than the idle time whose buckets are full
+     * again. A request racing with the removal may charge the dropped bucket; at worst that
+     * subject gets one extra burst.
+     */
+    void sweepIdle() {
+        long idleBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleMs);
+        for (String key : subjects.keySet()) {
+            subjects.computeIfPresent(key, (k, quota) -> quota.lastUsed - idleBefore < 0 && quota.isFull() ? null : quota);
+        }
+    }
+
+    /**
+     * Admit a produce of one message, or fail with {@link QuotaExceededException}.
+     */
+    public Mono<Void> acquireProduce(String topic, String clientId, String content) {
+        return Mono.fromRunnable(() -> {
+            if (!enabled) {
+                return;
+            }
+            long bytes = content != null ? content.getBytes(StandardCharsets.UTF_8).length : 0;
+            List<SubjectQuota> quotas = List.of(
+                subject(Direction.PRODUCE, Scope.TOPIC, topic),
+                subject(Direction.PRODUCE, Scope.CLIENT, clientOrAnonymous(clientId)));
+
+            List<Runnable> refunds = new ArrayList<>(4);
+            for (SubjectQuota quota : quotas) {
+                long retryAfterNanos = quota.tryAcquire(1, bytes, refunds);
+                if (retryAfterNanos > 0) {
+                    // All or nothing: hand back what the earlier buckets granted
+                    refunds.forEach(Runnable::run);
+                    quota.throttled.increment();
+                    throw exceeded(quota, retryAfterNanos);
+                }
+            }
+        });
+    }
+
+    /**
+     * Admit a consume request while neither the topic nor the client is over its consume quota.
+     * For a pattern that is every known topic it matches, since the consume reads from all of them.
+     */
+    public Mono<Void> checkConsume(String topic, String clientId) {
+        return Mono.fromRunnable(() -> {
+            if (!enabled) {
+                return;
+            }
+            List<SubjectQuota> quotas = new ArrayList<>();
+            for (String consumed : consumedTopics(topic)) {
+                quotas.add(subject(Direction.CONSUME, Scope.TOPIC, consumed));
+            }
+            quotas.add(subject(Direction.CONSUME, Scope.CLIENT, clientOrAnonymous(clientId)));
+            for (SubjectQuota quota : quotas) {
+                long retryAfterNanos = quota.debtNanos();
+                if (retryAfterNanos > 0) {
+                    quota.throttled.increment();
+                    throw exceeded(quota, retryAfterNanos);
+                }
+            }
+        });
+    }
+
+    private List<String> consumedTopics(String topic) {
+        if (!TopicTrie.isPattern(topic)) {
+            return List.of(topic);
+        }
+        if (!topicConsumeLimited) {
+            // No topic has a consume limit, so there is no need to list the matches
+            return List.of();
+        }
+        return TopicTrie.filter(topic, brokerState.getTopics().stream().map(TopicHead::getTopic).toList());
+    }
+
+    /**
+     * Charge a delivered message against the consume quotas.
+     */
+    public void chargeConsume(String topic, String clientId, Message message) {
+        if (!enabled) {
+            return;
+        }
+        long bytes = message.getContent() != null ? message.getContent().getBytes(StandardCharsets.UTF_8).length : 0;
+        subject(Direction.CONSUME, Scope.TOPIC, topic).charge(1, bytes);
+        subject(Direction.CONSUME, Scope.CLIENT, clientOrAnonymous(clientId)).charge(1, bytes);
+    }
+
+    private String clientOrAnonymous(String clientId) {
+        return clientId != null && !clientId.isBlank() ? clientId : ANONYMOUS_CLIENT;
+    }
+
+    private QuotaExceededException exceeded(SubjectQuota quota, long retryAfterNanos) {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L));
+        return new QuotaExceededException(quota.direction.label + " quota exceeded for "
+            + quota.scope.label + " " + quota.name, retryAfterSeconds);
+    }
+
+    private SubjectQuota subject(Direction direction, Scope scope, String name) {
+        String key = direction.label + ":" + scope.label + ":" + name;
+        SubjectQuota quota = subjects.get(key);
+        if (quota == null) {
+            Map<String, QuotaLimits> configured = scope == Scope.TOPIC ? topicLimits : clientLimits;
+            QuotaLimits limits = configured.getOrDefault(name, scope == Scope.TOPIC ? topicDefaults : clientDefaults);
+            long messagesPerSec = direction == Direction.PRODUCE ? limits.getProduceMessagesPerSec() : limits.getConsumeMessagesPerSec();
+            long bytesPerSec = direction == Direction.PRODUCE ? limits.getProduceBytesPerSec() : limits.getConsumeBytesPerSec();
+            SubjectQuota created = new SubjectQuota(direction, scope, name, configured.containsKey(name) ? name : OTHER,
+                messagesPerSec, bytesPerSec);
+            if (created.messages == null && created.bytes == null) {
+                // Unlimited: nothing to remember
+                return created;
+            }
+            quota = subjects.computeIfAbsent(key, k -> {
+                created.registerUsage();
+                return created;
+            });
+        }
+        quota.lastUsed = System.nanoTime();
+        return quota;
+    }
+
+    private enum Direction {
+        PRODUCE("produce"),
+        CONSUME("consume");
+
+        final String label;
+
+        Direction(String label) {
+            this.label = label;
+        }
+    }
+
+    private enum Scope {
+        TOPIC("topic"),
+        CLIENT("client");
+
+        final String label;
+
+        Scope(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Limits for one topic or client; zero means unlimited.
+     */
+    @Data
+    public static class QuotaLimits {
+        private long produceMessagesPerSec;
+        private long produceBytesPerSec;
+        private long consumeMessagesPerSec;
+        private long consumeBytesPerSec;
+
+        boolean limitsConsume() {
+            return consumeMessagesPerSec > 0 || consumeBytesPerSec > 0;
+        }
+    }
+
+    private class SubjectQuota {
+        final Direction direction;
+        final Scope scope;
+        final String name;
+        final String meterName;
+        final Tags tags;
+        final TokenBucket messages;
+        final TokenBucket bytes;
+        final Counter throttled;
+        volatile long lastUsed = System.nanoTime();
+
+        SubjectQuota(Direction direction, Scope scope, String name, String meterName, long messagesPerSec, long bytesPerSec) {
+            this.direction = direction;
+            this.scope = scope;
+            this.name = name;
+            this.meterName = meterName;
+            this.messages = messagesPerSec > 0 ? new TokenBucket(messagesPerSec, burstSeconds) : null;
+            this.bytes = bytesPerSec > 0 ? new TokenBucket(bytesPerSec, burstSeconds) : null;
+
+            this.tags = Tags.of("direction", direction.label, "scope", scope.label, "name", meterName);
+            this.throttled = throttleCounters.computeIfAbsent(direction.label + ":" + scope.label + ":" + meterName,
+                key -> Counter.builder("vthreadmq_quota_throttled_total")
+                    .description("Requests rejected for exceeding a quota")
+                    .tags(tags)
+                    .register(meterRegistry));
+        }
+
+        /**
+         * Usage gauges, only for subjects configured by name: buckets of other subjects come and
+         * go with the sweep, and their names are unbounded.
+         */
+        void registerUsage() {
+            if (OTHER.equals(meterName)) {
+                return;
+            }
+            if (messages != null) {
+                Gauge.builder("vthreadmq_quota_usage_ratio", messages, TokenBucket::usage)
+                    .description("Share of the quota burst currently in use")
+                    .tags(tags.and("unit", "messages"))
+                    .register(meterRegistry);
+            }
+            if (bytes != null) {
+                Gauge.builder("vthreadmq_quota_usage_ratio", bytes, TokenBucket::usage)
+                    .description("Share of the quota burst currently in use")
+                    .tags(tags.and("unit", "bytes"))
+                    .register(meterRegistry);
+            }
+        }
+
+        boolean isFull() {
+            return (messages == null || messages.isFull()) && (bytes == null || bytes.isFull());
+        }
+
+        long tryAcquire(long messageCount, long byteCount, List<Runnable> refunds) {
+            if (messages != null) {
+                long wait = messages.tryAcquire(messageCount);
+                if (wait > 0) {
+                    return wait;
+                }
+                refunds.add(() -> messages.refund(messageCount));
+            }
+            if (bytes != null) {
+                long wait = bytes.tryAcquire(byteCount);
+                if (wait > 0) {
+                    return wait;
+                }
+                refunds.add(() -> bytes.refund(byteCount));
+            }
+            return 0;
+        }
+
+        void charge(long messageCount, long byteCount) {
+            if (messages != null) {
+                messages.charge(messageCount);
+            }
+            if (bytes != null) {
+                bytes.charge(byteCount);
+            }
+        }
+
+        long debtNanos() {
+            long wait = messages != null ? messages.debtNanos() : 0;
+            return Math.max(wait, bytes != null ? bytes.debtNanos() : 0);
+        }
+    }
+
+    /**
+     * GCRA token bucket: the state is the theoretical arrival time (TAT) of the next unit. A
+     * request of n units is admitted if pushing the TAT forward by n emission intervals keeps it
+     * within the burst tolerance of now.
+     */
+    static class TokenBucket {
+        private final double intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong theoreticalArrival;
+        private final LongSupplier clock;
+
+        TokenBucket(long ratePerSec, double burstSeconds) {
+            this(ratePerSec, burstSeconds, System::nanoTime);
+        }
+
+        TokenBucket(long ratePerSec, double burstSeconds, LongSupplier clock) {
+            this.intervalNanos = 1_000_000_000.0 / ratePerSec;
+            this.toleranceNanos = (long) (burstSeconds * 1_000_000_000L);
+            this.clock = clock;
+            this.theoreticalArrival = new AtomicLong(clock.getAsLong());
+        }
+
+        /**
+         * Returns 0 if admitted, otherwise the nanoseconds until the request would fit.
+         */
+        long tryAcquire(long units) {
+            long increment = (long) (units * intervalNanos);
+            while (true) {
+                long now = clock.getAsLong();
+                long tat = theoreticalArrival.get();
+                long base = Math.max(tat, now);
+                long next = base + increment;
+                // A request larger than the whole burst is still admitted against a full bucket
+                if (next - now > toleranceNanos && tat - now > 0) {
+                    return next - now - toleranceNanos;
+                }
+                if (theoreticalArrival.compareAndSet(tat, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        void charge(long units) {
+            long increment = (long) (units * intervalNanos);
+            long now = clock.getAsLong();
+            theoreticalArrival.accumulateAndGet(increment, (tat, inc) -> Math.max(tat, now) + inc);
+        }
+
+        void refund(long units) {
+            theoreticalArrival.addAndGet(-(long) (units * intervalNanos));
+        }
+
+        long debtNanos() {
+            long over = theoreticalArrival.get() - clock.getAsLong() - toleranceNanos;
+            return Math.max(0, over);
+        }
+
+        boolean isFull() {
+            return theoreticalArrival.get() - clock.getAsLong() <= 0;
+        }
+
+        double usage() {
+            long ahead = theoreticalArrival.get() - clock.getAsLong();
+            return Math.max(0, Math.min(1.0, (double) ahead / toleranceNanos));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.vthreadMQ001.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A write was sent to a read-only follower (409), or a produce was stored on the leader but not
+ * acknowledged by enough followers in time (504).
+ */
+public class ReplicationException extends ResponseStatusException {
+
+    public ReplicationException(HttpStatus status, String reason) {
+        super(status, reason);
+    }
+
+    public static ReplicationException readOnly(String leaderUrl) {
+        return new ReplicationException(HttpStatus.CONFLICT,
+            "This node is a read-only follower; send writes to the leader at " + leaderUrl);
+    }
+
+    public static ReplicationException notAcknowledged(long seq, int required, int acked) {
+        return new ReplicationException(HttpStatus.GATEWAY_TIMEOUT,
+            "Message " + seq + " stored on the leader but acknowledged by " + acked + " of " + required + " followers");
+    }
+}
@@ -0,0 +1,180 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.dto.ReplicationRecord;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follower side of replication.
+ *
+ * With {@code vthreadmq.replication.role=follower} this node opens a stream to the leader from
+ * its own highest seq, applies messages in batches (one transaction per batch) and cursor
+ * updates as they arrive, and acknowledges the last applied seq after every batch. The stream is
+ * reopened after failures. A follower rejects writes and serves read-only consumes.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReplicationFollowerService {
+
+    private final MessageRepository messageRepository;
+    private final OffsetAckTracker ackTracker;
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+    private final BlobStoreService blobStore;
+
+    @Value("${vthreadmq.replication.role:standalone}")
+    private String role;
+
+    @Value("${vthreadmq.replication.leader-url:}")
+    private String leaderUrl;
+
+    @Value("${vthreadmq.replication.node-id:${server.port:8080}}")
+    private String nodeId;
+
+    @Value("${vthreadmq.replication.batch-size:500}")
+    private int batchSize;
+
+    @Value("${vthreadmq.replication.retry-delay-ms:1000}")
+    private long retryDelayMs;
+
+    private final AtomicLong appliedSeq = new AtomicLong(0);
+    private final AtomicLong leaderSeq = new AtomicLong(0);
+    private WebClient leader;
+    private Disposable subscription;
+
+    @PostConstruct
+    public void init() {
+        if (!isFollower()) {
+            return;
+        }
+        if (leaderUrl == null || leaderUrl.isBlank()) {
+            throw new IllegalStateException("vthreadmq.replication.leader-url is required for a follower");
+        }
+
+        Gauge.builder("vthreadmq_replication_applied_seq", appliedSeq, AtomicLong::get)
+            .description("Highest seq applied from the leader")
+            .register(meterRegistry);
+
+        Gauge.builder("vthreadmq_replication_lag", this, follower -> Math.max(0, follower.leaderSeq.get() - follower.appliedSeq.get()))
+            .description("Messages the follower is behind the leader, as of the last heartbeat")
+            .register(meterRegistry);
+
+        leader = webClientBuilder.baseUrl(leaderUrl).build();
+        subscription = Flux.defer(this::follow)
+            .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, Duration.ofMillis(retryDelayMs))
+                .doBeforeRetry(signal -> log.warn("Replication from {} interrupted, reconnecting: {}",
+                    leaderUrl, signal.failure().getMessage())))
+            .repeatWhen(completed -> completed.delayElements(Duration.ofMillis(retryDelayMs)))
+            .subscribe();
+
+        log.info("Replicating from leader {} as follower {}", leaderUrl, nodeId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    public boolean isFollower() {
+        return "follower".equalsIgnoreCase(role);
+    }
+
+    public String getLeaderUrl() {
+        return leaderUrl;
+    }
+
+    public long getAppliedSeq() {
+        return appliedSeq.get();
+    }
+
+    /**
+     * Fail writes on a follower with a 409 pointing at the leader.
+     */
+    public Mono<Void> requireWritable() {
+        return isFollower() ? Mono.error(ReplicationException.readOnly(leaderUrl)) : Mono.empty();
+    }
+
+    private Flux<Void> follow() {
+        return messageRepository.getMaxSeq()
+            .doOnNext(appliedSeq::set)
+            .flatMapMany(fromSeq -> leader.get()
+                .uri(uri -> uri.path("/internal/replication/stream")
+                    .queryParam("followerId", nodeId)
+                    .queryParam("fromSeq", fromSeq)
+                    .build())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(ReplicationRecord.class))
+            .bufferTimeout(batchSize, Duration.ofMillis(50))
+            .concatMap(this::apply);
+    }
+
+    private Mono<Void> apply(List<ReplicationRecord> records) {
+        List<Message> messages = new ArrayList<>();
+        List<ReplicationRecord> cursors = new ArrayList<>();
+        for (ReplicationRecord record : records) {
+            switch (record.getType()) {
+                case MESSAGE -> messages.add(record.getMessage());
+                case CURSOR -> cursors.add(record);
+                case HEARTBEAT -> leaderSeq.accumulateAndGet(record.getSeq(), Math::max);
+            }
+        }
+
+        Mono<Void> applyMessages = messages.isEmpty()
+            ? Mono.empty()
+            : Flux.fromIterable(messages)
+                // Payloads arrive inline; large ones go to this node's own blob store
+                .concatMap(blobStore::offload)
+                .collectList()
+                .flatMap(messageRepository::saveReplicated)
+                .then(Mono.fromRunnable(() -> {
+                    long last = messages.get(messages.size() - 1).getSeq();
+                    appliedSeq.accumulateAndGet(last, Math::max);
+                    leaderSeq.accumulateAndGet(last, Math::max);
+                }));
+
+        return applyMessages
+            .then(Flux.fromIterable(cursors)
+                .concatMap(cursor -> ackTracker.commit(cursor.getConsumerGroup(), cursor.getTopic(), cursor.getOffset()))
+                .then())
+            .then(messages.isEmpty() ? Mono.empty() : acknowledge());
+    }
+
+    private Mono<Void> acknowledge() {
+        return leader.post()
+            .uri(uri -> uri.path("/internal/replication/ack")
+                .queryParam("followerId", nodeId)
+                .queryParam("seq", appliedSeq.get())
+                .build())
+            .retrieve()
+            .toBodilessEntity()
+            .then()
+            .onErrorResume(error -> {
+                // The next batch acknowledges again, so a lost ack only delays semi-sync produces
+                log.debug("Failed to acknowledge seq {} to leader: {}", appliedSeq.get(), error.getMessage());
+                return Mono.empty();
+            });
+    }
+}
@@ -0,0 +1,272 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.dto.ReplicationRecord;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Leader side of replication.
+ *
+ * Each follower holds one long-lived stream that starts after the last seq it has, replays
+ * stored messages in seq order in batches, then follows new ones as they are produced. Cursor
+ * commits are pushed to every open stream, after a snapshot of all cursors when the stream
+ * opens. Followers acknowledge the highest seq they have applied, which semi-synchronous
+ * produces wait on.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReplicationLeaderService {
+
+    private final MessageRepository messageRepository;
+    private final ConsumerCursorRepository cursorRepository;
+    private final NotificationService notificationService;
+    private final MeterRegistry meterRegistry;
+    private final BlobStoreService blobStore;
+
+    @Value("${vthreadmq.replication.batch-size:500}")
+    private int batchSize;
+
+    @Value("${vthreadmq.replication.heartbeat-ms:5000}")
+    private long heartbeatMs;
+
+    @Value("${vthreadmq.replication.ack-timeout-ms:5000}")
+    private long ackTimeoutMs;
+
+    // Map of follower id -> highest seq it has applied
+    private final ConcurrentHashMap<String, AtomicLong> followerAcks = new ConcurrentHashMap<>();
+
+    // Open replication streams
+    private final Set<FollowerStream> streams = ConcurrentHashMap.newKeySet();
+
+    // Produces waiting for follower acks
+    private final ConcurrentLinkedQueue<AckWaiter> waiters = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    public void init() {
+        notificationService.addMessageListener(this::onMessageProduced);
+
+        Gauge.builder("vthreadmq_replication_followers", streams, Set::size)
+            .description("Followers with an open replication stream")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Stream messages with seq greater than {@code fromSeq}, then cursor updates and new messages.
+     */
+    public Flux<ReplicationRecord> stream(String followerId, long fromSeq) {
+        return Flux.create(sink -> {
+            FollowerStream stream = new FollowerStream(followerId, fromSeq, sink);
+            streams.add(stream);
+            sink.onCancel(() -> stream.closed = true);
+            sink.onDispose(() -> {
+                stream.closed = true;
+                streams.remove(stream);
+                log.info("Replication stream to follower {} closed at seq {}", followerId, stream.position);
+            });
+
+            log.info("Follower {} connected, streaming from seq {}", followerId, fromSeq);
+            Thread.ofVirtual().name("vthreadmq-replication-" + followerId).start(() -> pump(stream));
+        });
+    }
+
+    public void acknowledge(String followerId, long seq) {
+        followerAcks.computeIfAbsent(followerId, id -> {
+            AtomicLong acked = new AtomicLong();
+            Gauge.builder("vthreadmq_replication_acked_seq", acked, AtomicLong::get)
+                .description("Highest seq acknowledged by a follower")
+                .tag("follower", id)
+                .register(meterRegistry);
+            return acked;
+        }).accumulateAndGet(seq, Math::max);
+
+        for (AckWaiter waiter : waiters) {
+            if (ackedCount(waiter.seq) >= waiter.required) {
+                waiter.done.complete(null);
+                waiters.remove(waiter);
+            }
+        }
+    }
+
+    /**
+     * Complete once {@code required} followers have applied {@code seq}, or fail with a 504
+     * after the ack timeout. The message is already stored on the leader either way.
+     */
+    public Mono<Void> awaitAcks(long seq, int required) {
+        if (required <= 0 || ackedCount(seq) >= required) {
+            return Mono.empty();
+        }
+
+        AckWaiter waiter = new AckWaiter(seq, required);
+        waiters.add(waiter);
+        // Re-check in case the ack arrived between the first check and registering
+        if (ackedCount(seq) >= required) {
+            waiters.remove(waiter);
+            return Mono.empty();
+        }
+
+        return Mono.fromFuture(waiter.done)
+            .timeout(Duration.ofMillis(ackTimeoutMs))
+            .onErrorMap(TimeoutException.class, e -> ReplicationException.notAcknowledged(seq, required, ackedCount(seq)))
+            .doFinally(signal -> waiters.remove(waiter));
+    }
+
+    public void cursorCommitted(String consumerGroup, String topic, long offset) {
+        if (streams.isEmpty()) {
+            return;
+        }
+        ReplicationRecord record = ReplicationRecord.builder()
+            .type(ReplicationRecord.RecordType.CURSOR)
+            .consumerGroup(consumerGroup)
+            .topic(topic)
+            .offset(offset)
+            .build();
+        for (FollowerStream stream : streams) {
+            stream.cursorUpdates.offer(record);
+            stream.wake();
+        }
+    }
+
+    public Map<String, Long> getFollowerAcks() {
+        Map<String, Long> acks = new TreeMap<>();
+        followerAcks.forEach((id, acked) -> acks.put(id, acked.get()));
+        return acks;
+    }
+
+    private int ackedCount(long seq) {
+        int count = 0;
+        for (AtomicLong acked : followerAcks.values()) {
+            if (acked.get() >= seq) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void onMessageProduced(Message message) {
+        for (FollowerStream stream : streams) {
+            stream.wake();
+        }
+    }
+
+    private void pump(FollowerStream stream) {
+        try {
+            // Cursors first, so a follower serving consumes starts from the right positions
+            cursorRepository.findAll()
+                .doOnNext(cursor -> stream.cursorUpdates.offer(ReplicationRecord.builder()
+                    .type(ReplicationRecord.RecordType.CURSOR)
+                    .consumerGroup(cursor.getConsumerGroup())
+                    .topic(cursor.getTopic())
+                    .offset(cursor.getOffset())
+                    .build()))
+                .blockLast();
+
+            long lastEmit = System.nanoTime();
+            while (!stream.closed) {
+                emitCursorUpdates(stream);
+
+                if (stream.sink.requestedFromDownstream() <= 0) {
+                    // The follower is behind on reading; wait for demand instead of buffering
+                    stream.wakeup.tryAcquire(10, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+
+                int limit = (int) Math.min(batchSize, stream.sink.requestedFromDownstream());
+                List<Message> batch = messageRepository.findBySeqAfter(stream.position, limit)
+                    .collectList()
+                    .block();
+
+                if (batch != null && !batch.isEmpty()) {
+                    for (Message message : batch) {
+                        stream.sink.next(ReplicationRecord.builder()
+                            .type(ReplicationRecord.RecordType.MESSAGE)
+                            .seq(message.getSeq())
+                            .message(blobStore.inline(message))
+                            .build());
+                        stream.position = message.getSeq();
+                    }
+                    lastEmit = System.nanoTime();
+                    continue;
+                }
+
+                if (System.nanoTime() - lastEmit > TimeUnit.MILLISECONDS.toNanos(heartbeatMs)) {
+                    stream.sink.next(ReplicationRecord.builder()
+                        .type(ReplicationRecord.RecordType.HEARTBEAT)
+                        .seq(stream.position)
+                        .build());
+                    lastEmit = System.nanoTime();
+                }
+                stream.wakeup.tryAcquire(heartbeatMs, TimeUnit.MILLISECONDS);
+                stream.wakeup.drainPermits();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Replication stream to follower {} failed: {}", stream.followerId, e.getMessage());
+            stream.sink.error(e);
+            return;
+        }
+        stream.sink.complete();
+    }
+
+    private void emitCursorUpdates(FollowerStream stream) {
+        ReplicationRecord record;
+        while (stream.sink.requestedFromDownstream() > 0 && (record = stream.cursorUpdates.poll()) != null) {
+            stream.sink.next(record);
+        }
+    }
+
+    private static class FollowerStream {
+        final String followerId;
+        final FluxSink<ReplicationRecord> sink;
+        final ConcurrentLinkedQueue<ReplicationRecord> cursorUpdates = new ConcurrentLinkedQueue<>();
+        final Semaphore wakeup = new Semaphore(0);
+        volatile long position;
+        volatile boolean closed;
+
+        FollowerStream(String followerId, long position, FluxSink<ReplicationRecord> sink) {
+            this.followerId = followerId;
+            this.position = position;
+            this.sink = sink;
+        }
+
+        void wake() {
+            wakeup.release();
+        }
+    }
+
+    private static class AckWaiter {
+        final long seq;
+        final int required;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        AckWaiter(long seq, int required) {
+            this.seq = seq;
+            this.required = required;
+        }
+    }
+}
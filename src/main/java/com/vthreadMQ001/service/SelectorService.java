@@ -0,0 +1,54 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.selector.Selector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles header selectors once and caches them by expression, so a consumer polling with the
+ * same selector never re-parses it.
+ */
+@Service
+@Slf4j
+public class SelectorService {
+
+    @Value("${vthreadmq.selector.max-length:1024}")
+    private int maxLength;
+
+    @Value("${vthreadmq.selector.cache-size:1024}")
+    private int cacheSize;
+
+    private final ConcurrentHashMap<String, Selector> compiled = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the compiled selector, or null when there is none.
+     */
+    public Selector compile(String expression) {
+        if (expression == null || expression.isBlank()) {
+            return null;
+        }
+        Selector selector = compiled.get(expression);
+        if (selector != null) {
+            return selector;
+        }
+        if (expression.length() > maxLength) {
+            throw new InvalidSelectorException("Selector is longer than " + maxLength + " characters");
+        }
+
+        try {
+            selector = Selector.parse(expression);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidSelectorException(e.getMessage());
+        }
+        if (compiled.size() >= cacheSize) {
+            // Selectors are few in practice; a flood of distinct ones just starts the cache over
+            compiled.clear();
+        }
+        compiled.put(expression, selector);
+        log.debug("Compiled selector [{}] to {}", expression, selector.getSql());
+        return selector;
+    }
+}
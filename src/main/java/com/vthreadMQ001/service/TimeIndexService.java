@@ -0,0 +1,130 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.TimeIndexEntry;
+import com.vthreadMQ001.repository.BrokerState;
+import com.vthreadMQ001.repository.MessageRepository;
+import com.vthreadMQ001.repository.TimeIndexRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sparse per-topic time -> offset index.
+ *
+ * One entry is kept per time bucket ({@code vthreadmq.time-index.interval-ms}), holding the
+ * lowest offset produced in that bucket. A lookup narrows the search to the offsets between two
+ * neighbouring entries and resolves the exact offset with a bounded (topic, offset) range query.
+ * Past the last entry the topic head from {@link BrokerState} bounds the range, and a timestamp
+ * after the topic's last produce needs no query at all.
+ */
+@Service
+@DependsOn("dataSourceInitializer")
+@RequiredArgsConstructor
+@Slf4j
+public class TimeIndexService {
+
+    private final TimeIndexRepository timeIndexRepository;
+    private final MessageRepository messageRepository;
+    private final BrokerState brokerState;
+
+    @Value("${vthreadmq.time-index.interval-ms:1000}")
+    private long intervalMs;
+
+    // Map of topic -> (bucket start millis -> lowest offset in bucket)
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Long>> topicIndexes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        timeIndexRepository.findAll()
+            .doOnNext(entry -> topicIndexes
+                .computeIfAbsent(entry.getTopic(), k -> new ConcurrentSkipListMap<>())
+                .merge(entry.getTimestamp().toEpochMilli(), entry.getOffset(), Math::min))
+            .count()
+            .doOnSuccess(count -> log.info("Loaded {} time index entries for {} topics", count, topicIndexes.size()))
+            .doOnError(error -> log.error("Failed to load time index", error))
+            .onErrorResume(error -> Mono.empty())
+            .block();
+    }
+
+    /**
+     * Record a produced message. Only the first (lowest) offset of each time bucket is kept,
+     * so this is a map lookup on the hot path and a write only once per bucket.
+     */
+    public void record(Message message) {
+        if (message.getCreatedAt() == null || message.getOffset() == null) {
+            return;
+        }
+
+        long bucket = message.getCreatedAt().toEpochMilli() / intervalMs * intervalMs;
+        ConcurrentSkipListMap<Long, Long> index = topicIndexes.computeIfAbsent(message.getTopic(), k -> new ConcurrentSkipListMap<>());
+
+        Long existing = index.get(bucket);
+        if (existing != null && existing <= message.getOffset()) {
+            return;
+        }
+
+        Long merged = index.merge(bucket, message.getOffset(), Math::min);
+        if (merged.equals(message.getOffset())) {
+            timeIndexRepository.save(TimeIndexEntry.builder()
+                    .topic(message.getTopic())
+                    .timestamp(Instant.ofEpochMilli(bucket))
+                    .offset(merged)
+                    .build())
+                .doOnError(error -> log.warn("Failed to persist time index entry for topic {}: {}",
+                    message.getTopic(), error.getMessage()))
+                .subscribe();
+        }
+    }
+
+    /**
+     * Resolve the first offset whose message was created at or after the given timestamp.
+     * When no such message exists yet, the next offset to be written is returned.
+     */
+    public Mono<Long> findOffsetAtOrAfter(String topic, Instant timestamp) {
+        long target = timestamp.toEpochMilli();
+        boolean headKnown = brokerState.isLoaded();
+        if (headKnown) {
+            Instant lastProducedAt = brokerState.lastProducedAt(topic);
+            if (lastProducedAt == null ? brokerState.headOffset(topic) == 0 : lastProducedAt.toEpochMilli() < target) {
+                return Mono.just(brokerState.nextOffset(topic));
+            }
+        }
+
+        ConcurrentSkipListMap<Long, Long> index = topicIndexes.get(topic);
+
+        long lowerBound = 0L;
+        Long upperBound = null;
+        if (index != null) {
+            Map.Entry<Long, Long> floor = index.floorEntry(target);
+            Map.Entry<Long, Long> higher = index.higherEntry(target);
+            lowerBound = floor != null ? floor.getValue() : 0L;
+            upperBound = higher != null ? higher.getValue() : null;
+        }
+
+        Long ceiling = upperBound;
+        return messageRepository.findFirstOffsetAtOrAfter(topic, timestamp, lowerBound,
+                ceiling != null ? ceiling : headKnown ? brokerState.headOffset(topic) : Long.MAX_VALUE)
+            .switchIfEmpty(Mono.defer(() -> ceiling != null ? Mono.just(ceiling)
+                : headKnown ? Mono.just(brokerState.nextOffset(topic))
+                : messageRepository.getMaxOffset(topic).map(maxOffset -> maxOffset + 1)));
+    }
+
+    /**
+     * Drop index entries for buckets older than the cutoff, matching message retention.
+     */
+    public Mono<Void> prune(Instant before) {
+        long cutoff = before.toEpochMilli();
+        topicIndexes.values().forEach(index -> index.headMap(cutoff).clear());
+        return timeIndexRepository.deleteOlderThan(before);
+    }
+}
@@ -0,0 +1,146 @@
+package com.vthreadMQ001.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscribers keyed by hierarchical topic pattern, with topics split into dot-separated segments.
+ *
+ * In a pattern {@code *} matches exactly one segment and {@code #}, which must be the last
+ * segment, matches any number of remaining segments including none: {@code orders.*} matches
+ * {@code orders.eu} and {@code orders.#} also matches {@code orders} and {@code orders.eu.retail}.
+ * Patterns without wildcards are plain topic names. Matching walks one trie path per segment
+ * (plus the wildcard branches), so its cost depends on the topic depth, not on how many patterns
+ * are registered. Reads are lock-free; writes are serialized.
+ */
+public class TopicTrie<T> {
+
+    public static final String SINGLE = "*";
+    public static final String MULTI = "#";
+
+    private final Node<T> root = new Node<>();
+
+    public static boolean isPattern(String topic) {
+        for (String segment : topic.split("\\.", -1)) {
+            if (segment.equals(SINGLE) || segment.equals(MULTI)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the pattern syntax, throwing {@link IllegalArgumentException} for empty segments or a
+     * {@code #} that is not the last segment.
+     */
+    public static String[] segments(String pattern) {
+        String[] segments = pattern.split("\\.", -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].isEmpty()) {
+                throw new IllegalArgumentException("Empty segment in topic pattern " + pattern);
+            }
+            if (segments[i].equals(MULTI) && i != segments.length - 1) {
+                throw new IllegalArgumentException("'#' must be the last segment of topic pattern " + pattern);
+            }
+        }
+        return segments;
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] topic, int t) {
+        if (p == pattern.length) {
+            return t == topic.length;
+        }
+        if (pattern[p].equals(MULTI)) {
+            return true;
+        }
+        if (t == topic.length) {
+            return false;
+        }
+        return (pattern[p].equals(SINGLE) || pattern[p].equals(topic[t])) && matches(pattern, p + 1, topic, t + 1);
+    }
+
+    public synchronized void add(String pattern, T subscriber) {
+        Node<T> node = root;
+        for (String segment : segments(pattern)) {
+            node = node.children.computeIfAbsent(segment, k -> new Node<>());
+        }
+        node.subscribers.add(subscriber);
+    }
+
+    public synchronized void remove(String pattern, T subscriber) {
+        remove(root, segments(pattern), 0, subscriber);
+    }
+
+    // Returns whether the node is empty afterwards, so the parent can prune it
+    private boolean remove(Node<T> node, String[] segments, int depth, T subscriber) {
+        if (depth == segments.length) {
+            node.subscribers.remove(subscriber);
+        } else {
+            Node<T> child = node.children.get(segments[depth]);
+            if (child != null && remove(child, segments, depth + 1, subscriber)) {
+                node.children.remove(segments[depth]);
+            }
+        }
+        return node.subscribers.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * Every subscriber with at least one pattern matching {@code topic}, each once.
+     */
+    public Set<T> match(String topic) {
+        Set<T> matched = new HashSet<>();
+        collect(root, topic.split("\\.", -1), 0, matched);
+        return matched;
+    }
+
+    public boolean hasMatch(String topic) {
+        return !match(topic).isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    private void collect(Node<T> node, String[] segments, int depth, Collection<T> matched) {
+        // '#' also matches zero remaining segments
+        Node<T> multi = node.children.get(MULTI);
+        if (multi != null) {
+            matched.addAll(multi.subscribers);
+        }
+        if (depth == segments.length) {
+            matched.addAll(node.subscribers);
+            return;
+        }
+        Node<T> exact = node.children.get(segments[depth]);
+        if (exact != null) {
+            collect(exact, segments, depth + 1, matched);
+        }
+        Node<T> single = node.children.get(SINGLE);
+        if (single != null) {
+            collect(single, segments, depth + 1, matched);
+        }
+    }
+
+    /**
+     * Topics from {@code topics} that match {@code pattern}, in their original order.
+     */
+    public static List<String> filter(String pattern, Collection<String> topics) {
+        String[] compiled = segments(pattern);
+        List<String> matched = new ArrayList<>();
+        for (String topic : topics) {
+            if (matches(compiled, 0, topic.split("\\.", -1), 0)) {
+                matched.add(topic);
+            }
+        }
+        return matched;
+    }
+
+    private static class Node<T> {
+        final ConcurrentHashMap<String, Node<T>> children = new ConcurrentHashMap<>();
+        final Set<T> subscribers = ConcurrentHashMap.newKeySet();
+    }
+}
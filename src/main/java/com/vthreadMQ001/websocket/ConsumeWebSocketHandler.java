@@ -0,0 +1,147 @@
+package com.vthreadMQ001.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.service.MessagePushService;
+import com.vthreadMQ001.service.NotificationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Push-based consume protocol on {@code /ws/consume}.
+ *
+ * Clients subscribe with a topic, consumer group, optional header selector and a number of
+ * credits; the server pushes full matching messages while credit remains. Credits, acks and
+ * commits flow back on the same socket.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConsumeWebSocketHandler implements WebSocketHandler {
+
+    private final NotificationService notificationService;
+    private final MessagePushService messagePushService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        log.info("Consume WebSocket connection established: {}", session.getId());
+        SessionOutbox outbox = notificationService.register(session);
+
+        // concatMap keeps acks and commits in the order the client sent them
+        Mono<Void> input = session.receive()
+            .map(WebSocketMessage::getPayloadAsText)
+            .concatMap(message -> handleIncomingMessage(session, message))
+            .doOnError(error -> log.error("Consume WebSocket error for session {}: {}", session.getId(), error.getMessage()))
+            .then();
+
+        Mono<Void> output = session.send(outbox.frames());
+
+        return Mono.zip(input, output)
+            .doFinally(signalType -> {
+                log.info("Consume WebSocket connection closed: {} ({})", session.getId(), signalType);
+                messagePushService.unsubscribe(session);
+                notificationService.unregister(session);
+            })
+            .then();
+    }
+
+    private Mono<Void> handleIncomingMessage(WebSocketSession session, String message) {
+        return Mono.<Void>defer(() -> {
+            Map<String, Object> payload;
+            try {
+                payload = objectMapper.readValue(message, Map.class);
+            } catch (Exception e) {
+                return Mono.error(new IllegalArgumentException("Invalid JSON: " + e.getMessage()));
+            }
+            String action = (String) payload.get("action");
+
+            switch (action) {
+                case "subscribe" -> {
+                    String topic = (String) payload.get("topic");
+                    String consumerGroup = (String) payload.getOrDefault("consumerGroup", "default");
+                    long credits = asLong(payload.get("credits"), 0L);
+                    Long fromOffset = payload.get("fromOffset") != null ? asLong(payload.get("fromOffset"), 0L) : null;
+                    String selector = (String) payload.get("selector");
+                    if (topic == null) {
+                        return Mono.error(new IllegalArgumentException("topic is required"));
+                    }
+                    return messagePushService.subscribe(session, topic, consumerGroup, credits, fromOffset, selector)
+                        .doOnNext(position -> sendReply(session, Map.of(
+                            "type", "subscribed",
+                            "topic", topic,
+                            "consumerGroup", consumerGroup,
+                            "position", position
+                        )))
+                        .then();
+                }
+                case "credit" -> {
+                    messagePushService.addCredits(session, asLong(payload.get("credits"), 0L));
+                    return Mono.empty();
+                }
+                case "ack" -> {
+                    return messagePushService.ack(session, extractOffsets(payload));
+                }
+                case "commit" -> {
+                    long offset = asLong(payload.get("offset"), -1L);
+                    if (offset < 0) {
+                        return Mono.error(new IllegalArgumentException("offset is required"));
+                    }
+                    return messagePushService.commit(session, offset)
+                        .then(Mono.<Void>fromRunnable(() -> sendReply(session, Map.of(
+                            "type", "committed",
+                            "offset", offset
+                        ))));
+                }
+                case "unsubscribe" -> {
+                    messagePushService.unsubscribe(session);
+                    sendReply(session, Map.of("type", "unsubscribed"));
+                    return Mono.empty();
+                }
+                case "ping" -> {
+                    sendReply(session, Map.of("type", "pong"));
+                    return Mono.empty();
+                }
+                default -> {
+                    return Mono.error(new IllegalArgumentException("Action not recognized: " + action));
+                }
+            }
+        })
+        .onErrorResume(error -> {
+            log.warn("Error processing consume message from session {}: {}", session.getId(), error.getMessage());
+            sendReply(session, Map.of(
+                "type", "error",
+                "message", String.valueOf(error.getMessage())
+            ));
+            return Mono.empty();
+        });
+    }
+
+    private List<Long> extractOffsets(Map<String, Object> payload) {
+        if (payload.get("offsets") instanceof List<?> offsets) {
+            return offsets.stream().map(offset -> asLong(offset, -1L)).toList();
+        }
+        return List.of(asLong(payload.get("offset"), -1L));
+    }
+
+    private long asLong(Object value, long defaultValue) {
+        return value instanceof Number number ? number.longValue() : defaultValue;
+    }
+
+    private void sendReply(WebSocketSession session, Map<String, Object> reply) {
+        try {
+            Map<String, Object> response = new java.util.HashMap<>(reply);
+            response.put("timestamp", java.time.Instant.now().toString());
+            notificationService.sendToSession(session, objectMapper.writeValueAsString(response));
+        } catch (Exception e) {
+            log.error("Failed to send reply to session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+}
@@ -23,14 +23,21 @@ public class NotificationWebSocketHandler implements WebSocketHandler {
     @Override
     public Mono<Void> handle(WebSocketSession session) {
         log.info("WebSocket connection established: {}", session.getId());
+        SessionOutbox outbox = notificationService.register(session);
         
-        return session.receive()
+        Mono<Void> input = session.receive()
             .map(WebSocketMessage::getPayloadAsText)
             .flatMap(message -> handleIncomingMessage(session, message))
             .doOnError(error -> log.error("WebSocket error for session {}: {}", session.getId(), error.getMessage()))
+            .then();
+        
+        // All outbound frames go through the session's bounded queue
+        Mono<Void> output = session.send(outbox.frames());
+        
+        return Mono.zip(input, output)
             .doFinally(signalType -> {
                 log.info("WebSocket connection closed: {} ({})", session.getId(), signalType);
-                notificationService.unsubscribe(session);
+                notificationService.unregister(session);
             })
             .then();
     }
@@ -45,7 +52,7 @@ public class NotificationWebSocketHandler implements WebSocketHandler {
                     case "subscribe_topic" -> {
                         String topic = (String) payload.get("topic");
                         if (topic != null) {
-                            notificationService.subscribeToTopic(topic, session);
+                            notificationService.subscribeToTopic(topic, session, parseMode(payload.get("mode")));
                             sendAcknowledgment(session, "subscribed_to_topic", topic);
                         }
                     }
@@ -75,6 +82,14 @@ public class NotificationWebSocketHandler implements WebSocketHandler {
         });
     }
 
+    private NotificationService.SubscriptionMode parseMode(Object mode) {
+        // "coalesced" opts into periodic TOPIC_TICK summaries instead of one frame per message
+        if (mode instanceof String value && "coalesced".equalsIgnoreCase(value)) {
+            return NotificationService.SubscriptionMode.COALESCED;
+        }
+        return NotificationService.SubscriptionMode.PER_MESSAGE;
+    }
+
     private void sendAcknowledgment(WebSocketSession session, String type, String target) {
         try {
             Map<String, Object> response = Map.of(
@@ -84,7 +99,7 @@ public class NotificationWebSocketHandler implements WebSocketHandler {
             );
             
             String responseJson = objectMapper.writeValueAsString(response);
-            session.send(Mono.just(session.textMessage(responseJson))).subscribe();
+            notificationService.sendToSession(session, responseJson);
             
         } catch (Exception e) {
             log.error("Failed to send acknowledgment to session {}: {}", session.getId(), e.getMessage());
@@ -101,7 +116,7 @@ public class NotificationWebSocketHandler implements WebSocketHandler {
             );
             
             String responseJson = objectMapper.writeValueAsString(response);
-            session.send(Mono.just(session.textMessage(responseJson))).subscribe();
+            notificationService.sendToSession(session, responseJson);
             
         } catch (Exception e) {
             log.error("Failed to send error to session {}: {}", session.getId(), e.getMessage());
@@ -116,7 +131,7 @@ public class NotificationWebSocketHandler implements WebSocketHandler {
             );
             
             String responseJson = objectMapper.writeValueAsString(response);
-            session.send(Mono.just(session.textMessage(responseJson))).subscribe();
+            notificationService.sendToSession(session, responseJson);
             
         } catch (Exception e) {
             log.error("Failed to send pong to session {}: {}", session.getId(), e.getMessage());
@@ -0,0 +1,176 @@
+package com.vthreadMQ001.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded outbound queue for a single WebSocket session.
+ *
+ * Frames are pre-encoded once by the caller and shared between sessions; the queue is drained
+ * only as fast as the transport requests, so a slow client never blocks the publisher. When the
+ * queue is full the configured {@link OverflowPolicy} either drops the oldest frame or
+ * disconnects the client. Pushed messages are never dropped, since the client would never ack
+ * them: if the oldest frame is one, the client is disconnected and its cleanup hands the
+ * deliveries back.
+ */
+@Slf4j
+public class SessionOutbox {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    private final WebSocketSession session;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Counter droppedFrames;
+
+    private final ConcurrentLinkedQueue<Frame> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger(0);
+    private final AtomicInteger wip = new AtomicInteger(0);
+    private volatile FluxSink<WebSocketMessage> sink;
+    private volatile boolean closed;
+
+    // Reverse index of this session's subscriptions, so unsubscribing never walks every topic
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final Set<String> coalescedTopics = ConcurrentHashMap.newKeySet();
+    private final Set<String> consumerGroups = ConcurrentHashMap.newKeySet();
+
+    public SessionOutbox(WebSocketSession session, int capacity, OverflowPolicy overflowPolicy, Counter droppedFrames) {
+        this.session = session;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.droppedFrames = droppedFrames;
+    }
+
+    /**
+     * Outbound frame stream to hand to {@link WebSocketSession#send}.
+     */
+    public Flux<WebSocketMessage> frames() {
+        return Flux.create(s -> {
+            this.sink = s;
+            s.onRequest(n -> drain());
+            s.onDispose(() -> closed = true);
+        });
+    }
+
+    public boolean offer(String frame) {
+        return offer(frame.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Queue a pre-encoded text frame. Returns false if the session is closed or was disconnected
+     * because it fell too far behind.
+     */
+    public boolean offer(byte[] frame) {
+        return offer(new Frame(frame, true));
+    }
+
+    /**
+     * Queue a pushed message, which is never dropped to make room. Returns false if the session
+     * is closed or was disconnected because it fell too far behind.
+     */
+    public boolean offerDelivery(byte[] frame) {
+        return offer(new Frame(frame, false));
+    }
+
+    private boolean offer(Frame frame) {
+        if (closed) {
+            return false;
+        }
+
+        if (depth.incrementAndGet() > capacity) {
+            Frame oldest = overflowPolicy == OverflowPolicy.DROP_OLDEST ? queue.poll() : null;
+            if (oldest != null) {
+                depth.decrementAndGet();
+            }
+            if (overflowPolicy == OverflowPolicy.DISCONNECT || (oldest != null && !oldest.droppable())) {
+                depth.decrementAndGet();
+                droppedFrames.increment();
+                log.warn("Disconnecting slow WebSocket session {} (queue depth {})", session.getId(), capacity);
+                close(CloseStatus.POLICY_VIOLATION);
+                return false;
+            }
+            if (oldest != null) {
+                droppedFrames.increment();
+            }
+        }
+
+        queue.offer(frame);
+        drain();
+        return true;
+    }
+
+    public void close(CloseStatus status) {
+        closed = true;
+        queue.clear();
+        depth.set(0);
+        session.close(status).subscribe();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            FluxSink<WebSocketMessage> s = sink;
+            if (s != null) {
+                while (s.requestedFromDownstream() > 0) {
+                    Frame frame = queue.poll();
+                    if (frame == null) {
+                        break;
+                    }
+                    depth.decrementAndGet();
+                    // Wrapping shares the encoded bytes instead of copying them per session
+                    s.next(new WebSocketMessage(WebSocketMessage.Type.TEXT, session.bufferFactory().wrap(frame.bytes())));
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public boolean isOpen() {
+        return !closed && session.isOpen();
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    public Set<String> getCoalescedTopics() {
+        return coalescedTopics;
+    }
+
+    public Set<String> getConsumerGroups() {
+        return consumerGroups;
+    }
+
+    private record Frame(byte[] bytes, boolean droppable) {
+    }
+}
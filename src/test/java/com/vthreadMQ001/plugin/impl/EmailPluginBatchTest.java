@@ -0,0 +1,189 @@
+package com.vthreadMQ001.plugin.impl;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.plugin.PluginResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailPluginBatchTest {
+
+    private static final int MESSAGE_COUNT = 200;
+
+    private SmtpStandIn smtp;
+    private EmailPlugin plugin;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtp = new SmtpStandIn();
+        smtp.start();
+
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(smtp.getPort());
+
+        plugin = new EmailPlugin();
+        plugin.setMailSender(mailSender);
+        plugin.initialize(Map.of("fromAddress", "vthreadmq@example.com")).block();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtp.stop();
+    }
+
+    @Test
+    void processBatchSendsAllMessagesOverOneSmtpSession() {
+        List<PluginResult> results = plugin.processBatch(createMessages(MESSAGE_COUNT), Map.of()).block();
+
+        assertEquals(MESSAGE_COUNT, results.size());
+        assertTrue(results.stream().allMatch(PluginResult::isSuccess));
+        assertEquals(1, smtp.getConnectionCount());
+        assertEquals(MESSAGE_COUNT, smtp.getMessageCount());
+    }
+
+    @Test
+    void perMessageSendsOpenOneConnectionEach() {
+        List<Message> messages = createMessages(MESSAGE_COUNT);
+
+        for (Message message : messages) {
+            assertTrue(plugin.process(message, Map.of()).block().isSuccess());
+        }
+        assertEquals(MESSAGE_COUNT, smtp.getConnectionCount());
+
+        List<PluginResult> results = plugin.processBatch(messages, Map.of()).block();
+
+        assertTrue(results.stream().allMatch(PluginResult::isSuccess));
+        assertEquals(MESSAGE_COUNT + 1, smtp.getConnectionCount());
+        assertEquals(MESSAGE_COUNT * 2, smtp.getMessageCount());
+    }
+
+    @Test
+    void failureOfOneOfIdenticalMailsFailsOnlyThatMessage() {
+        Message message = createMessages(1).get(0);
+        smtp.rejectRecipient(2);
+
+        List<PluginResult> results = plugin.processBatch(List.of(message, message, message), Map.of()).block();
+
+        assertEquals(List.of(true, false, true), results.stream().map(PluginResult::isSuccess).toList());
+        assertEquals(2, smtp.getMessageCount());
+    }
+
+    private List<Message> createMessages(int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(Message.builder()
+                .id("message-" + i)
+                .topic("email")
+                .content("Alert body " + i)
+                .headers(Map.of("to", "user" + i + "@example.com", "subject", "Alert " + i))
+                .offset((long) i + 1)
+                .build());
+        }
+        return messages;
+    }
+
+    /**
+     * Minimal local SMTP server that accepts everything and counts connections and messages.
+     */
+    private static class SmtpStandIn {
+
+        private final AtomicInteger connectionCount = new AtomicInteger(0);
+        private final AtomicInteger messageCount = new AtomicInteger(0);
+        private final AtomicInteger recipientCount = new AtomicInteger(0);
+        private volatile int rejectedRecipient;
+        private ServerSocket serverSocket;
+
+        void start() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread.ofVirtual().start(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        connectionCount.incrementAndGet();
+                        Thread.ofVirtual().start(() -> handle(socket));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        void stop() throws IOException {
+            serverSocket.close();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        int getMessageCount() {
+            return messageCount.get();
+        }
+
+        // Answer the n-th RCPT command overall (1-based) with a permanent failure
+        void rejectRecipient(int n) {
+            rejectedRecipient = n;
+        }
+
+        private void handle(Socket socket) {
+            try (socket;
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                OutputStream out = socket.getOutputStream();
+                reply(out, "220 localhost SMTP stand-in");
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                    switch (command) {
+                        case "EHLO", "HELO" -> reply(out, "250 localhost");
+                        case "RCPT" -> reply(out, recipientCount.incrementAndGet() == rejectedRecipient
+                            ? "550 Mailbox unavailable"
+                            : "250 OK");
+                        case "DATA" -> {
+                            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                            String data;
+                            while ((data = reader.readLine()) != null && !data.equals(".")) {
+                                // discard message body
+                            }
+                            messageCount.incrementAndGet();
+                            reply(out, "250 OK");
+                        }
+                        case "QUIT" -> {
+                            reply(out, "221 Bye");
+                            return;
+                        }
+                        default -> reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException e) {
+                // client went away
+            }
+        }
+
+        private void reply(OutputStream out, String response) throws IOException {
+            out.write((response + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+    }
+}
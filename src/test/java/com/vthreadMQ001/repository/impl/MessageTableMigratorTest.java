@@ -0,0 +1,185 @@
+package com.vthreadMQ001.repository.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.BrokerState;
+import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.service.CheckpointService;
+import com.vthreadMQ001.service.OffsetAckTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.CompositeDatabasePopulator;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageTableMigratorTest {
+
+    private static final String[] TOPICS = {"orders", "audit"};
+    private static final int OLD_ROWS_PER_TOPIC = 200;
+    private static final int NEW_ROWS_PER_TOPIC = 100;
+
+    @TempDir
+    Path dir;
+
+    private DriverManagerDataSource dataSource;
+    private MessageTableMigrator migrator;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = new DriverManagerDataSource("jdbc:sqlite:" + dir.resolve("test.db"));
+        // The messages table as the first release created it: rowid-keyed, no seq column
+        execute("""
+            CREATE TABLE messages (
+                id TEXT PRIMARY KEY,
+                topic TEXT NOT NULL,
+                content TEXT NOT NULL,
+                headers TEXT,
+                created_at INTEGER NOT NULL,
+                scheduled_at INTEGER,
+                processed_at INTEGER,
+                status TEXT NOT NULL,
+                retry_count INTEGER DEFAULT 0,
+                max_retries INTEGER DEFAULT 3,
+                error_message TEXT,
+                consumer_group TEXT,
+                offset INTEGER NOT NULL
+            )""");
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement insert = conn.prepareStatement("""
+                 INSERT INTO messages (id, topic, content, created_at, status, offset)
+                 VALUES (?, ?, 'payload', 0, 'PENDING', ?)""")) {
+            for (int i = 0; i < OLD_ROWS_PER_TOPIC; i++) {
+                for (String topic : TOPICS) {
+                    insert.setString(1, topic + "-" + i);
+                    insert.setString(2, topic);
+                    insert.setLong(3, i);
+                    insert.executeUpdate();
+                }
+            }
+        }
+
+        ResourceDatabasePopulator schema = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+        schema.setContinueOnError(true);
+        CompositeDatabasePopulator populators = new CompositeDatabasePopulator();
+        populators.addPopulators(MessageTableMigrator::prepare, schema, MessageTableMigrator::backfillSeq,
+            SQLiteMessageRepository::createHighWaterTrigger);
+        DatabasePopulatorUtils.execute(populators, dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (migrator != null) {
+            migrator.shutdown();
+        }
+    }
+
+    @Test
+    void recoveryCountsRowsWrittenBeforeSeqExisted() throws SQLException {
+        BrokerState state = recover();
+
+        for (String topic : TOPICS) {
+            assertEquals(OLD_ROWS_PER_TOPIC, state.nextOffset(topic));
+        }
+        assertEquals(OLD_ROWS_PER_TOPIC * TOPICS.length, state.getLastSeq());
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM messages WHERE seq IS NULL"));
+    }
+
+    @Test
+    void migrationKeepsEveryRowWhileProducesRun() throws Exception {
+        BrokerState state = recover();
+        SQLiteMessageRepository repository = new SQLiteMessageRepository(dataSource, new ObjectMapper(), state);
+
+        migrator = new MessageTableMigrator(dataSource, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(migrator, "chunkSize", 10);
+        ReflectionTestUtils.setField(migrator, "chunkPauseMs", 1L);
+        ReflectionTestUtils.setField(migrator, "retryDelayMs", 3_600_000L);
+        migrator.init();
+
+        for (int i = 0; i < NEW_ROWS_PER_TOPIC; i++) {
+            for (String topic : TOPICS) {
+                repository.save(Message.builder()
+                    .topic(topic)
+                    .content("payload")
+                    .status(Message.MessageStatus.PENDING)
+                    .maxRetries(3)
+                    .build()).block();
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (tableExists("messages_v2")) {
+            assertTrue(System.currentTimeMillis() < deadline, "migration did not finish");
+            Thread.sleep(20);
+        }
+
+        int total = (OLD_ROWS_PER_TOPIC + NEW_ROWS_PER_TOPIC) * TOPICS.length;
+        assertEquals(total, queryLong("SELECT COUNT(*) FROM messages"));
+        assertEquals(total, queryLong("SELECT COUNT(DISTINCT seq) FROM messages"));
+        for (String topic : TOPICS) {
+            assertEquals(OLD_ROWS_PER_TOPIC + NEW_ROWS_PER_TOPIC,
+                queryLong("SELECT COUNT(DISTINCT offset) FROM messages WHERE topic = '" + topic + "'"));
+            assertEquals(OLD_ROWS_PER_TOPIC + NEW_ROWS_PER_TOPIC - 1,
+                queryLong("SELECT MAX(offset) FROM messages WHERE topic = '" + topic + "'"));
+        }
+
+        BrokerState restored = recover();
+        for (String topic : TOPICS) {
+            assertEquals(OLD_ROWS_PER_TOPIC + NEW_ROWS_PER_TOPIC, restored.nextOffset(topic));
+        }
+        assertEquals(total, restored.getLastSeq());
+    }
+
+    private BrokerState recover() {
+        ConsumerCursorRepository cursorRepository = mock(ConsumerCursorRepository.class);
+        when(cursorRepository.findAll()).thenReturn(Flux.empty());
+        when(cursorRepository.findCommittedSince(any())).thenReturn(Flux.empty());
+
+        BrokerState state = new BrokerState();
+        SQLiteMessageRepository repository = new SQLiteMessageRepository(dataSource, new ObjectMapper(), state);
+        CheckpointService service = new CheckpointService(state, repository, cursorRepository,
+            mock(OffsetAckTracker.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", false);
+        service.init();
+        return state;
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        return queryLong("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = '" + table + "'") > 0;
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
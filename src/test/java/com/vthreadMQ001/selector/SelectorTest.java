@@ -0,0 +1,117 @@
+package com.vthreadMQ001.selector;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.model.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SelectorTest {
+
+    private static final List<String> HEADERS = List.of(
+        "{\"region\": \"eu\", \"amount\": 150, \"vip\": true}",
+        "{\"region\": \"us\", \"amount\": 99.5, \"vip\": false}",
+        "{\"region\": \"eu\", \"amount\": \"150\"}",
+        "{\"region\": null, \"amount\": 10, \"source.app\": \"web\"}",
+        "{\"source.app\": \"app\", \"note\": \"it's\"}",
+        "{}");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        conn.createStatement().execute("CREATE TABLE messages (id INTEGER PRIMARY KEY, headers TEXT)");
+        try (PreparedStatement insert = conn.prepareStatement("INSERT INTO messages (id, headers) VALUES (?, ?)")) {
+            for (int i = 0; i < HEADERS.size(); i++) {
+                insert.setInt(1, i);
+                insert.setString(2, HEADERS.get(i));
+                insert.executeUpdate();
+            }
+            // A message without headers at all
+            insert.setInt(1, HEADERS.size());
+            insert.setString(2, null);
+            insert.executeUpdate();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void sqlAndInMemoryEvaluationAgree() throws Exception {
+        assertMatches("region = 'eu'", 0, 2);
+        assertMatches("region != 'eu'", 1);
+        assertMatches("NOT region = 'eu'", 1, 3, 4, 5, 6);
+        assertMatches("amount >= 100", 0);
+        assertMatches("amount < 100 AND region IS NOT NULL", 1);
+        assertMatches("region IS NULL", 3, 4, 5, 6);
+        assertMatches("vip = TRUE OR amount = 10", 0, 3);
+        assertMatches("vip != TRUE", 1);
+        assertMatches("source.app IN ('web', 'app')", 3, 4);
+        assertMatches("source.app NOT IN ('web')", 0, 1, 2, 4, 5, 6);
+        assertMatches("note = 'it''s'", 4);
+        assertMatches("(region = 'eu' OR region = 'us') AND NOT (amount > 100)", 1, 2);
+    }
+
+    @Test
+    void anyOfMatchesEitherSelector() throws Exception {
+        assertMatches(Selector.anyOf(List.of(Selector.parse("region = 'us'"), Selector.parse("amount IN (10, 150)"))), 0, 1, 3);
+        assertMatches(Selector.anyOf(List.of(Selector.parse("vip = FALSE"))), 1);
+        assertThrows(IllegalArgumentException.class, () -> Selector.anyOf(List.of()));
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> Selector.parse("region ="));
+        assertThrows(IllegalArgumentException.class, () -> Selector.parse("region > 'eu'"));
+        assertThrows(IllegalArgumentException.class, () -> Selector.parse("region = 'eu"));
+        assertThrows(IllegalArgumentException.class, () -> Selector.parse("(region = 'eu'"));
+        assertThrows(IllegalArgumentException.class, () -> Selector.parse("region = 'eu'; DROP TABLE messages"));
+    }
+
+    private void assertMatches(String expression, Integer... expected) throws Exception {
+        assertMatches(Selector.parse(expression), expected);
+    }
+
+    private void assertMatches(Selector selector, Integer... expected) throws Exception {
+        String expression = selector.getExpression();
+        List<Integer> inSql = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM messages WHERE " + selector.getSql() + " ORDER BY id")) {
+            selector.bind(stmt, 1);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                inSql.add(rs.getInt(1));
+            }
+        }
+
+        List<Integer> inMemory = new ArrayList<>();
+        for (int i = 0; i <= HEADERS.size(); i++) {
+            Map<String, Object> headers = i < HEADERS.size()
+                ? objectMapper.readValue(HEADERS.get(i), new TypeReference<Map<String, Object>>() {})
+                : null;
+            if (selector.matches(Message.builder().headers(headers).build())) {
+                inMemory.add(i);
+            }
+        }
+
+        assertEquals(List.of(expected), inSql, "SQL result of " + expression);
+        assertEquals(List.of(expected), inMemory, "in-memory result of " + expression);
+    }
+}
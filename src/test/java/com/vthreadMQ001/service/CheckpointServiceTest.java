@@ -0,0 +1,186 @@
+package com.vthreadMQ001.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.model.ConsumerCursor;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.repository.BrokerState;
+import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.repository.impl.SQLiteMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.CompositeDatabasePopulator;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CheckpointServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private DriverManagerDataSource dataSource;
+    private ConsumerCursorRepository cursorRepository;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:sqlite:" + dir.resolve("test.db"));
+        ResourceDatabasePopulator schema = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+        schema.setContinueOnError(true);
+        CompositeDatabasePopulator populators = new CompositeDatabasePopulator();
+        populators.addPopulators(schema, SQLiteMessageRepository::createHighWaterTrigger);
+        DatabasePopulatorUtils.execute(populators, dataSource);
+
+        cursorRepository = mock(ConsumerCursorRepository.class);
+        when(cursorRepository.findAll()).thenReturn(Flux.empty());
+        when(cursorRepository.findCommittedSince(any())).thenReturn(Flux.empty());
+    }
+
+    @Test
+    void checkpointRoundTrip() throws IOException {
+        CheckpointService.Checkpoint checkpoint = new CheckpointService.Checkpoint();
+        checkpoint.clean = true;
+        checkpoint.createdAt = 1_700_000_000_000L;
+        checkpoint.lastSeq = 42;
+        checkpoint.scheduledHorizon = Long.MAX_VALUE;
+        checkpoint.topics.add(TopicHead.builder().topic("orders").headOffset(40).messageCount(38)
+            .lastProducedAt(Instant.ofEpochMilli(1_699_999_999_000L)).build());
+        checkpoint.topics.add(TopicHead.builder().topic("empty").build());
+        checkpoint.cursors.add(ConsumerCursor.builder().consumerGroup("billing").topic("orders").offset(17L).build());
+
+        CheckpointService.Checkpoint decoded = CheckpointService.decode(CheckpointService.encode(checkpoint));
+
+        assertTrue(decoded.clean);
+        assertEquals(checkpoint.createdAt, decoded.createdAt);
+        assertEquals(42, decoded.lastSeq);
+        assertEquals(Long.MAX_VALUE, decoded.scheduledHorizon);
+        assertEquals(checkpoint.topics, decoded.topics);
+        assertNull(decoded.topics.get(1).getLastProducedAt());
+        assertEquals(1, decoded.cursors.size());
+        assertEquals("billing", decoded.cursors.get(0).getConsumerGroup());
+        assertEquals("orders", decoded.cursors.get(0).getTopic());
+        assertEquals(17L, decoded.cursors.get(0).getOffset());
+    }
+
+    @Test
+    void corruptCheckpointIsRejected() throws IOException {
+        CheckpointService.Checkpoint checkpoint = new CheckpointService.Checkpoint();
+        checkpoint.lastSeq = 7;
+        byte[] data = CheckpointService.encode(checkpoint);
+
+        data[20] ^= 1;
+        assertThrows(IOException.class, () -> CheckpointService.decode(data));
+        assertThrows(IOException.class, () -> CheckpointService.decode(new byte[3]));
+    }
+
+    @Test
+    void rebuildKeepsOffsetsOfExpiredTail() {
+        SQLiteMessageRepository repository = new SQLiteMessageRepository(dataSource, new ObjectMapper(), new BrokerState());
+        Instant past = Instant.now().minusSeconds(60);
+        for (int i = 0; i < 3; i++) {
+            repository.save(message("orders").expiresAt(past).build()).block();
+        }
+        repository.save(message("audit").build()).block();
+
+        // Every orders row expires; the newest row overall (audit) would be kept regardless
+        assertEquals(3, repository.deleteExpired(Instant.now(), 100).block().getDeleted());
+
+        BrokerState restored = new BrokerState();
+        recover(restored, false);
+
+        assertEquals(4, restored.nextOffset("orders"));
+        assertEquals(4, restored.getLastSeq());
+        Message next = new SQLiteMessageRepository(dataSource, new ObjectMapper(), restored)
+            .save(message("orders").build()).block();
+        assertEquals(4L, next.getOffset());
+        assertEquals(5L, next.getSeq());
+    }
+
+    @Test
+    void checkpointStaysValidWhenNewestRowsAreDeleted() throws SQLException {
+        BrokerState state = new BrokerState();
+        CheckpointService first = recover(state, true);
+        SQLiteMessageRepository repository = new SQLiteMessageRepository(dataSource, new ObjectMapper(), state);
+        for (int i = 0; i < 3; i++) {
+            repository.save(message("orders").build()).block();
+        }
+        first.shutdown();
+
+        // Any delete path, e.g. retention cleanup, taking the newest rows
+        execute("DELETE FROM messages WHERE topic = 'orders' AND offset >= 2");
+
+        BrokerState restored = new BrokerState();
+        recover(restored, true).shutdown();
+
+        assertEquals(4, restored.nextOffset("orders"));
+        assertEquals(3, restored.getLastSeq());
+        // From the checkpoint, not rebuilt: the count still includes the deleted rows
+        assertEquals(3, restored.getTopics().get(0).getMessageCount());
+    }
+
+    @Test
+    void databaseOlderThanCheckpointNeverLowersOffsets() throws SQLException {
+        BrokerState state = new BrokerState();
+        CheckpointService first = recover(state, true);
+        SQLiteMessageRepository repository = new SQLiteMessageRepository(dataSource, new ObjectMapper(), state);
+        for (int i = 0; i < 3; i++) {
+            repository.save(message("orders").build()).block();
+        }
+        first.shutdown();
+
+        // A database restored from a backup taken after the first message
+        execute("DELETE FROM messages WHERE offset >= 2");
+        execute("DELETE FROM message_high_water");
+
+        BrokerState restored = new BrokerState();
+        recover(restored, true).shutdown();
+
+        assertEquals(4, restored.nextOffset("orders"));
+        assertEquals(3, restored.getLastSeq());
+        assertEquals(1, restored.getTopics().get(0).getMessageCount());
+    }
+
+    private CheckpointService recover(BrokerState state, boolean checkpoints) {
+        SQLiteMessageRepository repository = new SQLiteMessageRepository(dataSource, new ObjectMapper(), state);
+        CheckpointService service = new CheckpointService(state, repository, cursorRepository,
+            mock(OffsetAckTracker.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", checkpoints);
+        ReflectionTestUtils.setField(service, "path", dir.resolve("test.db.checkpoint").toString());
+        ReflectionTestUtils.setField(service, "intervalMs", 3_600_000L);
+        service.init();
+        return service;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.createStatement().execute(sql);
+        }
+    }
+
+    private static Message.MessageBuilder message(String topic) {
+        return Message.builder()
+            .topic(topic)
+            .content("payload")
+            .status(Message.MessageStatus.PENDING)
+            .maxRetries(3);
+    }
+}
@@ -0,0 +1,84 @@
+package com.vthreadMQ001.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterServiceTest {
+
+    private static final String MEMBERS = "http://127.0.0.1:8080,http://127.0.0.1:8081";
+    private static final URI TARGET = URI.create("http://127.0.0.1:8081/api/produce?wait=1");
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("203.0.113.7", 40000);
+
+    @Test
+    void signedForwardIsTrusted() {
+        ClusterService sender = cluster("http://127.0.0.1:8080", "s3cret");
+        ClusterService owner = cluster("http://127.0.0.1:8081", "s3cret");
+
+        String header = sender.forwardedBy(HttpMethod.POST, TARGET);
+        assertTrue(owner.isForwardedByMember(request(header, HttpMethod.POST, TARGET)));
+    }
+
+    @Test
+    void forgedOrReplayedForwardIsIgnored() {
+        ClusterService sender = cluster("http://127.0.0.1:8080", "s3cret");
+        ClusterService owner = cluster("http://127.0.0.1:8081", "s3cret");
+        String header = sender.forwardedBy(HttpMethod.POST, TARGET);
+
+        assertFalse(owner.isForwardedByMember(request("http://127.0.0.1:8080", HttpMethod.POST, TARGET)));
+        assertFalse(owner.isForwardedByMember(request(cluster("http://127.0.0.1:8080", "other").forwardedBy(HttpMethod.POST, TARGET),
+            HttpMethod.POST, TARGET)));
+        // Same signature on another request
+        assertFalse(owner.isForwardedByMember(request(header, HttpMethod.POST, URI.create("http://127.0.0.1:8081/api/ack"))));
+        assertFalse(owner.isForwardedByMember(request(header, HttpMethod.GET, TARGET)));
+
+        ReflectionTestUtils.setField(owner, "forwardMaxAgeMs", -1L);
+        assertFalse(owner.isForwardedByMember(request(header, HttpMethod.POST, TARGET)));
+    }
+
+    @Test
+    void withoutSecretOnlyMemberAddressesAreTrusted() {
+        ClusterService owner = cluster("http://127.0.0.1:8081", "");
+
+        assertTrue(owner.isForwardedByMember(request("http://127.0.0.1:8080", HttpMethod.POST, TARGET,
+            new InetSocketAddress("127.0.0.1", 50000))));
+        assertFalse(owner.isForwardedByMember(request("http://127.0.0.1:8080", HttpMethod.POST, TARGET, CLIENT)));
+        assertFalse(owner.isForwardedByMember(MockServerHttpRequest.method(HttpMethod.POST, TARGET)
+            .remoteAddress(new InetSocketAddress("127.0.0.1", 50000)).build()));
+    }
+
+    private static MockServerHttpRequest request(String forwardedBy, HttpMethod method, URI target) {
+        return request(forwardedBy, method, target, CLIENT);
+    }
+
+    private static MockServerHttpRequest request(String forwardedBy, HttpMethod method, URI target, InetSocketAddress remote) {
+        return MockServerHttpRequest.method(method, target)
+            .header(ClusterService.FORWARDED_HEADER, forwardedBy)
+            .remoteAddress(remote)
+            .build();
+    }
+
+    private static ClusterService cluster(String self, String secret) {
+        ClusterService cluster = new ClusterService(WebClient.builder(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cluster, "enabled", true);
+        ReflectionTestUtils.setField(cluster, "self", self);
+        ReflectionTestUtils.setField(cluster, "members", MEMBERS);
+        ReflectionTestUtils.setField(cluster, "virtualNodes", 16);
+        ReflectionTestUtils.setField(cluster, "mode", "forward");
+        ReflectionTestUtils.setField(cluster, "maxConnections", 4);
+        ReflectionTestUtils.setField(cluster, "connectTimeoutMs", 1000);
+        ReflectionTestUtils.setField(cluster, "secret", secret);
+        ReflectionTestUtils.setField(cluster, "forwardMaxAgeMs", 30_000L);
+        cluster.init();
+        return cluster;
+    }
+}
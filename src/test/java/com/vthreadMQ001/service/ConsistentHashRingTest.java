@@ -0,0 +1,66 @@
+package com.vthreadMQ001.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+    private static final List<String> MEMBERS = List.of("http://a:8080", "http://b:8080", "http://c:8080");
+    private static final int TOPICS = 30_000;
+
+    @Test
+    void assignmentDoesNotDependOnMemberOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(MEMBERS, 128);
+        ConsistentHashRing reversed = new ConsistentHashRing(MEMBERS.reversed(), 128);
+
+        for (int i = 0; i < TOPICS; i++) {
+            assertEquals(ring.ownerOf("topic-" + i), reversed.ownerOf("topic-" + i));
+        }
+    }
+
+    @Test
+    void topicsAreSpreadEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(MEMBERS, 128);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < TOPICS; i++) {
+            owned.merge(ring.ownerOf("orders-" + i), 1, Integer::sum);
+        }
+        for (String member : MEMBERS) {
+            double share = owned.getOrDefault(member, 0) / (double) TOPICS;
+            assertTrue(Math.abs(share - 1.0 / 3) < 0.1, member + " owns " + share);
+        }
+        assertEquals(1.0, ring.ownership().values().stream().mapToDouble(Double::doubleValue).sum(), 1e-9);
+    }
+
+    @Test
+    void addingMemberOnlyMovesTopicsToIt() {
+        ConsistentHashRing ring = new ConsistentHashRing(MEMBERS, 128);
+        List<String> grown = List.of("http://a:8080", "http://b:8080", "http://c:8080", "http://d:8080");
+        ConsistentHashRing bigger = new ConsistentHashRing(grown, 128);
+
+        int moved = 0;
+        for (int i = 0; i < TOPICS; i++) {
+            String before = ring.ownerOf("topic-" + i);
+            String after = bigger.ownerOf("topic-" + i);
+            if (!before.equals(after)) {
+                assertEquals("http://d:8080", after);
+                moved++;
+            }
+        }
+        // About a quarter of the key space
+        assertTrue(moved > TOPICS * 0.15 && moved < TOPICS * 0.35, moved + " topics moved");
+    }
+
+    @Test
+    void emptyRingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(List.of(), 128));
+    }
+}
@@ -0,0 +1,163 @@
+package com.vthreadMQ001.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.BrokerState;
+import com.vthreadMQ001.repository.impl.SQLiteIdempotencyKeyRepository;
+import com.vthreadMQ001.repository.impl.SQLiteMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.CompositeDatabasePopulator;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private DriverManagerDataSource dataSource;
+    private SQLiteMessageRepository messageRepository;
+    private IdempotencyService service;
+    private final AtomicInteger writes = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:sqlite:" + dir.resolve("test.db"));
+        ResourceDatabasePopulator schema = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+        schema.setContinueOnError(true);
+        CompositeDatabasePopulator populators = new CompositeDatabasePopulator();
+        populators.addPopulators(schema, SQLiteMessageRepository::createHighWaterTrigger);
+        DatabasePopulatorUtils.execute(populators, dataSource);
+
+        messageRepository = new SQLiteMessageRepository(dataSource, new ObjectMapper(), new BrokerState());
+        service = service();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void duplicateInsideWindowReturnsOriginal() {
+        Message first = service.deduplicate("orders", "k1", produce("orders", "k1")).block();
+        Message second = service.deduplicate("orders", "k1", produce("orders", "k1")).block();
+
+        assertEquals(first.getId(), second.getId());
+        assertEquals(first.getOffset(), second.getOffset());
+        assertEquals(1, writes.get());
+
+        // After a restart the key comes from the persisted table
+        service.shutdown();
+        service = service();
+        Message afterRestart = service.deduplicate("orders", "k1", produce("orders", "k1")).block();
+        assertEquals(first.getId(), afterRestart.getId());
+        assertEquals(1, writes.get());
+
+        // Keys are per topic
+        service.deduplicate("audit", "k1", produce("audit", "k1")).block();
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    void concurrentProducesWithOneKeyShareOneWrite() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<Mono<Message>> slowProduce = () -> Mono.fromCallable(() -> {
+                started.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return true;
+            })
+            .then(produce("orders", "k1").get());
+
+        CompletableFuture<Message> first = service.deduplicate("orders", "k1", slowProduce)
+            .subscribeOn(Schedulers.boundedElastic())
+            .toFuture();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Message> second = service.deduplicate("orders", "k1", produce("orders", "k1")).toFuture();
+        release.countDown();
+
+        assertEquals(first.get(10, TimeUnit.SECONDS).getId(), second.get(10, TimeUnit.SECONDS).getId());
+        assertEquals(1, writes.get());
+        assertEquals(1, count("SELECT COUNT(*) FROM messages"));
+    }
+
+    @Test
+    void failedProduceLeavesNoKeyBehind() throws SQLException {
+        // The key insert fails after the message insert, inside the same transaction
+        execute("ALTER TABLE idempotency_keys RENAME TO idempotency_keys_hidden");
+        assertThrows(RuntimeException.class, () -> service.deduplicate("orders", "k1", produce("orders", "k1")).block());
+        assertEquals(0, count("SELECT COUNT(*) FROM messages"));
+        execute("ALTER TABLE idempotency_keys_hidden RENAME TO idempotency_keys");
+
+        // A retry writes the message, and only then is the key taken
+        Message retried = service.deduplicate("orders", "k1", produce("orders", "k1")).block();
+        assertEquals(2, writes.get());
+        assertEquals(1, count("SELECT COUNT(*) FROM messages"));
+        assertEquals(1, count("SELECT COUNT(*) FROM idempotency_keys WHERE message_id = '" + retried.getId() + "'"));
+        assertEquals(retried.getId(), service.deduplicate("orders", "k1", produce("orders", "k1")).block().getId());
+    }
+
+    private IdempotencyService service() {
+        IdempotencyService idempotency = new IdempotencyService(new SQLiteIdempotencyKeyRepository(dataSource),
+            messageRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(idempotency, "windowSeconds", 3600L);
+        ReflectionTestUtils.setField(idempotency, "lruCapacity", 100);
+        ReflectionTestUtils.setField(idempotency, "bloomExpectedKeys", 1000);
+        ReflectionTestUtils.setField(idempotency, "bloomFalsePositiveRate", 0.01);
+        idempotency.init();
+        return idempotency;
+    }
+
+    private Supplier<Mono<Message>> produce(String topic, String key) {
+        return () -> Mono.defer(() -> {
+            writes.incrementAndGet();
+            return messageRepository.save(Message.builder()
+                .topic(topic)
+                .content("payload")
+                .status(Message.MessageStatus.PENDING)
+                .maxRetries(3)
+                .build(), key);
+        });
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.repository.ConsumerCursorRepository;
+import com.vthreadMQ001.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OffsetAckTrackerTest {
+
+    private MessageRepository messageRepository;
+    private LogDeliveryService logDelivery;
+    private OffsetAckTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        ConsumerCursorRepository cursorRepository = mock(ConsumerCursorRepository.class);
+        when(cursorRepository.getCommittedOffset(anyString(), anyString())).thenReturn(Mono.just(0L));
+        when(cursorRepository.commitOffset(anyString(), anyString(), any())).thenReturn(Mono.empty());
+        messageRepository = mock(MessageRepository.class);
+        when(messageRepository.updateStatusInOffsetRange(anyString(), any(), any(), any(), any())).thenReturn(Mono.empty());
+        logDelivery = mock(LogDeliveryService.class);
+        when(logDelivery.isLogTopic("events")).thenReturn(true);
+
+        tracker = new OffsetAckTracker(cursorRepository, messageRepository, new SimpleMeterRegistry(),
+            mock(ReplicationLeaderService.class), logDelivery);
+        // Flushes are not part of these tests
+        ReflectionTestUtils.setField(tracker, "flushIntervalMs", 3_600_000L);
+        tracker.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.shutdown();
+    }
+
+    @Test
+    void rangesCoalesceWithOverlappingAndAdjacentRanges() {
+        OffsetAckTracker.OffsetRangeSet ranges = new OffsetAckTracker.OffsetRangeSet();
+        ranges.add(10, 12);
+        ranges.add(20, 25);
+        ranges.add(13, 14);
+        ranges.add(16, 19);
+
+        assertRanges(ranges, new long[]{10, 14}, new long[]{16, 25});
+    }
+
+    @Test
+    void rangeSpanningSeveralRangesSwallowsThem() {
+        OffsetAckTracker.OffsetRangeSet ranges = new OffsetAckTracker.OffsetRangeSet();
+        ranges.add(10, 14);
+        ranges.add(16, 25);
+        ranges.add(40, 41);
+
+        ranges.add(11, 30);
+        assertRanges(ranges, new long[]{10, 30}, new long[]{40, 41});
+    }
+
+    @Test
+    void removeSplitsRanges() {
+        OffsetAckTracker.OffsetRangeSet ranges = new OffsetAckTracker.OffsetRangeSet();
+        ranges.add(1, 10);
+        ranges.add(20, 30);
+
+        ranges.remove(5, 6);
+        ranges.remove(9, 22);
+        assertEquals(3, ranges.size());
+
+        ranges.removeThrough(7);
+        assertRanges(ranges, new long[]{8, 8}, new long[]{23, 30});
+    }
+
+    @Test
+    void drainEmptiesTheSet() {
+        OffsetAckTracker.OffsetRangeSet ranges = new OffsetAckTracker.OffsetRangeSet();
+        ranges.add(3, 4);
+        ranges.add(7, 7);
+
+        assertEquals(2, ranges.drain().size());
+        assertNull(ranges.first());
+        assertEquals(0, ranges.size());
+    }
+
+    @Test
+    void committedOffsetAdvancesOnlyOverContiguousAcks() {
+        assertEquals(0L, tracker.ack("billing", "orders", List.of(2L, 3L, 5L)).block());
+        assertEquals(3L, tracker.ack("billing", "orders", 1L).block());
+        assertEquals(3L, tracker.ackRange("billing", "orders", 6, 8).block());
+        assertEquals(8L, tracker.ack("billing", "orders", 4L).block());
+    }
+
+    @Test
+    void nackedOffsetHoldsTheCursorUntilAckedAgain() {
+        tracker.ackRange("billing", "orders", 2, 4).block();
+        tracker.nackRange("billing", "orders", 3, 3).block();
+        verify(messageRepository).updateStatusInOffsetRange("orders", 3L, 3L,
+            Message.MessageStatus.PROCESSING, Message.MessageStatus.PENDING);
+
+        assertEquals(2L, tracker.ack("billing", "orders", 1L).block());
+        assertEquals(4L, tracker.ack("billing", "orders", 3L).block());
+    }
+
+    @Test
+    void nackAtOrBelowCommittedOffsetIsRejected() {
+        tracker.ackRange("billing", "orders", 1, 5).block();
+
+        assertThrows(IllegalArgumentException.class, () -> tracker.nackRange("billing", "orders", 5, 6).block());
+        assertThrows(IllegalArgumentException.class, () -> tracker.nackRange("billing", "orders", 2, 2).block());
+        verify(messageRepository, never()).updateStatusInOffsetRange(anyString(), any(), any(), any(), any());
+
+        tracker.nackRange("billing", "orders", 6, 6).block();
+        verify(messageRepository).updateStatusInOffsetRange("orders", 6L, 6L,
+            Message.MessageStatus.PROCESSING, Message.MessageStatus.PENDING);
+    }
+
+    @Test
+    void logTopicNackBelowCommittedOffsetIsRedelivered() {
+        tracker.ackRange("billing", "events", 1, 5).block();
+
+        tracker.nackRange("billing", "events", 2, 3).block();
+        verify(logDelivery).redeliver("billing", "events", 2, 3);
+    }
+
+    @Test
+    void explicitCommitDiscardsAcksBelowIt() {
+        tracker.ackRange("billing", "orders", 3, 4).block();
+        tracker.ackRange("billing", "orders", 8, 9).block();
+
+        tracker.commit("billing", "orders", 6).block();
+        assertEquals(6L, tracker.getCommittedOffset("billing", "orders").block());
+        assertEquals(9L, tracker.ack("billing", "orders", 7L).block());
+        verify(logDelivery, never()).acked(anyString(), eq("orders"), anyLong(), anyLong());
+    }
+
+    private static void assertRanges(OffsetAckTracker.OffsetRangeSet ranges, long[]... expected) {
+        List<long[]> actual = ranges.drain();
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual.get(i));
+        }
+    }
+}
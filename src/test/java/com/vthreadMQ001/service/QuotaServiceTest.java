@@ -0,0 +1,182 @@
+package com.vthreadMQ001.service;
+
+import com.vthreadMQ001.model.Message;
+import com.vthreadMQ001.model.TopicHead;
+import com.vthreadMQ001.repository.BrokerState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuotaServiceTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BrokerState brokerState = new BrokerState();
+    private QuotaService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void burstIsAdmittedThenThrottledToRate() {
+        QuotaService.TokenBucket bucket = new QuotaService.TokenBucket(10, 1.0, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, bucket.tryAcquire(1), "request " + i);
+        }
+        // The 11th fits once one interval (100ms) has passed
+        assertEquals(100 * MS, bucket.tryAcquire(1));
+        now.addAndGet(99 * MS);
+        assertTrue(bucket.tryAcquire(1) > 0);
+        now.addAndGet(MS);
+        assertEquals(0, bucket.tryAcquire(1));
+    }
+
+    @Test
+    void steadyRateIsAdmittedWithoutBurstCredit() {
+        QuotaService.TokenBucket bucket = new QuotaService.TokenBucket(10, 1.0, now::get);
+        for (int i = 0; i < 10; i++) {
+            bucket.tryAcquire(1);
+        }
+
+        // One request per interval keeps passing, one more in the same interval does not
+        for (int i = 0; i < 50; i++) {
+            now.addAndGet(100 * MS);
+            assertEquals(0, bucket.tryAcquire(1), "tick " + i);
+            assertTrue(bucket.tryAcquire(1) > 0, "tick " + i);
+        }
+        assertEquals(1.0, bucket.usage());
+    }
+
+    @Test
+    void idleBucketRefillsOnlyUpToTheBurst() {
+        QuotaService.TokenBucket bucket = new QuotaService.TokenBucket(10, 1.0, now::get);
+        bucket.tryAcquire(1);
+        assertTrue(!bucket.isFull());
+
+        now.addAndGet(60_000 * MS);
+        assertTrue(bucket.isFull());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, bucket.tryAcquire(1));
+        }
+        assertTrue(bucket.tryAcquire(1) > 0);
+    }
+
+    @Test
+    void requestLargerThanBurstIsAdmittedAgainstFullBucket() {
+        QuotaService.TokenBucket bucket = new QuotaService.TokenBucket(10, 1.0, now::get);
+
+        assertEquals(0, bucket.tryAcquire(25));
+        // It leaves 1.5s of debt beyond the burst
+        assertEquals(1_500 * MS, bucket.debtNanos());
+        assertTrue(bucket.tryAcquire(1) > 0);
+    }
+
+    @Test
+    void chargeAndRefund() {
+        QuotaService.TokenBucket bucket = new QuotaService.TokenBucket(10, 1.0, now::get);
+
+        bucket.charge(15);
+        assertEquals(500 * MS, bucket.debtNanos());
+        bucket.refund(5);
+        assertEquals(0, bucket.debtNanos());
+        assertEquals(1.0, bucket.usage());
+    }
+
+    @Test
+    void unconfiguredSubjectsShareTheOtherMeters() {
+        service = service(new MockEnvironment()
+            .withProperty("vthreadmq.quotas.client-defaults.produce-messages-per-sec", "1")
+            .withProperty("vthreadmq.quotas.clients.importer.produce-messages-per-sec", "1"));
+
+        for (String client : new String[] {"importer", "a", "b", "c"}) {
+            for (int i = 0; i < 2; i++) {
+                service.acquireProduce("orders", client, "x").onErrorComplete().block();
+            }
+        }
+
+        assertEquals(1.0, meterRegistry.get("vthreadmq_quota_throttled_total").tag("scope", "client").tag("name", "importer").counter().count());
+        assertEquals(3.0, meterRegistry.get("vthreadmq_quota_throttled_total").tag("scope", "client").tag("name", QuotaService.OTHER).counter().count());
+        assertEquals(1, meterRegistry.find("vthreadmq_quota_usage_ratio").gauges().size());
+        assertNull(meterRegistry.find("vthreadmq_quota_throttled_total").tag("name", "a").counter());
+        // Only limited subjects are kept: the unlimited topic has no bucket
+        assertEquals(4, service.subjectCount());
+    }
+
+    @Test
+    void idleSubjectsAreDroppedOnceRefilled() throws InterruptedException {
+        service = service(new MockEnvironment()
+            .withProperty("vthreadmq.quotas.client-defaults.produce-messages-per-sec", "1000"));
+        ReflectionTestUtils.setField(service, "idleMs", 0L);
+
+        service.acquireProduce("orders", "a", "x").block();
+        service.acquireProduce("orders", "b", "x").block();
+        assertEquals(2, service.subjectCount());
+
+        Thread.sleep(10);
+        service.sweepIdle();
+        assertEquals(0, service.subjectCount());
+
+        // A dropped subject starts again with a full bucket
+        service.acquireProduce("orders", "a", "x").block();
+        assertEquals(1, service.subjectCount());
+    }
+
+    @Test
+    void produceOverTopicQuotaIsRejected() {
+        service = service(new MockEnvironment()
+            .withProperty("vthreadmq.quotas.topics.orders.produce-messages-per-sec", "1"));
+
+        service.acquireProduce("orders", null, "x").block();
+        assertThrows(QuotaExceededException.class, () -> service.acquireProduce("orders", null, "x").block());
+        // Other topics are unlimited
+        service.acquireProduce("audit", null, "x").block();
+    }
+
+    @Test
+    void patternConsumeIsCheckedAgainstEveryMatchingTopic() {
+        service = service(new MockEnvironment()
+            .withProperty("vthreadmq.quotas.topics[orders.eu].consume-messages-per-sec", "1"));
+        brokerState.restore(List.of(
+            TopicHead.builder().topic("orders.eu").headOffset(5).build(),
+            TopicHead.builder().topic("orders.us").headOffset(5).build(),
+            TopicHead.builder().topic("audit").headOffset(5).build()), List.of(), 15);
+
+        service.checkConsume("orders.*", null).block();
+        // Two deliveries against a burst of one leave orders.eu in debt
+        for (int i = 0; i < 2; i++) {
+            service.chargeConsume("orders.eu", null, Message.builder().topic("orders.eu").content("x").build());
+        }
+
+        assertThrows(QuotaExceededException.class, () -> service.checkConsume("orders.*", null).block());
+        assertThrows(QuotaExceededException.class, () -> service.checkConsume("orders.#", null).block());
+        service.checkConsume("orders.us", null).block();
+        service.checkConsume("audit.*", null).block();
+    }
+
+    private QuotaService service(MockEnvironment environment) {
+        QuotaService quotas = new QuotaService(environment, meterRegistry, brokerState);
+        ReflectionTestUtils.setField(quotas, "enabled", true);
+        ReflectionTestUtils.setField(quotas, "burstSeconds", 1.0);
+        ReflectionTestUtils.setField(quotas, "idleMs", 300_000L);
+        quotas.init();
+        return quotas;
+    }
+}